@@ -20,11 +20,13 @@
 import java.util.*;
 
 import net.java.sip.communicator.service.callhistory.*;
+import net.java.sip.communicator.service.callquality.*;
 import net.java.sip.communicator.service.contactsource.*;
 import net.java.sip.communicator.service.history.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
 
+import org.jitsi.service.fileaccess.*;
 import org.jitsi.service.resources.*;
 import org.osgi.framework.*;
 
@@ -60,6 +62,11 @@
      */
     private static ResourceManagementService resourcesService;
 
+    /**
+     * The service normalizing the phone numbers of the call history index.
+     */
+    private static PhoneNumberI18nService phoneNumberI18nService;
+
     /**
      * The map containing all registered
      */
@@ -129,6 +136,51 @@ public static CallHistoryService getCallHistoryService()
         return callHistoryService;
     }
 
+    /**
+     * Returns the <tt>FileAccessService</tt> through which the call history
+     * index is stored.
+     *
+     * @return the <tt>FileAccessService</tt>
+     */
+    public static FileAccessService getFileAccessService()
+    {
+        return ServiceUtils.getService(bundleContext, FileAccessService.class);
+    }
+
+    /**
+     * Returns the <tt>PhoneNumberI18nService</tt> normalizing the phone numbers
+     * of the call history index.
+     *
+     * @return the <tt>PhoneNumberI18nService</tt>, or <tt>null</tt> if it
+     * isn't running
+     */
+    public static PhoneNumberI18nService getPhoneNumberI18nService()
+    {
+        if (phoneNumberI18nService == null)
+        {
+            phoneNumberI18nService
+                = ServiceUtils.getService(
+                        bundleContext,
+                        PhoneNumberI18nService.class);
+        }
+        return phoneNumberI18nService;
+    }
+
+    /**
+     * Returns the <tt>CallQualityMetricsService</tt> whose summary of the
+     * quality of a call is recorded with it.
+     *
+     * @return the <tt>CallQualityMetricsService</tt>, or <tt>null</tt> if it
+     * isn't running
+     */
+    public static CallQualityMetricsService getCallQualityMetricsService()
+    {
+        return
+            ServiceUtils.getService(
+                    bundleContext,
+                    CallQualityMetricsService.class);
+    }
+
     /**
      * Returns the <tt>ResourceManagementService</tt>, through which we will
      * access all resources.
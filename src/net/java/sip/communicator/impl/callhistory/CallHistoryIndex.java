@@ -0,0 +1,890 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.callhistory;
+
+import java.io.*;
+import java.util.*;
+
+import net.java.sip.communicator.service.callhistory.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * A persistent index of the call history records by the addresses of their
+ * peers. For every peer of every record the index keeps the period in which
+ * the timestamp of the record lies: it starts at the time the record was
+ * written, or at the start of the call for the records indexed after the fact
+ * whose timestamp may have been changed by an update, and ends at the current
+ * timestamp of the record. Searching the history in that period only reads
+ * the files which may contain the record.
+ * <p>
+ * Addresses are indexed by a key in which phone numbers are normalized
+ * through the <tt>PhoneNumberI18nService</tt> and other addresses are lower
+ * cased. The index is stored as a text file to which every change is
+ * appended, and which is rewritten when loaded if it contains superseded
+ * lines. The file is only created once the index has been built, so until
+ * then changes are only kept in memory: an index file always covers the
+ * whole history.
+ * <p>
+ * Searches by a part of an address go through an in-memory index of the keys
+ * by the substrings of up to {@link #GRAM_LENGTH} characters of the keys and
+ * of the addresses, so they only look at the keys which may match. Records
+ * written to the history without going through the index make it stale,
+ * which {@link #isCurrent(Date)} detects by comparing the timestamp of the
+ * newest record of the history with the newest one known to the index.
+ */
+class CallHistoryIndex
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>CallHistoryIndex</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(CallHistoryIndex.class);
+
+    /**
+     * The character separating the fields of a line of the index file.
+     */
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * The maximum length of the substrings by which keys are looked up.
+     */
+    static final int GRAM_LENGTH = 3;
+
+    /**
+     * The first field of the lines of the index file which record the newest
+     * timestamp of a record known to the index, for the records which have
+     * no entry such as the ones without peer addresses.
+     */
+    private static final String LAST_TIMESTAMP = "#last";
+
+    /**
+     * The file the index is stored in.
+     */
+    private final File file;
+
+    /**
+     * The entries of the index by the key of their peer address, each list
+     * sorted by the end of the period of the entries.
+     */
+    private final Map<String, List<Entry>> entries
+        = new HashMap<String, List<Entry>>();
+
+    /**
+     * The keys of {@link #entries} by the substrings of up to
+     * {@link #GRAM_LENGTH} characters of the keys and of the lower cased
+     * addresses of their entries.
+     */
+    private final Map<String, Set<String>> keysByGram
+        = new HashMap<String, Set<String>>();
+
+    /**
+     * The newest timestamp of a record known to the index, or <tt>-1</tt> if
+     * it has none.
+     */
+    private long lastTimestamp = -1;
+
+    /**
+     * The stream to which changes are appended, or <tt>null</tt> if the index
+     * couldn't be written.
+     */
+    private Writer out;
+
+    /**
+     * Whether the index covers the whole history, which isn't the case until
+     * it has been loaded or built.
+     */
+    private boolean ready = false;
+
+    /**
+     * Creates a <tt>CallHistoryIndex</tt> stored in <tt>file</tt>. The index
+     * isn't ready until {@link #load()} or {@link #build(Map)} has
+     * been called.
+     *
+     * @param file the file the index is stored in
+     */
+    CallHistoryIndex(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Returns the key under which an address is indexed. Phone numbers,
+     * including the ones in the user part of a SIP address, are normalized
+     * and other addresses lower cased.
+     *
+     * @param address a peer address or a part of it
+     * @return the key of <tt>address</tt>
+     */
+    static String getKey(String address)
+    {
+        String user = address;
+
+        if (user.startsWith("sip:") || user.startsWith("tel:"))
+            user = user.substring(4);
+
+        int at = user.indexOf('@');
+
+        if (at > 0)
+            user = user.substring(0, at);
+
+        PhoneNumberI18nService phoneNumberService
+            = CallHistoryActivator.getPhoneNumberI18nService();
+
+        if (phoneNumberService != null
+                && phoneNumberService.isPhoneNumber(user))
+            return phoneNumberService.normalize(user);
+        else
+            return address.toLowerCase();
+    }
+
+    /**
+     * Loads the index from its file.
+     *
+     * @return <tt>true</tt> if the index has been loaded and is ready;
+     * <tt>false</tt> if there is no index file yet and the index has to be
+     * built
+     */
+    synchronized boolean load()
+    {
+        if (!file.exists())
+            return false;
+
+        int lines = 0;
+        BufferedReader in = null;
+
+        try
+        {
+            in
+                = new BufferedReader(
+                        new InputStreamReader(
+                                new FileInputStream(file),
+                                "UTF-8"));
+
+            String line;
+
+            while ((line = in.readLine()) != null)
+            {
+                String[] fields = line.split(String.valueOf(SEPARATOR), 5);
+
+                if (fields.length == 2 && LAST_TIMESTAMP.equals(fields[0]))
+                {
+                    try
+                    {
+                        lastTimestamp
+                            = Math.max(
+                                    lastTimestamp,
+                                    Long.parseLong(fields[1]));
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        logger.warn(
+                                "Ignoring malformed call history index line");
+                    }
+                    continue;
+                }
+                if (fields.length != 5)
+                    continue;
+
+                try
+                {
+                    put(
+                        new Entry(
+                                fields[0],
+                                fields[4],
+                                Long.parseLong(fields[1]),
+                                Long.parseLong(fields[2]),
+                                Long.parseLong(fields[3])));
+                    lines++;
+                }
+                catch (NumberFormatException e)
+                {
+                    logger.warn("Ignoring malformed call history index line");
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to load the call history index", e);
+            return false;
+        }
+        finally
+        {
+            close(in);
+        }
+
+        if (lines > size())
+            rewrite();
+        ready = true;
+        return true;
+    }
+
+    /**
+     * Builds the index from the whole call history and stores it, keeping
+     * the entries which have been added since the history was read.
+     *
+     * @param records the call records of the whole history with, for each of
+     * them, the timestamp of its history record
+     */
+    synchronized void build(Map<CallRecord, Date> records)
+    {
+        for (Map.Entry<CallRecord, Date> e : records.entrySet())
+        {
+            CallRecord record = e.getKey();
+            long callStart = record.getStartTime().getTime();
+            long timestamp = e.getValue().getTime();
+
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+            for (CallPeerRecord peerRecord : record.getPeerRecords())
+            {
+                String address = peerRecord.getPeerAddress();
+
+                if (address == null || address.length() == 0)
+                    continue;
+
+                String key = getKey(address);
+
+                if (find(key, address, callStart) == null)
+                {
+                    put(
+                        new Entry(
+                                key,
+                                address,
+                                callStart,
+                                callStart,
+                                timestamp));
+                }
+            }
+        }
+        rewrite();
+        ready = true;
+    }
+
+    /**
+     * Determines whether the index covers the whole history.
+     *
+     * @return <tt>true</tt> if the index has been loaded or built
+     */
+    synchronized boolean isReady()
+    {
+        return ready;
+    }
+
+    /**
+     * Indexes the peers of a record which has just been written.
+     *
+     * @param record the call record
+     * @param timestamp the timestamp the record has been written with
+     */
+    synchronized void add(CallRecord record, Date timestamp)
+    {
+        long callStart = record.getStartTime().getTime();
+        long time = timestamp.getTime();
+        boolean appended = false;
+
+        for (CallPeerRecord peerRecord : record.getPeerRecords())
+        {
+            String address = peerRecord.getPeerAddress();
+
+            if (address == null || address.length() == 0)
+                continue;
+
+            String key = getKey(address);
+            Entry entry = find(key, address, callStart);
+
+            if (entry == null)
+            {
+                entry = new Entry(key, address, callStart, time, time);
+                put(entry);
+            }
+            else
+                entry.to = time;
+            append(entry);
+            appended = true;
+        }
+        if (time > lastTimestamp)
+        {
+            lastTimestamp = time;
+            if (!appended)
+                appendLastTimestamp();
+        }
+    }
+
+    /**
+     * Records that the timestamp of the record of an entry has been changed
+     * by an update.
+     *
+     * @param entry the entry of the updated record
+     * @param timestamp a time no earlier than the new timestamp of the record
+     */
+    synchronized void updated(Entry entry, long timestamp)
+    {
+        if (timestamp <= entry.to)
+            return;
+
+        List<Entry> keyEntries = entries.get(entry.key);
+
+        entry.to = timestamp;
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        if (keyEntries != null)
+        {
+            keyEntries.remove(entry);
+            insert(keyEntries, entry);
+        }
+        append(entry);
+    }
+
+    /**
+     * Determines whether the index knows about the newest record of the
+     * history, and about no record if the history is empty.
+     *
+     * @param newestRecord the timestamp of the newest record of the history,
+     * or <tt>null</tt> if the history is empty
+     * @return <tt>false</tt> if the history has been written without going
+     * through the index
+     */
+    synchronized boolean isCurrent(Date newestRecord)
+    {
+        if (newestRecord == null)
+            return entries.isEmpty();
+        else
+            return newestRecord.getTime() <= lastTimestamp;
+    }
+
+    /**
+     * Drops all entries because the index is stale. The index isn't ready
+     * again until it has been rebuilt by {@link #build(Map)}, and its file
+     * is left as it is until then.
+     */
+    synchronized void invalidate()
+    {
+        close();
+        entries.clear();
+        keysByGram.clear();
+        lastTimestamp = -1;
+        ready = false;
+    }
+
+    /**
+     * Returns the most recent entries of the peer addresses which contain
+     * <tt>query</tt>, or whose key contains its key.
+     *
+     * @param query the searched address or part of it
+     * @param count the maximum number of entries to return
+     * @return the most recent matching entries, most recent first
+     */
+    synchronized List<Entry> findByPeer(String query, int count)
+    {
+        String queryKey = getKey(query);
+        String lowerCaseQuery = query.toLowerCase();
+        Collection<String> keys;
+
+        if (queryKey.length() == 0 || lowerCaseQuery.length() == 0)
+            keys = entries.keySet();
+        else
+        {
+            keys = new HashSet<String>(findKeys(queryKey));
+            keys.addAll(findKeys(lowerCaseQuery));
+        }
+
+        List<Entry> result = new ArrayList<Entry>();
+
+        for (String key : keys)
+        {
+            List<Entry> keyEntries = entries.get(key);
+            boolean keyMatches = key.contains(queryKey);
+            int matches = 0;
+
+            // Only the most recent entries of every key may be among the
+            // most recent ones overall.
+            for (int i = keyEntries.size() - 1; i >= 0 && matches < count; i--)
+            {
+                Entry entry = keyEntries.get(i);
+
+                if (keyMatches
+                        || entry.peerAddress.toLowerCase()
+                                .contains(lowerCaseQuery))
+                {
+                    result.add(entry);
+                    matches++;
+                }
+            }
+        }
+
+        Collections.sort(
+                result,
+                new Comparator<Entry>()
+                {
+                    public int compare(Entry e1, Entry e2)
+                    {
+                        return (e1.to < e2.to) ? 1 : (e1.to > e2.to) ? -1 : 0;
+                    }
+                });
+        return
+            (result.size() > count)
+                ? new ArrayList<Entry>(result.subList(0, count))
+                : result;
+    }
+
+    /**
+     * Returns the entries of the records of a peer address whose period
+     * contains a given time.
+     *
+     * @param peerAddress the peer address
+     * @param time the time
+     * @return the entries of the records of <tt>peerAddress</tt> whose
+     * period contains <tt>time</tt>
+     */
+    synchronized List<Entry> findByPeer(String peerAddress, long time)
+    {
+        List<Entry> keyEntries = entries.get(getKey(peerAddress));
+        List<Entry> result = new ArrayList<Entry>();
+
+        if (keyEntries != null)
+        {
+            for (Entry entry : keyEntries)
+            {
+                if (entry.callStart <= time
+                        && time <= entry.to
+                        && entry.peerAddress.equals(peerAddress))
+                    result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all entries from the index and its file, which is kept so that
+     * the empty index is ready.
+     */
+    synchronized void clear()
+    {
+        entries.clear();
+        keysByGram.clear();
+        lastTimestamp = -1;
+        rewrite();
+        ready = true;
+    }
+
+    /**
+     * Closes the index file.
+     */
+    synchronized void close()
+    {
+        close(out);
+        out = null;
+    }
+
+    /**
+     * Returns the entry of the record of the call started at
+     * <tt>callStart</tt> with <tt>peerAddress</tt>.
+     *
+     * @param key the key of <tt>peerAddress</tt>
+     * @param peerAddress the address of the peer
+     * @param callStart the start of the call
+     * @return the entry or <tt>null</tt> if there is none
+     */
+    private Entry find(String key, String peerAddress, long callStart)
+    {
+        List<Entry> keyEntries = entries.get(key);
+
+        if (keyEntries != null)
+        {
+            for (int i = keyEntries.size() - 1; i >= 0; i--)
+            {
+                Entry entry = keyEntries.get(i);
+
+                if (entry.callStart == callStart
+                        && entry.peerAddress.equals(peerAddress))
+                    return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the keys which may contain <tt>s</tt> or have an address which
+     * contains it: all the keys which contain or have an address which
+     * contains <tt>s</tt> if it is no longer than {@link #GRAM_LENGTH}, and
+     * otherwise the keys of the rarest of its substrings of that length.
+     *
+     * @param s the searched key or lower cased address
+     * @return the keys which may match <tt>s</tt>, not to be modified
+     */
+    private Set<String> findKeys(String s)
+    {
+        if (s.length() <= GRAM_LENGTH)
+        {
+            Set<String> keys = keysByGram.get(s);
+
+            return (keys == null) ? Collections.<String>emptySet() : keys;
+        }
+
+        Set<String> rarest = null;
+
+        for (int i = 0; i + GRAM_LENGTH <= s.length(); i++)
+        {
+            Set<String> keys
+                = keysByGram.get(s.substring(i, i + GRAM_LENGTH));
+
+            if (keys == null)
+                return Collections.emptySet();
+            if (rarest == null || keys.size() < rarest.size())
+                rarest = keys;
+        }
+        return rarest;
+    }
+
+    /**
+     * Adds <tt>key</tt> to {@link #keysByGram} under all the substrings of
+     * <tt>s</tt> of up to {@link #GRAM_LENGTH} characters.
+     *
+     * @param s the key or a lower cased address of its entries
+     * @param key the key
+     */
+    private void indexGrams(String s, String key)
+    {
+        for (int i = 0; i < s.length(); i++)
+        {
+            for (int n = 1; n <= GRAM_LENGTH && i + n <= s.length(); n++)
+            {
+                String gram = s.substring(i, i + n);
+                Set<String> keys = keysByGram.get(gram);
+
+                if (keys == null)
+                {
+                    keys = new HashSet<String>();
+                    keysByGram.put(gram, keys);
+                }
+                keys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Adds an entry, replacing the one of the same record and peer.
+     *
+     * @param entry the entry to add
+     */
+    private void put(Entry entry)
+    {
+        List<Entry> keyEntries = entries.get(entry.key);
+        Entry existing = null;
+
+        if (keyEntries == null)
+        {
+            keyEntries = new ArrayList<Entry>();
+            entries.put(entry.key, keyEntries);
+            indexGrams(entry.key, entry.key);
+        }
+        else
+        {
+            existing = find(entry.key, entry.peerAddress, entry.callStart);
+
+            if (existing != null)
+                keyEntries.remove(existing);
+        }
+        if (existing == null)
+            indexGrams(entry.peerAddress.toLowerCase(), entry.key);
+        insert(keyEntries, entry);
+        lastTimestamp = Math.max(lastTimestamp, entry.to);
+    }
+
+    /**
+     * Inserts an entry in a list sorted by the end of the periods of the
+     * entries. Entries are mostly added in order, so the insertion point is
+     * looked for from the end.
+     *
+     * @param keyEntries the sorted list
+     * @param entry the entry to insert
+     */
+    private static void insert(List<Entry> keyEntries, Entry entry)
+    {
+        int i = keyEntries.size();
+
+        while (i > 0 && keyEntries.get(i - 1).to > entry.to)
+            i--;
+        keyEntries.add(i, entry);
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     *
+     * @return the number of entries in the index
+     */
+    private int size()
+    {
+        int size = 0;
+
+        for (List<Entry> keyEntries : entries.values())
+            size += keyEntries.size();
+        return size;
+    }
+
+    /**
+     * Appends an entry to the index file, unless the index is still being
+     * built in which case the entry is written along with the others once
+     * the build has finished.
+     *
+     * @param entry the entry to append
+     */
+    private void append(Entry entry)
+    {
+        if (!ready)
+            return;
+
+        try
+        {
+            write(getOut(), entry);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to write the call history index", e);
+            close();
+        }
+    }
+
+    /**
+     * Returns the stream to which changes are appended, opening it if
+     * necessary.
+     *
+     * @return the stream to which changes are appended
+     * @throws IOException if the index file can't be opened
+     */
+    private Writer getOut()
+        throws IOException
+    {
+        if (out == null)
+        {
+            out
+                = new BufferedWriter(
+                        new OutputStreamWriter(
+                                new FileOutputStream(file, true),
+                                "UTF-8"));
+        }
+        return out;
+    }
+
+    /**
+     * Appends the newest timestamp of a record known to the index to the
+     * index file, unless the index is still being built.
+     */
+    private void appendLastTimestamp()
+    {
+        if (!ready)
+            return;
+
+        try
+        {
+            writeLastTimestamp(getOut());
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to write the call history index", e);
+            close();
+        }
+    }
+
+    /**
+     * Writes all entries to the index file, replacing its content.
+     */
+    private void rewrite()
+    {
+        close();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer tmpOut = null;
+
+        try
+        {
+            tmpOut
+                = new BufferedWriter(
+                        new OutputStreamWriter(
+                                new FileOutputStream(tmp),
+                                "UTF-8"));
+            writeLastTimestamp(tmpOut);
+            for (List<Entry> keyEntries : entries.values())
+            {
+                for (Entry entry : keyEntries)
+                    write(tmpOut, entry);
+            }
+            tmpOut.close();
+            tmpOut = null;
+
+            if (!tmp.renameTo(file)
+                    && !(file.delete() && tmp.renameTo(file)))
+                throw new IOException("Failed to rename " + tmp);
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to write the call history index", e);
+        }
+        finally
+        {
+            close(tmpOut);
+        }
+    }
+
+    /**
+     * Writes an entry as a line of the index file.
+     *
+     * @param writer where to write
+     * @param entry the entry to write
+     * @throws IOException if writing fails
+     */
+    private static void write(Writer writer, Entry entry)
+        throws IOException
+    {
+        writer.write(escape(entry.key));
+        writer.write(SEPARATOR);
+        writer.write(Long.toString(entry.callStart));
+        writer.write(SEPARATOR);
+        writer.write(Long.toString(entry.from));
+        writer.write(SEPARATOR);
+        writer.write(Long.toString(entry.to));
+        writer.write(SEPARATOR);
+        writer.write(escape(entry.peerAddress));
+        writer.write('\n');
+    }
+
+    /**
+     * Writes the newest timestamp of a record known to the index as a line of
+     * the index file.
+     *
+     * @param writer where to write
+     * @throws IOException if writing fails
+     */
+    private void writeLastTimestamp(Writer writer)
+        throws IOException
+    {
+        writer.write(LAST_TIMESTAMP);
+        writer.write(SEPARATOR);
+        writer.write(Long.toString(lastTimestamp));
+        writer.write('\n');
+    }
+
+    /**
+     * Replaces the characters which would break the line format.
+     *
+     * @param s the string to escape
+     * @return <tt>s</tt> without tabs or line breaks
+     */
+    private static String escape(String s)
+    {
+        return s.replace(SEPARATOR, ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Closes <tt>closeable</tt>, ignoring errors.
+     *
+     * @param closeable the stream to close, may be <tt>null</tt>
+     */
+    private static void close(Closeable closeable)
+    {
+        if (closeable == null)
+            return;
+
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Failed to close " + closeable, e);
+        }
+    }
+
+    /**
+     * The location in the history of the record of a call with a peer.
+     */
+    static class Entry
+    {
+        /**
+         * The key under which the address of the peer is indexed.
+         */
+        final String key;
+
+        /**
+         * The address of the peer.
+         */
+        final String peerAddress;
+
+        /**
+         * The start of the call, which identifies the record together with
+         * the address of the peer.
+         */
+        final long callStart;
+
+        /**
+         * The time from which the timestamp of the record may be.
+         */
+        final long from;
+
+        /**
+         * The latest time at which the timestamp of the record may be.
+         */
+        long to;
+
+        /**
+         * Creates an entry.
+         *
+         * @param key the key under which <tt>peerAddress</tt> is indexed
+         * @param peerAddress the address of the peer
+         * @param callStart the start of the call
+         * @param from the earliest possible timestamp of the record
+         * @param to the latest possible timestamp of the record
+         */
+        Entry(String key,
+              String peerAddress,
+              long callStart,
+              long from,
+              long to)
+        {
+            this.key = key;
+            this.peerAddress = peerAddress;
+            this.callStart = callStart;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Returns the start of the period the timestamp of the record lies
+         * in.
+         *
+         * @return the start of the period, inclusive
+         */
+        Date getStartDate()
+        {
+            return new Date(from);
+        }
+
+        /**
+         * Returns the end of the period the timestamp of the record lies in.
+         *
+         * @return the end of the period, exclusive
+         */
+        Date getEndDate()
+        {
+            return new Date(to + 1);
+        }
+    }
+}
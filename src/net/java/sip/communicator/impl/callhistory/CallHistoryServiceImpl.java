@@ -23,6 +23,7 @@
 
 import net.java.sip.communicator.service.callhistory.*;
 import net.java.sip.communicator.service.callhistory.event.*;
+import net.java.sip.communicator.service.callquality.*;
 import net.java.sip.communicator.service.contactlist.*;
 import net.java.sip.communicator.service.history.*;
 import net.java.sip.communicator.service.history.event.*;
@@ -32,6 +33,7 @@
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.*;
 
+import org.jitsi.service.fileaccess.*;
 import org.osgi.framework.*;
 
 /**
@@ -57,13 +59,20 @@
         new String[] { "accountUID", "callStart", "callEnd", "dir",
             "callParticipantIDs", "callParticipantStart",
             "callParticipantEnd", "callParticipantStates", "callEndReason",
-            "callParticipantNames", "secondaryCallParticipantIDs"};
+            "callParticipantNames", "secondaryCallParticipantIDs",
+            "callQuality"};
 
     private static HistoryRecordStructure recordStructure =
         new HistoryRecordStructure(STRUCTURE_NAMES);
 
     private static final char DELIM = ',';
 
+    /**
+     * The name of the file the index of the call history by peer address is
+     * stored in.
+     */
+    private static final String INDEX_FILE_NAME = "callhistory.index";
+
     /**
      * The BundleContext that we got from the OSGI bus.
      */
@@ -86,6 +95,12 @@
 
     private HistoryReader historyReader;
 
+    /**
+     * The index of the records of the call history by peer address, or
+     * <tt>null</tt> if it couldn't be created.
+     */
+    private CallHistoryIndex index;
+
     private List<CallHistoryPeerRecordListener> callHistoryRecordlisteners
         = new LinkedList<CallHistoryPeerRecordListener>();
 
@@ -319,9 +334,46 @@ public CallHistoryQuery findByPeer(String address, int recordCount)
             History history = this.getHistory(null, null);
             InteractiveHistoryReader historyReader
                 = history.getInteractiveReader();
-            HistoryQuery historyQuery
-                = historyReader.findByKeyword(
-                    address, "callParticipantIDs", recordCount);
+            HistoryQuery historyQuery;
+
+            CallHistoryIndex index = this.index;
+            boolean indexReady = (index != null) && index.isReady();
+
+            if (indexReady && !isIndexCurrent(index))
+            {
+                indexReady = false;
+                startIndexBuilder(index, false);
+            }
+            if (indexReady)
+            {
+                // Only read the files which contain the records of the
+                // matching peers.
+                List<CallHistoryIndex.Entry> entries
+                    = index.findByPeer(address, recordCount);
+                int entryCount = entries.size();
+                Date[] startDates = new Date[entryCount];
+                Date[] endDates = new Date[entryCount];
+                String[] peerAddresses = new String[entryCount];
+
+                for (int i = 0; i < entryCount; i++)
+                {
+                    CallHistoryIndex.Entry entry = entries.get(i);
+
+                    startDates[i] = entry.getStartDate();
+                    endDates[i] = entry.getEndDate();
+                    peerAddresses[i] = entry.peerAddress;
+                }
+                historyQuery
+                    = historyReader.findByPeriods(
+                        startDates, endDates, peerAddresses,
+                        STRUCTURE_NAMES[4], recordCount);
+            }
+            else
+            {
+                historyQuery
+                    = historyReader.findByKeyword(
+                        address, "callParticipantIDs", recordCount);
+            }
 
             callQuery = new CallHistoryQueryImpl(historyQuery);
         }
@@ -425,6 +477,8 @@ else if(propName.equals(STRUCTURE_NAMES[9]))
                 callPeerNames = getCSVs(value);
             else if(propName.equals(STRUCTURE_NAMES[10]))
                 callPeerSecondaryIDs = getCSVs(value);
+            else if(propName.equals(STRUCTURE_NAMES[11]))
+                result.setQualitySummary(value);
         }
 
         final int callPeerCount = callPeerIDs == null ? 0 : callPeerIDs.size();
@@ -613,6 +667,8 @@ public void start(BundleContext bc)
 
         this.bundleContext = bc;
 
+        startIndex();
+
         // start listening for newly register or removed protocol providers
         bc.addServiceListener(this);
 
@@ -648,6 +704,9 @@ public void stop(BundleContext bc)
     {
         bc.removeServiceListener(this);
 
+        if (index != null)
+            index.close();
+
         Collection<ServiceReference<ProtocolProviderService>> ppsRefs
             = ServiceUtils.getServiceReferences(
                     bc,
@@ -665,6 +724,146 @@ public void stop(BundleContext bc)
         }
     }
 
+    /**
+     * Loads the index of the call history by peer address in the background,
+     * and builds it from the whole history if it doesn't exist yet or is
+     * stale. Until it is ready, searches go through the whole history.
+     */
+    private void startIndex()
+    {
+        File indexFile;
+
+        try
+        {
+            indexFile
+                = CallHistoryActivator.getFileAccessService()
+                    .getPrivatePersistentFile(
+                            INDEX_FILE_NAME,
+                            FileCategory.CACHE);
+        }
+        catch (Exception e)
+        {
+            logger.error("Failed to get the call history index file", e);
+            return;
+        }
+
+        CallHistoryIndex index = new CallHistoryIndex(indexFile);
+
+        this.index = index;
+        startIndexBuilder(index, true);
+    }
+
+    /**
+     * Starts a thread which builds the index of the call history by peer
+     * address.
+     *
+     * @param index the index to build
+     * @param load <tt>true</tt> to load the index from its file and only
+     * build it if there is no file or the loaded index is stale
+     */
+    private void startIndexBuilder(
+            final CallHistoryIndex index,
+            final boolean load)
+    {
+        Thread indexBuilder
+            = new Thread("CallHistoryIndexBuilder")
+            {
+                @Override
+                public void run()
+                {
+                    if (!load || !index.load() || !isIndexCurrent(index))
+                        buildIndex(index);
+                }
+            };
+
+        indexBuilder.setDaemon(true);
+        indexBuilder.start();
+    }
+
+    /**
+     * Determines whether an index is ready and knows about the newest record
+     * of the history. If the history has been written without going through
+     * the index, for example by another instance of the application, the
+     * index is invalidated and has to be rebuilt.
+     *
+     * @param index the index to check
+     * @return <tt>true</tt> if <tt>index</tt> can be used to search the
+     * history
+     */
+    private boolean isIndexCurrent(CallHistoryIndex index)
+    {
+        // Writes go through the index with its lock held, so they can't come
+        // between reading the newest record and checking the index.
+        synchronized (index)
+        {
+            if (!index.isReady())
+                return false;
+
+            Date newestRecord;
+
+            try
+            {
+                QueryResultSet<HistoryRecord> records
+                    = getHistory(null, null).getReader().findLast(1);
+
+                newestRecord
+                    = records.hasNext() ? records.next().getTimestamp() : null;
+            }
+            catch (IOException e)
+            {
+                logger.error("Could not read history", e);
+                return false;
+            }
+
+            if (index.isCurrent(newestRecord))
+                return true;
+
+            logger.info("The call history index is stale, rebuilding it");
+            index.invalidate();
+            return false;
+        }
+    }
+
+    /**
+     * Builds the index of the call history by peer address from the whole
+     * history.
+     *
+     * @param index the index to build
+     */
+    private void buildIndex(CallHistoryIndex index)
+    {
+        Map<CallRecord, Date> callRecords = new HashMap<CallRecord, Date>();
+
+        try
+        {
+            QueryResultSet<HistoryRecord> records
+                = getHistory(null, null).getReader().findByPeriod(null, null);
+
+            while (records.hasNext())
+            {
+                HistoryRecord record = records.next();
+                CallRecord callRecord
+                    = convertHistoryRecordToCallRecord(record);
+
+                if (callRecord.getStartTime() != null)
+                    callRecords.put(callRecord, record.getTimestamp());
+            }
+        }
+        catch (Exception e)
+        {
+            logger.error("Failed to build the call history index", e);
+            return;
+        }
+
+        index.build(callRecords);
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Indexed " + callRecords.size() + " call history records");
+        }
+    }
+
     /**
      * Writes the given record to the history service
      * @param callRecord CallRecord
@@ -724,7 +923,19 @@ private void writeCall( CallRecordImpl callRecord,
 
             }
 
-            historyWriter.addRecord(new String[] {
+            Date timestamp = new Date();
+            String qualitySummary = null;
+            CallQualityMetricsService qualityService
+                = CallHistoryActivator.getCallQualityMetricsService();
+
+            if (qualityService != null)
+            {
+                qualitySummary
+                    = qualityService.getSummary(callRecord.getSourceCall());
+            }
+
+            CallHistoryIndex index = this.index;
+            String[] values = new String[] {
                     callRecord.getSourceCall().getProtocolProvider()
                         .getAccountID().getAccountUniqueID(),
                     sdf.format(callRecord.getStartTime()),
@@ -736,9 +947,22 @@ private void writeCall( CallRecordImpl callRecord,
                     callPeerStates.toString(),
                     String.valueOf(callRecord.getEndReason()),
                     callPeerNames.toString(),
-                    callPeerSecondaryIDs.toString()},
-                    new Date());    // this date is when the history
-                                    // record is written
+                    callPeerSecondaryIDs.toString(),
+                    (qualitySummary == null) ? "" : qualitySummary};
+
+            if (index == null)
+            {
+                // this date is when the history record is written
+                historyWriter.addRecord(values, timestamp);
+            }
+            else
+            {
+                synchronized (index)
+                {
+                    historyWriter.addRecord(values, timestamp);
+                    index.add(callRecord, timestamp);
+                }
+            }
         }
         catch (IOException e)
         {
@@ -795,6 +1019,9 @@ public void eraseLocallyStoredHistory()
         HistoryID historyId = HistoryID.createFromRawID(
                     new String[] {  "callhistory" });
         historyService.purgeLocallyStoredHistory(historyId);
+
+        if (index != null)
+            index.clear();
     }
 
     /**
@@ -1149,6 +1376,7 @@ public void updateCallRecordPeerSecondaryAddress(final Date date,
             return;
         }
         HistoryWriter historyWriter = history.getWriter();
+        final boolean[] recordUpdated = new boolean[] { false };
 
         HistoryWriter.HistoryRecordUpdater updater
             = new HistoryWriter.HistoryRecordUpdater()
@@ -1245,9 +1473,42 @@ public Map<String, String> getUpdateChanges()
                 }
                 Map<String, String> changesMap = new HashMap<String, String>();
                 changesMap.put(STRUCTURE_NAMES[10], res);
+                recordUpdated[0] = true;
                 return changesMap;
             }
         };
+        if (index != null && index.isReady())
+        {
+            // Only look at the records of the peer which may have started at
+            // date.
+            for (CallHistoryIndex.Entry entry
+                    : index.findByPeer(peerAddress, date.getTime()))
+            {
+                synchronized (index)
+                {
+                    try
+                    {
+                        historyWriter.updateRecord(
+                            updater, entry.getStartDate(), entry.getEndDate());
+                    }
+                    catch (IOException e)
+                    {
+                        logger.warn("Failed to update the record.");
+                    }
+
+                    if (recordUpdated[0])
+                    {
+                        // The writer has set the timestamp of the record to
+                        // the time of the update.
+                        index.updated(entry, System.currentTimeMillis());
+                        return;
+                    }
+                }
+            }
+            // The index has no entry of the record, fall back to searching
+            // the whole history.
+        }
+
         try
         {
             historyWriter.updateRecord(updater);
@@ -128,4 +128,13 @@ public void setEndReason(int endReason)
     {
         this.endReason = endReason;
     }
+
+    /**
+     * Sets the summary of the quality of the media streams of the call.
+     * @param qualitySummary the quality summary
+     */
+    public void setQualitySummary(String qualitySummary)
+    {
+        this.qualitySummary = qualitySummary;
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.callquality;
+
+import net.java.sip.communicator.service.callquality.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.osgi.framework.*;
+
+/**
+ * Starts the <tt>CallQualityMetricsService</tt>.
+ */
+public class CallQualityActivator
+    implements BundleActivator
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>CallQualityActivator</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(CallQualityActivator.class);
+
+    /**
+     * The service started by this bundle.
+     */
+    private CallQualityMetricsServiceImpl callQualityMetricsService;
+
+    /**
+     * Starts sampling calls and registers the
+     * <tt>CallQualityMetricsService</tt>.
+     *
+     * @param bc the <tt>BundleContext</tt>
+     * @throws Exception if starting the service fails
+     */
+    public void start(BundleContext bc)
+        throws Exception
+    {
+        ConfigurationService cfg
+            = ServiceUtils.getService(bc, ConfigurationService.class);
+        long samplingInterval
+            = CallQualityMetricsService.DEFAULT_SAMPLING_INTERVAL;
+
+        if (cfg != null)
+        {
+            samplingInterval
+                = cfg.getLong(
+                        CallQualityMetricsService.SAMPLING_INTERVAL_PROPERTY,
+                        samplingInterval);
+            if (samplingInterval <= 0)
+            {
+                samplingInterval
+                    = CallQualityMetricsService.DEFAULT_SAMPLING_INTERVAL;
+            }
+        }
+
+        callQualityMetricsService
+            = new CallQualityMetricsServiceImpl(samplingInterval);
+        callQualityMetricsService.start(bc);
+
+        bc.registerService(
+                CallQualityMetricsService.class.getName(),
+                callQualityMetricsService,
+                null);
+
+        if (logger.isInfoEnabled())
+            logger.info("Call Quality Metrics Service ...[REGISTERED]");
+    }
+
+    /**
+     * Stops sampling calls.
+     *
+     * @param bc the <tt>BundleContext</tt>
+     * @throws Exception if stopping the service fails
+     */
+    public void stop(BundleContext bc)
+        throws Exception
+    {
+        if (callQualityMetricsService != null)
+        {
+            callQualityMetricsService.stop(bc);
+            callQualityMetricsService = null;
+        }
+    }
+}
@@ -0,0 +1,510 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.callquality;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.callquality.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.protocol.media.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.neomedia.*;
+import org.osgi.framework.*;
+
+/**
+ * Implements the <tt>CallQualityMetricsService</tt>. Listens for the calls of
+ * all protocol providers supporting telephony and samples the streams of the
+ * calls in progress with a single timer, which only runs while there are
+ * calls. The metrics of the last {@link #ENDED_CALLS_TO_KEEP} ended calls are
+ * kept, so that the call history can record their summary.
+ */
+public class CallQualityMetricsServiceImpl
+    implements CallQualityMetricsService,
+               CallListener,
+               ServiceListener
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>CallQualityMetricsServiceImpl</tt>
+     * class and its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(CallQualityMetricsServiceImpl.class);
+
+    /**
+     * The number of ended calls whose metrics are kept.
+     */
+    private static final int ENDED_CALLS_TO_KEEP = 16;
+
+    /**
+     * The types of the sampled streams.
+     */
+    private static final MediaType[] MEDIA_TYPES
+        = { MediaType.AUDIO, MediaType.VIDEO };
+
+    /**
+     * The metrics of the streams of the calls in progress.
+     */
+    private final Map<Call, List<StreamQualityMetricsImpl>> activeCalls
+        = new LinkedHashMap<Call, List<StreamQualityMetricsImpl>>();
+
+    /**
+     * The metrics of the streams of the calls which have recently ended.
+     */
+    private final Map<Call, List<StreamQualityMetricsImpl>> endedCalls
+        = new LinkedHashMap<Call, List<StreamQualityMetricsImpl>>()
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Call, List<StreamQualityMetricsImpl>> eldest)
+            {
+                return size() > ENDED_CALLS_TO_KEEP;
+            }
+        };
+
+    /**
+     * The interval in milliseconds at which the streams are sampled.
+     */
+    private final long samplingInterval;
+
+    /**
+     * The <tt>BundleContext</tt> this service has been started in.
+     */
+    private BundleContext bundleContext;
+
+    /**
+     * The timer sampling the streams, or <tt>null</tt> if there are no calls
+     * in progress.
+     */
+    private Timer timer;
+
+    /**
+     * Initializes a new <tt>CallQualityMetricsServiceImpl</tt>.
+     *
+     * @param samplingInterval the interval in milliseconds at which the
+     * streams are to be sampled
+     */
+    public CallQualityMetricsServiceImpl(long samplingInterval)
+    {
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Starts listening for the calls of the protocol providers which are
+     * already registered and of the ones to come.
+     *
+     * @param bc the <tt>BundleContext</tt> to start in
+     */
+    public void start(BundleContext bc)
+    {
+        this.bundleContext = bc;
+
+        bc.addServiceListener(this);
+
+        for (ServiceReference<ProtocolProviderService> ppsRef
+                : ServiceUtils.getServiceReferences(
+                        bc,
+                        ProtocolProviderService.class))
+        {
+            ProtocolProviderService provider = bc.getService(ppsRef);
+
+            if (provider == null)
+                continue;
+
+            try
+            {
+                handleProviderAdded(provider);
+            }
+            finally
+            {
+                bc.ungetService(ppsRef);
+            }
+        }
+    }
+
+    /**
+     * Stops listening for calls and sampling them.
+     *
+     * @param bc the <tt>BundleContext</tt> this service has been started in
+     */
+    public void stop(BundleContext bc)
+    {
+        bc.removeServiceListener(this);
+
+        for (ServiceReference<ProtocolProviderService> ppsRef
+                : ServiceUtils.getServiceReferences(
+                        bc,
+                        ProtocolProviderService.class))
+        {
+            ProtocolProviderService provider = bc.getService(ppsRef);
+
+            if (provider == null)
+                continue;
+
+            try
+            {
+                handleProviderRemoved(provider);
+            }
+            finally
+            {
+                bc.ungetService(ppsRef);
+            }
+        }
+
+        synchronized (activeCalls)
+        {
+            activeCalls.clear();
+            stopTimerIfIdle();
+        }
+    }
+
+    /**
+     * Listens for the calls of a protocol provider if it supports telephony.
+     *
+     * @param provider the <tt>ProtocolProviderService</tt> which has been
+     * registered
+     */
+    private void handleProviderAdded(ProtocolProviderService provider)
+    {
+        OperationSetBasicTelephony<?> opSetTelephony
+            = provider.getOperationSet(OperationSetBasicTelephony.class);
+
+        if (opSetTelephony != null)
+            opSetTelephony.addCallListener(this);
+    }
+
+    /**
+     * Stops listening for the calls of a protocol provider.
+     *
+     * @param provider the <tt>ProtocolProviderService</tt> which is being
+     * unregistered
+     */
+    private void handleProviderRemoved(ProtocolProviderService provider)
+    {
+        OperationSetBasicTelephony<?> opSetTelephony
+            = provider.getOperationSet(OperationSetBasicTelephony.class);
+
+        if (opSetTelephony != null)
+            opSetTelephony.removeCallListener(this);
+    }
+
+    /**
+     * Listens for the calls of the protocol providers being registered and
+     * stops listening for the ones being unregistered.
+     *
+     * @param event the <tt>ServiceEvent</tt> of a service
+     */
+    public void serviceChanged(ServiceEvent event)
+    {
+        ServiceReference<?> serviceRef = event.getServiceReference();
+        Object service = bundleContext.getService(serviceRef);
+
+        if (service == null)
+            return;
+
+        try
+        {
+            if (!(service instanceof ProtocolProviderService))
+                return;
+
+            if (event.getType() == ServiceEvent.REGISTERED)
+                handleProviderAdded((ProtocolProviderService) service);
+            else if (event.getType() == ServiceEvent.UNREGISTERING)
+                handleProviderRemoved((ProtocolProviderService) service);
+        }
+        finally
+        {
+            bundleContext.ungetService(serviceRef);
+        }
+    }
+
+    /**
+     * Starts sampling an incoming call.
+     *
+     * @param event the <tt>CallEvent</tt> of the call
+     */
+    public void incomingCallReceived(CallEvent event)
+    {
+        callStarted(event.getSourceCall());
+    }
+
+    /**
+     * Starts sampling an outgoing call.
+     *
+     * @param event the <tt>CallEvent</tt> of the call
+     */
+    public void outgoingCallCreated(CallEvent event)
+    {
+        callStarted(event.getSourceCall());
+    }
+
+    /**
+     * Stops sampling a call and keeps its metrics among the ones of the
+     * recently ended calls.
+     *
+     * @param event the <tt>CallEvent</tt> of the call
+     */
+    public void callEnded(CallEvent event)
+    {
+        Call call = event.getSourceCall();
+
+        synchronized (activeCalls)
+        {
+            List<StreamQualityMetricsImpl> metrics = activeCalls.remove(call);
+
+            if (metrics != null)
+                endedCalls.put(call, metrics);
+            stopTimerIfIdle();
+        }
+    }
+
+    /**
+     * Starts sampling a call, and the timer if it is the only one.
+     *
+     * @param call the call which has started
+     */
+    private void callStarted(Call call)
+    {
+        synchronized (activeCalls)
+        {
+            if (activeCalls.containsKey(call))
+                return;
+
+            activeCalls.put(call, new ArrayList<StreamQualityMetricsImpl>());
+
+            if (timer == null)
+            {
+                timer = new Timer("CallQualityMetricsService", true);
+                timer.schedule(
+                        new TimerTask()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                sampleCalls();
+                            }
+                        },
+                        samplingInterval,
+                        samplingInterval);
+            }
+        }
+    }
+
+    /**
+     * Cancels the timer if there are no calls in progress. Must be called
+     * while holding the lock on <tt>activeCalls</tt>.
+     */
+    private void stopTimerIfIdle()
+    {
+        if (activeCalls.isEmpty() && timer != null)
+        {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Samples the streams of all calls in progress.
+     */
+    private void sampleCalls()
+    {
+        Map<Call, List<StreamQualityMetricsImpl>> calls;
+
+        synchronized (activeCalls)
+        {
+            calls
+                = new HashMap<Call, List<StreamQualityMetricsImpl>>(
+                        activeCalls);
+        }
+
+        long timestamp = System.currentTimeMillis();
+
+        for (Map.Entry<Call, List<StreamQualityMetricsImpl>> e
+                : calls.entrySet())
+        {
+            try
+            {
+                sampleCall(e.getKey(), e.getValue(), timestamp);
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+
+                logger.error("Failed to sample call " + e.getKey(), t);
+            }
+        }
+    }
+
+    /**
+     * Samples the started streams of all peers of a call.
+     *
+     * @param call the call to sample
+     * @param metrics the metrics of the streams of <tt>call</tt>
+     * @param timestamp the time of the sample
+     */
+    private void sampleCall(Call call,
+                            List<StreamQualityMetricsImpl> metrics,
+                            long timestamp)
+    {
+        Iterator<? extends CallPeer> callPeers = call.getCallPeers();
+
+        while (callPeers.hasNext())
+        {
+            CallPeer callPeer = callPeers.next();
+
+            if (!(callPeer instanceof MediaAwareCallPeer))
+                continue;
+
+            CallPeerMediaHandler<?> mediaHandler
+                = ((MediaAwareCallPeer<?,?,?>) callPeer).getMediaHandler();
+
+            if (mediaHandler == null)
+                continue;
+
+            for (MediaType mediaType : MEDIA_TYPES)
+            {
+                MediaStream stream = mediaHandler.getStream(mediaType);
+
+                if (stream != null && stream.isStarted())
+                {
+                    getStreamMetrics(metrics, callPeer, mediaType)
+                        .sample(mediaHandler, stream, timestamp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the metrics of a stream of a call, creating them on its first
+     * sample.
+     *
+     * @param metrics the metrics of the streams of the call
+     * @param callPeer the <tt>CallPeer</tt> the stream is exchanged with
+     * @param mediaType the type of the media of the stream
+     * @return the metrics of the stream
+     */
+    private StreamQualityMetricsImpl getStreamMetrics(
+            List<StreamQualityMetricsImpl> metrics,
+            CallPeer callPeer,
+            MediaType mediaType)
+    {
+        synchronized (metrics)
+        {
+            for (StreamQualityMetricsImpl streamMetrics : metrics)
+            {
+                if (streamMetrics.getCallPeer() == callPeer
+                        && streamMetrics.getMediaType() == mediaType)
+                    return streamMetrics;
+            }
+
+            StreamQualityMetricsImpl streamMetrics
+                = new StreamQualityMetricsImpl(callPeer, mediaType);
+
+            metrics.add(streamMetrics);
+            return streamMetrics;
+        }
+    }
+
+    /**
+     * Returns the metrics of the streams of a call in progress or recently
+     * ended.
+     *
+     * @param call the call
+     * @return the metrics of the streams of <tt>call</tt>, or <tt>null</tt>
+     * if it isn't known
+     */
+    private List<StreamQualityMetricsImpl> getCallMetrics(Call call)
+    {
+        synchronized (activeCalls)
+        {
+            List<StreamQualityMetricsImpl> metrics = activeCalls.get(call);
+
+            return (metrics == null) ? endedCalls.get(call) : metrics;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Call> getActiveCalls()
+    {
+        synchronized (activeCalls)
+        {
+            return new ArrayList<Call>(activeCalls.keySet());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<StreamQualityMetrics> getMetrics(Call call)
+    {
+        List<StreamQualityMetricsImpl> metrics = getCallMetrics(call);
+
+        if (metrics == null)
+            return Collections.emptyList();
+
+        synchronized (metrics)
+        {
+            return new ArrayList<StreamQualityMetrics>(metrics);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every stream is summarized as its media type followed by the median
+     * and 95th percentile of the jitter, the median packet loss, round trip
+     * time and jitter buffer delay, the mean download and upload bitrates and
+     * the type of its ICE candidates. When the call has several peers, the
+     * summary of every stream is preceded by the address of its peer.
+     */
+    public String getSummary(Call call)
+    {
+        List<StreamQualityMetricsImpl> metrics = getCallMetrics(call);
+
+        if (metrics == null)
+            return null;
+
+        StringBuilder summary = new StringBuilder();
+        boolean conference = call.getCallPeerCount() > 1;
+
+        synchronized (metrics)
+        {
+            for (StreamQualityMetricsImpl streamMetrics : metrics)
+            {
+                if (streamMetrics.getLastSampleTime() == 0)
+                    continue;
+
+                if (summary.length() != 0)
+                    summary.append("; ");
+                if (conference)
+                {
+                    summary.append(streamMetrics.getCallPeer().getAddress())
+                        .append(' ');
+                }
+                streamMetrics.appendSummary(summary);
+            }
+        }
+        return (summary.length() == 0) ? null : summary.toString();
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.callquality;
+
+import java.net.*;
+
+import net.java.sip.communicator.service.callquality.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.media.*;
+
+import org.jitsi.service.neomedia.*;
+
+/**
+ * Keeps the histograms of the statistics of one media stream of a
+ * <tt>CallPeer</tt> and records new samples into them.
+ */
+public class StreamQualityMetricsImpl
+    implements StreamQualityMetrics
+{
+    /**
+     * The highest delay in milliseconds tracked by the histograms of delays.
+     */
+    private static final long MAX_DELAY = 60000;
+
+    /**
+     * The highest packet loss tracked, which is 100%.
+     */
+    private static final long MAX_LOSS = 10000;
+
+    /**
+     * The highest bitrate in kilobits per second tracked.
+     */
+    private static final long MAX_BITRATE = 100000;
+
+    /**
+     * The <tt>CallPeer</tt> the stream is exchanged with.
+     */
+    private final CallPeer callPeer;
+
+    /**
+     * The type of the media of the stream.
+     */
+    private final MediaType mediaType;
+
+    /**
+     * The samples of the download jitter.
+     */
+    private final QualityHistogram jitter = new QualityHistogram(MAX_DELAY);
+
+    /**
+     * The samples of the download packet loss.
+     */
+    private final QualityHistogram packetLoss = new QualityHistogram(MAX_LOSS);
+
+    /**
+     * The samples of the round trip time.
+     */
+    private final QualityHistogram roundTripTime
+        = new QualityHistogram(MAX_DELAY);
+
+    /**
+     * The samples of the download bitrate.
+     */
+    private final QualityHistogram downloadBitrate
+        = new QualityHistogram(MAX_BITRATE);
+
+    /**
+     * The samples of the upload bitrate.
+     */
+    private final QualityHistogram uploadBitrate
+        = new QualityHistogram(MAX_BITRATE);
+
+    /**
+     * The samples of the jitter buffer delay.
+     */
+    private final QualityHistogram jitterBufferDelay
+        = new QualityHistogram(MAX_DELAY);
+
+    /**
+     * The ICE candidate pair the stream was last seen on.
+     */
+    private volatile String iceCandidatePair;
+
+    /**
+     * The time of the last sample.
+     */
+    private volatile long lastSampleTime = 0;
+
+    /**
+     * Initializes a new <tt>StreamQualityMetricsImpl</tt>.
+     *
+     * @param callPeer the <tt>CallPeer</tt> the stream is exchanged with
+     * @param mediaType the type of the media of the stream
+     */
+    public StreamQualityMetricsImpl(CallPeer callPeer, MediaType mediaType)
+    {
+        this.callPeer = callPeer;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Samples the statistics of the stream.
+     *
+     * @param mediaHandler the media handler of the <tt>CallPeer</tt>
+     * @param stream the sampled stream
+     * @param timestamp the time of the sample
+     */
+    void sample(CallPeerMediaHandler<?> mediaHandler,
+                MediaStream stream,
+                long timestamp)
+    {
+        MediaStreamStats stats = stream.getMediaStreamStats();
+
+        if (stats == null)
+            return;
+
+        stats.updateStats();
+
+        jitter.record((long) stats.getDownloadJitterMs());
+        packetLoss.record(Math.round(stats.getDownloadPercentLoss() * 100));
+        downloadBitrate.record((long) stats.getDownloadRateKiloBitPerSec());
+        uploadBitrate.record((long) stats.getUploadRateKiloBitPerSec());
+        jitterBufferDelay.record((long) stats.getJitterBufferDelayMs());
+
+        long rttMs = stats.getRttMs();
+
+        if (rttMs != -1)
+            roundTripTime.record(rttMs);
+
+        iceCandidatePair = getIceCandidatePair(mediaHandler);
+        lastSampleTime = timestamp;
+    }
+
+    /**
+     * Describes the ICE candidate pair of the stream.
+     *
+     * @param mediaHandler the media handler of the <tt>CallPeer</tt>
+     * @return the extended type of the candidates followed by the local and
+     * remote addresses, or <tt>null</tt> if the stream doesn't use ICE
+     */
+    private String getIceCandidatePair(CallPeerMediaHandler<?> mediaHandler)
+    {
+        String streamName = mediaType.toString();
+        String type = mediaHandler.getICECandidateExtendedType(streamName);
+
+        if (type == null)
+            return null;
+
+        InetSocketAddress local
+            = mediaHandler.getICELocalRelayedAddress(streamName);
+
+        if (local == null)
+            local = mediaHandler.getICELocalReflexiveAddress(streamName);
+        if (local == null)
+            local = mediaHandler.getICELocalHostAddress(streamName);
+
+        InetSocketAddress remote
+            = mediaHandler.getICERemoteRelayedAddress(streamName);
+
+        if (remote == null)
+            remote = mediaHandler.getICERemoteReflexiveAddress(streamName);
+        if (remote == null)
+            remote = mediaHandler.getICERemoteHostAddress(streamName);
+
+        return type + " " + local + " " + remote;
+    }
+
+    /**
+     * Appends a summary of the metrics to <tt>summary</tt>: the media type,
+     * then the median and 95th percentile of the jitter, the median packet
+     * loss, round trip time and jitter buffer delay and the mean bitrates.
+     *
+     * @param summary the <tt>StringBuilder</tt> to append to
+     */
+    void appendSummary(StringBuilder summary)
+    {
+        summary.append(mediaType)
+            .append(" jitter=").append(jitter.getValueAtPercentile(50))
+            .append('/').append(jitter.getValueAtPercentile(95))
+            .append("ms loss=")
+            .append(packetLoss.getValueAtPercentile(50) / 100.0)
+            .append('%');
+        if (roundTripTime.getTotalCount() != 0)
+        {
+            summary.append(" rtt=")
+                .append(roundTripTime.getValueAtPercentile(50))
+                .append("ms");
+        }
+        summary.append(" kbps=")
+            .append(Math.round(downloadBitrate.getMean()))
+            .append('/').append(Math.round(uploadBitrate.getMean()))
+            .append(" jb=").append(jitterBufferDelay.getValueAtPercentile(50))
+            .append("ms");
+        if (iceCandidatePair != null)
+            summary.append(" ice=").append(iceCandidatePair.split(" ")[0]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public CallPeer getCallPeer()
+    {
+        return callPeer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public MediaType getMediaType()
+    {
+        return mediaType;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QualityHistogram getJitter()
+    {
+        return jitter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QualityHistogram getPacketLoss()
+    {
+        return packetLoss;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QualityHistogram getRoundTripTime()
+    {
+        return roundTripTime;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QualityHistogram getDownloadBitrate()
+    {
+        return downloadBitrate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QualityHistogram getUploadBitrate()
+    {
+        return uploadBitrate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QualityHistogram getJitterBufferDelay()
+    {
+        return jitterBufferDelay;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getIceCandidatePair()
+    {
+        return iceCandidatePair;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLastSampleTime()
+    {
+        return lastSampleTime;
+    }
+}
@@ -52,7 +52,7 @@
         Logger.getLogger(FileHistoryServiceImpl.class);
 
     private static String[] STRUCTURE_NAMES =
-        new String[] { "file", "dir", "date", "status", "id"};
+        new String[] { "file", "dir", "date", "status", "id", "transferred"};
 
     private static final String FILE_TRANSFER_ACTIVE = "active";
 
@@ -224,6 +224,7 @@ private FileRecord createFileRecordFromHistoryRecord(
         Date date = new Date(0);
         String status = null;
         String id = null;
+        long transferredBytes = 0;
 
         SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
         for (int i = 0; i < hr.getPropertyNames().length; i++)
@@ -249,9 +250,24 @@ else if (propName.equals(STRUCTURE_NAMES[3]))
                 status = hr.getPropertyValues()[i];
             else if (propName.equals(STRUCTURE_NAMES[4]))
                 id = hr.getPropertyValues()[i];
+            else if (propName.equals(STRUCTURE_NAMES[5])
+                    && hr.getPropertyValues()[i] != null)
+            {
+                try
+                {
+                    transferredBytes
+                        = Long.parseLong(hr.getPropertyValues()[i]);
+                }
+                catch (NumberFormatException e)
+                {
+                    logger.warn("Invalid transferred bytes in file record "
+                        + id);
+                }
+            }
         }
 
-        return new FileRecord(id, contact, dir, date, new File(file), status);
+        return new FileRecord(
+            id, contact, dir, date, new File(file), status, transferredBytes);
     }
 
     /**
@@ -691,6 +707,20 @@ public void statusChanged(FileTransferStatusChangeEvent event)
                                         ft.getID(),
                                         STRUCTURE_NAMES[3],
                                         status);
+
+            // remember how far partial transfers got, so they can be resumed
+            long transferredBytes = ft.getTransferedBytes();
+
+            if ((status.equals(FileRecord.CANCELED)
+                    || status.equals(FileRecord.FAILED))
+                && transferredBytes > 0)
+            {
+                historyWriter.updateRecord(
+                    STRUCTURE_NAMES[4],
+                    ft.getID(),
+                    STRUCTURE_NAMES[5],
+                    String.valueOf(transferredBytes));
+            }
         }
         catch (IOException e)
         {
@@ -751,7 +781,8 @@ public void fileTransferRequestReceived(FileTransferRequestEvent event)
                 getDirection(FileTransfer.IN),
                 sdf.format(event.getTimestamp()),
                 FILE_TRANSFER_ACTIVE,
-                req.getID()
+                req.getID(),
+                null
             });
         }
         catch (IOException e)
@@ -793,7 +824,8 @@ else if (fileTransfer.getDirection() == FileTransfer.OUT)
                     getDirection(FileTransfer.OUT),
                     sdf.format(event.getTimestamp()),
                     FILE_TRANSFER_ACTIVE,
-                    fileTransfer.getID()
+                    fileTransfer.getID(),
+                    null
                 });
             }
         }
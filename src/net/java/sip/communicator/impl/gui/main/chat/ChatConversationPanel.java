@@ -25,6 +25,7 @@
 import java.text.*;
 import java.util.*;
 import java.util.Map;
+import java.util.concurrent.*;
 import java.util.regex.*;
 
 import javax.swing.*;
@@ -151,6 +152,49 @@
         "([^<]*+)(?:<(?:[^>\"]*(?:\"[^\"]*+\"?)*)*+>?)?",
         Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
+    /**
+     * The maximum number of {@link ReplacementWorker}s running at the same
+     * time. Replacement sources may query remote servers, so a busy chat
+     * room would otherwise start a thread per incoming message.
+     */
+    private static final int MAX_REPLACEMENT_WORKERS = 4;
+
+    /**
+     * The maximum number of replacements remembered in
+     * {@link #replacementCache}.
+     */
+    private static final int REPLACEMENT_CACHE_SIZE = 512;
+
+    /**
+     * The <tt>ExecutorService</tt> shared by the {@link ReplacementWorker}s of
+     * all conversation panels.
+     */
+    private static ExecutorService replacementExecutor;
+
+    /**
+     * The compiled patterns of the replacement sources, by source pattern.
+     */
+    private static final Map<String, Pattern> replacementPatterns
+        = new ConcurrentHashMap<String, Pattern>();
+
+    /**
+     * The most recently used replacements, by replacement source name and
+     * replaced text, so that a link posted again or shown in several chat
+     * windows doesn't query the replacement source again.
+     */
+    private static final Map<String, String> replacementCache
+        = new LinkedHashMap<String, String>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, String> eldest)
+            {
+                return size() > REPLACEMENT_CACHE_SIZE;
+            }
+        };
+
     /**
      * List for observing text messages.
      */
@@ -981,7 +1025,86 @@ private void finishMessageAdd(final String message)
     */
     void processReplacement(final String messageID, final String chatString)
     {
-        new ReplacementWorker(messageID, chatString).start();
+        ExecutorService executor;
+
+        synchronized (ChatConversationPanel.class)
+        {
+            if (replacementExecutor == null)
+            {
+                replacementExecutor
+                    = Executors.newFixedThreadPool(
+                            MAX_REPLACEMENT_WORKERS,
+                            new ThreadFactory()
+                            {
+                                public Thread newThread(Runnable r)
+                                {
+                                    Thread t
+                                        = new Thread(r, "ReplacementWorker");
+
+                                    t.setDaemon(true);
+                                    return t;
+                                }
+                            });
+            }
+            executor = replacementExecutor;
+        }
+
+        new ReplacementWorker(messageID, chatString).start(executor);
+    }
+
+    /**
+     * Returns the compiled pattern of the given replacement source. Patterns
+     * are compiled once and shared by all messages and conversation panels.
+     *
+     * @param source the replacement source
+     * @return the compiled pattern of the source
+     */
+    private static Pattern getReplacementPattern(ReplacementService source)
+    {
+        String sourcePattern = source.getPattern();
+        Pattern pattern = replacementPatterns.get(sourcePattern);
+
+        if (pattern == null)
+        {
+            pattern
+                = Pattern.compile(
+                        sourcePattern,
+                        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+            replacementPatterns.put(sourcePattern, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Returns the replacement of the given text by the given replacement
+     * source, using the result of a previous call if it is still cached.
+     *
+     * @param source the replacement source
+     * @param text the text to replace
+     * @return the replacement of <tt>text</tt>
+     */
+    private static String getReplacement(
+            ReplacementService source,
+            String text)
+    {
+        String key = source.getSourceName() + '\n' + text;
+        String replacement;
+
+        synchronized (replacementCache)
+        {
+            replacement = replacementCache.get(key);
+        }
+
+        if (replacement == null)
+        {
+            replacement = source.getReplacement(text);
+
+            synchronized (replacementCache)
+            {
+                replacementCache.put(key, replacement);
+            }
+        }
+        return replacement;
     }
 
     /**
@@ -1077,9 +1200,9 @@ private void deleteAllMessagesWithoutHeader()
      * @param keyword the word to be highlighted
      * @return the formatted message
      */
-    private String formatMessageAsHTML(final String original,
-                                 final String contentType,
-                                 final String keyword)
+    static String formatMessageAsHTML(final String original,
+                                      final String contentType,
+                                      final String keyword)
     {
         if (original == null)
         {
@@ -1122,7 +1245,7 @@ private String formatMessageAsHTML(final String original,
      * @return returns the final result message content after it has been
      *         processed by all replacers
      */
-    private String processReplacers(final String content,
+    private static String processReplacers(final String content,
         final Replacer... replacers)
     {
         StringBuilder source = new StringBuilder(content);
@@ -1620,10 +1743,7 @@ public String processMeCommand(ChatMessage chatMessage)
             {
                 continue;
             }
-            String sourcePattern = source.getPattern();
-            Pattern p =
-                Pattern.compile(sourcePattern, Pattern.CASE_INSENSITIVE
-                    | Pattern.DOTALL);
+            Pattern p = getReplacementPattern(source);
             Matcher m = p.matcher(chatString);
             chatString =
                 m.replaceAll(ChatHtmlUtils.HTML_CONTENT_TYPE
@@ -2199,10 +2319,7 @@ public Object construct() throws Exception
         private void processReplacementService(final ReplacementService service,
             final String msg, final StringBuilder buff)
         {
-            String sourcePattern = service.getPattern();
-            Pattern pattern =
-                Pattern.compile(sourcePattern, Pattern.CASE_INSENSITIVE
-                    | Pattern.DOTALL);
+            Pattern pattern = getReplacementPattern(service);
 
             int startPos = 0;
 
@@ -2288,7 +2405,7 @@ private void processText(final String plainText,
                 startPos = m.end();
 
                 String group = m.group();
-                String temp = rService.getReplacement(group);
+                String temp = getReplacement(rService, group);
                 String group0 = m.group(0);
 
                 if (!temp.equals(group0) || isDirectImage)
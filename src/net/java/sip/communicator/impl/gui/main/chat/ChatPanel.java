@@ -419,9 +419,12 @@ else if (chatSession instanceof ConferenceChatSession)
             // Initialize chat participants' panel.
             Iterator<ChatContact<?>> chatParticipants
                 = chatSession.getParticipants();
+            List<ChatContact<?>> chatContacts
+                = new ArrayList<ChatContact<?>>();
 
             while (chatParticipants.hasNext())
-                chatContactListPanel.addContact(chatParticipants.next());
+                chatContacts.add(chatParticipants.next());
+            chatContactListPanel.addContacts(chatContacts);
         }
     }
 
@@ -2300,6 +2303,17 @@ public void addChatContact(ChatContact<?> chatContact)
             chatContactListPanel.addContact(chatContact);
     }
 
+    /**
+     * Adds the given <tt>chatContacts</tt> to the list of chat contacts
+     * participating in the corresponding to this chat panel chat.
+     * @param chatContacts the contacts to add
+     */
+    public void addChatContacts(Collection<ChatContact<?>> chatContacts)
+    {
+        if (chatContactListPanel != null)
+            chatContactListPanel.addContacts(chatContacts);
+    }
+
     /**
      * Removes the given <tt>chatContact</tt> from the list of chat contacts
      * participating in the corresponding to this chat panel chat.
@@ -45,6 +45,13 @@
     private final List<ChatContact<?>> chatContacts
         = new ArrayList<ChatContact<?>>();
 
+    /**
+     * The <tt>ChatContact</tt>s of {@link #chatContacts}, used to prevent
+     * duplicates without scanning the list.
+     */
+    private final Set<ChatContact<?>> chatContactSet
+        = new HashSet<ChatContact<?>>();
+
     /**
      * Current chat session.
      */
@@ -152,34 +159,65 @@ public void addElement(ChatContact<?> chatContact)
         if (chatContact == null)
             throw new IllegalArgumentException("chatContact");
 
-        int index = -1;
+        int index;
 
         synchronized(chatContacts)
         {
-            int chatContactCount = chatContacts.size();
+            // We don't want duplicates.
+            if (!chatContactSet.add(chatContact))
+                return;
 
-            for (int i = 0; i < chatContactCount; i++)
+            index = Collections.binarySearch(chatContacts, chatContact, sorter);
+            if (index < 0)
+                index = -index - 1;
+            else
             {
-                ChatContact<?> containedChatContact = chatContacts.get(i);
-
-                // We don't want duplicates.
-                if (chatContact.equals(containedChatContact))
-                    return;
-                if ((index == -1)
-                        && (sorter.compare(containedChatContact, chatContact) > 0))
-                {
-                    index = i;
-                    // Continue in order to prevent duplicates.
-                }
+                // Insert after the ChatContacts which sort equally.
+                while ((index < chatContacts.size())
+                        && (sorter.compare(chatContacts.get(index), chatContact)
+                                <= 0))
+                    index++;
             }
-            if (index == -1)
-                index = chatContactCount;
 
             chatContacts.add(index, chatContact);
         }
         fireIntervalAdded(this, index, index);
     }
 
+    /**
+     * Adds specific <tt>ChatContact</tt>s to this <tt>AbstractListModel</tt>
+     * implementation and preserves the sorting it applies. Unlike adding them
+     * one by one, the list is sorted once and a single event is fired for
+     * all of them, which matters for chat rooms with thousands of members.
+     *
+     * @param chatContacts the <tt>ChatContact</tt>s to be added to this
+     * <tt>AbstractListModel</tt>
+     */
+    public void addElements(Collection<ChatContact<?>> chatContacts)
+    {
+        int oldSize;
+        int newSize;
+
+        synchronized(this.chatContacts)
+        {
+            oldSize = this.chatContacts.size();
+            for (ChatContact<?> chatContact : chatContacts)
+            {
+                // We don't want duplicates.
+                if ((chatContact != null) && chatContactSet.add(chatContact))
+                    this.chatContacts.add(chatContact);
+            }
+            newSize = this.chatContacts.size();
+            if (newSize == oldSize)
+                return;
+
+            Collections.sort(this.chatContacts, sorter);
+        }
+        if (oldSize > 0)
+            fireContentsChanged(this, 0, oldSize - 1);
+        fireIntervalAdded(this, oldSize, newSize - 1);
+    }
+
     /* Implements ListModel#getElementAt(int). */
     public ChatContact<?> getElementAt(int index)
     {
@@ -209,6 +247,9 @@ public void removeElement(ChatContact<?> chatContact)
     {
         synchronized(chatContacts)
         {
+            if (!chatContactSet.remove(chatContact))
+                return;
+
             int index = chatContacts.indexOf(chatContact);
 
             if ((index >= 0) && chatContacts.remove(chatContact))
@@ -228,6 +269,7 @@ public void removeAllElements()
         {
             int contactsSize = chatContacts.size();
             chatContacts.clear();
+            chatContactSet.clear();
 
             fireIntervalRemoved(this, 0, contactsSize - 1);
         }
@@ -19,6 +19,7 @@
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.*;
 
 import javax.swing.*;
 
@@ -163,6 +164,17 @@ public void addContact(ChatContact<?> chatContact)
         memberListModel.addElement(chatContact);
     }
 
+    /**
+     * Adds <tt>ChatContact</tt>s to the list of contacts contained in the
+     * chat, sorting the list once.
+     *
+     * @param chatContacts the <tt>ChatContact</tt>s to add
+     */
+    public void addContacts(Collection<ChatContact<?>> chatContacts)
+    {
+        memberListModel.addElements(chatContacts);
+    }
+
     /**
      * Removes the given <tt>ChatContact</tt> from the list of chat contacts.
      *
@@ -40,7 +40,7 @@
  */
 public class ConferenceChatSession
     extends ChatSession
-    implements  ChatRoomMemberPresenceListener,
+    implements  ChatRoomMemberListListener,
                 ChatRoomPropertyChangeListener,
                 ChatRoomConferencePublishedListener
 {
@@ -521,6 +521,59 @@ else if(eventType.equals(
         }
     }
 
+    /**
+     * Invoked when the list of the members a chat room had when we joined it
+     * is received. Adds all of them to the list of chat participants at once,
+     * without announcing each of them as having joined.
+     *
+     * @param evt the <tt>ChatRoomMemberListEvent</tt> that notified us
+     */
+    public void memberListReceived(final ChatRoomMemberListEvent evt)
+    {
+        if(!SwingUtilities.isEventDispatchThread())
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    memberListReceived(evt);
+                }
+            });
+            return;
+        }
+
+        ChatRoom sourceChatRoom = evt.getChatRoom();
+
+        if(!sourceChatRoom.equals(chatRoomWrapper.getChatRoom()))
+            return;
+
+        List<ChatContact<?>> contacts = new ArrayList<ChatContact<?>>();
+
+        synchronized (chatParticipants)
+        {
+            Set<ChatContact<?>> present
+                = new HashSet<ChatContact<?>>(chatParticipants);
+
+            for (ChatRoomMember member : evt.getMembers())
+            {
+                ConferenceChatContact chatContact
+                    = new ConferenceChatContact(member);
+
+                if (present.add(chatContact))
+                    contacts.add(chatContact);
+            }
+            chatParticipants.addAll(contacts);
+            sessionRenderer.addChatContacts(contacts);
+        }
+
+        for (ChatContact<?> chatContact : contacts)
+        {
+            sourceChatRoom.updatePrivateContactPresenceStatus(
+                chatContact.getName());
+        }
+    }
+
     public void chatRoomPropertyChangeFailed(
         ChatRoomPropertyChangeFailedEvent event) {}
 
@@ -571,13 +624,13 @@ public void loadChatRoom(ChatRoom chatRoom)
             sessionRenderer.removeAllChatContacts();
             this.chatParticipants.clear();
             // Add the new list of members.
+            List<ChatContact<?>> contacts = new ArrayList<ChatContact<?>>();
             for (ChatRoomMember member : chatRoom.getMembers())
             {
-                ConferenceChatContact contact =
-                    new ConferenceChatContact(member);
-                chatParticipants.add(contact);
-                sessionRenderer.addChatContact(contact);
+                contacts.add(new ConferenceChatContact(member));
             }
+            chatParticipants.addAll(contacts);
+            sessionRenderer.addChatContacts(contacts);
         }
 
         // Add all listeners to the new chat room.
@@ -155,7 +155,7 @@
     private FileTransfer fileTransfer;
 
     /**
-     * The speed calculated delay.
+     * The delay between two updates of the speed and estimated time labels.
      */
     private final static int SPEED_CALCULATE_DELAY = 5000;
 
@@ -165,20 +165,10 @@
     private long transferredFileSize = 0;
 
     /**
-     * The time of the last calculated transfer speed.
+     * The time of the last update of the transfer speed.
      */
     private long lastSpeedTimestamp = 0;
 
-    /**
-     * The last estimated time for the transfer.
-     */
-    private long lastEstimatedTimeTimestamp = 0;
-
-    /**
-     * The number of bytes last transferred.
-     */
-    private long lastTransferredBytes = 0;
-
     /**
      * The last calculated progress speed.
      */
@@ -546,25 +536,16 @@ public void progressChanged(FileTransferProgressEvent event)
 
         String bytesString = ByteFormat.format(transferredBytes);
 
+        // the transfer rate and the estimated time are computed by the
+        // file transfer, we only limit how often the labels change
         if ((progressTimestamp - lastSpeedTimestamp)
-                >= SPEED_CALCULATE_DELAY)
-        {
-            lastProgressSpeed
-                = Math.round(calculateProgressSpeed(transferredBytes));
-
-            this.lastSpeedTimestamp = progressTimestamp;
-            this.lastTransferredBytes = transferredBytes;
-        }
-
-        if ((progressTimestamp - lastEstimatedTimeTimestamp)
                 >= SPEED_CALCULATE_DELAY
-            && lastProgressSpeed > 0)
+            && event.getTransferRate() >= 0)
         {
-            lastEstimatedTime = Math.round(calculateEstimatedTransferTime(
-                lastProgressSpeed,
-                transferredFileSize - transferredBytes));
+            lastProgressSpeed = Math.round(event.getTransferRate());
+            lastEstimatedTime = event.getEstimatedTime(transferredFileSize);
 
-            lastEstimatedTimeTimestamp = progressTimestamp;
+            this.lastSpeedTimestamp = progressTimestamp;
         }
 
         progressBar.setString(getProgressLabel(bytesString));
@@ -635,31 +616,6 @@ protected void hideProgressRelatedComponents()
      */
     protected abstract String getProgressLabel(String bytesString);
 
-    /**
-     * Returns the speed of the transfer.
-     *
-     * @param transferredBytes the number of bytes that have been transferred
-     * @return the speed of the transfer
-     */
-    private double calculateProgressSpeed(long transferredBytes)
-    {
-        // Bytes per second = bytes / SPEED_CALCULATE_DELAY miliseconds * 1000.
-        return (transferredBytes - lastTransferredBytes)
-                / SPEED_CALCULATE_DELAY * 1000;
-    }
-
-    /**
-     * Returns the estimated transfer time left.
-     *
-     * @param speed the speed of the transfer
-     * @param bytesLeft the size of the file
-     * @return the estimated transfer time left
-     */
-    private double calculateEstimatedTransferTime(double speed, long bytesLeft)
-    {
-        return bytesLeft / speed;
-    }
-
     /**
      * Reload images and colors.
      */
@@ -90,6 +90,72 @@ public void addRecord(String[] propertyValues, Date timestamp)
         this.addRecord(structPropertyNames, propertyValues, timestamp, -1);
     }
 
+    /**
+     * Stores several records complying with the historyRecordStructure. The
+     * records are appended to the current document, or to new ones when it
+     * fills up, and every document is written once.
+     *
+     * @param propertyValues the values of the records
+     * @param timestamp the timestamp of the records
+     * @throws IOException
+     */
+    public void addRecords(List<String[]> propertyValues, Date timestamp)
+        throws IOException
+    {
+        int index = 0;
+
+        while (index < propertyValues.size())
+        {
+            Document doc;
+            String file;
+
+            synchronized (this.docCreateLock)
+            {
+                if (this.currentDoc == null
+                        || this.currentDocElements > MAX_RECORDS_PER_FILE)
+                {
+                    // offset by the index so that the documents created for
+                    // one batch don't share the same file name
+                    this.createNewDoc(
+                        new Date(timestamp.getTime() + index),
+                        this.currentDoc == null);
+                }
+                doc = this.currentDoc;
+                file = this.currentFile;
+            }
+
+            synchronized (doc)
+            {
+                Node root = doc.getFirstChild();
+                synchronized (root)
+                {
+                    do
+                    {
+                        Element elem = createRecord(
+                            doc,
+                            this.structPropertyNames,
+                            propertyValues.get(index),
+                            timestamp);
+                        root.appendChild(elem);
+                        this.currentDocElements++;
+                        index++;
+                    }
+                    while (index < propertyValues.size()
+                            && this.currentDocElements <= MAX_RECORDS_PER_FILE);
+                }
+            }
+
+            // write changes
+            synchronized (this.docWriteLock)
+            {
+                if(historyImpl.getHistoryServiceImpl().isCacheEnabled())
+                    this.historyImpl.writeFile(file);
+                else
+                    this.historyImpl.writeFile(file, doc);
+            }
+        }
+    }
+
     /**
      * Stores the passed propertyValues complying with the
      * historyRecordStructure.
@@ -536,7 +602,31 @@ public void updateRecord(String idProperty, String idValue,
      */
     public void updateRecord(HistoryRecordUpdater updater) throws IOException
     {
-        Iterator<String> fileIterator = this.historyImpl.getFileList();
+        updateRecord(updater, null, null);
+    }
+
+    /**
+     * Updates history record using given <tt>HistoryRecordUpdater</tt> instance
+     * to find which is the record to be updated and to get the new values for
+     * the fields. Only the records with timestamp between <tt>startDate</tt>
+     * and <tt>endDate</tt> are looked at.
+     * @param updater the <tt>HistoryRecordUpdater</tt> instance.
+     * @param startDate start of the interval in which we search, or
+     * <tt>null</tt>
+     * @param endDate end of the interval in which we search, or <tt>null</tt>
+     */
+    public void updateRecord(
+            HistoryRecordUpdater updater, Date startDate, Date endDate)
+        throws IOException
+    {
+        boolean period = (startDate != null || endDate != null);
+        Iterator<String> fileIterator
+            = period
+                ? HistoryReaderImpl.filterFilesByDate(
+                        this.historyImpl.getFileList(), startDate, endDate)
+                    .iterator()
+                : this.historyImpl.getFileList();
+        SimpleDateFormat timestampFormat = new SimpleDateFormat(DATE_FORMAT);
         String filename = null;
         while (fileIterator.hasNext())
         {
@@ -555,6 +645,23 @@ public void updateRecord(HistoryRecordUpdater updater) throws IOException
             for (int i = 0; i < nodes.getLength(); i++)
             {
                 node = nodes.item(i);
+                if (period)
+                {
+                    String ts = ((Element) node).getAttribute("timestamp");
+                    Date timestamp;
+
+                    try
+                    {
+                        timestamp = timestampFormat.parse(ts);
+                    }
+                    catch (ParseException e)
+                    {
+                        timestamp = new Date(Long.parseLong(ts));
+                    }
+                    if (!HistoryReaderImpl.isInPeriod(
+                            timestamp, startDate, endDate))
+                        continue;
+                }
                 updater.setHistoryRecord(createHistoryRecordFromNode(node));
                 if(!updater.isMatching())
                     continue;
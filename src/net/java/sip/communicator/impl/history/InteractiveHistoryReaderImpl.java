@@ -91,6 +91,63 @@ public HistoryQuery findByKeywords( String[] keywords,
         return find(null, null, keywords, field, false, recordCount);
     }
 
+    /**
+     * Searches the given periods of the history for the records containing a
+     * keyword, the keyword of every period being at the same index as its
+     * start and end dates.
+     *
+     * @param startDates the starts of the periods, inclusive
+     * @param endDates the ends of the periods, exclusive
+     * @param keywords the keyword to search for in every period
+     * @param field the field where to look for the keywords
+     * @param recordCount limits the result to this record count
+     * @return the found records
+     * @throws RuntimeException
+     *             Thrown if an exception occurs during the execution of the
+     *             query, such as internal IO error.
+     */
+    public HistoryQuery findByPeriods(  final Date[] startDates,
+                                        final Date[] endDates,
+                                        final String[] keywords,
+                                        final String field,
+                                        final int recordCount)
+    {
+        StringBuilder queryString = new StringBuilder();
+        for (String s : keywords)
+        {
+            queryString.append(' ');
+            queryString.append(s);
+        }
+
+        final HistoryQueryImpl query
+            = new HistoryQueryImpl(queryString.toString());
+
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                Set<Node> foundRecords = new HashSet<Node>();
+                int resultCount = recordCount;
+
+                for (int i = 0;
+                        i < startDates.length
+                            && resultCount > 0
+                            && !query.isCanceled();
+                        i++)
+                {
+                    resultCount
+                        = find(startDates[i], endDates[i],
+                                new String[] { keywords[i] }, field, false,
+                                resultCount, query, foundRecords);
+                }
+                setFinalStatus(query);
+            }
+        }.start();
+
+        return query;
+    }
+
     /**
      * Finds the history results corresponding to the given criteria.
      * @param startDate the start date
@@ -125,7 +182,8 @@ private HistoryQuery find(  final Date startDate,
             public void run()
             {
                 find(startDate, endDate, keywords, field, caseSensitive,
-                        resultCount, query);
+                        resultCount, query, null);
+                setFinalStatus(query);
             }
         }.start();
 
@@ -141,14 +199,19 @@ public void run()
      * @param caseSensitive indicates if the search should be case sensitive
      * @param resultCount the desired number of results
      * @param query the query tracking the results
+     * @param foundRecords the records which have already been found by the
+     * query, which are skipped and to which the found records are added, or
+     * <tt>null</tt>
+     * @return the number of records which may still be found
      */
-    private void find(  Date startDate,
+    private int find(   Date startDate,
                         Date endDate,
                         String[] keywords,
                         String field,
                         boolean caseSensitive,
                         int resultCount,
-                        HistoryQueryImpl query)
+                        HistoryQueryImpl query,
+                        Set<Node> foundRecords)
     {
         Vector<String> filelist
             = HistoryReaderImpl.filterFilesByDate(  history.getFileList(),
@@ -171,6 +234,10 @@ private void find(  Date startDate,
                   i--)
             {
                 Node node = nodes.item(i);
+
+                if (foundRecords != null && foundRecords.contains(node))
+                    continue;
+
                 Date timestamp;
                 String ts = node.getAttributes().getNamedItem("timestamp")
                         .getNodeValue();
@@ -196,11 +263,21 @@ private void find(  Date startDate,
                     {
                         query.addHistoryRecord(record);
                         resultCount--;
+                        if (foundRecords != null)
+                            foundRecords.add(node);
                     }
                 }
             }
         }
+        return resultCount;
+    }
 
+    /**
+     * Sets the status of a query which has finished.
+     * @param query the query
+     */
+    private static void setFinalStatus(HistoryQueryImpl query)
+    {
         if (query.isCanceled())
             query.setStatus(HistoryQueryStatusEvent.QUERY_CANCELED);
         else
@@ -118,6 +118,27 @@
      */
     private ServiceRegistration messageSourceServiceReg = null;
 
+    /**
+     * The time in milliseconds after the last replayed discussion history
+     * message of a chat room before the accepted ones are written. They are
+     * written right away when a new message of the room arrives or the
+     * history of the room is read.
+     */
+    private static final long HISTORY_REPLAY_FLUSH_DELAY = 1000;
+
+    /**
+     * The discussion history replays which have not been written yet, by
+     * chat room. Also the lock of the replays.
+     */
+    private final Map<ChatRoom, HistoryReplay> historyReplays
+        = new HashMap<ChatRoom, HistoryReplay>();
+
+    /**
+     * The timer which writes the discussion history replays, created when
+     * the first one starts.
+     */
+    private Timer historyReplayTimer = null;
+
     /**
      * Returns the history service.
      * @return the history service
@@ -1134,6 +1155,20 @@ public void stop(BundleContext bc)
             configService.removePropertyChangeListener(msgHistoryPropListener);
 
         stopMessageHistoryService();
+
+        List<ChatRoom> replayedRooms;
+
+        synchronized (historyReplays)
+        {
+            replayedRooms = new ArrayList<ChatRoom>(historyReplays.keySet());
+            if (historyReplayTimer != null)
+            {
+                historyReplayTimer.cancel();
+                historyReplayTimer = null;
+            }
+        }
+        for (ChatRoom room : replayedRooms)
+            flushHistoryReplay(room);
     }
 
     // //////////////////////////////////////////////////////////////////////////
@@ -1184,58 +1219,19 @@ public void messageReceived(ChatRoomMessageReceivedEvent evt)
                 ChatRoomMessageReceivedEvent.CONVERSATION_MESSAGE_RECEIVED)
                 return;
 
-            History history = this.getHistoryForMultiChat(
-                evt.getSourceChatRoom());
-
             // if this is chat room message history on every room enter
             // we can receive the same latest history messages and this
             // will just fill the history on every join
             if(evt.isHistoryMessage())
             {
-                Collection<EventObject> c =
-                    findFirstMessagesAfter(evt.getSourceChatRoom(),
-                        new Date(evt.getTimestamp().getTime() - 10000),
-                        20);
-
-                Iterator<EventObject> iter = c.iterator();
-                boolean isPresent = false;
-                while(iter.hasNext())
-                {
-                    EventObject e = iter.next();
+                replayHistoryMessage(evt.getSourceChatRoom(), evt);
+                return;
+            }
 
-                    if(e instanceof ChatRoomMessageReceivedEvent)
-                    {
-                        ChatRoomMessageReceivedEvent cev =
-                            (ChatRoomMessageReceivedEvent)e;
-
-                        if( evt.getSourceChatRoomMember().getContactAddress()
-                                != null
-                            && evt.getSourceChatRoomMember().getContactAddress()
-                                .equals(cev.getSourceChatRoomMember()
-                                                .getContactAddress())
-                            && evt.getTimestamp() != null
-                            && evt.getTimestamp().equals(cev.getTimestamp()))
-                        {
-                            isPresent = true;
-                            break;
-                        }
-
-                        // also check and message content
-                        Message m1 = cev.getMessage();
-                        Message m2 = evt.getMessage();
-
-                        if(m1 != null && m2 != null
-                           && m1.getContent().equals(m2.getContent()))
-                        {
-                            isPresent = true;
-                            break;
-                        }
-                    }
-                }
+            flushHistoryReplay(evt.getSourceChatRoom());
 
-                if (isPresent)
-                    return;
-            }
+            History history = this.getHistoryForMultiChat(
+                evt.getSourceChatRoom());
 
             writeMessage(history, "in", evt.getSourceChatRoomMember(),
                 evt.getMessage(), evt.getTimestamp());
@@ -1256,52 +1252,19 @@ public void messageDelivered(ChatRoomMessageDeliveredEvent evt)
                 return;
             }
 
-            History history = this.getHistoryForMultiChat(
-                evt.getSourceChatRoom());
-
             // if this is chat room message history on every room enter
             // we can receive the same latest history messages and this
             // will just fill the history on every join
             if(evt.isHistoryMessage())
             {
-                Collection<EventObject> c =
-                    findFirstMessagesAfter(evt.getSourceChatRoom(),
-                        new Date(evt.getTimestamp().getTime() - 10000),
-                        20);
+                replayHistoryMessage(evt.getSourceChatRoom(), evt);
+                return;
+            }
 
-                Iterator<EventObject> iter = c.iterator();
-                boolean isPresent = false;
-                while(iter.hasNext())
-                {
-                    EventObject e = iter.next();
-                    if(e instanceof  ChatRoomMessageDeliveredEvent)
-                    {
-                        ChatRoomMessageDeliveredEvent cev =
-                            (ChatRoomMessageDeliveredEvent)e;
-
-                        if(evt.getTimestamp() != null
-                            && evt.getTimestamp().equals(cev.getTimestamp()))
-                        {
-                            isPresent = true;
-                            break;
-                        }
-
-                        // also check and message content
-                        Message m1 = cev.getMessage();
-                        Message m2 = evt.getMessage();
-
-                        if(m1 != null && m2 != null
-                            && m1.getContent().equals(m2.getContent()))
-                        {
-                            isPresent = true;
-                            break;
-                        }
-                    }
-                }
+            flushHistoryReplay(evt.getSourceChatRoom());
 
-                if (isPresent)
-                    return;
-            }
+            History history = this.getHistoryForMultiChat(
+                evt.getSourceChatRoom());
 
             writeMessage(
                 history, "out", evt.getMessage(), evt.getTimestamp(), false);
@@ -1315,6 +1278,271 @@ public void messageDeliveryFailed(ChatRoomMessageDeliveryFailedEvent evt)
     {
     }
 
+    /**
+     * Adds a discussion history message the server replays when joining a
+     * chat room to the replay of the room, starting it if this is the first
+     * message. The replay is written once no more history messages have been
+     * received for {@link #HISTORY_REPLAY_FLUSH_DELAY}.
+     *
+     * @param room the chat room
+     * @param evt the <tt>ChatRoomMessageReceivedEvent</tt> or
+     * <tt>ChatRoomMessageDeliveredEvent</tt> of the history message
+     */
+    private void replayHistoryMessage(ChatRoom room, EventObject evt)
+    {
+        HistoryReplay newReplay = null;
+
+        while (true)
+        {
+            synchronized (historyReplays)
+            {
+                HistoryReplay replay = historyReplays.get(room);
+
+                if (replay == null && newReplay != null)
+                {
+                    replay = newReplay;
+                    historyReplays.put(room, replay);
+                }
+                if (replay != null)
+                {
+                    replay.add(evt);
+                    scheduleHistoryReplayFlush(replay);
+                    return;
+                }
+            }
+
+            // Read the history outside of the lock, which is also taken by
+            // the timer and the threads of the other chat rooms.
+            newReplay
+                = new HistoryReplay(
+                        room,
+                        loadStoredMessages(
+                            room, ReplayedMessageIndex.getTimestamp(evt)));
+        }
+    }
+
+    /**
+     * (Re)schedules the writing of a replay for when no more history
+     * messages have been received for {@link #HISTORY_REPLAY_FLUSH_DELAY}.
+     * Must be called while holding the lock of <tt>historyReplays</tt>.
+     *
+     * @param replay the replay
+     */
+    private void scheduleHistoryReplayFlush(HistoryReplay replay)
+    {
+        final ChatRoom room = replay.room;
+
+        if (historyReplayTimer == null)
+        {
+            historyReplayTimer
+                = new Timer("Chat room history replay", true);
+        }
+        if (replay.flushTask != null)
+            replay.flushTask.cancel();
+        replay.flushTask = new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                flushHistoryReplay(room);
+            }
+        };
+        historyReplayTimer.schedule(
+            replay.flushTask, HISTORY_REPLAY_FLUSH_DELAY);
+    }
+
+    /**
+     * Ends the replay of the discussion history of a chat room without
+     * writing it.
+     *
+     * @param room the chat room
+     * @return the replay of <tt>room</tt>, or <tt>null</tt> if there is none
+     */
+    private HistoryReplay removeHistoryReplay(ChatRoom room)
+    {
+        synchronized (historyReplays)
+        {
+            HistoryReplay replay = historyReplays.remove(room);
+
+            if (replay != null && replay.flushTask != null)
+                replay.flushTask.cancel();
+            return replay;
+        }
+    }
+
+    /**
+     * Writes the history messages accepted by the replay of a chat room in
+     * one go and ends the replay.
+     *
+     * @param room the chat room
+     */
+    private void flushHistoryReplay(ChatRoom room)
+    {
+        HistoryReplay replay = removeHistoryReplay(room);
+
+        // The replay is no longer reachable, write it outside of the lock.
+        if (replay == null || replay.accepted.isEmpty())
+            return;
+
+        List<String[]> records
+            = new ArrayList<String[]>(replay.accepted.size());
+
+        for (EventObject evt : replay.accepted)
+        {
+            if (evt instanceof ChatRoomMessageReceivedEvent)
+            {
+                ChatRoomMessageReceivedEvent cev
+                    = (ChatRoomMessageReceivedEvent) evt;
+
+                // mising from, strange messages, most probably a history
+                // coming from server and probably already written
+                if (cev.getSourceChatRoomMember() == null)
+                    continue;
+
+                records.add(createRecord("in",
+                    cev.getSourceChatRoomMember(),
+                    cev.getMessage(), cev.getTimestamp()));
+            }
+            else
+            {
+                ChatRoomMessageDeliveredEvent cev
+                    = (ChatRoomMessageDeliveredEvent) evt;
+
+                records.add(createRecord("out",
+                    cev.getMessage(), cev.getTimestamp(), false));
+            }
+        }
+
+        try
+        {
+            getHistoryForMultiChat(room).getWriter().addRecords(
+                records,
+                new Date()); // this date is when the history record is written
+        }
+        catch (IOException e)
+        {
+            logger.error("Could not add messages to history", e);
+        }
+    }
+
+    /**
+     * Returns the reader of the history of a chat room, after writing the
+     * messages accepted by the discussion history replay of the room, if any,
+     * so that they are found without waiting for
+     * {@link #HISTORY_REPLAY_FLUSH_DELAY}.
+     *
+     * @param room the chat room
+     * @return the <tt>HistoryReader</tt> of the history of <tt>room</tt>
+     * @throws IOException if the history cannot be opened
+     */
+    private HistoryReader getReaderForMultiChat(ChatRoom room)
+        throws IOException
+    {
+        flushHistoryReplay(room);
+        return getHistoryForMultiChat(room).getReader();
+    }
+
+    /**
+     * Reads the messages stored in the history of a chat room since shortly
+     * before the first message of a replay.
+     *
+     * @param room the chat room
+     * @param since the timestamp of the first replayed message, may be
+     * <tt>null</tt>
+     * @return the stored messages in the order they have been read
+     */
+    private List<EventObject> loadStoredMessages(ChatRoom room, Date since)
+    {
+        List<EventObject> stored = new ArrayList<EventObject>();
+
+        if (since == null)
+            return stored;
+
+        try
+        {
+            Iterator<HistoryRecord> recs
+                = getHistoryForMultiChat(room).getReader()
+                    .findByStartDate(
+                        new Date(
+                                since.getTime()
+                                    - ReplayedMessageIndex.MATCH_WINDOW));
+
+            while (recs.hasNext())
+            {
+                stored.add(
+                    convertHistoryRecordToMessageEvent(recs.next(), room));
+            }
+        }
+        catch (IOException e)
+        {
+            logger.error("Could not read history", e);
+        }
+        return stored;
+    }
+
+    /**
+     * The discussion history a server replays when joining a chat room. The
+     * messages already in the local history are dropped by looking them up
+     * in a <tt>ReplayedMessageIndex</tt> of the messages stored since
+     * shortly before the first replayed one, which are read once when the
+     * replay starts. The other messages are added to the index and written
+     * together once the replay is over. Servers replay the history in
+     * chronological order, so the later messages are covered as well.
+     */
+    private class HistoryReplay
+    {
+        /**
+         * The chat room the history is replayed for.
+         */
+        private final ChatRoom room;
+
+        /**
+         * The messages stored in the history since shortly before the first
+         * replayed message and the accepted ones.
+         */
+        private final ReplayedMessageIndex index = new ReplayedMessageIndex();
+
+        /**
+         * The replayed messages which are not in the history yet.
+         */
+        private final List<EventObject> accepted = new ArrayList<EventObject>();
+
+        /**
+         * The task which writes the accepted messages.
+         */
+        private TimerTask flushTask = null;
+
+        /**
+         * Starts the replay of the discussion history of a chat room.
+         *
+         * @param room the chat room
+         * @param stored the messages stored in the history since shortly
+         * before the first replayed message
+         */
+        HistoryReplay(ChatRoom room, List<EventObject> stored)
+        {
+            this.room = room;
+
+            for (EventObject e : stored)
+                index.add(e);
+        }
+
+        /**
+         * Accepts a replayed message unless it's already in the history or
+         * among the accepted ones.
+         *
+         * @param evt the replayed message
+         */
+        void add(EventObject evt)
+        {
+            if (index.contains(evt))
+                return;
+
+            index.add(evt);
+            accepted.add(evt);
+        }
+    }
+
     /**
      * Writes message to the history
      * @param direction String direction of the message
@@ -1368,13 +1596,9 @@ private void writeMessage(History history, String direction,
     {
         try {
             HistoryWriter historyWriter = history.getWriter();
-            SimpleDateFormat sdf
-                = new SimpleDateFormat(HistoryService.DATE_FORMAT);
-            historyWriter.addRecord(new String[] { direction,
-                    message.getContent(), message.getContentType(),
-                    message.getEncoding(), message.getMessageUID(),
-                    message.getSubject(), sdf.format(messageTimestamp),
-                    isSmsSubtype ? MSG_SUBTYPE_SMS : null},
+            historyWriter.addRecord(
+                    createRecord(
+                        direction, message, messageTimestamp, isSmsSubtype),
                     new Date()); // this date is when the history record is written
         } catch (IOException e)
         {
@@ -1382,6 +1606,27 @@ private void writeMessage(History history, String direction,
         }
     }
 
+    /**
+     * Creates the property values of the history record of a message.
+     * @param direction the direction of the message.
+     * @param message Message
+     * @param messageTimestamp Date this is the timestamp when was message
+     * received that came from the protocol provider
+     * @param isSmsSubtype whether message to write is an sms
+     * @return the property values of the record
+     */
+    private static String[] createRecord(String direction,
+            Message message, Date messageTimestamp, boolean isSmsSubtype)
+    {
+        SimpleDateFormat sdf
+            = new SimpleDateFormat(HistoryService.DATE_FORMAT);
+        return new String[] { direction,
+                message.getContent(), message.getContentType(),
+                message.getEncoding(), message.getMessageUID(),
+                message.getSubject(), sdf.format(messageTimestamp),
+                isSmsSubtype ? MSG_SUBTYPE_SMS : null};
+    }
+
     /**
      * Writes message to the history
      * @param history The history to which will write the message
@@ -1402,14 +1647,8 @@ private void writeMessage(History history, String direction,
                 return;
 
             HistoryWriter historyWriter = history.getWriter();
-            SimpleDateFormat sdf
-                = new SimpleDateFormat(HistoryService.DATE_FORMAT);
-            historyWriter.addRecord(new String[] { direction,
-                    message.getContent(), message.getContentType(),
-                    message.getEncoding(), message.getMessageUID(),
-                    from.getContactAddress(),
-                    sdf.format(messageTimestamp),
-                    null},
+            historyWriter.addRecord(
+                    createRecord(direction, from, message, messageTimestamp),
                     new Date()); // this date is when the history record is written
         } catch (IOException e)
         {
@@ -1417,6 +1656,30 @@ private void writeMessage(History history, String direction,
         }
     }
 
+    /**
+     * Creates the property values of the history record of a chat room
+     * message.
+     * @param direction the direction of the message.
+     * @param from coming from
+     * @param message Message
+     * @param messageTimestamp Date this is the timestamp when was message received
+     *                          that came from the protocol provider
+     * @return the property values of the record
+     */
+    private static String[] createRecord(String direction,
+            ChatRoomMember from,
+            Message message, Date messageTimestamp)
+    {
+        SimpleDateFormat sdf
+            = new SimpleDateFormat(HistoryService.DATE_FORMAT);
+        return new String[] { direction,
+                message.getContent(), message.getContentType(),
+                message.getEncoding(), message.getMessageUID(),
+                from.getContactAddress(),
+                sdf.format(messageTimestamp),
+                null};
+    }
+
     /**
      * Writes a message to the history.
      * @param history The history to which will write the message
@@ -1774,6 +2037,8 @@ public void localUserPresenceChanged(LocalUserChatRoomPresenceChangeEvent evt)
 
             if(this.messageSourceService != null)
                 evt.getChatRoom().removeMessageListener(messageSourceService);
+
+            flushHistoryReplay(evt.getChatRoom());
         }
     }
 
@@ -2037,7 +2302,7 @@ public Collection<EventObject> findByStartDate(ChatRoom room, Date startDate)
         {
             // get the readers for this room
             HistoryReader reader =
-                this.getHistoryForMultiChat(room).getReader();
+                this.getReaderForMultiChat(room);
 
             // add the progress listeners
             addHistorySearchProgressListeners(reader, 1);
@@ -2074,7 +2339,7 @@ public Collection<EventObject> findByEndDate(ChatRoom room, Date endDate)
         {
             // get the readers for this room
             HistoryReader reader =
-                this.getHistoryForMultiChat(room).getReader();
+                this.getReaderForMultiChat(room);
 
             // add the progress listeners
             addHistorySearchProgressListeners(reader, 1);
@@ -2112,7 +2377,7 @@ public Collection<EventObject> findByPeriod(ChatRoom room, Date startDate, Date
         {
             // get the readers for this room
             HistoryReader reader =
-                this.getHistoryForMultiChat(room).getReader();
+                this.getReaderForMultiChat(room);
 
             // add the progress listeners
             addHistorySearchProgressListeners(reader, 1);
@@ -2173,7 +2438,7 @@ public Collection<EventObject> findByPeriod(ChatRoom room, Date startDate,
         {
             // get the readers for this room
             HistoryReader reader =
-                this.getHistoryForMultiChat(room).getReader();
+                this.getReaderForMultiChat(room);
 
             // add the progress listeners
             addHistorySearchProgressListeners(reader, 1);
@@ -2229,7 +2494,7 @@ public Collection<EventObject> findByKeyword(ChatRoom room, String keyword,
         {
             // get the readers for this room
             HistoryReader reader =
-                this.getHistoryForMultiChat(room).getReader();
+                this.getReaderForMultiChat(room);
 
             // add the progress listeners
             addHistorySearchProgressListeners(reader, 1);
@@ -2287,7 +2552,7 @@ public Collection<EventObject> findByKeywords(  ChatRoom room,
         {
             // get the readers for this room
             HistoryReader reader =
-                this.getHistoryForMultiChat(room).getReader();
+                this.getReaderForMultiChat(room);
 
             // add the progress listeners
             addHistorySearchProgressListeners(reader, 1);
@@ -2327,7 +2592,7 @@ public Collection<EventObject> findLast(ChatRoom room, int count)
         {
             // get the readers for this room
             HistoryReader reader =
-                this.getHistoryForMultiChat(room).getReader();
+                this.getReaderForMultiChat(room);
             Iterator<HistoryRecord> recs = reader.findLast(count);
             while (recs.hasNext())
             {
@@ -2371,7 +2636,7 @@ public Collection<EventObject> findFirstMessagesAfter(  ChatRoom room,
         try
         {
             HistoryReader reader
-                = this.getHistoryForMultiChat(room).getReader();
+                = this.getReaderForMultiChat(room);
             Iterator<HistoryRecord> recs
                 = reader.findFirstRecordsAfter(date, count);
             while (recs.hasNext())
@@ -2416,7 +2681,7 @@ public Collection<EventObject> findLastMessagesBefore(  ChatRoom room,
         try
         {
             HistoryReader reader =
-                this.getHistoryForMultiChat(room).getReader();
+                this.getReaderForMultiChat(room);
             Iterator<HistoryRecord> recs
                 = reader.findLastRecordsBefore(date, count);
             while (recs.hasNext())
@@ -3013,6 +3278,8 @@ public void eraseLocallyStoredHistory(MetaContact contact)
     public void eraseLocallyStoredHistory(ChatRoom room)
         throws IOException
     {
+        removeHistoryReplay(room);
+
         History history = this.getHistoryForMultiChat(room);
         historyService.purgeLocallyStoredHistory(history.getID());
 
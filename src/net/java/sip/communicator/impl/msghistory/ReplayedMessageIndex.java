@@ -0,0 +1,196 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * The chat room messages a replayed discussion history is compared with,
+ * indexed so that a replayed message is only compared with the messages
+ * sharing one of its keys.
+ * <p>
+ * A replayed message is the same as an indexed one if both have the same
+ * direction and message UID, which is the id of the stanza for Jabber. The
+ * UIDs of the messages without a stanza id and of the messages written by
+ * older versions are generated locally, so a replayed message is also the
+ * same as an indexed one with the same direction and content, or sent by the
+ * same member at the same time, if their timestamps are at most
+ * {@link #MATCH_WINDOW} apart.
+ */
+class ReplayedMessageIndex
+{
+    /**
+     * The largest difference in milliseconds between the timestamps of two
+     * messages which are matched by content.
+     */
+    static final long MATCH_WINDOW = 10000;
+
+    /**
+     * The prefix of the keys made of the UID of a message.
+     */
+    private static final String UID_KEY = "uid\n";
+
+    /**
+     * The indexed messages by key.
+     */
+    private final Map<String, List<EventObject>> messagesByKey
+        = new HashMap<String, List<EventObject>>();
+
+    /**
+     * Adds a message to the index.
+     *
+     * @param evt a <tt>ChatRoomMessageReceivedEvent</tt> or
+     * <tt>ChatRoomMessageDeliveredEvent</tt>
+     */
+    void add(EventObject evt)
+    {
+        for (String key : getKeys(evt))
+        {
+            List<EventObject> messages = messagesByKey.get(key);
+
+            if (messages == null)
+            {
+                messages = new ArrayList<EventObject>(1);
+                messagesByKey.put(key, messages);
+            }
+            messages.add(evt);
+        }
+    }
+
+    /**
+     * Determines whether the index contains a message.
+     *
+     * @param evt a <tt>ChatRoomMessageReceivedEvent</tt> or
+     * <tt>ChatRoomMessageDeliveredEvent</tt>
+     * @return <tt>true</tt> if the index contains a message which is the same
+     * as <tt>evt</tt>
+     */
+    boolean contains(EventObject evt)
+    {
+        List<String> keys = getKeys(evt);
+
+        for (String key : keys)
+        {
+            // The UID is decisive whatever the timestamps.
+            if (key.startsWith(UID_KEY) && messagesByKey.containsKey(key))
+                return true;
+        }
+
+        Date timestamp = getTimestamp(evt);
+
+        if (timestamp == null)
+            return false;
+
+        for (String key : keys)
+        {
+            if (key.startsWith(UID_KEY))
+                continue;
+
+            List<EventObject> messages = messagesByKey.get(key);
+
+            if (messages == null)
+                continue;
+
+            for (EventObject e : messages)
+            {
+                Date messageTimestamp = getTimestamp(e);
+
+                if (messageTimestamp != null
+                        && Math.abs(
+                                messageTimestamp.getTime()
+                                    - timestamp.getTime())
+                            <= MATCH_WINDOW)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the timestamp of a chat room message event.
+     *
+     * @param evt a <tt>ChatRoomMessageReceivedEvent</tt> or
+     * <tt>ChatRoomMessageDeliveredEvent</tt>
+     * @return the timestamp of the message, may be <tt>null</tt>
+     */
+    static Date getTimestamp(EventObject evt)
+    {
+        if (evt instanceof ChatRoomMessageReceivedEvent)
+            return ((ChatRoomMessageReceivedEvent) evt).getTimestamp();
+        else if (evt instanceof ChatRoomMessageDeliveredEvent)
+            return ((ChatRoomMessageDeliveredEvent) evt).getTimestamp();
+        else
+            return null;
+    }
+
+    /**
+     * Returns the keys of a chat room message: its UID and its content, if
+     * any, and its sender, which is ourselves for a delivered message, with
+     * its exact timestamp. All of them include the direction of the message.
+     *
+     * @param evt a <tt>ChatRoomMessageReceivedEvent</tt> or
+     * <tt>ChatRoomMessageDeliveredEvent</tt>
+     * @return the keys of the message
+     */
+    private static List<String> getKeys(EventObject evt)
+    {
+        List<String> keys = new ArrayList<String>(3);
+        String direction;
+        String sender = null;
+        Message message;
+
+        if (evt instanceof ChatRoomMessageReceivedEvent)
+        {
+            ChatRoomMessageReceivedEvent cev
+                = (ChatRoomMessageReceivedEvent) evt;
+
+            direction = "in";
+            if (cev.getSourceChatRoomMember() != null)
+                sender = cev.getSourceChatRoomMember().getContactAddress();
+            message = cev.getMessage();
+        }
+        else if (evt instanceof ChatRoomMessageDeliveredEvent)
+        {
+            direction = "out";
+            sender = "";
+            message = ((ChatRoomMessageDeliveredEvent) evt).getMessage();
+        }
+        else
+            return keys;
+
+        if (message != null && message.getMessageUID() != null)
+            keys.add(UID_KEY + direction + "\n" + message.getMessageUID());
+        if (message != null && message.getContent() != null)
+            keys.add("content\n" + direction + "\n" + message.getContent());
+
+        Date timestamp = getTimestamp(evt);
+
+        if (sender != null && timestamp != null)
+        {
+            keys.add(
+                "sender\n" + direction + "\n" + sender + "\n"
+                    + timestamp.getTime());
+        }
+        return keys;
+    }
+}
@@ -23,6 +23,8 @@
 import net.java.sip.communicator.service.contactsource.*;
 import net.java.sip.communicator.service.muc.*;
 import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
 
 /**
  * The <tt>ServerChatRoomQuery</tt> is a query over the
@@ -34,6 +36,13 @@
     extends AsyncContactQuery<ContactSourceService>
     implements ChatRoomProviderWrapperListener
 {
+    /**
+     * The <tt>Logger</tt> used by the <tt>ServerChatRoomQuery</tt> class and
+     * its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ServerChatRoomQuery.class);
+
     /**
      * The query string.
      */
@@ -123,6 +132,14 @@ private void providerAdded(final ChatRoomProviderWrapper provider,
         final boolean addQueryResult)
     {
         final ProtocolProviderService pps = provider.getProtocolProvider();
+        OperationSetChatRoomDirectory directory
+            = pps.getOperationSet(OperationSetChatRoomDirectory.class);
+        if (directory != null)
+        {
+            searchChatRooms(directory, pps, addQueryResult);
+            return;
+        }
+
         List<String> chatRoomNames =
             MUCActivator.getMUCService().getExistingChatRooms(provider);
         if (chatRoomNames == null)
@@ -141,6 +158,50 @@ private void providerAdded(final ChatRoomProviderWrapper provider,
         addChatRooms(pps, chatRooms, addQueryResult);
     }
 
+    /**
+     * Searches the chat rooms of a provider which delivers them incrementally
+     * and adds each batch to the results as soon as it is received, so that
+     * the first chat rooms are shown while the server is still listing.
+     *
+     * @param directory the chat room directory of the provider.
+     * @param pps the protocol provider.
+     * @param addQueryResult indicates whether we should add the chat rooms to
+     * the query results or fire an event without adding them to the results.
+     */
+    private void searchChatRooms(OperationSetChatRoomDirectory directory,
+        final ProtocolProviderService pps,
+        final boolean addQueryResult)
+    {
+        try
+        {
+            directory.searchChatRooms(
+                queryString,
+                new ChatRoomDirectoryListener()
+                {
+                    public void chatRoomsFound(List<String> chatRoomNames)
+                    {
+                        if (getStatus() == QUERY_CANCELED)
+                            return;
+
+                        Set<BaseChatRoomSourceContact> chatRooms
+                            = new HashSet<BaseChatRoomSourceContact>(
+                                    chatRoomNames.size());
+                        for (String name : chatRoomNames)
+                        {
+                            chatRooms.add(
+                                new BaseChatRoomSourceContact(
+                                    name, name, ServerChatRoomQuery.this,
+                                    pps));
+                        }
+                        addChatRooms(pps, chatRooms, addQueryResult);
+                    }
+                });
+        }
+        catch (OperationFailedException e)
+        {
+            logger.error("Failed to search the chat rooms of " + pps, e);
+        }
+    }
 
     /**
      * Adds found result to the query results.
@@ -52,7 +52,12 @@
     private CommandNotificationHandler commandHandler;
     private LogMessageNotificationHandler logMessageHandler;
     private PopupMessageNotificationHandler popupMessageHandler;
-    private SoundNotificationHandler soundHandler;
+    private SoundNotificationHandlerImpl soundHandler;
+
+    /**
+     * The thread creating the clips of the notification sounds.
+     */
+    private Thread soundClipCreator;
 
     /**
      * The <tt>ConfigurationService</tt> registered in {@link #bundleContext}
@@ -87,6 +92,20 @@ public void start(BundleContext bc) throws Exception
             notificationService.addActionHandler(popupMessageHandler);
             notificationService.addActionHandler(soundHandler);
 
+            // Create the clips of the sounds now rather than when they are
+            // first played.
+            soundClipCreator
+                = new Thread("SoundNotificationClipCreator")
+                {
+                    @Override
+                    public void run()
+                    {
+                        soundHandler.createClips(notificationService);
+                    }
+                };
+            soundClipCreator.setDaemon(true);
+            soundClipCreator.start();
+
             logger.info("Notification handler Service ...[REGISTERED]");
         }
         finally
@@ -105,6 +124,10 @@ public void stop(BundleContext bc) throws Exception
             popupMessageHandler.getActionType());
         notificationService.removeActionHandler(
             soundHandler.getActionType());
+        // Makes the clip creator stop if it is still running.
+        soundHandler.dispose(
+            notificationService);
+        soundClipCreator.join();
 
         logger.info("Notification handler Service ...[STOPPED]");
     }
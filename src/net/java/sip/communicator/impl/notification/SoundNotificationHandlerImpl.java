@@ -23,6 +23,7 @@
 
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.notification.*;
+import net.java.sip.communicator.service.notification.event.*;
 
 import org.jitsi.service.audionotifier.*;
 import org.jitsi.service.configuration.*;
@@ -30,6 +31,15 @@
 
 /**
  * An implementation of the <tt>SoundNotificationHandler</tt> interface.
+ * <p>
+ * The clips of the sounds which don't loop are kept for the lifetime of the
+ * handler and reused by the later plays of the same sound on the same device,
+ * up to {@link #MAX_CLIPS_PER_SOUND} of them for plays which overlap. They
+ * are created when the handler is registered rather than when first played.
+ * This doesn't load or decode the sounds, which the audio notifier does on
+ * every play so that they go to the devices currently selected by the user.
+ * Repeated notifications are coalesced by the <tt>NotificationService</tt>,
+ * not by this handler.
  *
  * @author Yana Stamcheva
  */
@@ -49,7 +59,13 @@
      */
     private boolean mute;
 
-    private Map<SCAudioClip, NotificationData> playedClips
+    /**
+     * The data of the notifications played by the clips which have been
+     * started and haven't finished playing yet. A clip is in the map for
+     * one play at a time, and the entries of the clips which have finished
+     * playing are removed before a clip is picked for the next play.
+     */
+    private final Map<SCAudioClip, NotificationData> playedClips
         = new WeakHashMap<SCAudioClip, NotificationData>();
 
     /**
@@ -58,6 +74,54 @@
     private static final String PROP_DISABLE_NOTIFICATION_DURING_CALL =
     "net.java.sip.communicator.impl.notification.disableNotificationDuringCall";
 
+    /**
+     * The maximum number of clips kept for a sound which doesn't loop on a
+     * device. Plays which overlap more get a clip of their own.
+     */
+    private static final int MAX_CLIPS_PER_SOUND = 3;
+
+    /**
+     * The clips of the sounds which don't loop by device and descriptor.
+     */
+    private final Map<String, List<SCAudioClip>> clips
+        = new HashMap<String, List<SCAudioClip>>();
+
+    /**
+     * Whether this handler has been disposed of, after which no clips are
+     * kept. Guarded by {@link #clips}.
+     */
+    private boolean disposed = false;
+
+    /**
+     * Creates the clips of the sounds of the actions which are added or
+     * changed.
+     */
+    private final NotificationChangeListener clipCreator
+        = new NotificationChangeListener()
+        {
+            public void actionAdded(NotificationActionTypeEvent event)
+            {
+                createClips(event.getActionHandler());
+            }
+
+            public void actionChanged(NotificationActionTypeEvent event)
+            {
+                createClips(event.getActionHandler());
+            }
+
+            public void actionRemoved(NotificationActionTypeEvent event)
+            {
+            }
+
+            public void eventTypeAdded(NotificationEventTypeEvent event)
+            {
+            }
+
+            public void eventTypeRemoved(NotificationEventTypeEvent event)
+            {
+            }
+        };
+
     /**
      * {@inheritDoc}
      */
@@ -114,57 +178,266 @@ private void play(
                 return;
         }
 
-        SCAudioClip audio = null;
+        // A clip is picked and started with playedClips locked so that it
+        // isn't picked for another play in between.
+        synchronized(playedClips)
+        {
+            removeFinishedClips();
+
+            SCAudioClip audio
+                = (action.getLoopInterval() < 0)
+                    ? getIdleAudio(action.getDescriptor(), device)
+                    : createAudio(action.getDescriptor(), device);
+
+            // it is possible that audio cannot be created
+            if(audio == null)
+                return;
+
+            playedClips.put(audio, data);
+
+            boolean played = false;
+
+            try
+            {
+                @SuppressWarnings("unchecked")
+                Callable<Boolean> loopCondition
+                    = (Callable<Boolean>)
+                        data.getExtra(
+                                NotificationData
+                                 .SOUND_NOTIFICATION_HANDLER_LOOP_CONDITION_EXTRA);
+
+                audio.play(action.getLoopInterval(), loopCondition);
+                played = true;
+            }
+            finally
+            {
+                if (!played)
+                    playedClips.remove(audio);
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of the clips which have finished playing from
+     * {@link #playedClips}. Must be called with <tt>playedClips</tt> locked.
+     */
+    private void removeFinishedClips()
+    {
+        Iterator<SCAudioClip> i = playedClips.keySet().iterator();
+
+        while (i.hasNext())
+        {
+            if (!i.next().isStarted())
+                i.remove();
+        }
+    }
 
+    /**
+     * Creates a clip playing a sound on a device.
+     *
+     * @param descriptor the descriptor of the sound
+     * @param device the device to play the sound on
+     * @return the clip or <tt>null</tt> if it cannot be created
+     */
+    private static SCAudioClip createAudio(
+            String descriptor,
+            SCAudioClipDevice device)
+    {
         switch (device)
         {
         case NOTIFICATION:
         case PLAYBACK:
-            audio
-                = audioNotifService.createAudio(
-                        action.getDescriptor(),
+            AudioNotifierService audioNotifService
+                = NotificationActivator.getAudioNotifier();
+
+            if (audioNotifService == null)
+                return null;
+
+            return
+                audioNotifService.createAudio(
+                        descriptor,
                         SCAudioClipDevice.PLAYBACK.equals(device));
-            break;
 
         case PC_SPEAKER:
             if(!OSUtils.IS_ANDROID)
-                audio = new PCSpeakerClip();
+                return new PCSpeakerClip();
             break;
         }
+        return null;
+    }
 
-        // it is possible that audio cannot be created
-        if(audio == null)
-            return;
+    /**
+     * Returns the key of the clips of a sound on a device in {@link #clips}.
+     *
+     * @param descriptor the descriptor of the sound
+     * @param device the device to play the sound on
+     * @return the key of the clips
+     */
+    private static String getClipsKey(
+            String descriptor,
+            SCAudioClipDevice device)
+    {
+        // The PC speaker beeps whatever the sound.
+        return
+            SCAudioClipDevice.PC_SPEAKER.equals(device)
+                ? device.name()
+                : device.name() + ':' + descriptor;
+    }
 
-        synchronized(playedClips)
+    /**
+     * Returns a clip of a sound, which doesn't loop, on a device which isn't
+     * playing, creating one if they all are. Must be called with
+     * {@link #playedClips} locked and its finished clips removed.
+     *
+     * @param descriptor the descriptor of the sound
+     * @param device the device to play the sound on
+     * @return the clip or <tt>null</tt> if it cannot be created
+     */
+    private SCAudioClip getIdleAudio(
+            String descriptor,
+            SCAudioClipDevice device)
+    {
+        String key = getClipsKey(descriptor, device);
+
+        synchronized (clips)
         {
-            playedClips.put(audio, data);
+            List<SCAudioClip> keyClips = clips.get(key);
+
+            if (keyClips != null)
+            {
+                for (SCAudioClip audio : keyClips)
+                {
+                    if (!playedClips.containsKey(audio))
+                        return audio;
+                }
+            }
+
+            SCAudioClip audio = createAudio(descriptor, device);
+
+            if ((audio != null) && !disposed)
+            {
+                if (keyClips == null)
+                {
+                    keyClips = new ArrayList<SCAudioClip>();
+                    clips.put(key, keyClips);
+                }
+                if (keyClips.size() < MAX_CLIPS_PER_SOUND)
+                    keyClips.add(audio);
+            }
+            return audio;
         }
+    }
+
+    /**
+     * Creates a clip of a sound, which doesn't loop, on a device unless there
+     * already is one.
+     *
+     * @param descriptor the descriptor of the sound
+     * @param device the device to play the sound on
+     */
+    private void createClip(String descriptor, SCAudioClipDevice device)
+    {
+        String key = getClipsKey(descriptor, device);
+
+        synchronized (clips)
+        {
+            if (disposed || clips.containsKey(key))
+                return;
+
+            SCAudioClip audio = createAudio(descriptor, device);
+
+            if (audio != null)
+            {
+                List<SCAudioClip> keyClips = new ArrayList<SCAudioClip>();
 
-        boolean played = false;
+                keyClips.add(audio);
+                clips.put(key, keyClips);
+            }
+        }
+    }
 
-        try
+    /**
+     * Creates the clips of the sounds, which don't loop, of all events
+     * registered in a <tt>NotificationService</tt> and of the sound actions
+     * which will be added to it. Stops as soon as this handler is disposed
+     * of.
+     *
+     * @param notificationService the <tt>NotificationService</tt> this handler
+     * is registered in
+     */
+    void createClips(NotificationService notificationService)
+    {
+        synchronized (clips)
         {
-            @SuppressWarnings("unchecked")
-            Callable<Boolean> loopCondition
-                = (Callable<Boolean>)
-                    data.getExtra(
-                            NotificationData
-                                .SOUND_NOTIFICATION_HANDLER_LOOP_CONDITION_EXTRA);
-
-            audio.play(action.getLoopInterval(), loopCondition);
-            played = true;
+            if (disposed)
+                return;
+            notificationService.addNotificationChangeListener(clipCreator);
         }
-        finally
+
+        for (String eventType : notificationService.getRegisteredEvents())
         {
-            synchronized(playedClips)
+            synchronized (clips)
             {
-                if (!played)
-                    playedClips.remove(audio);
+                if (disposed)
+                    return;
             }
+            createClips(
+                notificationService.getEventNotificationAction(
+                        eventType,
+                        NotificationAction.ACTION_SOUND));
+        }
+    }
+
+    /**
+     * Stops creating the clips of the sound actions of a
+     * <tt>NotificationService</tt> and releases the clips which aren't
+     * playing.
+     *
+     * @param notificationService the <tt>NotificationService</tt> this handler
+     * was registered in
+     */
+    void dispose(NotificationService notificationService)
+    {
+        synchronized (clips)
+        {
+            disposed = true;
+            clips.clear();
+            notificationService.removeNotificationChangeListener(clipCreator);
         }
     }
 
+    /**
+     * Creates the clips of the sound of an action if it doesn't loop, on the
+     * devices it is enabled for.
+     *
+     * @param action the action
+     */
+    private void createClips(NotificationAction action)
+    {
+        if (!(action instanceof SoundNotificationAction))
+            return;
+
+        SoundNotificationAction soundAction = (SoundNotificationAction) action;
+        String descriptor = soundAction.getDescriptor();
+
+        if ((soundAction.getLoopInterval() >= 0)
+                || StringUtils.isNullOrEmpty(descriptor, true))
+            return;
+
+        AudioNotifierService audioNotifService
+            = NotificationActivator.getAudioNotifier();
+        boolean playOnlyOnPlayback
+            = (audioNotifService == null)
+                || audioNotifService.audioOutAndNotificationsShareSameDevice();
+
+        if (soundAction.isSoundPlaybackEnabled()
+                || (playOnlyOnPlayback
+                    && soundAction.isSoundNotificationEnabled()))
+            createClip(descriptor, SCAudioClipDevice.PLAYBACK);
+        if (!playOnlyOnPlayback && soundAction.isSoundNotificationEnabled())
+            createClip(descriptor, SCAudioClipDevice.NOTIFICATION);
+    }
+
     /**
      * Stops/Restores all currently playing sounds.
      *
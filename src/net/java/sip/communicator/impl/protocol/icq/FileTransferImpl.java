@@ -205,27 +205,21 @@ else if (state==FileTransferState.TRANSFERRING)
                     final ProgressStatusProvider psp = (
                         (TransferringFileEvent)event).getProgressProvider();
 
-                    new Thread("Transfer for " + transfer.getBuddyScreenname())
-                    {
-                        @Override
-                        public void run()
+                    FileTransferProgressMonitor.add(
+                        new FileTransferProgressMonitor.Probe()
                         {
-                            while (transfer.isOpen())
+                            public boolean sample(long timestamp)
                             {
+                                if (!transfer.isOpen())
+                                    return false;
+
                                 long transfered = psp.getPosition();
 
                                 setTransferedBytes(transfered);
-                                fireProgressChangeEvent(
-                                    System.currentTimeMillis(), transfered);
-
-                                try {
-                                    Thread.sleep(100);
-                                }
-                                catch (InterruptedException e)
-                                {}
+                                updateProgress(timestamp, transfered);
+                                return true;
                             }
-                        }
-                    }.start();
+                        });
                 }
             }
         }
@@ -36,16 +36,6 @@
     private static final Logger LOGGER = Logger
         .getLogger(BasicPollerPresenceWatcher.class);
 
-    /**
-     * Delay before starting the presence watcher task for the first time.
-     */
-    private static final long INITIAL_PRESENCE_WATCHER_DELAY = 10000L;
-
-    /**
-     * Period for the presence watcher timer.
-     */
-    private static final long PRESENCE_WATCHER_PERIOD = 60000L;
-
     /**
      * Instance of IRCAPi.
      */
@@ -66,6 +56,12 @@
      */
     private final Set<String> nickWatchList;
 
+    /**
+     * The presence scheduler shared by all presence queries of the
+     * connection.
+     */
+    private final PresenceScheduler scheduler;
+
     /**
      * Constructor.
      *
@@ -74,12 +70,14 @@
      * @param operationSet the persistent presence operation set
      * @param nickWatchList SYNCHRONIZED the nick watch list
      * @param serverIdentity the server identity
+     * @param scheduler the presence scheduler of the connection
      */
     BasicPollerPresenceWatcher(final IRCApi irc,
         final IIRCState connectionState,
         final OperationSetPersistentPresenceIrcImpl operationSet,
         final Set<String> nickWatchList,
-        final AtomicReference<String> serverIdentity)
+        final AtomicReference<String> serverIdentity,
+        final PresenceScheduler scheduler)
     {
         if (irc == null)
         {
@@ -101,12 +99,17 @@
             throw new IllegalArgumentException("nickWatchList cannot be null");
         }
         this.nickWatchList = nickWatchList;
+        if (scheduler == null)
+        {
+            throw new IllegalArgumentException("scheduler cannot be null");
+        }
+        this.scheduler = scheduler;
         setUpPresenceWatcher(serverIdentity);
         LOGGER.debug("Basic Poller presence watcher initialized.");
     }
 
     /**
-     * Set up a timer for watching the presence of nicks in the watch list.
+     * Set up a task for watching the presence of nicks in the watch list.
      */
     private void setUpPresenceWatcher(
         final AtomicReference<String> serverIdentity)
@@ -115,13 +118,12 @@ private void setUpPresenceWatcher(
         // presence reply listener.
         final List<List<String>> queryList =
             Collections.synchronizedList(new LinkedList<List<String>>());
-        final Timer presenceWatcher = new Timer();
-        irc.addListener(new PresenceReplyListener(presenceWatcher, queryList));
         final PresenceWatcherTask task =
             new PresenceWatcherTask(this.nickWatchList, queryList,
                 serverIdentity);
-        presenceWatcher.schedule(task, INITIAL_PRESENCE_WATCHER_DELAY,
-            PRESENCE_WATCHER_PERIOD);
+        final PresenceScheduler.Registration registration =
+            this.scheduler.scheduleSpread(task);
+        irc.addListener(new PresenceReplyListener(registration, queryList));
         LOGGER.trace("Basic Poller presence watcher set up.");
     }
 
@@ -140,9 +142,13 @@ public void remove(String nick)
     /**
      * Task for watching nick presence.
      *
+     * The task is run every slot of the presence scheduler. At the start of a
+     * period, the watch list is split into ISON queries that fit on a line.
+     * The queries are then spread evenly over the slots of the period.
+     *
      * @author Danny van Heumen
      */
-    private final class PresenceWatcherTask extends TimerTask
+    private final class PresenceWatcherTask implements Runnable
     {
         /**
          * Static overhead for ISON response message.
@@ -168,6 +174,18 @@ private final class PresenceWatcherTask extends TimerTask
          */
         private final AtomicReference<String> serverIdentity;
 
+        /**
+         * Lists of nicks of the queries that still need to be sent in the
+         * current period.
+         */
+        private final LinkedList<List<String>> pending =
+            new LinkedList<List<String>>();
+
+        /**
+         * Number of slots remaining in the current period.
+         */
+        private int remainingSlots = 0;
+
         /**
          * Constructor.
          *
@@ -203,6 +221,44 @@ public PresenceWatcherTask(final Set<String> watchList,
          */
         @Override
         public void run()
+        {
+            if (this.remainingSlots <= 0)
+            {
+                this.remainingSlots =
+                    BasicPollerPresenceWatcher.this.scheduler.getSlots();
+                if (!this.pending.isEmpty())
+                {
+                    LOGGER.debug("Not all ISON queries were sent in the "
+                        + "previous period.");
+                    this.pending.clear();
+                }
+                prepareQueries();
+            }
+            // Spread remaining queries evenly over remaining slots.
+            final int count =
+                (this.pending.size() + this.remainingSlots - 1)
+                    / this.remainingSlots;
+            this.remainingSlots--;
+            for (int i = 0; i < count; i++)
+            {
+                final List<String> nicks = this.pending.removeFirst();
+                final StringBuilder query = new StringBuilder();
+                for (String nick : nicks)
+                {
+                    query.append(nick);
+                    query.append(' ');
+                }
+                this.queryList.add(nicks);
+                BasicPollerPresenceWatcher.this.irc
+                    .rawMessage(createQuery(query));
+            }
+        }
+
+        /**
+         * Split the watch list in lists of nicks such that each list fits in
+         * a single ISON query.
+         */
+        private void prepareQueries()
         {
             if (this.watchList.isEmpty())
             {
@@ -218,39 +274,33 @@ public void run()
             }
             LOGGER
                 .trace("Watch list contains nicks: querying presence status.");
-            final StringBuilder query = new StringBuilder();
             final LinkedList<String> list;
             synchronized (this.watchList)
             {
                 list = new LinkedList<String>(this.watchList);
             }
-            LinkedList<String> nicks = new LinkedList<String>();
             // The ISON reply contains the most overhead, so base the maximum
             // number of nicks limit on that.
             final int maxQueryLength =
                 MessageManager.IRC_PROTOCOL_MAX_MESSAGE_SIZE
                     - MessageManager.SAFETY_NET - overhead();
+            int length = 0;
+            LinkedList<String> nicks = new LinkedList<String>();
             for (String nick : list)
             {
-                if (query.length() + nick.length() >= maxQueryLength)
+                if (length + nick.length() >= maxQueryLength
+                    && !nicks.isEmpty())
                 {
-                    this.queryList.add(nicks);
-                    BasicPollerPresenceWatcher.this.irc
-                        .rawMessage(createQuery(query));
-                    // Initialize new data types
-                    query.delete(0, query.length());
+                    this.pending.add(nicks);
                     nicks = new LinkedList<String>();
+                    length = 0;
                 }
-                query.append(nick);
-                query.append(' ');
+                length += nick.length() + 1;
                 nicks.add(nick);
             }
-            if (query.length() > 0)
+            if (!nicks.isEmpty())
             {
-                // Send remaining entries.
-                this.queryList.add(nicks);
-                BasicPollerPresenceWatcher.this.irc
-                    .rawMessage(createQuery(query));
+                this.pending.add(nicks);
             }
         }
 
@@ -302,9 +352,9 @@ private int overhead()
         private static final int ERR_NOSUCHNICK = 401;
 
         /**
-         * Timer for presence watcher task.
+         * Registration of the presence watcher task.
          */
-        private final Timer timer;
+        private final PresenceScheduler.Registration registration;
 
         /**
          * FIFO list containing list of nicks for each query.
@@ -314,19 +364,21 @@ private int overhead()
         /**
          * Constructor.
          *
-         * @param timer Timer for presence watcher task
+         * @param registration registration of the presence watcher task
          * @param queryList List of executed queries with expected nicks lists.
          */
-        public PresenceReplyListener(final Timer timer,
+        public PresenceReplyListener(
+            final PresenceScheduler.Registration registration,
             final List<List<String>> queryList)
         {
             super(BasicPollerPresenceWatcher.this.irc,
                 BasicPollerPresenceWatcher.this.connectionState);
-            if (timer == null)
+            if (registration == null)
             {
-                throw new IllegalArgumentException("timer cannot be null");
+                throw new IllegalArgumentException(
+                    "registration cannot be null");
             }
-            this.timer = timer;
+            this.registration = registration;
             if (queryList == null)
             {
                 throw new IllegalArgumentException("queryList cannot be null");
@@ -512,7 +564,7 @@ public void onUserQuit(final QuitMessage msg)
             if (localUser(user))
             {
                 // Stop presence watcher task.
-                this.timer.cancel();
+                this.registration.cancel();
                 updateAll(IrcStatusEnum.OFFLINE);
             }
             else
@@ -531,7 +583,7 @@ public void onError(final ErrorMessage msg)
         {
             super.onError(msg);
             // Stop presence watcher task.
-            this.timer.cancel();
+            this.registration.cancel();
             updateAll(IrcStatusEnum.OFFLINE);
         }
 
@@ -545,7 +597,7 @@ public void onClientError(ClientErrorMessage msg)
         {
             super.onClientError(msg);
             // Stop presence watcher task.
-            this.timer.cancel();
+            this.registration.cancel();
             updateAll(IrcStatusEnum.OFFLINE);
         }
 
@@ -0,0 +1,346 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.*;
+
+/**
+ * Directory of the channels listed by an IRC server in reply to a LIST
+ * command.
+ *
+ * Channels are stored column-wise in arrays (name, user count, topic) instead
+ * of one object per channel, since large networks list tens of thousands of
+ * channels. Names are indexed by their trigrams (case-insensitive) so that
+ * substring searches only need to verify the channels sharing the rarest
+ * trigram of the query instead of scanning the whole directory.
+ *
+ * The directory may be searched while it is still being filled.
+ */
+public class ChannelDirectory
+{
+    /**
+     * Initial capacity of the columns.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Number of characters in an index key.
+     */
+    private static final int TRIGRAM = 3;
+
+    /**
+     * The substring by which the server filtered the listed channels, or
+     * <tt>null</tt> if this directory contains all channels.
+     */
+    private final String filter;
+
+    /**
+     * Column of channel names.
+     */
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    /**
+     * Column of channel user counts.
+     */
+    private int[] userCounts = new int[INITIAL_CAPACITY];
+
+    /**
+     * Column of channel topics.
+     */
+    private String[] topics = new String[INITIAL_CAPACITY];
+
+    /**
+     * Number of channels in the directory.
+     */
+    private int size = 0;
+
+    /**
+     * Index of channel ids by the trigrams of their names.
+     */
+    private final Map<Long, Postings> index = new HashMap<Long, Postings>();
+
+    /**
+     * Constructor.
+     *
+     * @param filter the substring by which the server filtered the listed
+     *            channels, or <tt>null</tt> if the directory contains all
+     *            channels
+     */
+    public ChannelDirectory(final String filter)
+    {
+        this.filter = filter;
+    }
+
+    /**
+     * Get the substring by which the server filtered the listed channels.
+     *
+     * @return returns the filter, or <tt>null</tt> if the directory contains
+     *         all channels
+     */
+    public String getFilter()
+    {
+        return this.filter;
+    }
+
+    /**
+     * Test whether this directory contains all channels matching the query.
+     *
+     * @param query the substring to search for
+     * @return returns <tt>true</tt> if all channels matching the query are
+     *         (or will be) listed in this directory
+     */
+    public boolean covers(final String query)
+    {
+        return this.filter == null || containsIgnoreCase(query, this.filter);
+    }
+
+    /**
+     * Add a channel to the directory.
+     *
+     * @param name the channel name
+     * @param userCount the number of users in the channel
+     * @param topic the channel topic (can be null)
+     * @return returns the id of the channel in the directory
+     */
+    public synchronized int add(final String name, final int userCount,
+        final String topic)
+    {
+        if (name == null)
+        {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        if (this.size == this.names.length)
+        {
+            final int capacity = this.size * 2;
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.userCounts = Arrays.copyOf(this.userCounts, capacity);
+            this.topics = Arrays.copyOf(this.topics, capacity);
+        }
+        final int id = this.size++;
+        this.names[id] = name;
+        this.userCounts[id] = userCount;
+        this.topics[id] = topic;
+        for (int i = 0; i + TRIGRAM <= name.length(); i++)
+        {
+            final Long key = trigram(name, i);
+            Postings postings = this.index.get(key);
+            if (postings == null)
+            {
+                postings = new Postings();
+                this.index.put(key, postings);
+            }
+            postings.add(id);
+        }
+        return id;
+    }
+
+    /**
+     * Get the number of channels in the directory.
+     *
+     * @return returns the number of channels
+     */
+    public synchronized int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Get the name of a channel.
+     *
+     * @param id the channel id
+     * @return returns the channel name
+     */
+    public synchronized String getName(final int id)
+    {
+        checkId(id);
+        return this.names[id];
+    }
+
+    /**
+     * Get the number of users in a channel at the moment it was listed.
+     *
+     * @param id the channel id
+     * @return returns the user count
+     */
+    public synchronized int getUserCount(final int id)
+    {
+        checkId(id);
+        return this.userCounts[id];
+    }
+
+    /**
+     * Get the topic of a channel at the moment it was listed.
+     *
+     * @param id the channel id
+     * @return returns the topic, or <tt>null</tt> if unknown
+     */
+    public synchronized String getTopic(final int id)
+    {
+        checkId(id);
+        return this.topics[id];
+    }
+
+    /**
+     * Test whether the name of a channel contains the query.
+     *
+     * @param id the channel id
+     * @param query the substring to search for
+     * @return returns <tt>true</tt> if the name contains the query, ignoring
+     *         case
+     */
+    public synchronized boolean matches(final int id, final String query)
+    {
+        checkId(id);
+        return containsIgnoreCase(this.names[id], query);
+    }
+
+    /**
+     * Search for the channels whose names contain the query, ignoring case.
+     *
+     * @param query the substring to search for, the empty string matches all
+     *            channels
+     * @return returns the names of the matching channels in the order in
+     *         which they were listed
+     */
+    public synchronized List<String> search(final String query)
+    {
+        final List<String> result = new ArrayList<String>();
+        if (query == null || query.length() < TRIGRAM)
+        {
+            for (int id = 0; id < this.size; id++)
+            {
+                if (query == null || containsIgnoreCase(this.names[id], query))
+                {
+                    result.add(this.names[id]);
+                }
+            }
+            return result;
+        }
+
+        // Verify the candidates of the rarest trigram of the query.
+        Postings candidates = null;
+        for (int i = 0; i + TRIGRAM <= query.length(); i++)
+        {
+            final Postings postings = this.index.get(trigram(query, i));
+            if (postings == null)
+            {
+                return result;
+            }
+            if (candidates == null || postings.size < candidates.size)
+            {
+                candidates = postings;
+            }
+        }
+        for (int i = 0; i < candidates.size; i++)
+        {
+            final int id = candidates.ids[i];
+            if (containsIgnoreCase(this.names[id], query))
+            {
+                result.add(this.names[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check that an id belongs to a channel in the directory.
+     *
+     * @param id the channel id
+     */
+    private void checkId(final int id)
+    {
+        if (id < 0 || id >= this.size)
+        {
+            throw new IndexOutOfBoundsException("Unknown channel id: " + id);
+        }
+    }
+
+    /**
+     * Compute the (case-insensitive) index key of the trigram starting at an
+     * offset.
+     *
+     * @param text the text
+     * @param offset the offset of the trigram
+     * @return returns the index key
+     */
+    private static Long trigram(final String text, final int offset)
+    {
+        long key = 0;
+        for (int i = offset; i < offset + TRIGRAM; i++)
+        {
+            key = (key << Character.SIZE)
+                | Character.toLowerCase(text.charAt(i));
+        }
+        return key;
+    }
+
+    /**
+     * Test whether a text contains a substring, ignoring case.
+     *
+     * @param text the text
+     * @param part the substring
+     * @return returns <tt>true</tt> if text contains part
+     */
+    static boolean containsIgnoreCase(final String text, final String part)
+    {
+        final int last = text.length() - part.length();
+        for (int i = 0; i <= last; i++)
+        {
+            if (text.regionMatches(true, i, part, 0, part.length()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Growable array of the ids of the channels containing a trigram.
+     */
+    private static final class Postings
+    {
+        /**
+         * Channel ids in ascending order.
+         */
+        private int[] ids = new int[2];
+
+        /**
+         * Number of ids.
+         */
+        private int size = 0;
+
+        /**
+         * Add an id. Ids are added in ascending order, so a trigram which
+         * occurs more than once in a name is only recorded once.
+         *
+         * @param id the channel id
+         */
+        private void add(final int id)
+        {
+            if (this.size > 0 && this.ids[this.size - 1] == id)
+            {
+                return;
+            }
+            if (this.size == this.ids.length)
+            {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+            this.ids[this.size++] = id;
+        }
+    }
+}
@@ -119,6 +119,12 @@
      */
     private final boolean awayNotify;
 
+    /**
+     * The presence scheduler shared by all presence queries of the
+     * connection.
+     */
+    private final PresenceScheduler presenceScheduler;
+
     /**
      * Constructor.
      *
@@ -126,10 +132,14 @@
      * @param connectionState the connection state
      * @param provider the provider instance
      * @param config client configuration
+     * @param awayNotifyCapability flag indicating whether or not away
+     *            notifications are active
+     * @param presenceScheduler the presence scheduler of the connection
      */
     public ChannelManager(final IRCApi irc, final IIRCState connectionState,
         final ProtocolProviderServiceIrcImpl provider,
-        final ClientConfig config, final boolean awayNotifyCapability)
+        final ClientConfig config, final boolean awayNotifyCapability,
+        final PresenceScheduler presenceScheduler)
     {
         if (irc == null)
         {
@@ -152,6 +162,12 @@ public ChannelManager(final IRCApi irc, final IIRCState connectionState,
             throw new IllegalArgumentException("client config cannot be null");
         }
         this.config = config;
+        if (presenceScheduler == null)
+        {
+            throw new IllegalArgumentException(
+                "presenceScheduler cannot be null");
+        }
+        this.presenceScheduler = presenceScheduler;
         this.irc.addListener(new ManagerListener());
 
         // parse ISUPPORT parameters
@@ -477,6 +493,9 @@ private void prepareChatRoom(final ChatRoomIrcImpl chatRoom,
         final IRCTopic topic = channel.getTopic();
         chatRoom.updateSubject(topic.getValue());
 
+        // The irc library completes the join once it has received the whole
+        // NAMES reply, so the members are announced with a single event.
+        final List<ChatRoomMember> members = new ArrayList<ChatRoomMember>();
         for (final IRCUser user : channel.getUsers())
         {
             final ChatRoomMemberIrcImpl member =
@@ -505,6 +524,7 @@ private void prepareChatRoom(final ChatRoomIrcImpl chatRoom,
                 }
             }
             chatRoom.addChatRoomMember(member.getContactAddress(), member);
+            members.add(member);
             if (this.connectionState.getNickname().equals(user.getNick()))
             {
                 chatRoom.setLocalUser(member);
@@ -518,6 +538,7 @@ private void prepareChatRoom(final ChatRoomIrcImpl chatRoom,
                 }
             }
         }
+        chatRoom.fireMemberListEvent(members);
     }
 
     /**
@@ -844,29 +865,16 @@ public void onServerNumericMessage(final ServerNumericMessage msg)
          */
         private static final int IRC_RPL_ENDOFWHO = 315;
 
-        /**
-         * Presence task period.
-         */
-        private static final long TASK_PERIOD = 60000L;
-
-        /**
-         * Presence task initial delay.
-         *
-         * The first WHO-request is fired during ChatRoomListener constructions,
-         * as we need at least 1 such request, even if away-notify capability is
-         * active.
-         */
-        private static final long TASK_INITIAL_DELAY = TASK_PERIOD;
-
         /**
          * Chat room for which this listener is working.
          */
         private final ChatRoomIrcImpl chatroom;
 
         /**
-         * Presence task timer.
+         * Registration of the periodic presence task, or <tt>null</tt> if the
+         * task is not active.
          */
-        private final Timer presenceTaskTimer = new Timer();
+        private final PresenceScheduler.Registration presenceTask;
 
         /**
          * Constructor. Instantiate listener for the provided chat room.
@@ -890,10 +898,11 @@ private ChatRoomListener(final ChatRoomIrcImpl chatroom,
             this.chatroom = chatroom;
             if (activatePresenceWatcher && !awayNotifyCapability)
             {
-                createPeriodicPresenceWatcher();
+                this.presenceTask = createPeriodicPresenceWatcher();
             }
             else
             {
+                this.presenceTask = null;
                 LOGGER.info("Not activating periodic presence watcher. "
                     + "(away-notify capability is " + awayNotifyCapability
                     + ")");
@@ -903,9 +912,18 @@ private ChatRoomListener(final ChatRoomIrcImpl chatroom,
 
         /**
          * Create periodic task for updating channel presence statuses.
+         *
+         * The first WHO-request is fired during ChatRoomListener construction,
+         * as we need at least 1 such request, even if away-notify capability
+         * is active. The periodic task is run by the presence scheduler that
+         * is shared by all channels, such that the WHO-requests of the joined
+         * channels are spread over the period.
+         *
+         * @return returns the registration of the periodic task
          */
-        private void createPeriodicPresenceWatcher() {
-            final TimerTask task = new TimerTask()
+        private PresenceScheduler.Registration createPeriodicPresenceWatcher()
+        {
+            final Runnable task = new Runnable()
             {
                 @Override
                 public void run()
@@ -913,10 +931,11 @@ public void run()
                     irc.rawMessage("WHO " + chatroom.getIdentifier());
                 }
             };
-            this.presenceTaskTimer.schedule(task, TASK_INITIAL_DELAY,
-                TASK_PERIOD);
+            final PresenceScheduler.Registration registration =
+                ChannelManager.this.presenceScheduler.schedule(task);
             LOGGER.debug("Scheduled periodic task for querying member presence "
                 + "for channel " + this.chatroom.getIdentifier());
+            return registration;
         }
 
         /**
@@ -1158,7 +1177,7 @@ public void onUserQuit(final QuitMessage msg)
             final String user = msg.getSource().getNick();
             if (localUser(user))
             {
-                this.presenceTaskTimer.cancel();
+                cancelPresenceTask();
             }
             else
             {
@@ -1181,7 +1200,7 @@ public void onUserQuit(final QuitMessage msg)
         @Override
         public void onError(final ErrorMessage msg)
         {
-            this.presenceTaskTimer.cancel();
+            cancelPresenceTask();
             super.onError(msg);
         }
 
@@ -1192,7 +1211,7 @@ public void onError(final ErrorMessage msg)
         @Override
         public void onClientError(final ClientErrorMessage msg)
         {
-            this.presenceTaskTimer.cancel();
+            cancelPresenceTask();
             super.onClientError(msg);
         }
 
@@ -1344,12 +1363,23 @@ private void updateMemberPresence(ChatRoomMemberIrcImpl member,
             this.chatroom.fireMemberPropertyChangeEvent(presenceEvent);
         }
 
+        /**
+         * Cancel the periodic presence task, if it is active.
+         */
+        private void cancelPresenceTask()
+        {
+            if (this.presenceTask != null)
+            {
+                this.presenceTask.cancel();
+            }
+        }
+
         /**
          * Leave this chat room.
          */
         private void leaveChatRoom()
         {
-            this.presenceTaskTimer.cancel();
+            cancelPresenceTask();
             this.irc.deleteListener(this);
             ChannelManager.this.joined.remove(this.chatroom.getIdentifier());
             LOGGER.debug("Leaving chat room " + this.chatroom.getIdentifier()
@@ -1348,6 +1348,31 @@ public void fireMemberPresenceEvent(final ChatRoomMember member,
         }
     }
 
+    /**
+     * Notifies all <tt>ChatRoomMemberPresenceListener</tt>s of the members
+     * this chat room had when the local user joined it, which have already
+     * been added to its list of members.
+     *
+     * @param members the members of this chat room
+     */
+    public void fireMemberListEvent(final Collection<ChatRoomMember> members)
+    {
+        if (LOGGER.isTraceEnabled())
+        {
+            LOGGER.trace("Will dispatch the list of " + members.size()
+                + " members of " + getIdentifier());
+        }
+
+        Iterable<ChatRoomMemberPresenceListener> listeners;
+        synchronized (memberListeners)
+        {
+            listeners
+                = new ArrayList<ChatRoomMemberPresenceListener>(
+                        memberListeners);
+        }
+        fireMemberListEvent(members, listeners);
+    }
+
     /**
      * Creates the corresponding ChatRoomMemberRoleChangeEvent and notifies
      * all <tt>ChatRoomMemberRoleListener</tt>s that a ChatRoomMember has
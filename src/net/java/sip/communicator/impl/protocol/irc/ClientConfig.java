@@ -75,6 +75,22 @@
      */
     boolean isResolveByProxy();
 
+    /**
+     * Get the number of commands that may be sent back-to-back before the
+     * flood control rate limit applies.
+     *
+     * @return returns the burst size
+     */
+    int getFloodControlBurst();
+
+    /**
+     * Get the interval in milliseconds in which one command may be sent once
+     * the burst has been used up.
+     *
+     * @return returns the interval in milliseconds
+     */
+    long getFloodControlInterval();
+
     /**
      * Get the configured SASL authentication data.
      *
@@ -57,11 +57,74 @@
      */
     private boolean resolveByProxy = true;
 
+    /**
+     * Get the number of commands that may be sent back-to-back.
+     *
+     * @return returns the burst size
+     */
+    @Override
+    public int getFloodControlBurst()
+    {
+        return this.floodControlBurst;
+    }
+
+    /**
+     * Set the number of commands that may be sent back-to-back.
+     *
+     * @param burst the burst size, must be at least 1
+     */
+    public void setFloodControlBurst(final int burst)
+    {
+        if (burst < 1)
+        {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        this.floodControlBurst = burst;
+    }
+
+    /**
+     * Get the interval in which one command may be sent once the burst has
+     * been used up.
+     *
+     * @return returns the interval in milliseconds
+     */
+    @Override
+    public long getFloodControlInterval()
+    {
+        return this.floodControlInterval;
+    }
+
+    /**
+     * Set the interval in which one command may be sent once the burst has
+     * been used up.
+     *
+     * @param interval the interval in milliseconds, 0 disables rate limiting
+     */
+    public void setFloodControlInterval(final long interval)
+    {
+        if (interval < 0)
+        {
+            throw new IllegalArgumentException("interval cannot be negative");
+        }
+        this.floodControlInterval = interval;
+    }
+
     /**
      * Get SASL authentication data.
      */
     private SASLImpl sasl = null;
 
+    /**
+     * Number of commands that may be sent back-to-back.
+     */
+    private int floodControlBurst = ScheduledIRCApi.DEFAULT_BURST;
+
+    /**
+     * Interval in milliseconds in which one command may be sent once the burst
+     * has been used up.
+     */
+    private long floodControlInterval = ScheduledIRCApi.DEFAULT_INTERVAL;
+
     /**
      * Get version 3 allowed flag.
      *
@@ -58,7 +58,15 @@
     /**
      * Maximum number of entries in the WATCH list supported by this server.
      */
-    WATCH;
+    WATCH,
+    /**
+     * Extensions to the LIST command supported by this server.
+     */
+    ELIST,
+    /**
+     * Maximum length of a line, including CRLF, accepted by this server.
+     */
+    LINELEN;
 
     /**
      * Pattern for parsing ChanLimit ISUPPORT parameter.
@@ -95,4 +103,28 @@ public static void parseChanLimit(final Map<Character, Integer> destination,
             }
         }
     }
+
+    /**
+     * Parse line length ISUPPORT parameter.
+     *
+     * @param lineLenValue the raw ISUPPORT server parameter value
+     * @return returns the maximum line length including CRLF, or -1 if the
+     *         value is missing or is not a positive number
+     */
+    public static int parseLineLength(final String lineLenValue)
+    {
+        if (lineLenValue == null)
+        {
+            return -1;
+        }
+        try
+        {
+            final int lineLength = Integer.parseInt(lineLenValue.trim());
+            return lineLength > 0 ? lineLength : -1;
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
 }
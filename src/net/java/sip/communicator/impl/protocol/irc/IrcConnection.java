@@ -86,6 +86,17 @@
      */
     private final IRCApi irc;
 
+    /**
+     * Outbound scheduler through which the managers send their commands.
+     */
+    private final ScheduledIRCApi scheduler;
+
+    /**
+     * Scheduler for periodic presence queries, shared by the contact presence
+     * watchers and all joined channels.
+     */
+    private final PresenceScheduler presenceScheduler;
+
     /**
      * Connection state of a successful IRC connection.
      */
@@ -183,30 +194,45 @@
             connectSynchronized(this.context.provider, params, this.irc,
                 negotiator);
 
+        // From now on commands are sent through the outbound scheduler, which
+        // rate limits them so that we do not get disconnected for flooding.
+        this.scheduler =
+            new ScheduledIRCApi(this.irc, this.connectionState,
+                this.config.getFloodControlBurst(),
+                this.config.getFloodControlInterval());
+
+        // A single scheduler for all periodic presence queries.
+        this.presenceScheduler =
+            new PresenceScheduler(PresenceScheduler.DEFAULT_PERIOD);
+
         // instantiate identity manager for the connection
         this.identity =
-            new IdentityManager(this.irc, this.connectionState,
+            new IdentityManager(this.scheduler, this.connectionState,
                 this.context.provider);
 
         // instantiate message manager for the connection
         this.message =
-            new MessageManager(this, this.irc, this.connectionState,
+            new MessageManager(this, this.scheduler, this.connectionState,
                 this.context.provider, this.identity);
 
         // instantiate channel manager for the connection
         this.channel =
-            new ChannelManager(this.irc, this.connectionState,
-                this.context.provider, this.config, handler.awayNotify);
+            new ChannelManager(this.scheduler, this.connectionState,
+                this.context.provider, this.config, handler.awayNotify,
+                this.presenceScheduler);
 
         // instantiate presence manager for the connection
         this.presence =
-            new PresenceManager(this.irc, this.connectionState,
+            new PresenceManager(this.scheduler, this.connectionState,
                 this.context.provider.getPersistentPresence(),
-                this.config, this.context.nickWatchList);
+                this.config, this.context.nickWatchList,
+                this.presenceScheduler);
 
         // instantiate server channel lister
         this.channelLister =
-            new ServerChannelLister(this.irc, this.connectionState);
+            new ServerChannelLister(this.scheduler, this.connectionState);
+
+        this.scheduler.start();
     }
 
     /**
@@ -344,9 +370,10 @@ public boolean isSecureConnection()
      */
     void disconnect()
     {
+        stopPresenceScheduler();
         try
         {
-            this.irc.disconnect();
+            this.scheduler.disconnect();
         }
         catch (RuntimeException e)
         {
@@ -357,13 +384,26 @@ void disconnect()
     }
 
     /**
-     * Get the IRC client library instance.
+     * Stop the presence scheduler. The connection may be lost while
+     * registering with the server, i.e. before the scheduler is created.
+     */
+    private void stopPresenceScheduler()
+    {
+        if (this.presenceScheduler != null)
+        {
+            this.presenceScheduler.stop();
+        }
+    }
+
+    /**
+     * Get the IRC client library instance. Commands sent through this
+     * instance are subject to flood control.
      *
      * @return returns the client instance
      */
     public IRCApi getClient()
     {
-        return this.irc;
+        return this.scheduler;
     }
 
     /**
@@ -459,6 +499,8 @@ public void onError(final ErrorMessage msg)
                 + "listener.");
             IrcConnection.this.irc.deleteListener(this);
 
+            IrcConnection.this.stopPresenceScheduler();
+
             // If listener is available, inform of connection interrupt.
             if (IrcConnection.this.connectionListener != null)
             {
@@ -492,6 +534,8 @@ public void onClientError(ClientErrorMessage msg)
                 + "server listener.");
             IrcConnection.this.irc.deleteListener(this);
 
+            IrcConnection.this.stopPresenceScheduler();
+
             // If listener is available, inform of connection interrupt.
             if (IrcConnection.this.connectionListener != null)
             {
@@ -521,6 +565,8 @@ public void onUserQuit(final QuitMessage msg)
                 + "server listener.");
             IrcConnection.this.irc.deleteListener(this);
 
+            IrcConnection.this.stopPresenceScheduler();
+
             // If listener is available, inform of connection interrupt.
             if (IrcConnection.this.connectionListener != null)
             {
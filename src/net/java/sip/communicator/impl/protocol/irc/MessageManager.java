@@ -17,6 +17,8 @@
  */
 package net.java.sip.communicator.impl.protocol.irc;
 
+import java.util.*;
+
 import net.java.sip.communicator.impl.protocol.irc.exception.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -59,6 +61,11 @@
      */
     public static final int IRC_PROTOCOL_MAX_MESSAGE_SIZE = 510;
 
+    /**
+     * Length of the CRLF line ending.
+     */
+    private static final int CRLF_LENGTH = 2;
+
     /**
      * IrcConnection instance.
      */
@@ -136,6 +143,31 @@ public MessageManager(final IrcConnection connection, final IRCApi irc,
                 new CommandFactory(this.provider, this.connection);
     }
 
+    /**
+     * Determine the maximum message size accepted by the IRC server, which is
+     * the protocol's maximum, unless the server advertises a different line
+     * length in its ISUPPORT parameters. The parameters are read on every call,
+     * since they may arrive after this message manager has been created.
+     *
+     * @return returns the maximum message size excluding CRLF
+     */
+    private int getMaxMessageSize()
+    {
+        final String value = this.connectionState.getServerOptions()
+            .getKey(ISupport.LINELEN.name());
+        final int lineLength = ISupport.parseLineLength(value);
+        if (lineLength > CRLF_LENGTH)
+        {
+            return lineLength - CRLF_LENGTH;
+        }
+        if (value != null && LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Ignoring invalid LINELEN ISUPPORT parameter: "
+                + value);
+        }
+        return IRC_PROTOCOL_MAX_MESSAGE_SIZE;
+    }
+
     /**
      * Send a command to the IRC server.
      *
@@ -246,7 +278,7 @@ private void command(final String source, final String message)
      * @param chatroom The chat room to send the message to.
      * @param message The message to send.
      * @throws OperationFailedException OperationFailedException is thrown when
-     *             message is too large to be processed by IRC server.
+     *             the target leaves no room for a message.
      */
     public void message(final ChatRoomIrcImpl chatroom, final String message)
         throws OperationFailedException
@@ -255,29 +287,7 @@ public void message(final ChatRoomIrcImpl chatroom, final String message)
         {
             throw new IllegalStateException("Not connected to an IRC server.");
         }
-        final String target = chatroom.getIdentifier();
-        // message format as forwarded by IRC server to clients:
-        // :<user> PRIVMSG <nick> :<message>
-        final int maxMsgSize = calculateMaximumMessageSize(0, target);
-        if (maxMsgSize < message.length())
-        {
-            LOGGER.warn("Message for " + target
-                + " is too large. At best you can send the message up to: "
-                + message.substring(0, maxMsgSize));
-            throw new OperationFailedException(
-                "Message is too large for this IRC server.",
-                OperationFailedException.ILLEGAL_ARGUMENT);
-        }
-        try
-        {
-            this.irc.message(target, message);
-            LOGGER.trace("Message delivered to server successfully.");
-        }
-        catch (RuntimeException e)
-        {
-            LOGGER.trace("Failed to deliver message: " + e.getMessage(), e);
-            throw e;
-        }
+        send(chatroom.getIdentifier(), message);
     }
 
     /**
@@ -286,7 +296,7 @@ public void message(final ChatRoomIrcImpl chatroom, final String message)
      * @param contact The contact to send the message to.
      * @param message The message to send.
      * @throws OperationFailedException OperationFailedException is thrown when
-     *             message is too large to be processed by IRC server.
+     *             the target leaves no room for a message.
      */
     public void message(final Contact contact, final Message message)
         throws OperationFailedException
@@ -295,26 +305,45 @@ public void message(final Contact contact, final Message message)
         {
             throw new IllegalStateException("Not connected to an IRC server.");
         }
-        final String target = contact.getAddress();
+        send(contact.getAddress(), message.getContent());
+    }
+
+    /**
+     * Send a message to a target. Messages that are too large for a single
+     * line are split in multiple messages. The messages are queued for
+     * delivery by the outbound scheduler.
+     *
+     * @param target the nick or channel to send the message to
+     * @param message the message
+     * @throws OperationFailedException in case the target leaves no room for
+     *             a message at all
+     */
+    private void send(final String target, final String message)
+        throws OperationFailedException
+    {
         // message format as forwarded by IRC server to clients:
         // :<user> PRIVMSG <nick> :<message>
         final int maxMsgSize = calculateMaximumMessageSize(0, target);
-        if (maxMsgSize < message.getContent().length())
+        if (maxMsgSize < 4)
         {
-            // Message is definitely too large to be sent to a standard IRC
-            // network. Sending is not attempted, since we would send a partial
-            // message, even though the user is not informed of this.
-            LOGGER.warn("Message for " + target
-                + " is too large. At best you can send the message up to: "
-                + message.getContent().substring(0, maxMsgSize));
             throw new OperationFailedException(
-                "Message is too large for this IRC server.",
+                "Target leaves no room for a message on this IRC server.",
                 OperationFailedException.ILLEGAL_ARGUMENT);
         }
         try
         {
-            this.irc.message(target, message.getContent());
-            LOGGER.trace("Message delivered to server successfully.");
+            final List<String> parts = Utils.splitMessage(message, maxMsgSize);
+            if (parts.size() > 1 && LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Message for " + target + " is too large for a "
+                    + "single line. Sending it in " + parts.size()
+                    + " parts.");
+            }
+            for (String part : parts)
+            {
+                this.irc.message(target, part);
+            }
+            LOGGER.trace("Message queued for delivery successfully.");
         }
         catch (RuntimeException e)
         {
@@ -353,7 +382,8 @@ public int calculateMaximumMessageSize(final ChatRoomIrcImpl room)
      *            value. (This may just save you in case of off-by-one errors by
      *            an IRC server.)
      * @param identifier the identifier
-     * @return Returns number of chars available for message.
+     * @return Returns number of bytes of UTF-8 encoded text available for
+     *         message.
      */
     private int calculateMaximumMessageSize(final int safety,
         final String identifier)
@@ -363,7 +393,8 @@ private int calculateMaximumMessageSize(final int safety,
         builder.append(" PRIVMSG ");
         builder.append(identifier);
         builder.append(" :");
-        return IRC_PROTOCOL_MAX_MESSAGE_SIZE - safety - builder.length();
+        return getMaxMessageSize() - safety
+            - Utils.utf8Length(builder.toString());
     }
 
     /**
@@ -36,6 +36,7 @@
  */
 public class OperationSetMultiUserChatIrcImpl
     extends AbstractOperationSetMultiUserChat
+    implements OperationSetChatRoomDirectory
 {
     /**
      * A call back to the IRC provider that created us.
@@ -91,6 +92,34 @@ public List<String> getExistingChatRooms() throws OperationFailedException
         return connection.getServerChannelLister().getList();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void searchChatRooms(final String query,
+        final ChatRoomDirectoryListener listener)
+        throws OperationFailedException
+    {
+        final IrcConnection connection =
+            this.ircProvider.getIrcStack().getConnection();
+        if (connection == null)
+        {
+            throw new OperationFailedException(
+                "Connection is not available.",
+                OperationFailedException.NETWORK_FAILURE);
+        }
+        try
+        {
+            connection.getServerChannelLister().search(
+                query == null ? "" : query, listener);
+        }
+        catch (IllegalStateException e)
+        {
+            throw new OperationFailedException(e.getMessage(),
+                OperationFailedException.NETWORK_FAILURE, e);
+        }
+    }
+
     /**
      * Returns a list of the chat rooms that we have joined and are currently
      * active in.
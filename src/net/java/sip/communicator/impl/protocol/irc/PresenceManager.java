@@ -34,7 +34,9 @@
  * There is support for online presence by polling (periodically querying IRC
  * server with ISON requests) for each of the members in the contact list or, if
  * supported by the IRC server, for the MONITOR command to subscribe to presence
- * notifications for the specified nick.
+ * notifications for the specified nick. MONITOR is preferred over WATCH. All
+ * periodic queries are done through the presence scheduler of the connection,
+ * which spreads ISON queries across the polling period.
  *
  * TODO Support for 'a' (Away) user mode. (Check this again, since I also see
  * 'a' used for other purposes. This may be one of those ambiguous letters that
@@ -133,11 +135,14 @@
      * @param config Client configuration
      * @param persistentNickWatchList persistent nick watch list to use (The
      *            sortedset implementation must be synchronized!)
+     * @param scheduler the presence scheduler shared by all presence queries
+     *            of the connection
      */
     public PresenceManager(final IRCApi irc, final IIRCState connectionState,
         final OperationSetPersistentPresenceIrcImpl operationSet,
         final ClientConfig config,
-        final SortedSet<String> persistentNickWatchList)
+        final SortedSet<String> persistentNickWatchList,
+        final PresenceScheduler scheduler)
     {
         if (connectionState == null)
         {
@@ -155,6 +160,10 @@ public PresenceManager(final IRCApi irc, final IIRCState connectionState,
             throw new IllegalArgumentException("irc cannot be null");
         }
         this.irc = irc;
+        if (scheduler == null)
+        {
+            throw new IllegalArgumentException("scheduler cannot be null");
+        }
         final SortedSet<String> nickWatchList;
         if (persistentNickWatchList == null)
         {
@@ -186,7 +195,7 @@ public PresenceManager(final IRCApi irc, final IIRCState connectionState,
             this.watcher =
                 new MonitorPresenceWatcher(this.irc, this.connectionState,
                     nickWatchList, monitoredNicks, this.operationSet,
-                    this.isupportMonitor);
+                    this.isupportMonitor, scheduler);
             if (enablePresencePolling)
             {
                 // Enable basic poller as fall back mechanism.
@@ -199,7 +208,8 @@ public PresenceManager(final IRCApi irc, final IIRCState connectionState,
                     new DynamicDifferenceSet<String>(nickWatchList,
                         monitoredNicks);
                 new BasicPollerPresenceWatcher(this.irc, this.connectionState,
-                    this.operationSet, unmonitoredNicks, this.serverIdentity);
+                    this.operationSet, unmonitoredNicks, this.serverIdentity,
+                    scheduler);
             }
         }
         else if (this.isupportWatch != null)
@@ -214,7 +224,7 @@ else if (this.isupportWatch != null)
             this.watcher =
                 new WatchPresenceWatcher(this.irc, this.connectionState,
                     nickWatchList, monitoredNicks, this.operationSet,
-                    this.isupportWatch);
+                    this.isupportWatch, scheduler);
             if (enablePresencePolling)
             {
                 // Enable basic poller as fall back mechanism.
@@ -227,7 +237,8 @@ else if (this.isupportWatch != null)
                     new DynamicDifferenceSet<String>(nickWatchList,
                         monitoredNicks);
                 new BasicPollerPresenceWatcher(this.irc, this.connectionState,
-                    this.operationSet, unmonitoredNicks, this.serverIdentity);
+                    this.operationSet, unmonitoredNicks, this.serverIdentity,
+                    scheduler);
             }
         }
         else if (enablePresencePolling)
@@ -235,7 +246,8 @@ else if (enablePresencePolling)
             // Enable basic poller as the only presence mechanism.
             this.watcher =
                 new BasicPollerPresenceWatcher(this.irc, this.connectionState,
-                    this.operationSet, nickWatchList, this.serverIdentity);
+                    this.operationSet, nickWatchList, this.serverIdentity,
+                    scheduler);
         } else {
             this.watcher = null;
         }
@@ -0,0 +1,311 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Scheduler for the periodic presence queries of an IRC connection.
+ *
+ * A single timer is shared by the contact presence watchers and all joined
+ * channels. The period is divided in a number of slots. Periodic tasks are
+ * assigned to the least busy slot, such that queries for different channels
+ * are spread across the period instead of being sent all at once. Tasks that
+ * can divide their work themselves, such as the ISON poller, are run every
+ * slot and are expected to do a corresponding part of the work each time.
+ */
+public class PresenceScheduler
+{
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger
+        .getLogger(PresenceScheduler.class);
+
+    /**
+     * Default period in which all presence queries are done once.
+     */
+    public static final long DEFAULT_PERIOD = 60000L;
+
+    /**
+     * Number of slots in which the period is divided.
+     */
+    private static final int SLOTS = 12;
+
+    /**
+     * The timer which runs all tasks.
+     */
+    private final Timer timer = new Timer("IRC presence scheduler", true);
+
+    /**
+     * Registrations of periodic tasks per slot.
+     */
+    private final List<List<Registration>> slots =
+        new ArrayList<List<Registration>>(SLOTS);
+
+    /**
+     * Registrations of tasks that run every slot.
+     */
+    private final List<Registration> spread = new ArrayList<Registration>();
+
+    /**
+     * The number of slots that have passed. Guarded by {@link #slots}.
+     */
+    private long ticks = 0;
+
+    /**
+     * Flag indicating that the scheduler has been stopped. Guarded by
+     * {@link #slots}.
+     */
+    private boolean stopped = false;
+
+    /**
+     * Constructor.
+     *
+     * @param period the period in milliseconds in which every periodic task
+     *            runs once
+     */
+    public PresenceScheduler(final long period)
+    {
+        if (period < SLOTS)
+        {
+            throw new IllegalArgumentException("period is too short");
+        }
+        for (int i = 0; i < SLOTS; i++)
+        {
+            this.slots.add(new ArrayList<Registration>());
+        }
+        final long slotPeriod = period / SLOTS;
+        this.timer.scheduleAtFixedRate(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        }, slotPeriod, slotPeriod);
+    }
+
+    /**
+     * Get the number of slots in which the period is divided. This is the
+     * number of times a task registered with {@link #scheduleSpread(Runnable)}
+     * is run in one period.
+     *
+     * @return returns the number of slots
+     */
+    public int getSlots()
+    {
+        return SLOTS;
+    }
+
+    /**
+     * Schedule a task that runs once every period. The first run happens after
+     * a full period.
+     *
+     * @param task the task
+     * @return returns the registration which can be used to cancel the task
+     */
+    public Registration schedule(final Runnable task)
+    {
+        if (task == null)
+        {
+            throw new IllegalArgumentException("task cannot be null");
+        }
+        synchronized (this.slots)
+        {
+            List<Registration> slot = this.slots.get(0);
+            for (List<Registration> candidate : this.slots)
+            {
+                if (candidate.size() < slot.size())
+                {
+                    slot = candidate;
+                }
+            }
+            final Registration registration =
+                new Registration(task, slot, this.ticks + SLOTS);
+            if (!this.stopped)
+            {
+                slot.add(registration);
+            }
+            return registration;
+        }
+    }
+
+    /**
+     * Schedule a task that runs every slot, i.e. {@link #getSlots()} times per
+     * period.
+     *
+     * @param task the task
+     * @return returns the registration which can be used to cancel the task
+     */
+    public Registration scheduleSpread(final Runnable task)
+    {
+        if (task == null)
+        {
+            throw new IllegalArgumentException("task cannot be null");
+        }
+        synchronized (this.slots)
+        {
+            final Registration registration =
+                new Registration(task, this.spread, 0);
+            if (!this.stopped)
+            {
+                this.spread.add(registration);
+            }
+            return registration;
+        }
+    }
+
+    /**
+     * Run a task once after a delay.
+     *
+     * @param task the task
+     * @param delay the delay in milliseconds
+     */
+    public void execute(final Runnable task, final long delay)
+    {
+        if (task == null)
+        {
+            throw new IllegalArgumentException("task cannot be null");
+        }
+        synchronized (this.slots)
+        {
+            if (this.stopped)
+            {
+                return;
+            }
+            this.timer.schedule(new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    PresenceScheduler.run(task);
+                }
+            }, delay);
+        }
+    }
+
+    /**
+     * Stop the scheduler. All registered tasks are cancelled.
+     */
+    public void stop()
+    {
+        synchronized (this.slots)
+        {
+            this.stopped = true;
+            for (List<Registration> slot : this.slots)
+            {
+                slot.clear();
+            }
+            this.spread.clear();
+            this.timer.cancel();
+        }
+        LOGGER.debug("Presence scheduler stopped.");
+    }
+
+    /**
+     * Run the tasks of the current slot and the tasks that run every slot.
+     */
+    private void tick()
+    {
+        final List<Registration> due = new ArrayList<Registration>();
+        synchronized (this.slots)
+        {
+            final long tick = this.ticks++;
+            due.addAll(this.spread);
+            for (Registration registration : this.slots
+                .get((int) (tick % SLOTS)))
+            {
+                if (registration.firstTick <= tick)
+                {
+                    due.add(registration);
+                }
+            }
+        }
+        for (Registration registration : due)
+        {
+            run(registration.task);
+        }
+    }
+
+    /**
+     * Run a task, such that a failing task does not stop the timer.
+     *
+     * @param task the task
+     */
+    private static void run(final Runnable task)
+    {
+        try
+        {
+            task.run();
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.warn("Presence task failed.", e);
+        }
+    }
+
+    /**
+     * Registration of a task.
+     */
+    public final class Registration
+    {
+        /**
+         * The task.
+         */
+        private final Runnable task;
+
+        /**
+         * The list containing the registration.
+         */
+        private final List<Registration> owner;
+
+        /**
+         * The first tick at which the task may run.
+         */
+        private final long firstTick;
+
+        /**
+         * Constructor.
+         *
+         * @param task the task
+         * @param owner the list containing the registration
+         * @param firstTick the first tick at which the task may run
+         */
+        private Registration(final Runnable task,
+            final List<Registration> owner, final long firstTick)
+        {
+            this.task = task;
+            this.owner = owner;
+            this.firstTick = firstTick;
+        }
+
+        /**
+         * Cancel the task.
+         */
+        public void cancel()
+        {
+            synchronized (PresenceScheduler.this.slots)
+            {
+                this.owner.remove(this);
+            }
+        }
+    }
+}
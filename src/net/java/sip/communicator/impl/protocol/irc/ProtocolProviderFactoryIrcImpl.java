@@ -69,6 +69,19 @@
     public static final String RESOLVE_DNS_THROUGH_PROXY =
         "RESOLVE_DNS_THROUGH_PROXY";
 
+    /**
+     * Property for the number of commands that may be sent to the IRC server
+     * back-to-back before flood control kicks in.
+     */
+    public static final String FLOOD_CONTROL_BURST = "FLOOD_CONTROL_BURST";
+
+    /**
+     * Property for the interval in milliseconds in which one command may be
+     * sent to the IRC server once the burst has been used up.
+     */
+    public static final String FLOOD_CONTROL_INTERVAL =
+        "FLOOD_CONTROL_INTERVAL";
+
  /**
      * Constructor.
      */
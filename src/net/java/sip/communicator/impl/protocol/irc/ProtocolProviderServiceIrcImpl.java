@@ -133,6 +133,10 @@ protected void initialize(final String userID, final AccountID accountID)
             addSupportedOperationSet(
                 OperationSetMultiUserChat.class,
                 multiUserChat);
+            // Register incremental chat room search support.
+            addSupportedOperationSet(
+                OperationSetChatRoomDirectory.class,
+                multiUserChat);
 
             // Initialize basic instant messaging
             this.instantMessaging =
@@ -279,6 +283,15 @@ public void register(final SecurityAuthority authority)
             accountID.getAccountPropertyBoolean(
                 ProtocolProviderFactoryIrcImpl.CONTACT_PRESENCE_TASK, true);
 
+        int floodControlBurst =
+            accountID.getAccountPropertyInt(
+                ProtocolProviderFactoryIrcImpl.FLOOD_CONTROL_BURST,
+                ScheduledIRCApi.DEFAULT_BURST);
+        int floodControlInterval =
+            accountID.getAccountPropertyInt(
+                ProtocolProviderFactoryIrcImpl.FLOOD_CONTROL_INTERVAL,
+                (int) ScheduledIRCApi.DEFAULT_INTERVAL);
+
         boolean saslEnabled = accountID.getAccountPropertyBoolean(
                 ProtocolProviderFactoryIrcImpl.SASL_ENABLED, false);
         String saslUser = accountID.getAccountPropertyString(
@@ -335,6 +348,8 @@ public void register(final SecurityAuthority authority)
         final Proxy proxy = loadProxy();
         config.setProxy(proxy);
         config.setResolveByProxy(resolveDnsThroughProxy);
+        config.setFloodControlBurst(Math.max(1, floodControlBurst));
+        config.setFloodControlInterval(Math.max(0, floodControlInterval));
         if (saslEnabled)
         {
             final SASLImpl sasl =
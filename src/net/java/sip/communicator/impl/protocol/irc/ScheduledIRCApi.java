@@ -0,0 +1,1342 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+import com.ircclouds.irc.api.*;
+import com.ircclouds.irc.api.ctcp.*;
+import com.ircclouds.irc.api.domain.*;
+import com.ircclouds.irc.api.domain.messages.*;
+import com.ircclouds.irc.api.filters.*;
+import com.ircclouds.irc.api.listeners.*;
+import com.ircclouds.irc.api.state.*;
+
+/**
+ * Outbound scheduler for IRCApi.
+ *
+ * Commands are not sent by the calling thread. Instead they are queued and
+ * sent by a single dispatcher thread, such that callers never block on the
+ * connection. The dispatcher enforces a token bucket rate limit: at most
+ * <tt>burst</tt> commands are sent back-to-back, after which one command is
+ * sent per <tt>interval</tt>. This keeps the client below the flood limits of
+ * the server, instead of getting disconnected for excess flood.
+ *
+ * Commands are queued in lanes by {@link Priority}: presence related commands
+ * go before messages, which go before bulk queries such as WHO and LIST.
+ * Within a lane the order is preserved. Channel joins that are queued at the
+ * same time are sent as a single comma-separated JOIN command. Their
+ * completion is tracked by the scheduler, since the IRC library only tracks
+ * joins it has sent itself.
+ *
+ * Methods that do not send anything, such as (un)registering listeners, are
+ * passed on directly.
+ */
+public class ScheduledIRCApi
+    implements IRCApi
+{
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = Logger
+        .getLogger(ScheduledIRCApi.class);
+
+    /**
+     * Default number of commands that may be sent back-to-back.
+     */
+    public static final int DEFAULT_BURST = 5;
+
+    /**
+     * Default interval in milliseconds in which a new command may be sent once
+     * the burst has been used up.
+     */
+    public static final long DEFAULT_INTERVAL = 2000L;
+
+    /**
+     * Maximum length of a coalesced JOIN command, excluding CRLF.
+     */
+    private static final int MAX_JOIN_LENGTH =
+        MessageManager.IRC_PROTOCOL_MAX_MESSAGE_SIZE;
+
+    /**
+     * Length of the JOIN command's parts other than channels and keys: the
+     * command name and the spaces preceding the channels and the keys.
+     */
+    private static final int JOIN_PREFIX_LENGTH = "JOIN  ".length();
+
+    /**
+     * Ratio of milliseconds to nanoseconds for conversions.
+     */
+    private static final long RATIO_MILLISECONDS_TO_NANOSECONDS = 1000000L;
+
+    /**
+     * Commands sent in the high priority lane.
+     */
+    private static final Set<String> HIGH_PRIORITY_COMMANDS =
+        new HashSet<String>(Arrays.asList("AWAY", "ISON", "MONITOR", "NICK",
+            "PONG", "QUIT", "WATCH"));
+
+    /**
+     * Commands sent in the low priority lane.
+     */
+    private static final Set<String> LOW_PRIORITY_COMMANDS =
+        new HashSet<String>(Arrays.asList("LIST", "NAMES", "WHO", "WHOIS",
+            "WHOWAS"));
+
+    /**
+     * Priority lanes for outbound commands.
+     */
+    public static enum Priority
+    {
+        /**
+         * Presence related commands that should not wait for messages.
+         */
+        HIGH,
+        /**
+         * Messages and channel operations.
+         */
+        NORMAL,
+        /**
+         * Bulk queries.
+         */
+        LOW
+    }
+
+    /**
+     * The IRCApi instance that actually sends the commands.
+     */
+    private final IRCApi irc;
+
+    /**
+     * Connection state.
+     */
+    private final IIRCState connectionState;
+
+    /**
+     * Number of commands that may be sent back-to-back.
+     */
+    private final int burst;
+
+    /**
+     * Interval in nanoseconds in which a new token is added to the bucket.
+     */
+    private final long interval;
+
+    /**
+     * Lock guarding the lanes, the token bucket and the pending joins.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Queued commands per priority.
+     */
+    private final EnumMap<Priority, LinkedList<Task>> lanes =
+        new EnumMap<Priority, LinkedList<Task>>(Priority.class);
+
+    /**
+     * Joins that have been sent but not completed, by lower case channel name.
+     */
+    private final Map<String, Callback<IRCChannel>> pendingJoins =
+        new HashMap<String, Callback<IRCChannel>>();
+
+    /**
+     * Number of available tokens.
+     */
+    private int tokens;
+
+    /**
+     * Time at which the last token was added.
+     */
+    private long lastRefill;
+
+    /**
+     * Dispatcher thread, <tt>null</tt> until the scheduler is started.
+     */
+    private Thread dispatcher = null;
+
+    /**
+     * Flag indicating that the scheduler has been stopped.
+     */
+    private boolean stopped = false;
+
+    /**
+     * Constructor.
+     *
+     * @param irc the IRCApi instance used to send the commands
+     * @param connectionState the connection state
+     * @param burst the number of commands that may be sent back-to-back
+     * @param interval the interval in milliseconds in which a new command may
+     *            be sent once the burst has been used up
+     */
+    public ScheduledIRCApi(final IRCApi irc, final IIRCState connectionState,
+        final int burst, final long interval)
+    {
+        if (irc == null)
+        {
+            throw new IllegalArgumentException("irc instance cannot be null");
+        }
+        this.irc = irc;
+        if (connectionState == null)
+        {
+            throw new IllegalArgumentException(
+                "connectionState cannot be null");
+        }
+        this.connectionState = connectionState;
+        if (burst < 1)
+        {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        this.burst = burst;
+        if (interval < 0)
+        {
+            throw new IllegalArgumentException("interval cannot be negative");
+        }
+        this.interval = interval * RATIO_MILLISECONDS_TO_NANOSECONDS;
+        for (Priority priority : Priority.values())
+        {
+            this.lanes.put(priority, new LinkedList<Task>());
+        }
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+        this.irc.addListener(new JoinListener());
+    }
+
+    /**
+     * Start the dispatcher thread. Commands queued before are sent once the
+     * scheduler is started.
+     */
+    public void start()
+    {
+        synchronized (this.lock)
+        {
+            if (this.dispatcher != null || this.stopped)
+            {
+                return;
+            }
+            this.dispatcher = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    dispatch();
+                }
+            }, "IRC outbound scheduler");
+            this.dispatcher.setDaemon(true);
+            this.dispatcher.start();
+        }
+    }
+
+    /**
+     * Stop the scheduler. Queued commands are discarded and pending joins
+     * fail.
+     */
+    public void stop()
+    {
+        final List<Task> discarded = new ArrayList<Task>();
+        synchronized (this.lock)
+        {
+            this.stopped = true;
+            for (LinkedList<Task> lane : this.lanes.values())
+            {
+                discarded.addAll(lane);
+                lane.clear();
+            }
+            this.lock.notifyAll();
+        }
+        if (LOGGER.isDebugEnabled() && !discarded.isEmpty())
+        {
+            LOGGER.debug("Discarding " + discarded.size()
+                + " queued commands.");
+        }
+        final Exception e = new IllegalStateException("Connection closed.");
+        for (Task task : discarded)
+        {
+            task.discard(e);
+        }
+        failPendingJoins(e);
+    }
+
+    /**
+     * Get the number of queued commands.
+     *
+     * @return returns the number of commands waiting to be sent
+     */
+    public int getQueueSize()
+    {
+        synchronized (this.lock)
+        {
+            int size = 0;
+            for (LinkedList<Task> lane : this.lanes.values())
+            {
+                size += lane.size();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Queue a task.
+     *
+     * @param priority the lane
+     * @param task the task
+     */
+    private void submit(final Priority priority, final Task task)
+    {
+        synchronized (this.lock)
+        {
+            if (!this.stopped)
+            {
+                this.lanes.get(priority).add(task);
+                this.lock.notifyAll();
+                return;
+            }
+        }
+        task.discard(new IllegalStateException("Connection closed."));
+    }
+
+    /**
+     * Dispatcher loop: take the first task of the highest priority lane as
+     * soon as a token is available and execute it.
+     */
+    private void dispatch()
+    {
+        while (true)
+        {
+            Task task = null;
+            synchronized (this.lock)
+            {
+                try
+                {
+                    while (!this.stopped && (task = poll()) == null)
+                    {
+                        this.lock.wait();
+                    }
+                    if (this.stopped)
+                    {
+                        return;
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    LOGGER.warn("Outbound scheduler interrupted.", e);
+                    return;
+                }
+            }
+            try
+            {
+                task.execute();
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.warn("Failed to send IRC command.", e);
+            }
+        }
+    }
+
+    /**
+     * Take the next task of the highest priority lane. Waits for the next
+     * token if tasks are queued but the burst has been used up. Must be called
+     * while holding the lock.
+     *
+     * @return returns the next task or <tt>null</tt> if no tasks are queued or
+     *         the scheduler is stopped
+     * @throws InterruptedException in case of interruption while waiting for
+     *             the next token
+     */
+    private Task poll() throws InterruptedException
+    {
+        while (!this.stopped)
+        {
+            LinkedList<Task> lane = null;
+            for (LinkedList<Task> candidate : this.lanes.values())
+            {
+                if (!candidate.isEmpty())
+                {
+                    lane = candidate;
+                    break;
+                }
+            }
+            if (lane == null)
+            {
+                return null;
+            }
+            refill();
+            if (this.tokens > 0)
+            {
+                this.tokens--;
+                return take(lane);
+            }
+            final long wait =
+                this.lastRefill + this.interval - System.nanoTime();
+            if (wait > 0)
+            {
+                // The lanes may change in the mean time, so start over after
+                // waiting.
+                this.lock.wait(wait / RATIO_MILLISECONDS_TO_NANOSECONDS,
+                    (int) (wait % RATIO_MILLISECONDS_TO_NANOSECONDS));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add the tokens that have become available since the last refill. Must
+     * be called while holding the lock.
+     */
+    private void refill()
+    {
+        if (this.interval == 0)
+        {
+            this.tokens = this.burst;
+            return;
+        }
+        final long now = System.nanoTime();
+        final long refill = (now - this.lastRefill) / this.interval;
+        if (refill == 0)
+        {
+            return;
+        }
+        if (this.tokens + refill >= this.burst)
+        {
+            this.tokens = this.burst;
+            this.lastRefill = now;
+        }
+        else
+        {
+            this.tokens += (int) refill;
+            this.lastRefill += refill * this.interval;
+        }
+    }
+
+    /**
+     * Take the first task of a lane. Joins are coalesced with the other joins
+     * queued in the same lane. Must be called while holding the lock.
+     *
+     * @param lane the lane
+     * @return returns the task
+     */
+    private Task take(final LinkedList<Task> lane)
+    {
+        final Task task = lane.removeFirst();
+        if (task instanceof JoinTask)
+        {
+            return coalesce((JoinTask) task, lane);
+        }
+        return task;
+    }
+
+    /**
+     * Coalesce the joins directly following the first one in a lane with it,
+     * as long as the resulting JOIN command fits in a single line. Stops at
+     * the first other task, since joins must not overtake it (e.g. a PART of
+     * a channel followed by a JOIN of the same channel). Must be called while
+     * holding the lock.
+     *
+     * @param first the first join
+     * @param lane the lane containing further joins
+     * @return returns the (coalesced) join
+     */
+    private Task coalesce(final JoinTask first, final LinkedList<Task> lane)
+    {
+        final List<JoinTask> joins = new ArrayList<JoinTask>();
+        joins.add(first);
+        // "JOIN " and the space separating channels from keys
+        int length = JOIN_PREFIX_LENGTH + first.length();
+        final Iterator<Task> it = lane.iterator();
+        while (it.hasNext())
+        {
+            final Task task = it.next();
+            if (!(task instanceof JoinTask))
+            {
+                break;
+            }
+            final JoinTask join = (JoinTask) task;
+            // separating comma for channel and possibly for key
+            if (length + join.length() + 2 > MAX_JOIN_LENGTH)
+            {
+                break;
+            }
+            length += join.length() + 2;
+            joins.add(join);
+            it.remove();
+        }
+        if (joins.size() == 1)
+        {
+            return first;
+        }
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Coalescing " + joins.size() + " channel joins.");
+        }
+        return new CoalescedJoinTask(joins);
+    }
+
+    /**
+     * Determine the lane of a raw command.
+     *
+     * @param message the raw command
+     * @return returns the priority of the command
+     */
+    static Priority classify(final String message)
+    {
+        final int end = message.indexOf(' ');
+        final String command =
+            (end == -1 ? message : message.substring(0, end)).toUpperCase();
+        if (HIGH_PRIORITY_COMMANDS.contains(command))
+        {
+            return Priority.HIGH;
+        }
+        if (LOW_PRIORITY_COMMANDS.contains(command))
+        {
+            return Priority.LOW;
+        }
+        return Priority.NORMAL;
+    }
+
+    /**
+     * Register a join as pending until the server confirms or rejects it.
+     *
+     * @param channel the channel name
+     * @param callback the callback, may be null
+     */
+    private void registerJoin(final String channel,
+        final Callback<IRCChannel> callback)
+    {
+        if (callback == null)
+        {
+            return;
+        }
+        synchronized (this.lock)
+        {
+            this.pendingJoins.put(channel.toLowerCase(), callback);
+        }
+    }
+
+    /**
+     * Remove a pending join.
+     *
+     * @param channel the channel name
+     * @return returns the callback of the join or <tt>null</tt> if the join
+     *         was not pending
+     */
+    private Callback<IRCChannel> removeJoin(final String channel)
+    {
+        synchronized (this.lock)
+        {
+            return this.pendingJoins.remove(channel.toLowerCase());
+        }
+    }
+
+    /**
+     * Fail all pending joins.
+     *
+     * @param e the cause
+     */
+    private void failPendingJoins(final Exception e)
+    {
+        final List<Callback<IRCChannel>> callbacks;
+        synchronized (this.lock)
+        {
+            callbacks =
+                new ArrayList<Callback<IRCChannel>>(this.pendingJoins.values());
+            this.pendingJoins.clear();
+        }
+        for (Callback<IRCChannel> callback : callbacks)
+        {
+            callback.onFailure(e);
+        }
+    }
+
+    /**
+     * Find a joined channel in the connection state.
+     *
+     * @param name the channel name
+     * @return returns the channel or <tt>null</tt> if it is not found
+     */
+    private IRCChannel findChannel(final String name)
+    {
+        final IRCChannel channel = this.connectionState.getChannelByName(name);
+        if (channel != null)
+        {
+            return channel;
+        }
+        for (IRCChannel candidate : this.connectionState.getChannels())
+        {
+            if (candidate.getName().equalsIgnoreCase(name))
+            {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void connect(final IServerParameters aServerParameters,
+        final Callback<IIRCState> aCallback)
+    {
+        this.irc.connect(aServerParameters, aCallback);
+    }
+
+    @Override
+    public void connect(final IServerParameters aServerParameters,
+        final Callback<IIRCState> aCallback,
+        final CapabilityNegotiator negotiator)
+    {
+        this.irc.connect(aServerParameters, aCallback, negotiator);
+    }
+
+    @Override
+    public void disconnect()
+    {
+        stop();
+        this.irc.disconnect();
+    }
+
+    @Override
+    public void disconnect(final String aQuitMessage)
+    {
+        stop();
+        this.irc.disconnect(aQuitMessage);
+    }
+
+    @Override
+    public void joinChannel(final String aChannelName)
+    {
+        joinChannel(aChannelName, "", null);
+    }
+
+    @Override
+    public void joinChannel(final String aChannelName,
+        final Callback<IRCChannel> aCallback)
+    {
+        joinChannel(aChannelName, "", aCallback);
+    }
+
+    @Override
+    public void joinChannel(final String aChannelName, final String aKey)
+    {
+        joinChannel(aChannelName, aKey, null);
+    }
+
+    @Override
+    public void joinChannel(final String aChannelName, final String aKey,
+        final Callback<IRCChannel> aCallback)
+    {
+        submit(Priority.NORMAL, new JoinTask(aChannelName, aKey, aCallback));
+    }
+
+    @Override
+    public void leaveChannel(final String aChannelName)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.leaveChannel(aChannelName);
+            }
+        });
+    }
+
+    @Override
+    public void leaveChannel(final String aChannelName,
+        final Callback<String> aCallback)
+    {
+        submit(Priority.NORMAL, new CallbackTask<String>(aCallback)
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.leaveChannel(aChannelName, aCallback);
+            }
+        });
+    }
+
+    @Override
+    public void leaveChannel(final String aChannelName,
+        final String aPartMessage)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.leaveChannel(aChannelName,
+                    aPartMessage);
+            }
+        });
+    }
+
+    @Override
+    public void leaveChannel(final String aChannelName,
+        final String aPartMessage, final Callback<String> aCallback)
+    {
+        submit(Priority.NORMAL, new CallbackTask<String>(aCallback)
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.leaveChannel(aChannelName,
+                    aPartMessage, aCallback);
+            }
+        });
+    }
+
+    @Override
+    public void changeNick(final String aNewNick)
+    {
+        submit(Priority.HIGH, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.changeNick(aNewNick);
+            }
+        });
+    }
+
+    @Override
+    public void changeNick(final String aNewNick,
+        final Callback<String> aCallback)
+    {
+        submit(Priority.HIGH, new CallbackTask<String>(aCallback)
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.changeNick(aNewNick, aCallback);
+            }
+        });
+    }
+
+    @Override
+    public void message(final String aTarget, final String aMessage)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.message(aTarget, aMessage);
+            }
+        });
+    }
+
+    @Override
+    public void message(final String aTarget, final String aMessage,
+        final Callback<String> aCallback)
+    {
+        submit(Priority.NORMAL, new CallbackTask<String>(aCallback)
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.message(aTarget, aMessage, aCallback);
+            }
+        });
+    }
+
+    @Override
+    public void act(final String aTarget, final String aMessage)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.act(aTarget, aMessage);
+            }
+        });
+    }
+
+    @Override
+    public void act(final String aTarget, final String aMessage,
+        final Callback<String> aCallback)
+    {
+        submit(Priority.NORMAL, new CallbackTask<String>(aCallback)
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.act(aTarget, aMessage, aCallback);
+            }
+        });
+    }
+
+    @Override
+    public void notice(final String aTarget, final String aMessage)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.notice(aTarget, aMessage);
+            }
+        });
+    }
+
+    @Override
+    public void notice(final String aTarget, final String aMessage,
+        final Callback<String> aCallback)
+    {
+        submit(Priority.NORMAL, new CallbackTask<String>(aCallback)
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.notice(aTarget, aMessage, aCallback);
+            }
+        });
+    }
+
+    @Override
+    public void kick(final String aChannel, final String aNick)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.kick(aChannel, aNick);
+            }
+        });
+    }
+
+    @Override
+    public void kick(final String aChannel, final String aNick,
+        final String aKickMessage)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.kick(aChannel, aNick, aKickMessage);
+            }
+        });
+    }
+
+    @Override
+    public void kick(final String aChannel, final String aNick,
+        final Callback<String> aCallback)
+    {
+        submit(Priority.NORMAL, new CallbackTask<String>(aCallback)
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.kick(aChannel, aNick, aCallback);
+            }
+        });
+    }
+
+    @Override
+    public void kick(final String aChannel, final String aNick,
+        final String aKickMessage, final Callback<String> aCallback)
+    {
+        submit(Priority.NORMAL, new CallbackTask<String>(aCallback)
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.kick(aChannel, aNick, aKickMessage,
+                    aCallback);
+            }
+        });
+    }
+
+    @Override
+    public void changeTopic(final String aChannel, final String aTopic)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.changeTopic(aChannel, aTopic);
+            }
+        });
+    }
+
+    @Override
+    public void changeMode(final String aModeString)
+    {
+        submit(Priority.NORMAL, new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.changeMode(aModeString);
+            }
+        });
+    }
+
+    @Override
+    public void rawMessage(final String aMessage)
+    {
+        submit(classify(aMessage), new Task()
+        {
+            @Override
+            void execute()
+            {
+                ScheduledIRCApi.this.irc.rawMessage(aMessage);
+            }
+        });
+    }
+
+    @Override
+    public void dccSend(final String aNick, final File aFile,
+        final DCCSendCallback aCallback)
+    {
+        this.irc.dccSend(aNick, aFile, aCallback);
+    }
+
+    @Override
+    public void dccSend(final String aNick, final File aFile,
+        final Integer aTimeout, final DCCSendCallback aCallback)
+    {
+        this.irc.dccSend(aNick, aFile, aTimeout, aCallback);
+    }
+
+    @Override
+    public void dccSend(final String aNick, final Integer aListeningPort,
+        final File aFile, final DCCSendCallback aCallback)
+    {
+        this.irc.dccSend(aNick, aListeningPort, aFile, aCallback);
+    }
+
+    @Override
+    public void dccSend(final String aNick, final File aFile,
+        final Integer aListeningPort, final Integer aTimeout,
+        final DCCSendCallback aCallback)
+    {
+        this.irc.dccSend(aNick, aFile, aListeningPort, aTimeout, aCallback);
+    }
+
+    @Override
+    public void dccAccept(final String aNick, final File aFile,
+        final Integer aPort, final Integer aResumePosition,
+        final DCCSendCallback aCallback)
+    {
+        this.irc.dccAccept(aNick, aFile, aPort, aResumePosition, aCallback);
+    }
+
+    @Override
+    public void dccAccept(final String aNick, final File aFile,
+        final Integer aPort, final Integer aResumePosition,
+        final Integer aTimeout, final DCCSendCallback aCallback)
+    {
+        this.irc.dccAccept(aNick, aFile, aPort, aResumePosition, aTimeout,
+            aCallback);
+    }
+
+    @Override
+    public void dccReceive(final File aFile, final Integer aSize,
+        final SocketAddress aAddress, final DCCReceiveCallback aCallback)
+    {
+        this.irc.dccReceive(aFile, aSize, aAddress, aCallback);
+    }
+
+    @Override
+    public void dccReceive(final File aFile, final Integer aSize,
+        final SocketAddress aAddress, final DCCReceiveCallback aCallback,
+        final Proxy aProxy)
+    {
+        this.irc.dccReceive(aFile, aSize, aAddress, aCallback, aProxy);
+    }
+
+    @Override
+    public void dccResume(final File aFile, final Integer aResumePosition,
+        final Integer aSize, final SocketAddress aAddress,
+        final DCCReceiveCallback aCallback)
+    {
+        this.irc.dccResume(aFile, aResumePosition, aSize, aAddress, aCallback);
+    }
+
+    @Override
+    public void dccResume(final File aFile, final Integer aResumePosition,
+        final Integer aSize, final SocketAddress aAddress,
+        final DCCReceiveCallback aCallback, final Proxy aProxy)
+    {
+        this.irc.dccResume(aFile, aResumePosition, aSize, aAddress, aCallback,
+            aProxy);
+    }
+
+    @Override
+    public DCCManager getDCCManager()
+    {
+        return this.irc.getDCCManager();
+    }
+
+    @Override
+    public void addListener(final IMessageListener aListener)
+    {
+        this.irc.addListener(aListener);
+    }
+
+    @Override
+    public void deleteListener(final IMessageListener aListener)
+    {
+        this.irc.deleteListener(aListener);
+    }
+
+    @Override
+    public void setMessageFilter(final IMessageFilter aFilter)
+    {
+        this.irc.setMessageFilter(aFilter);
+    }
+
+    /**
+     * A queued command.
+     */
+    private abstract static class Task
+    {
+        /**
+         * Send the command.
+         */
+        abstract void execute();
+
+        /**
+         * Notify that the command will not be sent.
+         *
+         * @param e the cause
+         */
+        void discard(final Exception e)
+        {
+        }
+    }
+
+    /**
+     * A queued command with a callback that needs to be notified in case the
+     * command is discarded.
+     *
+     * @param <T> the type of the callback result
+     */
+    private abstract static class CallbackTask<T>
+        extends Task
+    {
+        /**
+         * The callback.
+         */
+        private final Callback<T> callback;
+
+        /**
+         * Constructor.
+         *
+         * @param callback the callback
+         */
+        CallbackTask(final Callback<T> callback)
+        {
+            this.callback = callback;
+        }
+
+        @Override
+        void discard(final Exception e)
+        {
+            if (this.callback != null)
+            {
+                this.callback.onFailure(e);
+            }
+        }
+    }
+
+    /**
+     * A queued channel join.
+     */
+    private final class JoinTask
+        extends Task
+    {
+        /**
+         * The channel name.
+         */
+        private final String channel;
+
+        /**
+         * The channel key or <tt>null</tt> if none.
+         */
+        private final String key;
+
+        /**
+         * The callback or <tt>null</tt> if none.
+         */
+        private final Callback<IRCChannel> callback;
+
+        /**
+         * Constructor.
+         *
+         * @param channel the channel name
+         * @param key the channel key
+         * @param callback the callback
+         */
+        private JoinTask(final String channel, final String key,
+            final Callback<IRCChannel> callback)
+        {
+            if (channel == null)
+            {
+                throw new IllegalArgumentException("channel cannot be null");
+            }
+            this.channel = channel;
+            this.key = key == null || key.isEmpty() ? null : key;
+            this.callback = callback;
+        }
+
+        /**
+         * The number of characters needed for channel and key.
+         *
+         * @return returns the length
+         */
+        private int length()
+        {
+            return Utils.utf8Length(this.channel)
+                + (this.key == null ? 0 : Utils.utf8Length(this.key));
+        }
+
+        @Override
+        void execute()
+        {
+            registerJoin(this.channel, this.callback);
+            final StringBuilder command = new StringBuilder("JOIN ");
+            command.append(this.channel);
+            if (this.key != null)
+            {
+                command.append(' ').append(this.key);
+            }
+            ScheduledIRCApi.this.irc.rawMessage(command.toString());
+        }
+
+        @Override
+        void discard(final Exception e)
+        {
+            if (this.callback != null)
+            {
+                this.callback.onFailure(e);
+            }
+        }
+    }
+
+    /**
+     * Multiple channel joins sent as a single JOIN command.
+     */
+    private final class CoalescedJoinTask
+        extends Task
+    {
+        /**
+         * The joins.
+         */
+        private final List<JoinTask> joins;
+
+        /**
+         * Constructor.
+         *
+         * @param joins the joins to send
+         */
+        private CoalescedJoinTask(final List<JoinTask> joins)
+        {
+            this.joins = joins;
+        }
+
+        @Override
+        void execute()
+        {
+            // Keys are matched by position, so channels with keys go first.
+            final StringBuilder channels = new StringBuilder();
+            final StringBuilder keys = new StringBuilder();
+            for (JoinTask join : this.joins)
+            {
+                if (join.key != null)
+                {
+                    append(channels, join.channel);
+                    append(keys, join.key);
+                }
+            }
+            for (JoinTask join : this.joins)
+            {
+                if (join.key == null)
+                {
+                    append(channels, join.channel);
+                }
+                registerJoin(join.channel, join.callback);
+            }
+            final StringBuilder command = new StringBuilder("JOIN ");
+            command.append(channels);
+            if (keys.length() > 0)
+            {
+                command.append(' ').append(keys);
+            }
+            ScheduledIRCApi.this.irc.rawMessage(command.toString());
+        }
+
+        /**
+         * Append an item to a comma-separated list.
+         *
+         * @param list the list
+         * @param item the item
+         */
+        private void append(final StringBuilder list, final String item)
+        {
+            if (list.length() > 0)
+            {
+                list.append(',');
+            }
+            list.append(item);
+        }
+
+        @Override
+        void discard(final Exception e)
+        {
+            for (JoinTask join : this.joins)
+            {
+                join.discard(e);
+            }
+        }
+    }
+
+    /**
+     * Listener that completes pending joins once the server has sent the
+     * channel's member list, or rejected the join.
+     */
+    private final class JoinListener
+        extends VariousMessageListenerAdapter
+    {
+        /**
+         * End of channel member list.
+         */
+        private static final int RPL_ENDOFNAMES =
+            IRCServerNumerics.CHANNEL_NICKS_END_OF_LIST;
+
+        /**
+         * Channel forwarded to another channel.
+         */
+        private static final int ERR_LINKCHANNEL =
+            IRCServerNumerics.CHANNEL_FORWARD;
+
+        /**
+         * Too many channels joined.
+         */
+        private static final int ERR_TOOMANYCHANNELS = 405;
+
+        /**
+         * Channel temporarily unavailable.
+         */
+        private static final int ERR_UNAVAILRESOURCE = 437;
+
+        /**
+         * Bad channel mask.
+         */
+        private static final int ERR_BADCHANMASK = 476;
+
+        /**
+         * Registered nick required to join.
+         */
+        private static final int ERR_NEEDREGGEDNICK = 477;
+
+        /**
+         * Secure connection required to join.
+         */
+        private static final int ERR_SECUREONLYCHAN = 489;
+
+        /**
+         * Server numerics that reject a join, with the channel name as first
+         * parameter.
+         */
+        private final Set<Integer> rejections = new HashSet<Integer>(
+            Arrays.asList(IRCServerNumerics.NO_SUCH_CHANNEL,
+                ERR_TOOMANYCHANNELS, ERR_UNAVAILRESOURCE,
+                IRCServerNumerics.CHANNEL_CANNOT_JOIN_FULL,
+                IRCServerNumerics.CHANNEL_CANNOT_JOIN_INVITE,
+                IRCServerNumerics.CHANNEL_CANNOT_JOIN_BANNED,
+                IRCServerNumerics.CHANNEL_CANNOT_JOIN_KEYED, ERR_BADCHANMASK,
+                ERR_NEEDREGGEDNICK, ERR_SECUREONLYCHAN));
+
+        /**
+         * Complete or fail pending joins.
+         *
+         * @param msg the server numeric message
+         */
+        @Override
+        public void onServerNumericMessage(final ServerNumericMessage msg)
+        {
+            final int code = msg.getNumericCode();
+            final String text = msg.getText();
+            if (code != RPL_ENDOFNAMES && code != ERR_LINKCHANNEL
+                && !this.rejections.contains(code))
+            {
+                return;
+            }
+            final String[] params = text.split(" ", 3);
+            final Callback<IRCChannel> callback = removeJoin(params[0]);
+            if (callback == null)
+            {
+                return;
+            }
+            if (code == RPL_ENDOFNAMES)
+            {
+                final IRCChannel channel = findChannel(params[0]);
+                if (channel == null)
+                {
+                    callback.onFailure(new IRCException(
+                        "Channel state unavailable for " + params[0]));
+                }
+                else
+                {
+                    callback.onSuccess(channel);
+                }
+            }
+            else if (code == ERR_LINKCHANNEL && params.length > 1)
+            {
+                // Wait for the channel we are forwarded to instead.
+                registerJoin(params[1], callback);
+            }
+            else
+            {
+                callback.onFailure(new IRCException(text));
+            }
+        }
+
+        /**
+         * Errors signal a lost connection, so stop sending.
+         *
+         * @param msg the error message
+         */
+        @Override
+        public void onError(final ErrorMessage msg)
+        {
+            ScheduledIRCApi.this.irc.deleteListener(this);
+            failPendingJoins(new IRCException(msg.getText()));
+            stop();
+        }
+
+        /**
+         * Client errors signal a lost connection, so stop sending.
+         *
+         * @param msg the client error message
+         */
+        @Override
+        public void onClientError(final ClientErrorMessage msg)
+        {
+            ScheduledIRCApi.this.irc.deleteListener(this);
+            failPendingJoins(msg.getException());
+            stop();
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 import java.util.*;
 
+import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.*;
 
 import com.ircclouds.irc.api.*;
@@ -26,8 +27,16 @@
 import com.ircclouds.irc.api.state.*;
 
 /**
- * Server channel lister for retrieving initial list and managing channel cache
- * for its period as well as cleaning up cache after the cache has expired.
+ * Server channel lister for retrieving the list of channels and managing
+ * channel cache for its period as well as cleaning up cache after the cache
+ * has expired.
+ *
+ * Channels are collected in a {@link ChannelDirectory} as the LIST replies
+ * come in and searches are answered incrementally, so that the first results
+ * are available long before the server has finished listing. If the server
+ * advertises mask support in its ELIST ISUPPORT parameter, a search for a
+ * specific substring only asks the server for matching channels. Only one
+ * LIST command is in progress at a time.
  *
  * @author Danny van Heumen
  */
@@ -56,6 +65,35 @@
      */
     private static final long CHAT_ROOM_LIST_CACHE_EXPIRATION = 60000000000L;
 
+    /**
+     * Maximum number of channels delivered to a search listener at once.
+     */
+    private static final int BATCH_SIZE = 250;
+
+    /**
+     * Maximum time in milliseconds that found channels are held back in order
+     * to fill up a batch. Also the interval at which waiting searches check
+     * whether the connection is still available.
+     */
+    private static final long FLUSH_INTERVAL = 500L;
+
+    /**
+     * ELIST ISUPPORT token indicating support for mask searches.
+     */
+    private static final char ELIST_MASK_SEARCH = 'M';
+
+    /**
+     * Characters which have a special meaning in LIST masks. Queries
+     * containing these are not passed on to the server.
+     */
+    private static final String MASK_SPECIAL_CHARACTERS = "*?, ";
+
+    /**
+     * Timer for cleaning up outdated channel list caches.
+     */
+    private static final Timer CLEAN_UP_TIMER = new Timer(
+        "IRC channel list cache clean up", true);
+
     /**
      * IRCApi instance.
      *
@@ -69,13 +107,26 @@
     private final IIRCState connectionState;
 
     /**
-     * The cached channel list.
-     *
-     * Contained inside a simple container object in order to lock the container
-     * while accessing the contents.
+     * Lock guarding the in-progress listing and the cache.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The listing in progress, or <tt>null</tt> if no LIST command is in
+     * progress.
+     */
+    private Listing listing = null;
+
+    /**
+     * The directory of the last completed listing, or <tt>null</tt> if it has
+     * been cleaned up.
+     */
+    private ChannelDirectory cache = null;
+
+    /**
+     * Time at which the cached directory was completed.
      */
-    private final Container<List<String>> channellist =
-        new Container<List<String>>(null);
+    private long cacheTime;
 
     /**
      * Constructor.
@@ -106,163 +157,302 @@ public ServerChannelLister(final IRCApi irc,
      */
     public List<String> getList()
     {
-        LOGGER.trace("Start retrieve server chat room list.");
-        if (!connectionState.isConnected())
+        final List<String> list = new ArrayList<String>();
+        search("", new ChatRoomDirectoryListener()
+        {
+            @Override
+            public void chatRoomsFound(final List<String> chatRoomNames)
+            {
+                list.addAll(chatRoomNames);
+            }
+        });
+
+        if (LOGGER.isDebugEnabled())
+        {
+            // Report on number of channels to give an impression of the
+            // kind of result that will be returned.
+            LOGGER.debug("Server channel list contains " + list.size()
+                + " channels.");
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Search the channels available on the IRC server whose names contain the
+     * query, ignoring case. Matching channels are delivered to the listener
+     * from the calling thread, in batches, as they are received from the
+     * server. Returns once all matching channels have been delivered.
+     *
+     * @param query the substring to search for, the empty string matches all
+     *            channels
+     * @param listener the listener receiving the matching channels
+     */
+    public void search(final String query,
+        final ChatRoomDirectoryListener listener)
+    {
+        if (query == null)
+        {
+            throw new IllegalArgumentException("query cannot be null");
+        }
+        if (listener == null)
+        {
+            throw new IllegalArgumentException("listener cannot be null");
+        }
+        LOGGER.trace("Start server chat room search.");
+        if (!this.connectionState.isConnected())
         {
             throw new IllegalStateException("Not connected to an IRC server.");
         }
 
-        synchronized (this.channellist)
+        final Search search = new Search(query, listener);
+        synchronized (this.lock)
         {
-            List<String> list =
-                this.channellist.get(CHAT_ROOM_LIST_CACHE_EXPIRATION);
-            if (list == null)
+            while (true)
             {
-                LOGGER
-                    .trace("Chat room list null or outdated. Start retrieving "
-                        + "new chat room list.");
-                Result<List<String>, Exception> listSignal =
-                    new Result<List<String>, Exception>(
-                        new LinkedList<String>());
-                synchronized (listSignal)
+                if (this.listing != null)
                 {
+                    if (this.listing.directory.covers(query))
+                    {
+                        LOGGER.trace("Joining chat room listing in progress.");
+                        search.offerAll(this.listing.directory.search(query));
+                        this.listing.searches.add(search);
+                        break;
+                    }
+                    // Another listing is in progress that does not cover this
+                    // query. Wait for it to finish.
                     try
                     {
-                        this.irc
-                            .addListener(new ChannelListListener(listSignal));
-                        this.irc.rawMessage("LIST");
-                        while (!listSignal.isDone())
-                        {
-                            LOGGER.trace("Waiting for list ...");
-                            listSignal.wait();
-                        }
-                        LOGGER.trace("Done waiting for list.");
+                        this.lock.wait(FLUSH_INTERVAL);
                     }
                     catch (InterruptedException e)
                     {
                         LOGGER.warn("INTERRUPTED while waiting for list.", e);
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (!this.connectionState.isConnected())
+                    {
+                        return;
                     }
+                    continue;
                 }
-                list = listSignal.getValue();
-                this.channellist.set(list);
-                LOGGER.trace("Finished retrieving server chat room list.");
-
-                // Set timer to clean up the cache after use, since otherwise
-                // this data could stay in memory for a long time.
-                createCleanUpJob(this.channellist);
-            }
-            else
-            {
-                LOGGER.trace("Using cached list of server chat rooms.");
+                if (this.cache != null
+                    && System.nanoTime() - this.cacheTime
+                        <= CHAT_ROOM_LIST_CACHE_EXPIRATION
+                    && this.cache.covers(query))
+                {
+                    LOGGER.trace("Using cached list of server chat rooms.");
+                    search.offerAll(this.cache.search(query));
+                    search.finish();
+                    break;
+                }
+                LOGGER.trace("Chat room list null or outdated. Start "
+                    + "retrieving new chat room list.");
+                this.listing = new Listing(new ChannelDirectory(
+                    serverFilter(query)));
+                this.listing.searches.add(search);
+                this.irc.addListener(this.listing);
+                this.irc.rawMessage(this.listing.getCommand());
+                break;
             }
+        }
+        search.deliver();
+        LOGGER.trace("Finished server chat room search.");
+    }
 
-            if (LOGGER.isDebugEnabled())
+    /**
+     * Determine the substring by which the server should filter a listing for
+     * the query.
+     *
+     * @param query the query
+     * @return returns the filter or <tt>null</tt> if all channels should be
+     *         listed
+     */
+    private String serverFilter(final String query)
+    {
+        if (query.length() == 0)
+        {
+            return null;
+        }
+        for (int i = 0; i < query.length(); i++)
+        {
+            if (MASK_SPECIAL_CHARACTERS.indexOf(query.charAt(i)) >= 0)
             {
-                // Report on number of channels to give an impression of the
-                // kind of result that will be returned.
-                LOGGER.debug("Server channel list contains " + list.size()
-                    + " channels.");
+                return null;
             }
-
-            return Collections.unmodifiableList(list);
         }
+        final String elist =
+            this.connectionState.getServerOptions()
+                .getKey(ISupport.ELIST.name());
+        if (elist == null
+            || elist.toUpperCase().indexOf(ELIST_MASK_SEARCH) < 0)
+        {
+            return null;
+        }
+        return query;
     }
 
     /**
-     * Create a clean up job that checks the container after the cache has
-     * expired. If the container is still populated, then remove it. This clean
-     * up makes sure that there are no references left to an otherwise useless
+     * Schedule a clean up job that checks the cache after it has expired. If
+     * the cache still contains the directory, then remove it. This clean up
+     * makes sure that there are no references left to an otherwise useless
      * outdated list of channels.
      *
-     * @param channellist the container carrying the list of channel names
+     * @param directory the directory of channels that was cached
      */
-    private static void createCleanUpJob(
-        final Container<List<String>> channellist)
+    private void scheduleCleanUp(final ChannelDirectory directory)
     {
-        final Timer cleanUpJob = new Timer();
-        final long timestamp = channellist.getTimestamp();
-        cleanUpJob.schedule(new ChannelListCacheCleanUpTask(channellist,
-            timestamp), CHAT_ROOM_LIST_CACHE_EXPIRATION
-            / RATIO_MILLISECONDS_TO_NANOSECONDS + CACHE_CLEAN_UP_DELAY);
+        CLEAN_UP_TIMER.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (ServerChannelLister.this.lock)
+                {
+                    // Only clean up old cache if it has not been refreshed in
+                    // the mean time. If it has, another job is responsible
+                    // for the clean up.
+                    if (ServerChannelLister.this.cache != directory)
+                    {
+                        LOGGER.trace("Not cleaning up channel list cache. The "
+                            + "cache has been refreshed.");
+                        return;
+                    }
+                    ServerChannelLister.this.cache = null;
+                }
+                LOGGER.debug("Old channel list cache has been cleared.");
+            }
+        }, CHAT_ROOM_LIST_CACHE_EXPIRATION / RATIO_MILLISECONDS_TO_NANOSECONDS
+            + CACHE_CLEAN_UP_DELAY);
     }
 
     /**
-     * Task for cleaning up old channel list caches.
-     *
-     * @author Danny van Heumen
+     * A search waiting for channels from a listing in progress.
      */
-    private static final class ChannelListCacheCleanUpTask
-        extends TimerTask
+    private final class Search
     {
         /**
-         * Expected timestamp on which the list cache was created. It is used as
-         * an indicator to see whether the cache has been refreshed in the mean
-         * time.
+         * The substring to search for.
+         */
+        private final String query;
+
+        /**
+         * The listener receiving the matching channels.
+         */
+        private final ChatRoomDirectoryListener listener;
+
+        /**
+         * Matching channels not yet delivered.
+         */
+        private List<String> pending = new ArrayList<String>();
+
+        /**
+         * Whether all matching channels have been found.
          */
-        private final long timestamp;
+        private boolean done = false;
 
         /**
-         * Container holding the channel list cache.
+         * Constructor.
+         *
+         * @param query the substring to search for
+         * @param listener the listener receiving the matching channels
          */
-        private final Container<List<String>> container;
+        private Search(final String query,
+            final ChatRoomDirectoryListener listener)
+        {
+            this.query = query;
+            this.listener = listener;
+        }
 
         /**
-         * Construct new clean up job definition.
+         * Offer a matching channel.
          *
-         * @param listContainer container that holds the channel list cache
-         * @param timestamp expected timestamp of list cache creation
+         * @param name the channel name
          */
-        private ChannelListCacheCleanUpTask(
-            final Container<List<String>> listContainer, final long timestamp)
+        private synchronized void offer(final String name)
         {
-            if (listContainer == null)
+            this.pending.add(name);
+            if (this.pending.size() >= BATCH_SIZE)
             {
-                throw new IllegalArgumentException(
-                    "listContainer cannot be null");
+                notifyAll();
             }
-            this.container = listContainer;
-            this.timestamp = timestamp;
         }
 
         /**
-         * Remove the list reference from the container. But only if the
-         * timestamp matches. This makes sure that only one clean up job will
-         * clean up a list.
+         * Offer matching channels.
+         *
+         * @param names the channel names
          */
-        @Override
-        public void run()
+        private synchronized void offerAll(final List<String> names)
+        {
+            this.pending.addAll(names);
+            notifyAll();
+        }
+
+        /**
+         * Signal that all matching channels have been offered.
+         */
+        private synchronized void finish()
+        {
+            this.done = true;
+            notifyAll();
+        }
+
+        /**
+         * Deliver matching channels to the listener until all of them have
+         * been delivered or the connection is lost.
+         */
+        private void deliver()
         {
-            synchronized (this.container)
+            while (true)
             {
-                // Only clean up old cache if this is the dedicated task for it.
-                // If the timestamp has changed, another job is responsible for
-                // the clean up.
-                if (this.container.getTimestamp() != this.timestamp)
+                final List<String> batch;
+                final boolean last;
+                synchronized (this)
+                {
+                    if (!this.done && this.pending.size() < BATCH_SIZE)
+                    {
+                        try
+                        {
+                            wait(FLUSH_INTERVAL);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            LOGGER.warn("INTERRUPTED while waiting for list.",
+                                e);
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    batch = this.pending;
+                    this.pending = new ArrayList<String>();
+                    last = this.done;
+                }
+                if (!batch.isEmpty())
+                {
+                    this.listener.chatRoomsFound(
+                        Collections.unmodifiableList(batch));
+                }
+                if (last)
                 {
-                    LOGGER.trace("Not cleaning up channel list cache. The "
-                        + "timestamp does not match.");
                     return;
                 }
-                this.container.set(null);
+                if (!ServerChannelLister.this.connectionState.isConnected())
+                {
+                    LOGGER.debug("Connection lost while listing channels.");
+                    return;
+                }
             }
-            // We cannot clear the list itself, since the contents might still
-            // be in use by the UI, inside the immutable wrapper.
-            LOGGER.debug("Old channel list cache has been cleared.");
         }
     }
 
     /**
-     * Special listener that processes LIST replies and signals once the list is
-     * completely filled.
+     * Special listener that processes LIST replies, adds them to the
+     * directory and offers them to the searches that match.
      */
-    private final class ChannelListListener
+    private final class Listing
         extends AbstractIrcMessageListener
     {
-        /**
-         * Start of an IRC server channel listing reply.
-         */
-        private static final int RPL_LISTSTART = 321;
-
         /**
          * Continuation of an IRC server channel listing reply.
          */
@@ -274,73 +464,66 @@ public void run()
         private static final int RPL_LISTEND = 323;
 
         /**
-         * Reference to the provided list instance.
+         * The directory being filled.
+         */
+        private final ChannelDirectory directory;
+
+        /**
+         * Searches waiting for channels from this listing.
+         *
+         * Guarded by the lister's lock.
          */
-        private final Result<List<String>, Exception> signal;
+        private final List<Search> searches = new ArrayList<Search>();
 
         /**
-         * Constructor for channel list listener.
+         * Constructor for channel listing.
          *
-         * @param api irc-api library instance
-         * @param signal signal for sync signaling
+         * @param directory the directory to fill
          */
-        private ChannelListListener(
-            final Result<List<String>, Exception> signal)
+        private Listing(final ChannelDirectory directory)
         {
             super(ServerChannelLister.this.irc,
                 ServerChannelLister.this.connectionState);
-            this.signal = signal;
+            this.directory = directory;
+        }
+
+        /**
+         * Get the LIST command requesting the channels of this listing.
+         *
+         * @return returns the raw command
+         */
+        private String getCommand()
+        {
+            final String filter = this.directory.getFilter();
+            return filter == null ? "LIST" : "LIST *" + filter + "*";
         }
 
         /**
          * Act on LIST messages:
          * <pre>
-         * - 321 RPL_LISTSTART,
          * - 322 RPL_LIST,
          * - 323 RPL_LISTEND
          * </pre>
          *
-         * Clears the list upon starting. All received channels are added to the
-         * list. Upon receiving RPL_LISTEND finalize the list and signal the
-         * waiting thread that it can continue processing the list.
+         * All received channels are added to the directory and offered to
+         * matching searches. Upon receiving RPL_LISTEND finalize the directory
+         * and signal the waiting searches.
          *
          * @param msg The numeric server message.
          */
         @Override
         public void onServerNumericMessage(final ServerNumericMessage msg)
         {
-            if (this.signal.isDone())
-            {
-                return;
-            }
-
             switch (msg.getNumericCode())
             {
-            case RPL_LISTSTART:
-                synchronized (this.signal)
-                {
-                    this.signal.getValue().clear();
-                }
-                break;
             case RPL_LIST:
-                String channel = parse(msg.getText());
-                if (channel != null)
-                {
-                    synchronized (this.signal)
-                    {
-                        this.signal.getValue().add(channel);
-                    }
-                }
+                add(msg.getText());
                 break;
             case RPL_LISTEND:
-                synchronized (this.signal)
-                {
-                    // Done collecting channels. Remove listener and then we're
-                    // done.
-                    ServerChannelLister.this.irc.deleteListener(this);
-                    this.signal.setDone();
-                    this.signal.notifyAll();
-                }
+                // Done collecting channels. Remove listener and then we're
+                // done.
+                this.irc.deleteListener(this);
+                end(true);
                 break;
             // TODO Add support for REPLY 416: LIST :output too large, truncated
             default:
@@ -349,88 +532,140 @@ public void onServerNumericMessage(final ServerNumericMessage msg)
         }
 
         /**
-         * Parse an IRC server response RPL_LIST. Extract the channel name.
+         * Abort the listing when the local user quits.
          *
-         * @param text raw server response
-         * @return returns the channel name
+         * @param msg the quit message
          */
-        private String parse(final String text)
+        @Override
+        public void onUserQuit(final QuitMessage msg)
         {
-            int endOfChannelName = text.indexOf(' ');
-            if (endOfChannelName == -1)
+            super.onUserQuit(msg);
+            if (localUser(msg.getSource().getNick()))
             {
-                return null;
+                end(false);
             }
-            // Create a new string to make sure that the original (larger)
-            // strings can be GC'ed.
-            return new String(text.substring(0, endOfChannelName));
         }
-    }
 
-    /**
-     * Simplest possible container that we can use for locking while we're
-     * checking/modifying the contents.
-     *
-     * @param <T> The type of instance to store in the container
-     */
-    private static final class Container<T>
-    {
         /**
-         * The stored instance. (Can be null)
-         */
-        private T instance;
-
-        /**
-         * Time of stored instance.
-         */
-        private long time;
-
-        /**
-         * Constructor that immediately sets the instance.
+         * Abort the listing on fatal errors.
          *
-         * @param instance the instance to set
+         * @param msg the error message
          */
-        private Container(final T instance)
+        @Override
+        public void onError(final ErrorMessage msg)
         {
-            this.instance = instance;
-            this.time = System.nanoTime();
+            super.onError(msg);
+            end(false);
         }
 
         /**
-         * Conditionally get the stored instance. Get the instance when time
-         * difference is within specified bound. Otherwise return null.
+         * Abort the listing on fatal errors.
          *
-         * @param bound maximum time difference that is allowed.
-         * @return returns set value if within bounds, or null otherwise
+         * @param msg the error message
          */
-        public T get(final long bound)
+        @Override
+        public void onClientError(final ClientErrorMessage msg)
         {
-            if (System.nanoTime() - this.time > bound)
-            {
-                return null;
-            }
-            return this.instance;
+            super.onClientError(msg);
+            end(false);
         }
 
         /**
-         * Set an instance.
+         * Parse an IRC server response RPL_LIST, add the channel to the
+         * directory and offer it to the matching searches.
          *
-         * @param instance the instance
+         * @param text raw server response: channel, user count and topic
          */
-        public void set(final T instance)
+        private void add(final String text)
         {
-            this.instance = instance;
-            this.time = System.nanoTime();
+            final int endOfChannelName = text.indexOf(' ');
+            if (endOfChannelName == -1)
+            {
+                return;
+            }
+            // Create new strings to make sure that the original (larger)
+            // strings can be GC'ed.
+            final String name =
+                new String(text.substring(0, endOfChannelName));
+            final int endOfUserCount = text.indexOf(' ', endOfChannelName + 1);
+            int userCount;
+            try
+            {
+                userCount =
+                    Integer.parseInt(endOfUserCount == -1 ? text
+                        .substring(endOfChannelName + 1) : text.substring(
+                        endOfChannelName + 1, endOfUserCount));
+            }
+            catch (NumberFormatException e)
+            {
+                userCount = 0;
+            }
+            String topic = null;
+            if (endOfUserCount != -1)
+            {
+                int startOfTopic = endOfUserCount + 1;
+                if (startOfTopic < text.length()
+                    && text.charAt(startOfTopic) == ':')
+                {
+                    startOfTopic++;
+                }
+                if (startOfTopic < text.length())
+                {
+                    topic = new String(text.substring(startOfTopic));
+                }
+            }
+
+            synchronized (ServerChannelLister.this.lock)
+            {
+                if (ServerChannelLister.this.listing != this)
+                {
+                    return;
+                }
+                final int id = this.directory.add(name, userCount, topic);
+                for (Search search : this.searches)
+                {
+                    if (this.directory.matches(id, search.query))
+                    {
+                        search.offer(name);
+                    }
+                }
+            }
         }
 
         /**
-         * Get the timestamp from when the instance was set.
+         * End the listing and signal the waiting searches.
          *
-         * @return returns the timestamp
+         * @param complete <tt>true</tt> if the server finished listing, in
+         *            which case the directory gets cached
          */
-        public long getTimestamp()
+        private void end(final boolean complete)
         {
-            return this.time;
+            synchronized (ServerChannelLister.this.lock)
+            {
+                if (ServerChannelLister.this.listing != this)
+                {
+                    return;
+                }
+                ServerChannelLister.this.listing = null;
+                if (complete)
+                {
+                    ServerChannelLister.this.cache = this.directory;
+                    ServerChannelLister.this.cacheTime = System.nanoTime();
+                    // Clean up the cache after use, since otherwise this data
+                    // could stay in memory for a long time.
+                    scheduleCleanUp(this.directory);
+                }
+                for (Search search : this.searches)
+                {
+                    search.finish();
+                }
+                ServerChannelLister.this.lock.notifyAll();
+            }
+            if (LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Finished listing " + this.directory.size()
+                    + " channels.");
+            }
         }
     }
 }
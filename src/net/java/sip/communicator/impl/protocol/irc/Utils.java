@@ -17,6 +17,8 @@
  */
 package net.java.sip.communicator.impl.protocol.irc;
 
+import java.util.*;
+
 import net.java.sip.communicator.util.*;
 
 import org.apache.commons.lang3.*;
@@ -221,6 +223,118 @@ public static String styleAsNotice(final String message, final String user)
         return "<i>" + user + "</i>: " + message;
     }
 
+    /**
+     * Split a message in parts whose UTF-8 encoding does not exceed the
+     * maximum length, since that is what counts against the IRC line limit.
+     * Parts are preferably split at a space, which is then dropped. Otherwise
+     * the message is split at the maximum length, taking care not to split a
+     * character.
+     *
+     * @param message the message
+     * @param maxLength the maximum length of a part in bytes
+     * @return returns the parts of the message in order
+     */
+    public static List<String> splitMessage(final String message,
+        final int maxLength)
+    {
+        if (message == null)
+        {
+            throw new IllegalArgumentException("message cannot be null");
+        }
+        if (maxLength < 4)
+        {
+            // A single character may take up to 4 bytes.
+            throw new IllegalArgumentException(
+                "maxLength must be at least 4");
+        }
+        final List<String> parts = new ArrayList<String>();
+        int start = 0;
+        int length = 0;
+        int space = -1;
+        int i = 0;
+        while (i < message.length())
+        {
+            final int codePoint = message.codePointAt(i);
+            final int charCount = Character.charCount(codePoint);
+            if (codePoint == ' ' && length > maxLength / 2)
+            {
+                space = i;
+            }
+            final int size = utf8Length(codePoint);
+            if (length + size <= maxLength)
+            {
+                length += size;
+                i += charCount;
+                continue;
+            }
+            // Prefer a space, as long as it does not result in a very short
+            // part.
+            if (codePoint == ' ')
+            {
+                parts.add(message.substring(start, i));
+                i++;
+            }
+            else if (space != -1)
+            {
+                parts.add(message.substring(start, space));
+                i = space + 1;
+            }
+            else
+            {
+                parts.add(message.substring(start, i));
+            }
+            start = i;
+            length = 0;
+            space = -1;
+        }
+        if (start < message.length() || parts.isEmpty())
+        {
+            parts.add(message.substring(start));
+        }
+        return parts;
+    }
+
+    /**
+     * Calculate the length of the UTF-8 encoding of a string.
+     *
+     * @param text the string
+     * @return returns the number of bytes of the encoded string
+     */
+    public static int utf8Length(final String text)
+    {
+        int length = 0;
+        for (int i = 0; i < text.length();)
+        {
+            final int codePoint = text.codePointAt(i);
+            length += utf8Length(codePoint);
+            i += Character.charCount(codePoint);
+        }
+        return length;
+    }
+
+    /**
+     * Calculate the length of the UTF-8 encoding of a code point.
+     *
+     * @param codePoint the code point
+     * @return returns the number of bytes of the encoded code point
+     */
+    private static int utf8Length(final int codePoint)
+    {
+        if (codePoint < 0x80)
+        {
+            return 1;
+        }
+        if (codePoint < 0x800)
+        {
+            return 2;
+        }
+        if (codePoint < 0x10000)
+        {
+            return 3;
+        }
+        return 4;
+    }
+
     /**
      * Format message as HTML-formatted away message.
      *
@@ -38,6 +38,11 @@
      */
     private static final int WATCH_ADD_CMD_STATIC_OVERHEAD = 6;
 
+    /**
+     * Delay in milliseconds before added nicks are sent to the server.
+     */
+    private static final long ADD_BATCH_DELAY = 500L;
+
     /**
      * Logger.
      */
@@ -59,6 +64,17 @@
      */
     private final Set<String> nickWatchList;
 
+    /**
+     * Nicks that were added since the last WATCH command, in order of
+     * addition.
+     */
+    private final Set<String> pendingAdds = new LinkedHashSet<String>();
+
+    /**
+     * The presence scheduler used to send added nicks in batches.
+     */
+    private final PresenceScheduler scheduler;
+
     /**
      * Constructor.
      *
@@ -69,11 +85,13 @@
      *            the nicks that are confirmed to be subscribed to the MONITOR
      *            command.
      * @param operationSet the persistent presence operation set
+     * @param maxListSize maximum number of nicks allowed by the server
+     * @param scheduler the presence scheduler of the connection
      */
     WatchPresenceWatcher(final IRCApi irc, final IIRCState connectionState,
         final Set<String> nickWatchList, final Set<String> monitored,
         final OperationSetPersistentPresenceIrcImpl operationSet,
-        final int maxListSize)
+        final int maxListSize, final PresenceScheduler scheduler)
     {
         if (irc == null)
         {
@@ -91,6 +109,11 @@
             throw new IllegalArgumentException("nickWatchList cannot be null");
         }
         this.nickWatchList = nickWatchList;
+        if (scheduler == null)
+        {
+            throw new IllegalArgumentException("scheduler cannot be null");
+        }
+        this.scheduler = scheduler;
         this.irc.addListener(new WatchReplyListener(monitored, operationSet));
         setUpWatch(this.irc, this.nickWatchList, maxListSize);
         LOGGER.debug("WATCH presence watcher initialized.");
@@ -143,7 +166,38 @@ public void add(final String nick)
     {
         LOGGER.trace("Adding nick '" + nick + "' to WATCH watch list.");
         this.nickWatchList.add(nick);
-        this.irc.rawMessage("WATCH +" + nick);
+        synchronized (this.pendingAdds)
+        {
+            this.pendingAdds.add(nick);
+            if (this.pendingAdds.size() == 1)
+            {
+                // Contacts are often added in bulk, so wait briefly and send
+                // the added nicks in as few commands as possible.
+                this.scheduler.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        flushPendingAdds();
+                    }
+                }, ADD_BATCH_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Send a WATCH command for the nicks that were added since the last
+     * command.
+     */
+    private void flushPendingAdds()
+    {
+        final List<String> nicks;
+        synchronized (this.pendingAdds)
+        {
+            nicks = new LinkedList<String>(this.pendingAdds);
+            this.pendingAdds.clear();
+        }
+        setUpWatch(this.irc, nicks, nicks.size());
     }
 
     @Override
@@ -151,6 +205,10 @@ public void remove(final String nick)
     {
         LOGGER.trace("Removing nick '" + nick + "' from WATCH watch list.");
         this.nickWatchList.remove(nick);
+        synchronized (this.pendingAdds)
+        {
+            this.pendingAdds.remove(nick);
+        }
         this.irc.rawMessage("WATCH -" + nick);
     }
 
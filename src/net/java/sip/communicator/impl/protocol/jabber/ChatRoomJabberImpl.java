@@ -90,6 +90,13 @@
     private final Vector<ChatRoomMessageListener> messageListeners
         = new Vector<ChatRoomMessageListener>();
 
+    /**
+     * The listener of the messages of the Smack chat room, which also keeps
+     * track of the last discussion history message we've seen.
+     */
+    private final SmackMessageListener smackMessageListener
+        = new SmackMessageListener();
+
     /**
      * Listeners that will be notified every time
      * a chat room property has been changed.
@@ -121,6 +128,15 @@
     private final Hashtable<String, ChatRoomMemberJabberImpl> members
         = new Hashtable<String, ChatRoomMemberJabberImpl>();
 
+    /**
+     * The members which have been reported by the room while the local user
+     * is joining it, i.e. until the room sends the presence of the local
+     * user, or <tt>null</tt> if the room isn't being joined. They are
+     * announced together by a <tt>ChatRoomMemberListEvent</tt> rather than
+     * one by one. Guarded by {@link #members}.
+     */
+    private List<ChatRoomMember> joiningMembers = null;
+
     /**
      * The list of banned members of this chat room.
      */
@@ -203,7 +219,7 @@ public ChatRoomJabberImpl(MultiUserChat multiUserChat,
 
         multiUserChat.addSubjectUpdatedListener(
             new SmackSubjectUpdatedListener());
-        multiUserChat.addMessageListener(new SmackMessageListener());
+        multiUserChat.addMessageListener(smackMessageListener);
         multiUserChat.addParticipantStatusListener(new MemberListener());
         multiUserChat.addUserStatusListener(new UserListener());
         multiUserChat.addPresenceInterceptor(new PresenceInterceptor());
@@ -605,6 +621,11 @@ public void joinAs(String nickname, byte[] password)
             }
             else
             {
+                synchronized (members)
+                {
+                    joiningMembers = new ArrayList<ChatRoomMember>();
+                }
+
                 presenceListener = new PresenceListener(this);
                 this.provider.getConnection().addPacketListener(
                     presenceListener,
@@ -612,10 +633,11 @@ public void joinAs(String nickname, byte[] password)
                         FromMatchesFilter.create(multiUserChat.getRoom()),
                         new PacketTypeFilter(
                             org.jivesoftware.smack.packet.Presence.class)));
-                if(password == null)
-                    multiUserChat.join(nickname);
-                else
-                    multiUserChat.join(nickname, new String(password));
+                multiUserChat.join(
+                    nickname,
+                    (password == null) ? null : new String(password),
+                    createDiscussionHistory(),
+                    SmackConfiguration.getPacketReplyTimeout());
             }
 
             ChatRoomMemberJabberImpl member
@@ -634,6 +656,11 @@ public void joinAs(String nickname, byte[] password)
         }
         catch (XMPPException ex)
         {
+            synchronized (members)
+            {
+                joiningMembers = null;
+            }
+
             String errorMessage;
 
             if(ex.getXMPPError() == null)
@@ -701,6 +728,11 @@ else if(ex.getXMPPError().getCode() == 407)
         }
         catch (Throwable ex)
         {
+            synchronized (members)
+            {
+                joiningMembers = null;
+            }
+
             String errorMessage = "Failed to join room "
                                     + getName()
                                     + " with nickname: "
@@ -891,6 +923,7 @@ private void leave(String reason, String alternateAddress)
 
             // Delete the list of members
             members.clear();
+            joiningMembers = null;
         }
 
         for (ChatRoomMember member : membersCopy.values())
@@ -1155,7 +1188,17 @@ public void joined(String participant)
                   StringEscapeUtils.unescapeXml(occupant.getNick()),
                   occupant.getJid());
 
-            members.put(participantName, member);
+            // The occupants reported while we are joining are announced
+            // together once the list is complete.
+            synchronized (members)
+            {
+                members.put(participantName, member);
+                if (joiningMembers != null)
+                {
+                    joiningMembers.add(member);
+                    return;
+                }
+            }
 
             //we don't specify a reason
             fireMemberPresenceEvent(member,
@@ -1623,6 +1666,45 @@ else if (e.getXMPPError().getCode() == 403) //forbidden
         }
     }
 
+    /**
+     * Announces the members which have been reported by the room while the
+     * local user was joining it with a single <tt>ChatRoomMemberListEvent</tt>
+     * and stops buffering them. The ones which have left in the meantime are
+     * left out.
+     */
+    private void fireJoiningMembers()
+    {
+        List<ChatRoomMember> joinedMembers;
+
+        synchronized (members)
+        {
+            if (joiningMembers == null)
+                return;
+
+            Set<ChatRoomMember> currentMembers
+                = Collections.newSetFromMap(
+                        new IdentityHashMap<ChatRoomMember, Boolean>());
+
+            currentMembers.addAll(members.values());
+            joinedMembers = joiningMembers;
+            joinedMembers.retainAll(currentMembers);
+            joiningMembers = null;
+        }
+
+        if (logger.isDebugEnabled())
+            logger.debug(joinedMembers.size() + " members in " + getName());
+
+        Iterable<ChatRoomMemberPresenceListener> listeners;
+        synchronized (memberListeners)
+        {
+            listeners
+                = new ArrayList<ChatRoomMemberPresenceListener>(
+                        memberListeners);
+        }
+
+        fireMemberListEvent(joinedMembers, listeners);
+    }
+
     /**
      * Creates the corresponding ChatRoomMemberPresenceChangeEvent and notifies
      * all <tt>ChatRoomMemberPresenceListener</tt>s that a ChatRoomMember has
@@ -1960,6 +2042,27 @@ public void setMembersWhiteList(List<String> members)
         }
     }
 
+    /**
+     * Creates the discussion history request sent when joining the room. When
+     * we've already seen history messages of the room, only the newer ones
+     * are requested instead of the server's default amount, most of which
+     * would be dropped as already seen.
+     *
+     * @return the discussion history request or <tt>null</tt> to leave the
+     * history to the server's default
+     */
+    private DiscussionHistory createDiscussionHistory()
+    {
+        Date lastSeen = smackMessageListener.getLastSeenDelayedMessage();
+
+        if(lastSeen == null)
+            return null;
+
+        DiscussionHistory history = new DiscussionHistory();
+        history.setSince(lastSeen);
+        return history;
+    }
+
     /**
      * A listener that listens for packets of type Message and fires an event
      * to notifier interesting parties that a message was received.
@@ -1971,7 +2074,7 @@ public void setMembersWhiteList(List<String> members)
          * The timestamp of the last history message sent to the UI.
          * Do not send earlier or messages with the same timestamp.
          */
-        private Date lastSeenDelayedMessage = null;
+        private volatile Date lastSeenDelayedMessage = null;
 
         /**
          * The property to store the timestamp.
@@ -1979,6 +2082,35 @@ public void setMembersWhiteList(List<String> members)
         private static final String LAST_SEEN_DELAYED_MESSAGE_PROP
             = "lastSeenDelayedMessage";
 
+        /**
+         * Returns the timestamp of the last history message sent to the UI,
+         * initialising it from the configuration the first time.
+         *
+         * @return the timestamp of the last history message sent to the UI or
+         * <tt>null</tt> if no history message of the room has been seen
+         */
+        Date getLastSeenDelayedMessage()
+        {
+            if(lastSeenDelayedMessage == null)
+            {
+                // initialise this from configuration
+                String timestamp =
+                    ConfigurationUtils.getChatRoomProperty(
+                        provider,
+                        getIdentifier(),
+                        LAST_SEEN_DELAYED_MESSAGE_PROP);
+
+                try
+                {
+                    lastSeenDelayedMessage =
+                        new Date(Long.parseLong(timestamp));
+                }
+                catch(Throwable t)
+                {}
+            }
+            return lastSeenDelayedMessage;
+        }
+
         /**
          * Process a packet.
          * @param packet to process.
@@ -2004,26 +2136,9 @@ public void processPacket(Packet packet)
                 // the room coming from server. Lets check have we already
                 // shown this message and if this is the case skip it
                 // otherwise save it as last seen delayed message
-                if(lastSeenDelayedMessage == null)
-                {
-                    // initialise this from configuration
-                    String timestamp =
-                        ConfigurationUtils.getChatRoomProperty(
-                            provider,
-                            getIdentifier(),
-                            LAST_SEEN_DELAYED_MESSAGE_PROP);
+                Date lastSeen = getLastSeenDelayedMessage();
 
-                    try
-                    {
-                        lastSeenDelayedMessage =
-                            new Date(Long.parseLong(timestamp));
-                    }
-                    catch(Throwable t)
-                    {}
-                }
-
-                if(lastSeenDelayedMessage != null
-                    && !timeStamp.after(lastSeenDelayedMessage))
+                if(lastSeen != null && !timeStamp.after(lastSeen))
                     return;
 
                 // save it in configuration
@@ -2084,7 +2199,15 @@ public void processPacket(Packet packet)
                              + msg.toXML());
             }
 
-            Message newMessage = createMessage(msgBody);
+            // The id of the stanza, when it has one, identifies the message
+            // when the server replays the discussion history.
+            Message newMessage
+                = new MessageJabberImpl(
+                    msgBody,
+                    OperationSetBasicInstantMessaging.DEFAULT_MIME_TYPE,
+                    OperationSetBasicInstantMessaging.DEFAULT_MIME_ENCODING,
+                    null,
+                    msg.getPacketID());
 
             // if we are sending this message, this either a delivery report
             // or if there is a delay extension this is a history coming from
@@ -2836,7 +2959,18 @@ public void processPacket(Packet packet)
             if (ourOccupantJid.equals(presence.getFrom()))
                 processOwnPresence(presence);
             else
+            {
+                // Status 110 marks our own presence even if the room has
+                // changed our nickname.
+                MUCUser mucUser = getMUCUserExtension(presence);
+
+                if (mucUser != null
+                        && mucUser.getStatus() != null
+                        && "110".equals(mucUser.getStatus().getCode()))
+                    fireJoiningMembers();
+
                 processOtherPresence(presence);
+            }
         }
 
         /**
@@ -2846,6 +2980,10 @@ public void processPacket(Packet packet)
          */
         private void processOwnPresence(Presence presence)
         {
+            // The room sends our own presence after the ones of all the
+            // other occupants.
+            fireJoiningMembers();
+
             MUCUser mucUser = getMUCUserExtension(presence);
 
             if (mucUser != null)
@@ -436,7 +436,9 @@ public boolean isResolved()
     }
 
     /**
-     * Resolve this contact group against the specified group
+     * Resolve this contact group against the specified group. Its entries
+     * are resolved by the contact list, which goes through the whole roster
+     * at once.
      * @param source the server stored group
      */
     void setResolved(RosterGroup source)
@@ -447,42 +449,6 @@ void setResolved(RosterGroup source)
         this.isResolved = true;
 
         this.id = source.getName();
-
-        for (RosterEntry item : source.getEntries())
-        {
-            ContactJabberImpl contact =
-                ssclCallback.findContactById(item.getUser());
-
-            // some services automatically adds contacts from an addressbook
-            // to our roster and this contacts are with subscription none.
-            // if such already exist, remove it. This is typically our
-            // own contact
-            if(!ServerStoredContactListJabberImpl.isEntryDisplayable(item))
-            {
-                if(contact != null)
-                {
-                    removeContact(contact);
-                    ssclCallback.fireContactRemoved(this, contact);
-                }
-
-                continue;
-            }
-
-            if(contact != null)
-            {
-                contact.setResolved(item);
-
-                ssclCallback.fireContactResolved(this, contact);
-            }
-            else
-            {
-                ContactJabberImpl newContact =
-                    new ContactJabberImpl(item, ssclCallback, true, true);
-                addContact(newContact);
-
-                ssclCallback.fireContactAdded(this, newContact);
-            }
-        }
     }
 
     /**
@@ -0,0 +1,414 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.security.*;
+
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Copies the content of a file transfer between the local file and the
+ * stream negotiated by Smack. Instead of Smack's own copy loop, which moves
+ * 8 KiB at a time, the engine uses the <tt>FileChannel</tt> of the local file
+ * and a large buffer, whose size may be configured through
+ * {@link #BUFFER_SIZE_PROPERTY}, so that bytestreams get written in big
+ * chunks. It computes the MD5 checksum of the file, which XEP-0096 offers
+ * may advertise, while copying.
+ * <p>
+ * The engine doesn't fire any events itself: its progress and final status
+ * are sampled together with the status of the Smack transfer.
+ */
+public class FileTransferEngine
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>FileTransferEngine</tt> class and
+     * its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(FileTransferEngine.class);
+
+    /**
+     * The name of the property which specifies the size in bytes of the
+     * buffer used to copy file transfers.
+     */
+    public static final String BUFFER_SIZE_PROPERTY
+        = "net.java.sip.communicator.impl.protocol.jabber"
+            + ".FILE_TRANSFER_BUFFER_SIZE";
+
+    /**
+     * The default size in bytes of the buffer used to copy file transfers.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The algorithm of the checksums advertised in XEP-0096 offers.
+     */
+    private static final String CHECKSUM_ALGORITHM = "MD5";
+
+    /**
+     * The value of {@link #status} while the transfer has not ended.
+     */
+    private static final int NOT_FINISHED = -1;
+
+    /**
+     * The digest computing the checksum of the transferred file, or
+     * <tt>null</tt> if it is not available.
+     */
+    private final MessageDigest digest;
+
+    /**
+     * The number of bytes of the file which have been transferred.
+     */
+    private volatile long transferredBytes = 0;
+
+    /**
+     * Whether the transfer has been canceled.
+     */
+    private volatile boolean canceled = false;
+
+    /**
+     * The final status of the transfer as one of the
+     * <tt>FileTransferStatusChangeEvent</tt> constants, or
+     * <tt>NOT_FINISHED</tt>.
+     */
+    private volatile int status = NOT_FINISHED;
+
+    /**
+     * The reason of the final status of the transfer.
+     */
+    private volatile String statusReason = "";
+
+    /**
+     * The hexadecimal checksum of the transferred file, once the transfer
+     * has completed.
+     */
+    private volatile String checksum;
+
+    /**
+     * Creates a new <tt>FileTransferEngine</tt>.
+     */
+    public FileTransferEngine()
+    {
+        MessageDigest digest = null;
+
+        try
+        {
+            digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            logger.warn("Checksums of file transfers will not be verified.",
+                e);
+        }
+        this.digest = digest;
+    }
+
+    /**
+     * Returns the configured size of the copy buffer.
+     *
+     * @return the size in bytes of the buffer used to copy file transfers
+     */
+    private static int getBufferSize()
+    {
+        int bufferSize
+            = JabberActivator.getConfigurationService().getInt(
+                    BUFFER_SIZE_PROPERTY,
+                    DEFAULT_BUFFER_SIZE);
+
+        return (bufferSize > 0) ? bufferSize : DEFAULT_BUFFER_SIZE;
+    }
+
+    /**
+     * Sends the first <tt>size</tt> bytes of <tt>file</tt> through
+     * <tt>out</tt>, which is closed afterwards. Blocks until the transfer has
+     * ended. The transfer fails if the file ends before <tt>size</tt> bytes
+     * have been sent.
+     *
+     * @param file the file to send
+     * @param size the size of the file declared to the receiver
+     * @param out the stream negotiated with the receiver
+     */
+    public void send(File file, long size, OutputStream out)
+    {
+        RandomAccessFile source = null;
+
+        try
+        {
+            source = new RandomAccessFile(file, "r");
+
+            FileChannel channel = source.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(getBufferSize());
+
+            long position = 0;
+            int read;
+
+            while (!canceled && position < size)
+            {
+                if (size - position < buffer.capacity())
+                    buffer.limit((int) (size - position));
+                if ((read = channel.read(buffer, position)) == -1)
+                    break;
+
+                updateDigest(buffer.array(), read);
+                out.write(buffer.array(), 0, read);
+                buffer.clear();
+                position += read;
+                transferredBytes = position;
+            }
+            out.flush();
+
+            if (!canceled && position < size)
+            {
+                throw new EOFException(
+                    "The file ended after " + position + " of " + size
+                        + " bytes.");
+            }
+            finished(null);
+        }
+        catch (IOException e)
+        {
+            finished(e);
+        }
+        finally
+        {
+            close(source);
+            close(out);
+        }
+    }
+
+    /**
+     * Receives the content of a file from <tt>in</tt>, which is closed
+     * afterwards, and writes it to <tt>file</tt>, replacing its previous
+     * content. Blocks until the transfer has ended.
+     *
+     * @param in the stream negotiated with the sender
+     * @param file the file to write to
+     * @param expectedChecksum the checksum of the file advertised by the
+     * sender, or <tt>null</tt> if it didn't advertise any
+     */
+    public void receive(InputStream in,
+                        File file,
+                        String expectedChecksum)
+    {
+        RandomAccessFile target = null;
+
+        try
+        {
+            target = new RandomAccessFile(file, "rw");
+
+            FileChannel channel = target.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(getBufferSize());
+            byte[] bytes = buffer.array();
+
+            channel.truncate(0);
+
+            long position = 0;
+            int read;
+
+            while (!canceled && (read = in.read(bytes)) != -1)
+            {
+                updateDigest(bytes, read);
+                buffer.limit(read);
+                while (buffer.hasRemaining())
+                    channel.write(buffer, position + buffer.position());
+                buffer.clear();
+                position += read;
+                transferredBytes = position;
+            }
+
+            if (!canceled
+                && expectedChecksum != null
+                && digest != null)
+            {
+                checksum = toHex(digest.digest());
+                if (!checksum.equalsIgnoreCase(expectedChecksum))
+                {
+                    throw new IOException(
+                        "Checksum mismatch: expected " + expectedChecksum
+                            + ", received " + checksum);
+                }
+            }
+            finished(null);
+        }
+        catch (IOException e)
+        {
+            finished(e);
+        }
+        finally
+        {
+            close(target);
+            close(in);
+        }
+    }
+
+    /**
+     * Feeds the first <tt>length</tt> bytes of <tt>bytes</tt> to the digest.
+     *
+     * @param bytes the bytes which have just been transferred
+     * @param length the number of bytes to digest
+     */
+    private void updateDigest(byte[] bytes, int length)
+    {
+        if (digest != null)
+            digest.update(bytes, 0, length);
+    }
+
+    /**
+     * Records the end of the transfer.
+     *
+     * @param cause the exception which ended the transfer, or <tt>null</tt>
+     * if it has been canceled or has reached the end of the file
+     */
+    private void finished(IOException cause)
+    {
+        if (canceled)
+        {
+            status = FileTransferStatusChangeEvent.CANCELED;
+        }
+        else if (cause != null)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("File transfer failed.", cause);
+
+            statusReason = cause.getMessage();
+            status = FileTransferStatusChangeEvent.FAILED;
+        }
+        else
+        {
+            if (checksum == null && digest != null)
+                checksum = toHex(digest.digest());
+            status = FileTransferStatusChangeEvent.COMPLETED;
+        }
+    }
+
+    /**
+     * Ends the transfer with a failure which happened before the engine
+     * started copying, e.g. while negotiating the stream.
+     *
+     * @param reason the reason of the failure
+     */
+    public void abort(String reason)
+    {
+        statusReason = (reason == null) ? "" : reason;
+        status = FileTransferStatusChangeEvent.FAILED;
+    }
+
+    /**
+     * Cancels the transfer. The copy loop stops after the current buffer.
+     */
+    public void cancel()
+    {
+        canceled = true;
+    }
+
+    /**
+     * Returns the number of bytes of the file which have been transferred.
+     *
+     * @return the number of bytes of the file which have been transferred
+     */
+    public long getTransferredBytes()
+    {
+        return transferredBytes;
+    }
+
+    /**
+     * Determines whether the transfer has ended.
+     *
+     * @return <tt>true</tt> if the transfer has ended
+     */
+    public boolean isFinished()
+    {
+        return status != NOT_FINISHED;
+    }
+
+    /**
+     * Returns the final status of the transfer.
+     *
+     * @return one of the <tt>FileTransferStatusChangeEvent</tt> constants, or
+     * <tt>-1</tt> if the transfer has not ended yet
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Returns the reason of the final status of the transfer.
+     *
+     * @return the reason of the final status of the transfer
+     */
+    public String getStatusReason()
+    {
+        return statusReason;
+    }
+
+    /**
+     * Returns the MD5 checksum of the transferred file.
+     *
+     * @return the hexadecimal checksum of the file, or <tt>null</tt> if the
+     * transfer has not completed
+     */
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    /**
+     * Converts a digest to its lower case hexadecimal representation, as
+     * used by the <tt>hash</tt> attribute of XEP-0096.
+     *
+     * @param bytes the digest
+     * @return the hexadecimal representation of <tt>bytes</tt>
+     */
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes)
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Closes <tt>closeable</tt>, ignoring errors.
+     *
+     * @param closeable the resource to close, may be <tt>null</tt>
+     */
+    private static void close(Closeable closeable)
+    {
+        if (closeable == null)
+            return;
+
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Failed to close " + closeable, e);
+        }
+    }
+}
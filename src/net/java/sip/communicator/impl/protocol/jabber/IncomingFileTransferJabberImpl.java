@@ -42,6 +42,11 @@
      */
     private IncomingFileTransfer jabberTransfer;
 
+    /**
+     * The engine copying the stream negotiated by Smack to the file.
+     */
+    private final FileTransferEngine engine = new FileTransferEngine();
+
     /**
      * Creates an <tt>IncomingFileTransferJabberImpl</tt>.
      *
@@ -67,6 +72,7 @@ public IncomingFileTransferJabberImpl(  String id,
     @Override
     public void cancel()
     {
+        engine.cancel();
         this.jabberTransfer.cancel();
     }
 
@@ -78,7 +84,17 @@ public void cancel()
     @Override
     public long getTransferedBytes()
     {
-        return jabberTransfer.getAmountWritten();
+        return engine.getTransferredBytes();
+    }
+
+    /**
+     * Returns the engine copying the stream negotiated by Smack to the file.
+     *
+     * @return the engine of this transfer
+     */
+    FileTransferEngine getEngine()
+    {
+        return engine;
     }
 
     /**
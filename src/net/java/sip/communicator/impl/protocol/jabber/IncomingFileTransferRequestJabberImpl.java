@@ -64,6 +64,12 @@
 
     private byte[] thumbnail;
 
+    /**
+     * The MD5 checksum of the file advertised by the sender, or
+     * <tt>null</tt> if it didn't advertise any.
+     */
+    private String fileHash;
+
     /**
      * Creates an <tt>IncomingFileTransferRequestJabberImpl</tt> based on the
      * given <tt>fileTransferRequest</tt>, coming from the Jabber protocol.
@@ -161,33 +167,48 @@ public long getFileSize()
      * @return a boolean : <code>false</code> if the transfer fails,
      * <code>true</code> otherwise
      */
-    public FileTransfer acceptFile(File file)
+    public FileTransfer acceptFile(final File file)
     {
-        AbstractFileTransfer incomingTransfer = null;
-
-        IncomingFileTransfer jabberTransfer = fileTransferRequest.accept();
-        try
-        {
-            incomingTransfer
-                = new IncomingFileTransferJabberImpl(
-                        id, sender, file, jabberTransfer);
+        final IncomingFileTransfer jabberTransfer
+            = fileTransferRequest.accept();
+        final IncomingFileTransferJabberImpl incomingTransfer
+            = new IncomingFileTransferJabberImpl(
+                    id, sender, file, jabberTransfer);
 
-            FileTransferCreatedEvent event
-                = new FileTransferCreatedEvent(incomingTransfer, new Date());
+        FileTransferCreatedEvent event
+            = new FileTransferCreatedEvent(incomingTransfer, new Date());
 
-            fileTransferOpSet.fireFileTransferCreated(event);
+        fileTransferOpSet.fireFileTransferCreated(event);
 
-            jabberTransfer.recieveFile(file);
+        final FileTransferEngine engine = incomingTransfer.getEngine();
 
-            new OperationSetFileTransferJabberImpl
-                .FileTransferProgressThread(
-                jabberTransfer, incomingTransfer, getFileSize()).start();
-        }
-        catch (XMPPException e)
+        new Thread("Jabber file transfer " + id)
         {
-            if (logger.isDebugEnabled())
-                logger.debug("Receiving file failed.", e);
-        }
+            @Override
+            public void run()
+            {
+                InputStream in;
+
+                try
+                {
+                    in = jabberTransfer.recieveFile();
+                }
+                catch (XMPPException e)
+                {
+                    if (logger.isDebugEnabled())
+                        logger.debug("Receiving file failed.", e);
+
+                    engine.abort(e.getMessage());
+                    return;
+                }
+
+                engine.receive(in, file, fileHash);
+            }
+        }.start();
+
+        new OperationSetFileTransferJabberImpl.FileTransferProgress(
+                jabberTransfer, incomingTransfer, engine, getFileSize())
+            .start();
 
         return incomingTransfer;
     }
@@ -222,6 +243,17 @@ public byte[] getThumbnail()
         return thumbnail;
     }
 
+    /**
+     * Sets the MD5 checksum of the file advertised by the sender, against
+     * which the received file is verified.
+     *
+     * @param fileHash the hexadecimal MD5 checksum of the file
+     */
+    void setFileHash(String fileHash)
+    {
+        this.fileHash = fileHash;
+    }
+
     /**
      * Sets the thumbnail content-ID.
      * @param cid the thumbnail content-ID
@@ -0,0 +1,519 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.OperationSetBasicInstantMessagingJabberImpl.StoredThreadID;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.util.StringUtils;
+
+/**
+ * Keeps, for every bare JID an account exchanges one-to-one messages with,
+ * the <tt>Contact</tt> it resolves to, the full JID messages and chat states
+ * are to be sent to and the thread IDs of the conversations, so that message,
+ * carbon and chat state handling don't have to search the contact list and
+ * purge expired threads for every stanza.
+ * <p>
+ * Contacts are only cached once found, and are forgotten whenever the
+ * contact list changes. The full JID a conversation is bound to is released
+ * when that resource goes offline, so that the server picks the resource to
+ * deliver to until the contact writes from a resource again. A bare JID is
+ * forgotten once it has no live thread and no cached contact, so that the
+ * table doesn't keep every JID which has ever written to the account.
+ */
+class MessageRoutingTable
+    extends SubscriptionAdapter
+    implements ServerStoredGroupListener,
+               PacketListener
+{
+    /**
+     * The minimum number of milliseconds between two purges of the expired
+     * threads.
+     */
+    private static final long PURGE_INTERVAL = 60 * 1000;
+
+    /**
+     * The number of milliseconds that we preserve threads with no traffic
+     * before considering them dead.
+     */
+    private final long threadTimeout;
+
+    /**
+     * The minimum number of milliseconds between two purges of the expired
+     * threads.
+     */
+    private final long purgeInterval;
+
+    /**
+     * The routes by lower case bare JID.
+     */
+    private final Map<String, Route> routes = new HashMap<String, Route>();
+
+    /**
+     * The presence operation set contacts are looked up in, or <tt>null</tt>
+     * if the account hasn't started registering yet.
+     */
+    private OperationSetPersistentPresenceJabberImpl opSetPersPresence = null;
+
+    /**
+     * The time the expired threads were last purged.
+     */
+    private long lastPurgeTime = 0;
+
+    /**
+     * Creates a routing table.
+     *
+     * @param threadTimeout the number of milliseconds that we preserve
+     * threads with no traffic before considering them dead
+     */
+    MessageRoutingTable(long threadTimeout)
+    {
+        this(threadTimeout, PURGE_INTERVAL);
+    }
+
+    /**
+     * Creates a routing table which purges the expired threads at a specific
+     * interval.
+     *
+     * @param threadTimeout the number of milliseconds that we preserve
+     * threads with no traffic before considering them dead
+     * @param purgeInterval the minimum number of milliseconds between two
+     * purges of the expired threads
+     */
+    MessageRoutingTable(long threadTimeout, long purgeInterval)
+    {
+        this.threadTimeout = threadTimeout;
+        this.purgeInterval = purgeInterval;
+    }
+
+    /**
+     * Starts following the contact list and the presence of an account which
+     * is registering.
+     *
+     * @param opSetPersPresence the presence operation set of the account
+     * @param connection the connection of the account
+     */
+    void start(OperationSetPersistentPresenceJabberImpl opSetPersPresence,
+               Connection connection)
+    {
+        synchronized (this)
+        {
+            if (this.opSetPersPresence != opSetPersPresence)
+            {
+                if (this.opSetPersPresence != null)
+                {
+                    this.opSetPersPresence.removeSubscriptionListener(this);
+                    this.opSetPersPresence
+                        .removeServerStoredGroupChangeListener(this);
+                }
+                this.opSetPersPresence = opSetPersPresence;
+                opSetPersPresence.addSubscriptionListener(this);
+                opSetPersPresence.addServerStoredGroupChangeListener(this);
+            }
+            forgetContacts();
+        }
+
+        // make sure this listener is not already installed in this connection
+        connection.removePacketListener(this);
+        connection.addPacketListener(this, new PacketTypeFilter(Presence.class));
+    }
+
+    /**
+     * Stops following the presence of an account which is no longer
+     * registered. The threads and full JIDs are kept, as they were before the
+     * table existed, but contacts are looked up again.
+     *
+     * @param connection the connection of the account or <tt>null</tt>
+     */
+    void stop(Connection connection)
+    {
+        if (connection != null)
+            connection.removePacketListener(this);
+
+        synchronized (this)
+        {
+            forgetContacts();
+        }
+    }
+
+    /**
+     * Returns the route of a bare JID.
+     *
+     * @param bareJid the bare JID
+     * @param create whether to create the route if there is none
+     * @return the route or <tt>null</tt> if there is none and
+     * <tt>create</tt> is <tt>false</tt>
+     */
+    private Route getRoute(String bareJid, boolean create)
+    {
+        String key = bareJid.toLowerCase();
+        Route route = routes.get(key);
+
+        if (route == null && create)
+        {
+            route = new Route();
+            routes.put(key, route);
+        }
+        return route;
+    }
+
+    /**
+     * Returns the contact a bare JID resolves to in the contact list.
+     *
+     * @param bareJid the bare JID
+     * @return the contact or <tt>null</tt> if the contact list doesn't
+     * contain one
+     */
+    Contact getContact(String bareJid)
+    {
+        OperationSetPersistentPresenceJabberImpl opSetPersPresence;
+
+        synchronized (this)
+        {
+            Route route = getRoute(bareJid, false);
+
+            if (route != null && route.contact != null)
+                return route.contact;
+
+            opSetPersPresence = this.opSetPersPresence;
+        }
+
+        if (opSetPersPresence == null)
+            return null;
+
+        Contact contact = opSetPersPresence.findContactByID(bareJid);
+
+        if (contact != null)
+        {
+            synchronized (this)
+            {
+                // a change of the contact list might have happened meanwhile
+                if (this.opSetPersPresence == opSetPersPresence
+                        && contact.equals(
+                                opSetPersPresence.findContactByID(bareJid)))
+                {
+                    getRoute(bareJid, true).contact = contact;
+                }
+            }
+        }
+        return contact;
+    }
+
+    /**
+     * Returns the thread ID of the conversation with a JID.
+     *
+     * @param jid the full or bare JID
+     * @return the thread ID or <tt>null</tt> if there is no live
+     * conversation with <tt>jid</tt>
+     */
+    synchronized String getThreadID(String jid)
+    {
+        purgeExpiredThreads();
+
+        Route route = getRoute(StringUtils.parseBareAddress(jid), false);
+
+        if (route == null)
+            return null;
+
+        StoredThreadID ta = route.threads.get(jid);
+
+        if (ta == null)
+            return null;
+
+        ta.lastUpdatedTime = System.currentTimeMillis();
+        return ta.threadID;
+    }
+
+    /**
+     * Records that a message has been exchanged with a JID in a thread,
+     * which also makes it the JID messages and chat states are sent to.
+     *
+     * @param jid the full or bare JID
+     * @param threadID the thread ID of the conversation
+     */
+    synchronized void putThreadID(String jid, String threadID)
+    {
+        putThreadID(jid, threadID, true);
+    }
+
+    /**
+     * Records a message carbon copied to the account, i.e. exchanged with a
+     * JID by another resource of the account. A received message binds the
+     * conversation to the resource it comes from, as for a message received
+     * by this resource. A sent message only binds the conversation if it was
+     * sent to a full JID, so that the resource the contact writes from isn't
+     * forgotten because another of our resources left the routing to the
+     * server.
+     *
+     * @param jid the full or bare JID the message was exchanged with
+     * @param threadID the thread ID of the conversation
+     * @param sent <tt>true</tt> if the message was sent by another resource
+     * of the account, <tt>false</tt> if it was received by it
+     */
+    synchronized void putCarbonThreadID(
+            String jid, String threadID, boolean sent)
+    {
+        putThreadID(
+            jid,
+            threadID,
+            !sent || !jid.equals(StringUtils.parseBareAddress(jid)));
+    }
+
+    /**
+     * Records that a message has been exchanged with a JID in a thread.
+     *
+     * @param jid the full or bare JID
+     * @param threadID the thread ID of the conversation
+     * @param bind whether to make <tt>jid</tt> the JID messages and chat
+     * states are sent to, which it becomes anyway if no message has been
+     * exchanged with the bare JID yet
+     */
+    private void putThreadID(String jid, String threadID, boolean bind)
+    {
+        purgeExpiredThreads();
+
+        Route route = getRoute(StringUtils.parseBareAddress(jid), true);
+        StoredThreadID ta = route.threads.get(jid);
+
+        if (ta == null)
+        {
+            ta = new StoredThreadID();
+            route.threads.put(jid, ta);
+        }
+        if (bind || route.activeJid == null)
+            route.activeJid = jid;
+
+        ta.lastUpdatedTime = System.currentTimeMillis();
+        ta.threadID = threadID;
+    }
+
+    /**
+     * Returns the JID the conversation with a bare JID is bound to.
+     *
+     * @param bareJid the bare JID
+     * @return the full JID of the active resource, the bare JID if messages
+     * are left to the server to route, or <tt>null</tt> if no message has
+     * been exchanged yet
+     */
+    synchronized String getActiveJid(String bareJid)
+    {
+        Route route = getRoute(bareJid, false);
+
+        return (route == null) ? null : route.activeJid;
+    }
+
+    /**
+     * Returns the number of bare JIDs the table knows about.
+     *
+     * @return the number of routes
+     */
+    synchronized int getRouteCount()
+    {
+        return routes.size();
+    }
+
+    /**
+     * Removes the threads which have not seen any activity for more than
+     * <tt>threadTimeout</tt>, at most once every <tt>purgeInterval</tt>. A
+     * bare JID left without threads is no longer bound to a resource, and is
+     * forgotten unless its contact is cached.
+     */
+    private void purgeExpiredThreads()
+    {
+        long currentTime = System.currentTimeMillis();
+
+        if (currentTime - lastPurgeTime < purgeInterval)
+            return;
+        lastPurgeTime = currentTime;
+
+        Iterator<Route> iter = routes.values().iterator();
+
+        while (iter.hasNext())
+        {
+            Route route = iter.next();
+            Iterator<StoredThreadID> threads = route.threads.values().iterator();
+
+            while (threads.hasNext())
+            {
+                if (currentTime - threads.next().lastUpdatedTime
+                        > threadTimeout)
+                    threads.remove();
+            }
+            if (route.threads.isEmpty())
+            {
+                route.activeJid = null;
+                if (route.isUnused())
+                    iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets the contacts of all routes, and the routes which are of no use
+     * without their contact.
+     */
+    private void forgetContacts()
+    {
+        Iterator<Route> iter = routes.values().iterator();
+
+        while (iter.hasNext())
+        {
+            Route route = iter.next();
+
+            route.contact = null;
+            if (route.isUnused())
+                iter.remove();
+        }
+    }
+
+    /**
+     * Forgets the contact a subscription event is about.
+     *
+     * @param evt the subscription event
+     */
+    private synchronized void forgetContact(SubscriptionEvent evt)
+    {
+        Contact contact = evt.getSourceContact();
+
+        if (contact == null)
+            return;
+
+        String key
+            = StringUtils.parseBareAddress(contact.getAddress()).toLowerCase();
+        Route route = routes.get(key);
+
+        if (route != null)
+        {
+            route.contact = null;
+            if (route.isUnused())
+                routes.remove(key);
+        }
+    }
+
+    /**
+     * Releases the full JID a conversation is bound to when its resource
+     * goes offline.
+     *
+     * @param packet the presence received
+     */
+    public void processPacket(Packet packet)
+    {
+        Presence presence = (Presence) packet;
+        String from = presence.getFrom();
+
+        if (from == null || presence.getType() != Presence.Type.unavailable)
+            return;
+
+        String bareJid = StringUtils.parseBareAddress(from);
+
+        synchronized (this)
+        {
+            Route route = getRoute(bareJid, false);
+
+            if (route != null && from.equals(route.activeJid))
+            {
+                route.activeJid = bareJid;
+                route.threads.remove(from);
+            }
+        }
+    }
+
+    @Override
+    public void subscriptionCreated(SubscriptionEvent evt)
+    {
+        forgetContact(evt);
+    }
+
+    @Override
+    public void subscriptionRemoved(SubscriptionEvent evt)
+    {
+        forgetContact(evt);
+    }
+
+    @Override
+    public void subscriptionMoved(SubscriptionMovedEvent evt)
+    {
+        synchronized (this)
+        {
+            forgetContacts();
+        }
+    }
+
+    @Override
+    public void subscriptionResolved(SubscriptionEvent evt)
+    {
+        forgetContact(evt);
+    }
+
+    public void groupCreated(ServerStoredGroupEvent evt)
+    {
+    }
+
+    public synchronized void groupRemoved(ServerStoredGroupEvent evt)
+    {
+        forgetContacts();
+    }
+
+    public void groupNameChanged(ServerStoredGroupEvent evt)
+    {
+    }
+
+    public void groupResolved(ServerStoredGroupEvent evt)
+    {
+    }
+
+    /**
+     * What is known about a bare JID.
+     */
+    private static class Route
+    {
+        /**
+         * The contact the bare JID resolves to, if it has been looked up and
+         * the contact list hasn't changed since.
+         */
+        private Contact contact;
+
+        /**
+         * The JID messages and chat states are sent to.
+         */
+        private String activeJid;
+
+        /**
+         * The conversations by full or bare JID.
+         */
+        private final Map<String, StoredThreadID> threads
+            = new HashMap<String, StoredThreadID>();
+
+        /**
+         * Determines whether the route has nothing left to remember.
+         *
+         * @return <tt>true</tt> if the route has no thread, no contact and
+         * no active JID
+         */
+        private boolean isUnused()
+        {
+            return threads.isEmpty() && contact == null && activeJid == null;
+        }
+    }
+}
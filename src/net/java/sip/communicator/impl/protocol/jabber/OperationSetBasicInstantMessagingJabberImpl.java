@@ -64,18 +64,14 @@
             +"MAX_GMAIL_THREADS_PER_NOTIFICATION";
 
     /**
-     * A table mapping contact addresses to full jids that can be used to
-     * target a specific resource (rather than sending a message to all logged
-     * instances of a user).
+     * The table mapping contact addresses to their contacts, to full jids
+     * that can be used to target a specific resource (rather than sending a
+     * message to all logged instances of a user) and to the threads of the
+     * conversations with them.
      */
-    private Map<String, StoredThreadID> jids
-        = new Hashtable<String, StoredThreadID>();
+    private final MessageRoutingTable routingTable
+        = new MessageRoutingTable(JID_INACTIVITY_TIMEOUT);
 
-    /**
-     * The most recent full JID used for the contact address.
-     */
-    private Map<String, String> recentJIDForAddress
-        = new Hashtable<String, String>();
     /**
      * The smackMessageListener instance listens for incoming messages.
      * Keep a reference of it so if anything goes wrong we don't add
@@ -292,7 +288,7 @@ public boolean isContentTypeSupported(String contentType, Contact contact)
             return true;
         else if(contentType.equals(HTML_MIME_TYPE))
         {
-            String toJID = recentJIDForAddress.get(contact.getAddress());
+            String toJID = getRecentJIDForAddress(contact.getAddress());
 
             if (toJID == null)
                 toJID = contact.getAddress();
@@ -305,38 +301,12 @@ else if(contentType.equals(HTML_MIME_TYPE))
         return false;
     }
 
-    /**
-     * Remove from our <tt>jids</tt> map all entries that have not seen any
-     * activity (i.e. neither outgoing nor incoming messags) for more than
-     * JID_INACTIVITY_TIMEOUT. Note that this method is not synchronous and that
-     * it is only meant for use by the {@link #getThreadIDForAddress(String)} and
-     * {@link #putJidForAddress(String, String)}
-     */
-    private void purgeOldJids()
-    {
-        long currentTime = System.currentTimeMillis();
-
-        Iterator<Map.Entry<String, StoredThreadID>> entries
-            = jids.entrySet().iterator();
-
-
-        while( entries.hasNext() )
-        {
-            Map.Entry<String, StoredThreadID> entry = entries.next();
-            StoredThreadID target = entry.getValue();
-
-            if (currentTime - target.lastUpdatedTime
-                            > JID_INACTIVITY_TIMEOUT)
-                entries.remove();
-        }
-    }
-
     /**
      * Returns the last jid that the party with the specified <tt>address</tt>
      * contacted us from or <tt>null</tt>(or bare jid) if we don't have a jid
-     * for the specified <tt>address</tt> yet. The method would also purge all
-     * entries that haven't seen any activity (i.e. no one has tried to get or
-     * remap it) for a delay longer than <tt>JID_INACTIVITY_TIMEOUT</tt>.
+     * for the specified <tt>address</tt> yet. Entries that haven't seen any
+     * activity (i.e. no one has tried to get or remap it) for a delay longer
+     * than <tt>JID_INACTIVITY_TIMEOUT</tt> are purged by the routing table.
      *
      * @param jid the <tt>jid</tt> that we'd like to obtain a threadID for.
      *
@@ -346,18 +316,7 @@ private void purgeOldJids()
      */
     String getThreadIDForAddress(String jid)
     {
-        synchronized(jids)
-        {
-            purgeOldJids();
-            StoredThreadID ta = jids.get(jid);
-
-            if (ta == null)
-                return null;
-
-            ta.lastUpdatedTime = System.currentTimeMillis();
-
-            return ta.threadID;
-        }
+        return routingTable.getThreadID(jid);
     }
 
     /**
@@ -372,23 +331,7 @@ String getThreadIDForAddress(String jid)
      */
     private void putJidForAddress(String jid, String threadID)
     {
-        synchronized(jids)
-        {
-            purgeOldJids();
-
-            StoredThreadID ta = jids.get(jid);
-
-            if (ta == null)
-            {
-                ta = new StoredThreadID();
-                jids.put(jid, ta);
-            }
-
-            recentJIDForAddress.put(StringUtils.parseBareAddress(jid), jid);
-
-            ta.lastUpdatedTime = System.currentTimeMillis();
-            ta.threadID = threadID;
-        }
+        routingTable.putThreadID(jid, threadID);
     }
 
     /**
@@ -634,6 +577,10 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
                         new AndFilter(
                             packetFilters.toArray(
                                 new PacketFilter[packetFilters.size()])));
+
+                routingTable.start(
+                        opSetPersPresence,
+                        jabberProvider.getConnection());
             }
             else if (evt.getNewState() == RegistrationState.REGISTERED)
             {
@@ -658,6 +605,7 @@ else if(evt.getNewState() == RegistrationState.UNREGISTERED
                 }
 
                 smackMessageListener = null;
+                routingTable.stop(jabberProvider.getConnection());
             }
         }
     }
@@ -797,6 +745,7 @@ public void processPacket(Packet packet)
             org.jivesoftware.smack.packet.Message msg =
                 (org.jivesoftware.smack.packet.Message)packet;
 
+            boolean isCarbon = false;
             boolean isForwardedSentMessage = false;
             if(msg.getBody() == null)
             {
@@ -819,6 +768,7 @@ public void processPacket(Packet packet)
                 msg = forwardedExt.getMessage();
                 if(msg == null || msg.getBody() == null)
                     return;
+                isCarbon = true;
 
             }
 
@@ -910,8 +860,9 @@ public void processPacket(Packet packet)
             }
 
             Contact sourceContact
-                = opSetPersPresence.findContactByID(
-                    (isPrivateMessaging? userFullId : userBareID));
+                = isPrivateMessaging
+                    ? opSetPersPresence.findContactByID(userFullId)
+                    : routingTable.getContact(userBareID);
             if(msg.getType()
                             == org.jivesoftware.smack.packet.Message.Type.error)
             {
@@ -990,7 +941,13 @@ public void processPacket(Packet packet)
                     fireMessageEvent(ev);
                 return;
             }
-            putJidForAddress(userFullId, msg.getThread());
+            if(isCarbon)
+            {
+                routingTable.putCarbonThreadID(
+                    userFullId, msg.getThread(), isForwardedSentMessage);
+            }
+            else
+                putJidForAddress(userFullId, msg.getThread());
 
             // In the second condition we filter all group chat messages,
             // because they are managed by the multi user chat operation set.
@@ -1209,9 +1166,27 @@ private String createMailboxDescription(MailboxIQ mailboxIQ)
         return message.toString();
     }
 
+    /**
+     * Returns the most recent full JID used for the contact address.
+     *
+     * @param address the bare JID of the contact
+     * @return the full JID the conversation with <tt>address</tt> is bound
+     * to, its bare JID if the resource it was bound to has gone offline, or
+     * <tt>null</tt> if no message has been exchanged with it yet
+     */
     public String getRecentJIDForAddress(String address)
     {
-        return recentJIDForAddress.get(address);
+        return routingTable.getActiveJid(address);
+    }
+
+    /**
+     * Returns the table routing the one-to-one messages of the account.
+     *
+     * @return the table routing the one-to-one messages of the account
+     */
+    MessageRoutingTable getRoutingTable()
+    {
+        return routingTable;
     }
 
     /**
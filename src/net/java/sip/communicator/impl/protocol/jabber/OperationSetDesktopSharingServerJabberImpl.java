@@ -20,6 +20,7 @@
 import java.awt.event.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.inputevt.*;
 import net.java.sip.communicator.service.hid.*;
@@ -48,7 +49,8 @@
     implements OperationSetDesktopSharingServer,
                RegistrationStateChangeListener,
                PacketListener,
-               PacketFilter
+               PacketFilter,
+               RemoteControlEventQueue.Handler
 {
     /**
      * Our class logger.
@@ -92,9 +94,26 @@ public void peerStateChanged(CallPeerChangeEvent evt)
 
     /**
      * List of callPeers for the desktop sharing session with remote control
-     * granted.
+     * granted. It is read by the Smack thread and the thread replaying the
+     * remote control input without locking, while
+     * {@link #modifyRemoteControl(CallPeer, boolean)} holds its lock for the
+     * whole IQ exchange.
      */
-    private List<String> callPeers = new ArrayList<String>();
+    private final List<String> callPeers
+        = new CopyOnWriteArrayList<String>();
+
+    /**
+     * The stage of the desktop capture pipeline which detects the changes
+     * between captured frames.
+     */
+    private final DesktopCaptureStage captureStage = new DesktopCaptureStage();
+
+    /**
+     * The queue which replays the keyboard and mouse events received from
+     * peers with remote control granted.
+     */
+    private final RemoteControlEventQueue inputQueue
+        = new RemoteControlEventQueue(this, captureStage);
 
     /**
      * Initializes a new <tt>OperationSetDesktopSharingJabberImpl</tt> instance
@@ -406,15 +425,44 @@ public void processPacket(Packet packet)
             // granted.
             if(callPeers.contains(inputIQ.getFrom()))
             {
+                List<ComponentEvent> events = new ArrayList<ComponentEvent>();
+
                 for(RemoteControlExtension p : inputIQ.getRemoteControls())
                 {
                     ComponentEvent evt = p.getEvent();
-                    processComponentEvent(evt);
+
+                    if(evt != null)
+                        events.add(evt);
                 }
+                inputQueue.add(inputIQ.getFrom(), events);
             }
         }
     }
 
+    /**
+     * Returns the stage of the desktop capture pipeline which detects the
+     * changes between captured frames and adapts the capture rate. It is
+     * notified of the remote control input replayed by this operation set.
+     *
+     * @return the <tt>DesktopCaptureStage</tt> of this operation set
+     */
+    public DesktopCaptureStage getCaptureStage()
+    {
+        return captureStage;
+    }
+
+    /**
+     * Determines whether a peer still has remote control granted, so that
+     * its queued events may be regenerated.
+     *
+     * @param peer the address of the peer
+     * @return <tt>true</tt> if <tt>peer</tt> has remote control granted
+     */
+    public boolean isRemoteControlGranted(String peer)
+    {
+        return callPeers.contains(peer);
+    }
+
     /**
      * Tests whether or not the specified packet should be handled by this
      * operation set. This method is called by smack prior to packet delivery
@@ -641,6 +689,7 @@ private void receivedResponseToIqStop(CallPeer callPeer, Packet p)
         // Even if the IQ has not been correctly acknowledged, save the
         // callPeer has a peer with remote control revoked.
         callPeers.remove(callPeer.getAddress());
+        inputQueue.remove(callPeer.getAddress());
     }
 
     /**
@@ -144,111 +144,129 @@ FileTransfer sendFile(Contact toContact,
     {
         OutgoingFileTransferJabberImpl outgoingTransfer = null;
 
-        try
+        assertConnected();
+
+        if(file.length() > getMaximumFileLength())
+            throw new IllegalArgumentException(
+                "File length exceeds the allowed one for this protocol");
+
+        String fullJid = null;
+        // Find the jid of the contact which support file transfer
+        // and is with highest priority if more than one found
+        // if we have equals priorities
+        // choose the one that is more available
+        OperationSetMultiUserChat mucOpSet = jabberProvider
+            .getOperationSet(OperationSetMultiUserChat.class);
+        if(mucOpSet != null
+            && mucOpSet.isPrivateMessagingContact(toContact.getAddress()))
         {
-            assertConnected();
-
-            if(file.length() > getMaximumFileLength())
-                throw new IllegalArgumentException(
-                    "File length exceeds the allowed one for this protocol");
-
-            String fullJid = null;
-            // Find the jid of the contact which support file transfer
-            // and is with highest priority if more than one found
-            // if we have equals priorities
-            // choose the one that is more available
-            OperationSetMultiUserChat mucOpSet = jabberProvider
-                .getOperationSet(OperationSetMultiUserChat.class);
-            if(mucOpSet != null
-                && mucOpSet.isPrivateMessagingContact(toContact.getAddress()))
-            {
-                fullJid = toContact.getAddress();
-            }
-            else
+            fullJid = toContact.getAddress();
+        }
+        else
+        {
+            Iterator<Presence> iter = jabberProvider.getConnection().getRoster()
+                .getPresences(toContact.getAddress());
+            int bestPriority = -1;
+            
+            PresenceStatus jabberStatus = null;
+
+            while(iter.hasNext())
             {
-                Iterator<Presence> iter = jabberProvider.getConnection().getRoster()
-                    .getPresences(toContact.getAddress());
-                int bestPriority = -1;
-                
-                PresenceStatus jabberStatus = null;
-    
-                while(iter.hasNext())
+                Presence presence = iter.next();
+
+                if(jabberProvider.isFeatureListSupported(presence.getFrom(),
+                    new String[]{"http://jabber.org/protocol/si",
+                        "http://jabber.org/protocol/si/profile/file-transfer"}))
                 {
-                    Presence presence = iter.next();
-    
-                    if(jabberProvider.isFeatureListSupported(presence.getFrom(),
-                        new String[]{"http://jabber.org/protocol/si",
-                            "http://jabber.org/protocol/si/profile/file-transfer"}))
+
+                    int priority =
+                        (presence.getPriority() == Integer.MIN_VALUE) ?
+                            0 : presence.getPriority();
+
+                    if(priority > bestPriority)
                     {
-    
-                        int priority =
-                            (presence.getPriority() == Integer.MIN_VALUE) ?
-                                0 : presence.getPriority();
-    
-                        if(priority > bestPriority)
+                        bestPriority = priority;
+                        fullJid = presence.getFrom();
+                        jabberStatus = OperationSetPersistentPresenceJabberImpl
+                            .jabberStatusToPresenceStatus(
+                                presence, jabberProvider);
+                    }
+                    else if(priority == bestPriority && jabberStatus != null)
+                    {
+                        PresenceStatus tempStatus =
+                            OperationSetPersistentPresenceJabberImpl
+                               .jabberStatusToPresenceStatus(
+                                   presence, jabberProvider);
+                        if(tempStatus.compareTo(jabberStatus) > 0)
                         {
-                            bestPriority = priority;
                             fullJid = presence.getFrom();
-                            jabberStatus = OperationSetPersistentPresenceJabberImpl
-                                .jabberStatusToPresenceStatus(
-                                    presence, jabberProvider);
-                        }
-                        else if(priority == bestPriority && jabberStatus != null)
-                        {
-                            PresenceStatus tempStatus =
-                                OperationSetPersistentPresenceJabberImpl
-                                   .jabberStatusToPresenceStatus(
-                                       presence, jabberProvider);
-                            if(tempStatus.compareTo(jabberStatus) > 0)
-                            {
-                                fullJid = presence.getFrom();
-                                jabberStatus = tempStatus;
-                            }
+                            jabberStatus = tempStatus;
                         }
                     }
                 }
             }
+        }
 
-            // First we check if file transfer is at all supported for this
-            // contact.
-            if (fullJid == null)
-            {
-                throw new OperationNotSupportedException(
-                    "Contact client or server does not support file transfers.");
-            }
+        // First we check if file transfer is at all supported for this
+        // contact.
+        if (fullJid == null)
+        {
+            throw new OperationNotSupportedException(
+                "Contact client or server does not support file transfers.");
+        }
 
-            if(gw != null
-               && !fullJid.contains("@")
-               && !fullJid.endsWith(gw))
-            {
-                fullJid = fullJid + "@" + gw;
-            }
+        if(gw != null
+           && !fullJid.contains("@")
+           && !fullJid.endsWith(gw))
+        {
+            fullJid = fullJid + "@" + gw;
+        }
 
-            OutgoingFileTransfer transfer
-                = manager.createOutgoingFileTransfer(fullJid);
+        OutgoingFileTransfer transfer
+            = manager.createOutgoingFileTransfer(fullJid);
 
-            outgoingTransfer
-                = new OutgoingFileTransferJabberImpl(
-                    toContact, file, transfer, jabberProvider);
+        outgoingTransfer
+            = new OutgoingFileTransferJabberImpl(
+                toContact, file, transfer, jabberProvider);
 
-            // Notify all interested listeners that a file transfer has been
-            // created.
-            FileTransferCreatedEvent event
-                = new FileTransferCreatedEvent(outgoingTransfer, new Date());
+        // Notify all interested listeners that a file transfer has been
+        // created.
+        FileTransferCreatedEvent event
+            = new FileTransferCreatedEvent(outgoingTransfer, new Date());
 
-            fireFileTransferCreated(event);
+        fireFileTransferCreated(event);
 
-            // Send the file through the Jabber file transfer.
-            transfer.sendFile(file, "Sending file");
+        // Negotiate the stream through the Jabber file transfer and let
+        // our engine copy the file once it is established.
+        final FileTransferEngine engine = outgoingTransfer.getEngine();
+        final File fileToSend = file;
+        final long fileSize = file.length();
 
-            // Start the status and progress thread.
-            new FileTransferProgressThread(
-                transfer, outgoingTransfer).start();
-        }
-        catch(XMPPException e)
-        {
-            logger.error("Failed to send file.", e);
-        }
+        transfer.sendFile(
+            file.getName(),
+            fileSize,
+            "Sending file",
+            new OutgoingFileTransfer.NegotiationProgress()
+            {
+                public void statusUpdated(Status oldStatus,
+                                          Status newStatus)
+                {
+                }
+
+                public void outputStreamEstablished(OutputStream stream)
+                {
+                    engine.send(fileToSend, fileSize, stream);
+                }
+
+                public void errorEstablishingStream(Exception e)
+                {
+                    engine.abort(e.getMessage());
+                }
+            });
+
+        // Start monitoring the status and progress.
+        new FileTransferProgress(transfer, outgoingTransfer, engine, fileSize)
+            .start();
 
         return outgoingTransfer;
     }
@@ -459,6 +477,8 @@ public void processPacket(Packet packet)
             org.jivesoftware.smackx.packet.StreamInitiation.File file
                 = streamInitiation.getFile();
 
+            incomingFileTransferRequest.setFileHash(file.getHash());
+
             boolean isThumbnailedFile = false;
             if (file instanceof FileElement)
             {
@@ -571,93 +591,127 @@ void fireFileTransferCreated(FileTransferCreatedEvent event)
 
     /**
      * Updates file transfer progress and status while sending or receiving a
-     * file.
+     * file. Smack doesn't report the bytes it writes, so the transfer is
+     * sampled by the shared <tt>FileTransferProgressMonitor</tt> rather than
+     * by a thread of its own.
      */
-    protected static class FileTransferProgressThread extends Thread
+    protected static class FileTransferProgress
+        implements FileTransferProgressMonitor.Probe
     {
         private final org.jivesoftware.smackx.filetransfer.FileTransfer
             jabberTransfer;
         private final AbstractFileTransfer fileTransfer;
 
+        /**
+         * The engine copying the content of the transfer.
+         */
+        private final FileTransferEngine engine;
+
         private long initialFileSize;
 
-        public FileTransferProgressThread(
+        public FileTransferProgress(
             org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
             AbstractFileTransfer transfer,
+            FileTransferEngine engine,
             long initialFileSize)
         {
-            this.jabberTransfer = jabberTransfer;
-            this.fileTransfer = transfer;
+            this(jabberTransfer, transfer, engine);
             this.initialFileSize = initialFileSize;
         }
 
-        public FileTransferProgressThread(
+        public FileTransferProgress(
             org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
-            AbstractFileTransfer transfer)
+            AbstractFileTransfer transfer,
+            FileTransferEngine engine)
         {
             this.jabberTransfer = jabberTransfer;
             this.fileTransfer = transfer;
+            this.engine = engine;
         }
 
         /**
-         * Thread entry point.
+         * Starts sampling the transfer.
          */
-        @Override
-        public void run()
+        public void start()
         {
-            int status;
-            long progress;
-            String statusReason = "";
+            FileTransferProgressMonitor.add(this);
+        }
+
+        /**
+         * Reports the current status and progress of the transfer.
+         *
+         * @param timestamp the time of the sample
+         * @return <tt>false</tt> once the transfer has ended
+         */
+        public boolean sample(long timestamp)
+        {
+            int status = parseJabberStatus(jabberTransfer.getStatus());
 
-            while (true)
+            // Smack only knows when the negotiation has failed or the
+            // transfer has been canceled, our engine knows when the copy has
+            // ended.
+            if (!isFinalStatus(status) && engine.isFinished())
+                status = engine.getStatus();
+
+            if (isFinalStatus(status))
             {
-                try
-                {
-                    Thread.sleep(10);
+                finished(status);
+                return false;
+            }
 
-                    status = parseJabberStatus(jabberTransfer.getStatus());
-                    progress = fileTransfer.getTransferedBytes();
+            // read the progress once the status is known, so that it isn't
+            // older than the status we report
+            fileTransfer.fireStatusChangeEvent(status, "Status changed");
+            fileTransfer.updateProgress(
+                timestamp, fileTransfer.getTransferedBytes());
+            return true;
+        }
 
-                    if (status == FileTransferStatusChangeEvent.FAILED
-                        || status == FileTransferStatusChangeEvent.COMPLETED
-                        || status == FileTransferStatusChangeEvent.CANCELED
-                        || status == FileTransferStatusChangeEvent.REFUSED)
-                    {
-                        if (fileTransfer instanceof
-                                OutgoingFileTransferJabberImpl)
-                        {
-                            ((OutgoingFileTransferJabberImpl) fileTransfer)
-                                .removeThumbnailRequestListener();
-                        }
+        /**
+         * Determines whether the given status ends a transfer.
+         *
+         * @param status the status to check
+         * @return <tt>true</tt> if <tt>status</tt> ends a transfer
+         */
+        private boolean isFinalStatus(int status)
+        {
+            return status == FileTransferStatusChangeEvent.FAILED
+                || status == FileTransferStatusChangeEvent.COMPLETED
+                || status == FileTransferStatusChangeEvent.CANCELED
+                || status == FileTransferStatusChangeEvent.REFUSED;
+        }
 
-                        // sometimes a filetransfer can be preparing
-                        // and than completed :
-                        // transfered in one iteration of current thread
-                        // so it won't go through intermediate state - inProgress
-                        // make sure this won't happen
-                        if(status == FileTransferStatusChangeEvent.COMPLETED
-                            && fileTransfer.getStatus()
-                                == FileTransferStatusChangeEvent.PREPARING)
-                        {
-                            fileTransfer.fireStatusChangeEvent(
-                                FileTransferStatusChangeEvent.IN_PROGRESS,
-                                "Status changed");
-                            fileTransfer.fireProgressChangeEvent(
-                                System.currentTimeMillis(), progress);
-                        }
+        /**
+         * Fires the final status and progress events of the transfer.
+         *
+         * @param status the final status of the transfer
+         */
+        private void finished(int status)
+        {
+            String statusReason = "";
+            // the transfer has ended, so this is the final byte count
+            long progress = fileTransfer.getTransferedBytes();
 
-                        break;
-                    }
+            if (fileTransfer instanceof OutgoingFileTransferJabberImpl)
+            {
+                ((OutgoingFileTransferJabberImpl) fileTransfer)
+                    .removeThumbnailRequestListener();
+            }
 
-                    fileTransfer.fireStatusChangeEvent(status, "Status changed");
-                    fileTransfer.fireProgressChangeEvent(
-                        System.currentTimeMillis(), progress);
-                }
-                catch (InterruptedException e)
-                {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Unable to sleep thread.", e);
-                }
+            // sometimes a filetransfer can be preparing
+            // and than completed :
+            // transfered between two samples
+            // so it won't go through intermediate state - inProgress
+            // make sure this won't happen
+            if(status == FileTransferStatusChangeEvent.COMPLETED
+                && fileTransfer.getStatus()
+                    == FileTransferStatusChangeEvent.PREPARING)
+            {
+                fileTransfer.fireStatusChangeEvent(
+                    FileTransferStatusChangeEvent.IN_PROGRESS,
+                    "Status changed");
+                fileTransfer.fireProgressChangeEvent(
+                    System.currentTimeMillis(), progress);
             }
 
             if (jabberTransfer.getError() != null)
@@ -684,10 +738,14 @@ public void run()
 
                 statusReason = jabberTransfer.getException().getMessage();
             }
+            else if (engine.isFinished())
+            {
+                statusReason = engine.getStatusReason();
+            }
 
             if (initialFileSize > 0
                 && status == FileTransferStatusChangeEvent.COMPLETED
-                && fileTransfer.getTransferedBytes() < initialFileSize)
+                && progress < initialFileSize)
             {
                 status = FileTransferStatusChangeEvent.CANCELED;
             }
@@ -17,8 +17,6 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber;
 
-import java.util.*;
-
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.jabberconstants.*;
@@ -365,7 +363,7 @@ public void composingNotification(String from, String packetID)
         {
             String fromID = StringUtils.parseBareAddress(from);
 
-            Contact sourceContact = opSetPersPresence.findContactByID(fromID);
+            Contact sourceContact = findContact(fromID);
 
             if(sourceContact == null)
             {
@@ -383,7 +381,7 @@ public void offlineNotification(String from, String packetID)
         public void cancelledNotification(String from, String packetID)
         {
             String fromID = StringUtils.parseBareAddress(from);
-            Contact sourceContact = opSetPersPresence.findContactByID(fromID);
+            Contact sourceContact = findContact(fromID);
 
             if(sourceContact == null)
             {
@@ -396,6 +394,22 @@ public void cancelledNotification(String from, String packetID)
     }
 
 
+    /**
+     * Returns the contact a bare JID resolves to, through the routing table
+     * of the instant messaging operation set when it is available.
+     *
+     * @param bareJid the bare JID of the contact
+     * @return the contact or <tt>null</tt> if the contact list doesn't
+     * contain one
+     */
+    private Contact findContact(String bareJid)
+    {
+        if (opSetBasicIM != null)
+            return opSetBasicIM.getRoutingTable().getContact(bareJid);
+        else
+            return opSetPersPresence.findContactByID(bareJid);
+    }
+
     /**
      * The listener that we use to track chat state notifications according
      * to XEP-0085.
@@ -421,24 +435,21 @@ public void stateChanged(ChatState state,
             String fromID = StringUtils.parseBareAddress(fromJID);
 
             boolean isPrivateMessagingAddress = false;
-            OperationSetMultiUserChat mucOpSet = parentProvider
-                .getOperationSet(OperationSetMultiUserChat.class);
+            OperationSetMultiUserChatJabberImpl mucOpSet
+                = (OperationSetMultiUserChatJabberImpl) parentProvider
+                    .getOperationSet(OperationSetMultiUserChat.class);
             if(mucOpSet != null)
             {
-                List<ChatRoom> chatRooms
-                    = mucOpSet.getCurrentlyJoinedChatRooms();
-                for(ChatRoom chatRoom : chatRooms)
-                {
-                    if(chatRoom.getName().equals(fromID))
-                    {
-                        isPrivateMessagingAddress = true;
-                        break;
-                    }
-                }
+                ChatRoom chatRoom = mucOpSet.getChatRoom(fromID);
+
+                isPrivateMessagingAddress
+                    = (chatRoom != null) && chatRoom.isJoined();
             }
 
-            Contact sourceContact = opSetPersPresence.findContactByID(
-                (isPrivateMessagingAddress? message.getFrom() : fromID));
+            Contact sourceContact
+                = isPrivateMessagingAddress
+                    ? opSetPersPresence.findContactByID(message.getFrom())
+                    : findContact(fromID);
             if(sourceContact == null)
             {
                 // in private messaging we can receive some errors
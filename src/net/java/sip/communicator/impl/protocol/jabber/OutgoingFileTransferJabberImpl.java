@@ -61,6 +61,11 @@
      */
     private final OutgoingFileTransfer jabberTransfer;
 
+    /**
+     * The engine copying the file to the stream negotiated by Smack.
+     */
+    private final FileTransferEngine engine = new FileTransferEngine();
+
     private final ProtocolProviderServiceJabberImpl protocolProvider;
 
     /**
@@ -115,6 +120,7 @@ public OutgoingFileTransferJabberImpl(
     @Override
     public void cancel()
     {
+        engine.cancel();
         this.jabberTransfer.cancel();
     }
 
@@ -126,7 +132,17 @@ public void cancel()
     @Override
     public long getTransferedBytes()
     {
-        return jabberTransfer.getBytesSent();
+        return engine.getTransferredBytes();
+    }
+
+    /**
+     * Returns the engine copying the file to the stream negotiated by Smack.
+     *
+     * @return the engine of this transfer
+     */
+    FileTransferEngine getEngine()
+    {
+        return engine;
     }
 
     /**
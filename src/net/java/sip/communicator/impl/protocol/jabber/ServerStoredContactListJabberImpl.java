@@ -968,196 +968,345 @@ void cleanup()
 
     /**
      * When the protocol is online this method is used to fill or resolve
-     * the current contact list
+     * the current contact list. The roster is diffed against the local
+     * contact list in one pass: groups are resolved or created first, new
+     * groups together with their new contacts so that they are dispatched
+     * with a single event, then the contacts which already existed are
+     * resolved or moved, and whatever the roster no longer contains is
+     * removed. Contacts and groups which were already resolved and haven't
+     * changed since don't fire any event.
      */
     private synchronized void initRoster()
     {
-        // first if unfiled entries will move them in a group
-        if(roster.getUnfiledEntryCount() > 0)
-        {
-            for (RosterEntry item : roster.getUnfiledEntries())
-            {
-                ContactJabberImpl contact =
-                    findContactById(item.getUser());
-
-                // some services automatically add contacts from their
-                // addressbook to the roster and those contacts are
-                // with subscription none. If such already exist,
-                // remove them. This is typically our own contact
-                if(!isEntryDisplayable(item))
-                {
-                    if(contact != null)
-                    {
-                        ContactGroup parent = contact.getParentContactGroup();
+        Collection<RosterGroup> allRosterGroups = roster.getGroups();
+        Map<String, List<RosterGroup>> entryGroups
+            = indexEntryGroups(allRosterGroups);
+        Map<String, RosterGroup> rosterGroups
+            = new LinkedHashMap<String, RosterGroup>();
 
-                        if(parent instanceof RootContactGroupJabberImpl)
-                            ((RootContactGroupJabberImpl)parent)
-                                .removeContact(contact);
-                        else
-                            ((ContactGroupJabberImpl)parent)
-                                .removeContact(contact);
+        // make sure we ignore any whitespaces
+        for (RosterGroup rosterGroup : allRosterGroups)
+            rosterGroups.put(rosterGroup.getName().trim(), rosterGroup);
 
-                        fireContactRemoved(parent, contact);
-                    }
-                    continue;
-                }
+        // the local contacts and persistent groups, left with the ones the
+        // roster doesn't contain anymore once it has been gone through
+        Map<String, ContactJabberImpl> localContacts
+            = new HashMap<String, ContactJabberImpl>();
+        Map<String, ContactGroupJabberImpl> localGroups
+            = new HashMap<String, ContactGroupJabberImpl>();
 
-                if(contact == null)
-                {
-                    // if there is no such contact create it
-                    contact = new ContactJabberImpl(item, this, true, true);
-                    rootGroup.addContact(contact);
+        indexContacts(rootGroup, localContacts);
 
-                    fireContactAdded(rootGroup, contact);
-                }
-                else
-                {
-                    ContactGroup group = contact.getParentContactGroup();
-                    if(!rootGroup.equals(group))
-                    {
-                        contactMoved(group, rootGroup, contact);
-                    }
-                    // if contact exist so resolve it
-                    contact.setResolved(item);
-
-                    //fire an event saying that the unfiled contact has been
-                    //resolved
-                    fireContactResolved(rootGroup, contact);
-                }
+        Iterator<ContactGroup> iterGroups = rootGroup.subgroups();
+        while(iterGroups.hasNext())
+        {
+            ContactGroupJabberImpl group =
+                (ContactGroupJabberImpl)iterGroups.next();
 
-                try
-                {
-                    // process status if any that was received
-                    // while the roster reply packet was received and
-                    // added our presence listener
-                    // Fixes a problem where Presence packets can be received
-                    // before the roster items packet, and we miss it,
-                    // cause we add our listener after roster is received
-                    // and smack don't allow to add our listener earlier
-                    parentOperationSet.firePresenceStatusChanged(
-                        roster.getPresence(item.getUser()));
-                }
-                catch(Throwable t)
-                {
-                    logger.error("Error processing presence", t);
-                }
-            }
-        }
+            // skip non persistent groups
+            if(!group.isPersistent())
+                continue;
 
-        // now search all root contacts for unresolved ones
-        Iterator<Contact> iter = rootGroup.contacts();
-        List<ContactJabberImpl> contactsToRemove
-            = new ArrayList<ContactJabberImpl>();
-        while(iter.hasNext())
-        {
-            ContactJabberImpl contact = (ContactJabberImpl)iter.next();
-            if(!contact.isResolved())
-            {
-                contactsToRemove.add(contact);
-            }
+            localGroups.put(group.getGroupName().trim(), group);
+            indexContacts(group, localContacts);
         }
 
-        for(ContactJabberImpl contact : contactsToRemove)
-        {
-            rootGroup.removeContact(contact);
+        ContactGroupJabberImpl volatileGroup = getNonPersistentGroup();
 
-            fireContactRemoved(rootGroup, contact);
-        }
-        contactsToRemove.clear();
+        // the groups the roster contains, by name
+        Map<String, ContactGroupJabberImpl> groups
+            = new HashMap<String, ContactGroupJabberImpl>();
+        Set<ContactGroupJabberImpl> newGroups
+            = new LinkedHashSet<ContactGroupJabberImpl>();
 
-        for (RosterGroup item : roster.getGroups())
+        for (Map.Entry<String, RosterGroup> e : rosterGroups.entrySet())
         {
-            ContactGroupJabberImpl group =
-                findContactGroup(item.getName());
-            if(group != null)
+            ContactGroupJabberImpl group = localGroups.remove(e.getKey());
+
+            if(group == null)
             {
-                // the group exist so just resolved. The group will check and
-                // create or resolve its entries
-                group.setResolved(item);
+                // create the group as it doesn't exist, its contacts are
+                // added before telling listeners about it
+                group = new ContactGroupJabberImpl(
+                    e.getValue(),
+                    new ArrayList<RosterEntry>().iterator(),
+                    this,
+                    true);
+                newGroups.add(group);
+            }
+            else if(!group.isResolved())
+            {
+                // the group exist so just resolved
+                group.setResolved(e.getValue());
 
                 //fire an event saying that the group has been resolved
                 fireGroupEvent(group
                                , ServerStoredGroupEvent.GROUP_RESOLVED_EVENT);
             }
+            groups.put(e.getKey(), group);
         }
 
-        Iterator<ContactGroup> iterGroups = rootGroup.subgroups();
-        List<ContactGroupJabberImpl> groupsToRemove
-            = new ArrayList<ContactGroupJabberImpl>();
-        while(iterGroups.hasNext())
+        List<ContactJabberImpl> newContacts
+            = new ArrayList<ContactJabberImpl>();
+        List<RosterEntry> existingEntries = new ArrayList<RosterEntry>();
+        List<ContactJabberImpl> existingContacts
+            = new ArrayList<ContactJabberImpl>();
+
+        for (RosterEntry item : roster.getEntries())
         {
-            ContactGroupJabberImpl group =
-                (ContactGroupJabberImpl)iterGroups.next();
+            List<RosterGroup> itemGroups
+                = entryGroups.get(item.getUser().toLowerCase());
+
+            // some services automatically add contacts from their
+            // addressbook to the roster and those contacts are
+            // with subscription none. If such already exist,
+            // they are left in localContacts to be removed.
+            // This is typically our own contact
+            if(!isEntryDisplayable(item, itemGroups))
+                continue;
 
-            // skip non persistent groups
-            if(!group.isPersistent())
+            ContactJabberImpl contact = localContacts.remove(
+                StringUtils.parseBareAddress(item.getUser()).toLowerCase());
+
+            if(contact != null)
+            {
+                existingEntries.add(item);
+                existingContacts.add(contact);
                 continue;
+            }
 
-            if(!group.isResolved())
+            if(volatileGroup != null)
             {
-                groupsToRemove.add(group);
+                // if contact is in 'not in contact list'
+                // we must remove it from there in order to correctly
+                // process adding contact
+                ContactJabberImpl volatileContact
+                    = volatileGroup.findContact(item.getUser());
+
+                if(volatileContact != null)
+                {
+                    volatileGroup.removeContact(volatileContact);
+                    fireContactRemoved(volatileGroup, volatileContact);
+                }
             }
 
-            Iterator<Contact> iterContacts = group.contacts();
-            while(iterContacts.hasNext())
+            contact = new ContactJabberImpl(item, this, true, true);
+
+            // as for now we only support contact only in one group
+            ContactGroupJabberImpl group = (itemGroups == null)
+                ? null
+                : groups.get(itemGroups.get(0).getName().trim());
+
+            if(group == null)
             {
-                ContactJabberImpl contact =
-                    (ContactJabberImpl)iterContacts.next();
-                if(!contact.isResolved())
+                // no parent group so its in the root group
+                rootGroup.addContact(contact);
+                newContacts.add(contact);
+            }
+            else
+            {
+                group.addContact(contact);
+                if(!newGroups.contains(group))
+                    newContacts.add(contact);
+            }
+        }
+
+        for (ContactGroupJabberImpl group : newGroups)
+        {
+            rootGroup.addSubGroup(group);
+
+            //tell listeners about the added group
+            fireGroupEvent(group, ServerStoredGroupEvent.GROUP_CREATED_EVENT);
+
+            // if presence was already received it,
+            // we must check & dispatch it
+            Iterator<Contact> cIter = group.contacts();
+            while(cIter.hasNext())
+                fireRosterPresence(cIter.next());
+        }
+
+        for (ContactJabberImpl contact : newContacts)
+        {
+            fireContactAdded(contact.getParentContactGroup(), contact);
+            fireRosterPresence(contact);
+        }
+
+        for (int i = 0; i < existingContacts.size(); i++)
+        {
+            RosterEntry item = existingEntries.get(i);
+            ContactJabberImpl contact = existingContacts.get(i);
+            List<RosterGroup> itemGroups
+                = entryGroups.get(item.getUser().toLowerCase());
+            ContactGroup parent = contact.getParentContactGroup();
+            ContactGroup newParent = rootGroup;
+
+            if(itemGroups != null)
+            {
+                newParent = groups.get(itemGroups.get(0).getName().trim());
+                for (RosterGroup itemGroup : itemGroups)
                 {
-                    contactsToRemove.add(contact);
+                    if(parent == groups.get(itemGroup.getName().trim()))
+                    {
+                        newParent = parent;
+                        break;
+                    }
                 }
             }
-            for(ContactJabberImpl contact : contactsToRemove)
+
+            if(parent != newParent)
+                contactMoved(parent, newParent, contact);
+
+            if(contact.isResolved())
+            {
+                // check for change in display name
+                checkForRename(item.getName(), contact);
+
+                // presence may have been received before our listener was
+                // added, resolving a contact already dispatches it
+                fireRosterPresence(contact);
+            }
+            else
             {
-                group.removeContact(contact);
+                // if contact exist so resolve it
+                contact.setResolved(item);
 
-                fireContactRemoved(group, contact);
+                //fire an event saying that the contact has been resolved
+                fireContactResolved(newParent, contact);
             }
-            contactsToRemove.clear();
         }
 
-        for(ContactGroupJabberImpl group: groupsToRemove)
+        // whatever is left is no longer in the roster
+        for (ContactJabberImpl contact : localContacts.values())
         {
-            rootGroup.removeSubGroup(group);
+            ContactGroup parent = contact.getParentContactGroup();
 
-            fireGroupEvent(
-                group, ServerStoredGroupEvent.GROUP_REMOVED_EVENT);
+            if(parent instanceof RootContactGroupJabberImpl)
+                ((RootContactGroupJabberImpl)parent).removeContact(contact);
+            else
+                ((ContactGroupJabberImpl)parent).removeContact(contact);
+
+            fireContactRemoved(parent, contact);
         }
 
+        // the groups which have been emptied by moves were already removed,
+        // the resolved ones missing from the roster are kept as they may be
+        // empty groups we have created
+        Set<ContactGroupJabberImpl> groupsToRemove
+            = new HashSet<ContactGroupJabberImpl>();
 
-        // fill in root group
-        for (RosterGroup item : roster.getGroups())
+        for (ContactGroupJabberImpl group : localGroups.values())
         {
-            ContactGroupJabberImpl group =
-                findContactGroup(item.getName());
+            if(!group.isResolved())
+                groupsToRemove.add(group);
+        }
 
-            if(group == null)
-            {
-                // create the group as it doesn't exist
-                ContactGroupJabberImpl newGroup = new ContactGroupJabberImpl(
-                    item, item.getEntries().iterator(), this, true);
+        iterGroups = rootGroup.subgroups();
+        while(iterGroups.hasNext() && !groupsToRemove.isEmpty())
+        {
+            ContactGroup group = iterGroups.next();
+
+            if(!groupsToRemove.remove(group))
+                continue;
 
-                rootGroup.addSubGroup(newGroup);
+            rootGroup.removeSubGroup((ContactGroupJabberImpl)group);
 
-                //tell listeners about the added group
-                fireGroupEvent(newGroup
-                               , ServerStoredGroupEvent.GROUP_CREATED_EVENT);
+            fireGroupEvent(
+                (ContactGroupJabberImpl)group,
+                ServerStoredGroupEvent.GROUP_REMOVED_EVENT);
+        }
+    }
 
-                // if presence was already received it,
-                // we must check & dispatch it
-                if(roster != null)
+    /**
+     * Dispatches the presence the roster holds for a contact, as presence
+     * packets can be received before the roster items packet and we only
+     * add our listener after the roster is received.
+     *
+     * @param contact the contact whose presence to dispatch
+     */
+    private void fireRosterPresence(Contact contact)
+    {
+        try
+        {
+            parentOperationSet.firePresenceStatusChanged(
+                roster.getPresence(contact.getAddress()));
+        }
+        catch(Throwable t)
+        {
+            logger.error("Error processing presence", t);
+        }
+    }
+
+    /**
+     * Maps the lower case address of every roster entry to the groups it
+     * belongs to, as <tt>RosterEntry.getGroups()</tt> goes through all the
+     * entries of all the groups every time it is called.
+     *
+     * @param rosterGroups the groups of the roster
+     * @return the groups of every entry which belongs to one
+     */
+    private static Map<String, List<RosterGroup>> indexEntryGroups(
+            Collection<RosterGroup> rosterGroups)
+    {
+        Map<String, List<RosterGroup>> entryGroups
+            = new HashMap<String, List<RosterGroup>>();
+
+        for (RosterGroup rosterGroup : rosterGroups)
+        {
+            for (RosterEntry item : rosterGroup.getEntries())
+            {
+                String key = item.getUser().toLowerCase();
+                List<RosterGroup> groups = entryGroups.get(key);
+
+                if(groups == null)
                 {
-                    Iterator<Contact> cIter = newGroup.contacts();
-                    while(cIter.hasNext())
-                    {
-                        String address = cIter.next().getAddress();
-                        parentOperationSet.firePresenceStatusChanged(
-                            roster.getPresence(address));
-                    }
+                    groups = new ArrayList<RosterGroup>(1);
+                    entryGroups.put(key, groups);
                 }
+                groups.add(rosterGroup);
             }
         }
+
+        return entryGroups;
+    }
+
+    /**
+     * Checks the entry and the contact whether the display name has changed.
+     * @param newValue new display name value
+     * @param contact the contact to check
+     */
+    private void checkForRename(String newValue,
+                                ContactJabberImpl contact)
+    {
+        // check for change in display name
+        if(newValue != null
+           && !newValue.equals(
+                contact.getServerDisplayName()))
+        {
+            String oldValue = contact.getServerDisplayName();
+            contact.setServerDisplayName(newValue);
+            parentOperationSet.fireContactPropertyChangeEvent(
+                ContactPropertyChangeEvent.PROPERTY_DISPLAY_NAME,
+                contact, oldValue, newValue);
+        }
+    }
+
+    /**
+     * Adds the contacts of a group to an index by lower case address.
+     *
+     * @param group the group whose contacts to index
+     * @param index the index to add to
+     */
+    private static void indexContacts(ContactGroup group,
+                                      Map<String, ContactJabberImpl> index)
+    {
+        Iterator<Contact> iter = group.contacts();
+
+        while(iter.hasNext())
+        {
+            ContactJabberImpl contact = (ContactJabberImpl)iter.next();
+
+            index.put(contact.getAddress().toLowerCase(), contact);
+        }
     }
 
     /**
@@ -1167,16 +1316,25 @@ private synchronized void initRoster()
      */
     ContactGroupJabberImpl getNonPersistentGroup()
     {
-        String groupName
-            = JabberActivator.getResources().getI18NString(
-                "service.gui.NOT_IN_CONTACT_LIST_GROUP_NAME");
+        // only looked up once a volatile group is found, as this is called
+        // for every contact looked up by id
+        String groupName = null;
 
         for (int i = 0; i < getRootGroup().countSubgroups(); i++)
         {
             ContactGroupJabberImpl gr =
                 (ContactGroupJabberImpl)getRootGroup().getGroup(i);
 
-            if(!gr.isPersistent() && gr.getGroupName().equals(groupName))
+            if(gr.isPersistent())
+                continue;
+
+            if(groupName == null)
+            {
+                groupName
+                    = JabberActivator.getResources().getI18NString(
+                        "service.gui.NOT_IN_CONTACT_LIST_GROUP_NAME");
+            }
+            if(gr.getGroupName().equals(groupName))
                 return gr;
         }
 
@@ -1279,6 +1437,20 @@ protected void addContactForImageUpdate(ContactJabberImpl contact)
      * @return is item to be hidden/ignored.
      */
     static boolean isEntryDisplayable(RosterEntry entry)
+    {
+        return isEntryDisplayable(entry, entry.getGroups());
+    }
+
+    /**
+     * Checks whether the entry, whose groups are already known, should be
+     * displayed.
+     *
+     * @param entry the entry to check.
+     * @param groups the groups of the entry, may be <tt>null</tt>.
+     * @return is item to be hidden/ignored.
+     */
+    private static boolean isEntryDisplayable(RosterEntry entry,
+                                              Collection<RosterGroup> groups)
     {
         if(entry.getType() == RosterPacket.ItemType.both
            || entry.getType() == RosterPacket.ItemType.to)
@@ -1289,8 +1461,7 @@ else if((entry.getType() == RosterPacket.ItemType.none
                     || entry.getType() == RosterPacket.ItemType.from)
                 && (RosterPacket.ItemStatus.SUBSCRIPTION_PENDING.equals(
                     entry.getStatus())
-                    || (entry.getGroups() != null
-                        && entry.getGroups().size() > 0)))
+                    || (groups != null && groups.size() > 0)))
         {
             return true;
         }
@@ -1371,9 +1542,11 @@ public void entriesAdded(Collection<String> addresses)
             if (logger.isTraceEnabled())
                 logger.trace("entriesAdded " + addresses);
 
+            RosterPush push = new RosterPush();
+
             for (String id : addresses)
             {
-                addEntryToContactList(id);
+                addEntryToContactList(id, push);
             }
         }
 
@@ -1386,13 +1559,16 @@ public void entriesAdded(Collection<String> addresses)
          * All entries must be displayable before we done anything with them.
          *
          * @param rosterEntryID the entry id.
+         * @param push the roster push the entry is part of.
          * @return the newly created contact.
          */
-        private ContactJabberImpl addEntryToContactList(String rosterEntryID)
+        private ContactJabberImpl addEntryToContactList(String rosterEntryID,
+                                                        RosterPush push)
         {
             RosterEntry entry = roster.getEntry(rosterEntryID);
+            List<RosterGroup> entryGroups = push.getGroups(entry);
 
-            if(!isEntryDisplayable(entry))
+            if(!isEntryDisplayable(entry, entryGroups))
                 return null;
 
             ContactJabberImpl contact =
@@ -1437,7 +1613,7 @@ else if(contact instanceof VolatileContactJabberImpl)
                     true,
                     true);
 
-            if(entry.getGroups() == null || entry.getGroups().size() == 0)
+            if(entryGroups.size() == 0)
             {
                 // no parent group so its in the root group
                 rootGroup.addContact(contact);
@@ -1446,15 +1622,15 @@ else if(contact instanceof VolatileContactJabberImpl)
                 return contact;
             }
 
-            for (RosterGroup group : entry.getGroups())
+            for (RosterGroup group : entryGroups)
             {
                 ContactGroupJabberImpl parentGroup =
-                    findContactGroup(group.getName());
+                    push.findContactGroup(group.getName());
 
                 if(parentGroup != null)
                 {
                     parentGroup.addContact(contact);
-                    fireContactAdded(findContactGroup(contact), contact);
+                    fireContactAdded(parentGroup, contact);
                 }
                 else
                 {
@@ -1466,6 +1642,7 @@ else if(contact instanceof VolatileContactJabberImpl)
                         true);
 
                     rootGroup.addSubGroup(newGroup);
+                    push.groupsChanged();
 
                     //tell listeners about the added group
                     fireGroupEvent(newGroup,
@@ -1517,14 +1694,18 @@ public void entriesUpdated(Collection<String> addresses)
             if (logger.isTraceEnabled())
                 logger.trace("entriesUpdated  " + addresses);
 
+            RosterPush push = new RosterPush();
+
             // will search for group renamed
             for (String contactID : addresses)
             {
                 RosterEntry entry = roster.getEntry(contactID);
+                List<RosterGroup> entryGroups = push.getGroups(entry);
 
-                ContactJabberImpl contact = addEntryToContactList(contactID);
+                ContactJabberImpl contact
+                    = addEntryToContactList(contactID, push);
 
-                if(entry.getGroups().size() == 0)
+                if(entryGroups.size() == 0)
                 {
                     // check for change in display name
                     checkForRename(entry.getName(), contact);
@@ -1535,12 +1716,13 @@ public void entriesUpdated(Collection<String> addresses)
                     if(!rootGroup.equals(contactGroup))
                     {
                         contactMoved(contactGroup, rootGroup, contact);
+                        push.groupsChanged();
                     }
                 }
 
-                for (RosterGroup gr : entry.getGroups())
+                for (RosterGroup gr : entryGroups)
                 {
-                    ContactGroup cgr = findContactGroup(gr.getName());
+                    ContactGroup cgr = push.findContactGroup(gr.getName());
                     if(cgr == null)
                     {
                         // such group does not exist. so it must be
@@ -1551,6 +1733,7 @@ public void entriesUpdated(Collection<String> addresses)
                         {
                             // just change the source entry
                             group.setSourceGroup(gr);
+                            push.groupsChanged();
 
                             fireGroupEvent(group,
                                    ServerStoredGroupEvent.GROUP_RENAMED_EVENT);
@@ -1575,7 +1758,7 @@ public void entriesUpdated(Collection<String> addresses)
                                 // make sure this group name is not present
                                 // in entry groups
                                 boolean present = false;
-                                for (RosterGroup entryGr : entry.getGroups())
+                                for (RosterGroup entryGr : entryGroups)
                                 {
                                     if(entryGr.getName().equals(
                                             currentParentGroup.getGroupName()))
@@ -1593,6 +1776,7 @@ public void entriesUpdated(Collection<String> addresses)
                                         (ContactGroupJabberImpl)
                                             currentParentGroup;
                                     currentGroup.setSourceGroup(gr);
+                                    push.groupsChanged();
 
                                     fireGroupEvent(
                                         currentGroup,
@@ -1615,7 +1799,7 @@ public void entriesUpdated(Collection<String> addresses)
 
                             // the add it to the new one
                             ContactGroupJabberImpl newParentGroup =
-                                findContactGroup(gr.getName());
+                                push.findContactGroup(gr.getName());
 
                             // the new parent group maybe missing
                             if(newParentGroup == null)
@@ -1636,6 +1820,7 @@ public void entriesUpdated(Collection<String> addresses)
                             }
 
                             contactMoved(contactGroup, newParentGroup, contact);
+                            push.groupsChanged();
                         }
                         else
                         {
@@ -1647,33 +1832,14 @@ public void entriesUpdated(Collection<String> addresses)
             }
         }
 
-        /**
-         * Checks the entry and the contact whether the display name has changed.
-         * @param newValue new display name value
-         * @param contact the contact to check
-         */
-        private void checkForRename(String newValue,
-                                    ContactJabberImpl contact)
-        {
-            // check for change in display name
-            if(newValue != null
-               && !newValue.equals(
-                    contact.getServerDisplayName()))
-            {
-                String oldValue = contact.getServerDisplayName();
-                contact.setServerDisplayName(newValue);
-                parentOperationSet.fireContactPropertyChangeEvent(
-                    ContactPropertyChangeEvent.PROPERTY_DISPLAY_NAME,
-                    contact, oldValue, newValue);
-            }
-        }
-
         /**
          * Event received when entry has been removed from the list
          * @param addresses Collection
          */
         public void entriesDeleted(Collection<String> addresses)
         {
+            RosterPush push = new RosterPush();
+
             Iterator<String> iter = addresses.iterator();
             while (iter.hasNext())
             {
@@ -1681,7 +1847,7 @@ public void entriesDeleted(Collection<String> addresses)
                 if (logger.isTraceEnabled())
                     logger.trace("entry deleted " + address);
 
-                ContactJabberImpl contact = findContactById(address);
+                ContactJabberImpl contact = push.removeContact(address);
 
                 if(contact == null)
                 {
@@ -1703,6 +1869,110 @@ public void presenceChanged(Presence presence)
         {}
     }
 
+    /**
+     * The lookups of a roster push, done once for all of its entries instead
+     * of once per entry. The groups by name are looked up again after the
+     * groups have been changed.
+     */
+    private class RosterPush
+    {
+        /**
+         * The groups of every entry by lower case address.
+         */
+        private final Map<String, List<RosterGroup>> entryGroups
+            = indexEntryGroups(roster.getGroups());
+
+        /**
+         * The local groups by name, <tt>null</tt> until looked up.
+         */
+        private Map<String, ContactGroupJabberImpl> groups = null;
+
+        /**
+         * The local contacts by lower case address, <tt>null</tt> until
+         * looked up.
+         */
+        private Map<String, ContactJabberImpl> contacts = null;
+
+        /**
+         * Returns the groups of a roster entry.
+         *
+         * @param entry the entry
+         * @return the groups of the entry, empty if it is in none.
+         */
+        List<RosterGroup> getGroups(RosterEntry entry)
+        {
+            List<RosterGroup> result
+                = entryGroups.get(entry.getUser().toLowerCase());
+
+            return (result == null)
+                ? Collections.<RosterGroup>emptyList()
+                : result;
+        }
+
+        /**
+         * Returns the local group with the specified name.
+         *
+         * @param name the name of the group
+         * @return the group or <tt>null</tt> if no such group was found.
+         */
+        ContactGroupJabberImpl findContactGroup(String name)
+        {
+            if(groups == null)
+            {
+                groups = new HashMap<String, ContactGroupJabberImpl>();
+
+                Iterator<ContactGroup> iter = rootGroup.subgroups();
+                while(iter.hasNext())
+                {
+                    ContactGroupJabberImpl group =
+                        (ContactGroupJabberImpl)iter.next();
+                    String key = group.getGroupName().trim();
+
+                    if(!groups.containsKey(key))
+                        groups.put(key, group);
+                }
+            }
+
+            // make sure we ignore any whitespaces
+            return groups.get(name.trim());
+        }
+
+        /**
+         * Tells that groups have been added, removed or renamed.
+         */
+        void groupsChanged()
+        {
+            groups = null;
+        }
+
+        /**
+         * Returns the local contact of a deleted entry and forgets it.
+         *
+         * @param id the id of the deleted entry
+         * @return the contact or <tt>null</tt> if no such contact was found.
+         */
+        ContactJabberImpl removeContact(String id)
+        {
+            if(contacts == null)
+            {
+                contacts = new HashMap<String, ContactJabberImpl>();
+
+                indexContacts(rootGroup, contacts);
+
+                Iterator<ContactGroup> iter = rootGroup.subgroups();
+                while(iter.hasNext())
+                    indexContacts(iter.next(), contacts);
+            }
+
+            ContactJabberImpl contact = contacts.remove(
+                StringUtils.parseBareAddress(id).toLowerCase());
+
+            return (contact == null)
+                ? contacts.remove(id.toLowerCase())
+                : contact;
+        }
+    }
+
     /**
      * Thread retrieving images.
      */
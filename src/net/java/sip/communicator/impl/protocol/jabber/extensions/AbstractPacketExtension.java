@@ -51,8 +51,7 @@
     /**
      * A map of all attributes that this extension is currently using.
      */
-    protected final Map<String, Object> attributes
-        = new LinkedHashMap<String, Object>();
+    protected final Map<String, Object> attributes = new AttributeMap();
     
     /**
      * A list of all packets that are wrapped by this extension.
@@ -499,7 +498,9 @@ public static <T extends AbstractPacketExtension> T clone(T src)
         T dst = null;
         try
         {
-            dst = (T) src.getClass().newInstance();
+            dst
+                = (T) PacketExtensionFactory.getFactory(src.getClass())
+                    .newInstance();
         }
         catch (InstantiationException e)
         {
@@ -0,0 +1,270 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions;
+
+import java.util.*;
+
+/**
+ * The attributes of an {@link AbstractPacketExtension}, stored as two
+ * parallel arrays of names and values in insertion order. Packet extensions
+ * rarely have more than a handful of attributes, for which a linear scan is
+ * faster than hashing and the arrays take a fraction of the memory of a
+ * <tt>LinkedHashMap</tt> and its entries. Like the map it replaces, it
+ * permits a <tt>null</tt> name and it is not synchronized.
+ */
+class AttributeMap
+    extends AbstractMap<String, Object>
+{
+    /**
+     * The number of slots allocated for the first attribute.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The names of the attributes, the first {@link #size} of which are used.
+     */
+    private String[] names;
+
+    /**
+     * The values of the attributes, at the same indices as their names.
+     */
+    private Object[] values;
+
+    /**
+     * The number of attributes.
+     */
+    private int size = 0;
+
+    /**
+     * The view of the attributes as a set of entries.
+     */
+    private Set<Map.Entry<String, Object>> entrySet;
+
+    /**
+     * Returns the index of the attribute with the given name.
+     *
+     * @param name the name of the attribute.
+     * @return the index of the attribute or <tt>-1</tt> if there is none.
+     */
+    private int indexOf(Object name)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            if ((name == null) ? (names[i] == null) : name.equals(names[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object name)
+    {
+        return indexOf(name) != -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object get(Object name)
+    {
+        int i = indexOf(name);
+
+        return (i == -1) ? null : values[i];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object put(String name, Object value)
+    {
+        int i = indexOf(name);
+
+        if (i != -1)
+        {
+            Object oldValue = values[i];
+
+            values[i] = value;
+            return oldValue;
+        }
+
+        if (names == null)
+        {
+            names = new String[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+        }
+        else if (size == names.length)
+        {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object remove(Object name)
+    {
+        int i = indexOf(name);
+
+        if (i == -1)
+            return null;
+
+        Object oldValue = values[i];
+
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * Removes the attribute at the given index, keeping the order of the
+     * others.
+     *
+     * @param i the index of the attribute to remove.
+     */
+    private void removeAt(int i)
+    {
+        int moved = size - i - 1;
+
+        if (moved > 0)
+        {
+            System.arraycopy(names, i + 1, names, i, moved);
+            System.arraycopy(values, i + 1, values, i, moved);
+        }
+        size--;
+        names[size] = null;
+        values[size] = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            names[i] = null;
+            values[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet()
+    {
+        if (entrySet == null)
+        {
+            entrySet
+                = new AbstractSet<Map.Entry<String, Object>>()
+                {
+                    @Override
+                    public Iterator<Map.Entry<String, Object>> iterator()
+                    {
+                        return new EntryIterator();
+                    }
+
+                    @Override
+                    public int size()
+                    {
+                        return size;
+                    }
+                };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Iterates over the attributes in insertion order.
+     */
+    private class EntryIterator
+        implements Iterator<Map.Entry<String, Object>>
+    {
+        /**
+         * The index of the next attribute to return.
+         */
+        private int next = 0;
+
+        /**
+         * The index of the attribute last returned, or <tt>-1</tt> if it has
+         * been removed or none has been returned yet.
+         */
+        private int last = -1;
+
+        public boolean hasNext()
+        {
+            return next < size;
+        }
+
+        public Map.Entry<String, Object> next()
+        {
+            if (next >= size)
+                throw new NoSuchElementException();
+
+            last = next++;
+
+            final int index = last;
+
+            return
+                new AbstractMap.SimpleEntry<String, Object>(
+                        names[index],
+                        values[index])
+                {
+                    private static final long serialVersionUID = 0L;
+
+                    @Override
+                    public Object setValue(Object value)
+                    {
+                        values[index] = value;
+                        return super.setValue(value);
+                    }
+                };
+        }
+
+        public void remove()
+        {
+            if (last == -1)
+                throw new IllegalStateException();
+
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+}
@@ -53,6 +53,11 @@
      */
     private final Class<C> packetClass;
 
+    /**
+     * The factory creating instances of {@link #packetClass}.
+     */
+    private final PacketExtensionFactory<C> factory;
+
     /**
      * Creates a new packet provider for the specified packet extensions.
      *
@@ -61,6 +66,7 @@
     public DefaultPacketExtensionProvider(Class<C> c)
     {
         this.packetClass = c;
+        this.factory = PacketExtensionFactory.getFactory(c);
     }
 
     /**
@@ -77,7 +83,7 @@ public DefaultPacketExtensionProvider(Class<C> c)
      */
     public C parseExtension(XmlPullParser parser) throws Exception
     {
-        C packetExtension = packetClass.newInstance();
+        C packetExtension = factory.newInstance();
 
         //first, set all attributes
         int attrCount = parser.getAttributeCount();
@@ -0,0 +1,148 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions;
+
+import java.lang.invoke.*;
+
+/**
+ * Creates instances of an {@link AbstractPacketExtension} class through a
+ * <tt>MethodHandle</tt> of its no-argument constructor, which is looked up
+ * once per class, instead of going through <tt>Class.newInstance()</tt> and
+ * its access checks for every parsed element. The factories are shared by all
+ * providers and by
+ * {@link AbstractPacketExtension#clone(AbstractPacketExtension)} and are
+ * attached to their classes through a <tt>ClassValue</tt>, so that they don't
+ * keep the classes of uninstalled bundles and their class loaders alive.
+ *
+ * @param <C> the class of the created packet extensions
+ */
+public class PacketExtensionFactory<C extends AbstractPacketExtension>
+{
+    /**
+     * The type of the constructor handles once adapted to be invoked exactly.
+     */
+    private static final MethodType FACTORY_TYPE
+        = MethodType.methodType(AbstractPacketExtension.class);
+
+    /**
+     * The factories of the packet extension classes, created the first time
+     * they are asked for.
+     */
+    private static final ClassValue<PacketExtensionFactory<?>> factories
+        = new ClassValue<PacketExtensionFactory<?>>()
+        {
+            @Override
+            @SuppressWarnings({ "rawtypes", "unchecked" })
+            protected PacketExtensionFactory<?> computeValue(Class<?> type)
+            {
+                return new PacketExtensionFactory(type);
+            }
+        };
+
+    /**
+     * The class of the created packet extensions.
+     */
+    private final Class<C> packetClass;
+
+    /**
+     * The handle of the no-argument constructor of <tt>packetClass</tt>, or
+     * <tt>null</tt> if it couldn't be looked up, in which case instances are
+     * created through reflection.
+     */
+    private final MethodHandle constructor;
+
+    /**
+     * Returns the factory of the given packet extension class, creating it
+     * if this is the first time it is asked for.
+     *
+     * @param packetClass the class of the packet extensions to create
+     * @param <C> the class of the packet extensions to create
+     * @return the factory of <tt>packetClass</tt>
+     */
+    @SuppressWarnings("unchecked")
+    public static <C extends AbstractPacketExtension>
+        PacketExtensionFactory<C> getFactory(Class<C> packetClass)
+    {
+        return (PacketExtensionFactory<C>) factories.get(packetClass);
+    }
+
+    /**
+     * Looks up the constructor of <tt>packetClass</tt>.
+     *
+     * @param packetClass the class of the packet extensions to create
+     */
+    private PacketExtensionFactory(Class<C> packetClass)
+    {
+        MethodHandle constructor;
+
+        try
+        {
+            constructor
+                = MethodHandles.publicLookup()
+                    .findConstructor(
+                            packetClass,
+                            MethodType.methodType(void.class))
+                    .asType(FACTORY_TYPE);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            // Not public, fall back to reflection which reports the problem.
+            constructor = null;
+        }
+        this.packetClass = packetClass;
+        this.constructor = constructor;
+    }
+
+    /**
+     * Creates a new instance of the packet extension class.
+     *
+     * @return a new instance of the packet extension class
+     * @throws InstantiationException if the class cannot be instantiated
+     * @throws IllegalAccessException if the constructor is not accessible
+     */
+    public C newInstance()
+        throws InstantiationException,
+               IllegalAccessException
+    {
+        if (constructor == null)
+            return packetClass.newInstance();
+
+        try
+        {
+            return packetClass.cast(
+                    (AbstractPacketExtension) constructor.invokeExact());
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Error e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            // A checked exception thrown by the constructor.
+            InstantiationException ie
+                = new InstantiationException(packetClass.getName());
+
+            ie.initCause(t);
+            throw ie;
+        }
+    }
+}
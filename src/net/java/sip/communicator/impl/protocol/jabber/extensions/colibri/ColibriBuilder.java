@@ -132,6 +132,21 @@
      */
     private RTPLevelRelayType rtpLevelRelayType;
 
+    /**
+     * Whether {@link RequestType#CHANNEL_INFO_UPDATE} queries include only the
+     * channels whose sources, source groups or payload types differ from the
+     * ones which have been last included for them.
+     */
+    private boolean incrementalUpdates = false;
+
+    /**
+     * The XML of the sources, source groups and payload types which have been
+     * last included in {@link RequestType#CHANNEL_INFO_UPDATE} queries, by
+     * channel ID and element name. Only maintained in incremental update mode.
+     */
+    private final Map<String, String> sentUpdates
+        = new HashMap<String, String>();
+
     /**
      * Creates new instance of {@link ColibriBuilder} for given
      * <tt>conferenceState</tt>.
@@ -408,6 +423,7 @@ public boolean addExpireChannelsReq(ColibriConferenceIQ channelInfo)
                         channelRequest.setExpire(0);
                         channelRequest.setID(stateChannel.getID());
                         requestContent.addChannel(channelRequest);
+                        forgetSentUpdates(stateChannel.getID());
 
                         hasAnyChannelsToExpire = true;
                     }
@@ -567,6 +583,14 @@ public boolean addRtpDescription(
                     continue;
                 }
 
+                if (isUnchanged(
+                        channel.getID(),
+                        PayloadTypePacketExtension.ELEMENT_NAME,
+                        pts))
+                {
+                    continue;
+                }
+
                 anyUpdates = true;
 
                 ColibriConferenceIQ.Channel channelRequest
@@ -635,6 +659,14 @@ public boolean addSSSRCInfo(
                 continue;
             }
 
+            if (isUnchanged(
+                    rtpChanel.getID(),
+                    SourcePacketExtension.ELEMENT_NAME,
+                    ssrcMap.get(contentName)))
+            {
+                continue;
+            }
+
             anyUpdates = true;
 
             // Ok we have channel for this content, let's add SSRCs
@@ -709,6 +741,14 @@ public boolean addSSSRCGroupsInfo(
             List<SourceGroupPacketExtension> groups
                 = ssrcGroupMap.get(contentName);
 
+            if (isUnchanged(
+                    rtpChannel.getID(),
+                    SourceGroupPacketExtension.ELEMENT_NAME,
+                    groups))
+            {
+                continue;
+            }
+
             // Ok we have channel for this content, let's add SSRCs
             ColibriConferenceIQ.Channel reqChannel
                 = (ColibriConferenceIQ.Channel) getRequestChannel(
@@ -799,6 +839,70 @@ public boolean addTransportUpdateReq(
         return hasAnyChanges;
     }
 
+    /**
+     * Determines whether the XML of <tt>extensions</tt> equals the one which
+     * has been last included in a {@link RequestType#CHANNEL_INFO_UPDATE}
+     * query for the given channel and remembers it for the next query. Always
+     * returns <tt>false</tt> unless in incremental update mode.
+     *
+     * @param channelID the ID of the channel to be updated.
+     * @param elementName the name of the elements in <tt>extensions</tt>.
+     * @param extensions the sources, source groups or payload types to be
+     *        included for the channel.
+     *
+     * @return <tt>true</tt> if <tt>extensions</tt> don't need to be included
+     *         in the query currently being built.
+     */
+    private boolean isUnchanged(
+            String                           channelID,
+            String                           elementName,
+            List<? extends PacketExtension>  extensions)
+    {
+        if (!incrementalUpdates || channelID == null)
+            return false;
+
+        StringBuilder xml = new StringBuilder();
+
+        for (PacketExtension extension : extensions)
+            xml.append(extension.toXML());
+
+        String key = channelID + '/' + elementName;
+        String fragment = xml.toString();
+
+        return fragment.equals(sentUpdates.put(key, fragment));
+    }
+
+    /**
+     * Forgets what has been last included in
+     * {@link RequestType#CHANNEL_INFO_UPDATE} queries for the channel with the
+     * given ID, so that the next update of the channel is sent in full.
+     * Should be called when an update request fails.
+     *
+     * @param channelID the ID of the channel.
+     */
+    public void forgetSentUpdates(String channelID)
+    {
+        String prefix = channelID + '/';
+
+        for (Iterator<String> i = sentUpdates.keySet().iterator();
+                i.hasNext();)
+        {
+            if (i.next().startsWith(prefix))
+                i.remove();
+        }
+    }
+
+    /**
+     * Forgets what has been last included in
+     * {@link RequestType#CHANNEL_INFO_UPDATE} queries for all channels, so
+     * that the next updates are sent in full. Should be called when an
+     * update request fails.
+     */
+    public void forgetSentUpdates()
+    {
+        sentUpdates.clear();
+    }
+
     /**
      * Finds channel in <tt>localChannels</tt> info for given
      * <tt>contentName</tt>.
@@ -1075,6 +1179,34 @@ private ColibriConferenceIQ.Channel getRtpChannel(
         return content.getChannelCount() > 0 ? content.getChannel(0) : null;
     }
 
+    /**
+     * Returns <tt>true</tt> if {@link RequestType#CHANNEL_INFO_UPDATE} queries
+     * include only the channels whose sources, source groups or payload types
+     * have changed since they were last included.
+     */
+    public boolean isIncrementalUpdates()
+    {
+        return incrementalUpdates;
+    }
+
+    /**
+     * Enables or disables incremental {@link RequestType#CHANNEL_INFO_UPDATE}
+     * queries. When enabled, <tt>addRtpDescription</tt>,
+     * <tt>addSSSRCInfo</tt> and <tt>addSSSRCGroupsInfo</tt> skip the channels
+     * for which the same elements have already been included in a previous
+     * query and return <tt>false</tt> if there is nothing left to send.
+     * As the bridge replaces the sources of a channel with the ones in an
+     * update, a channel which did change is still sent with all its sources.
+     *
+     * @param incrementalUpdates <tt>true</tt> to enable incremental updates.
+     */
+    public void setIncrementalUpdates(boolean incrementalUpdates)
+    {
+        this.incrementalUpdates = incrementalUpdates;
+        if (!incrementalUpdates)
+            sentUpdates.clear();
+    }
+
     /**
      * The types of request that can be built with {@link ColibriBuilder}.
      */
@@ -18,6 +18,7 @@
 package net.java.sip.communicator.impl.protocol.jabber.extensions.colibri;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
 import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
@@ -83,17 +84,17 @@
      * IQ.
      */
     private final List<ChannelBundle> channelBundles
-        = new LinkedList<ChannelBundle>();
+        = new ArrayList<ChannelBundle>();
 
     /**
      * The list of {@link Content}s included into this <tt>conference</tt> IQ.
      */
-    private final List<Content> contents = new LinkedList<Content>();
+    private final List<Content> contents = new ArrayList<Content>();
 
     /**
      * The list of <tt>Endpoint</tt>s included into this <tt>conference</tt> IQ.
      */
-    private final List<Endpoint> endpoints = new LinkedList<Endpoint>();
+    private final List<Endpoint> endpoints = new ArrayList<Endpoint>();
 
     /**
      * The ID of the conference represented by this IQ.
@@ -681,7 +682,23 @@ public void setName(String name)
          * The <tt>SourcePacketExtension</tt>s of this channel.
          */
         private final List<SourcePacketExtension> sources
-            = new LinkedList<SourcePacketExtension>();
+            = new ArrayList<SourcePacketExtension>();
+
+        /**
+         * The XML representation of {@link #sources}, cached because the
+         * sources of a channel rarely change while the requests and responses
+         * containing them are serialized again and again. Reset whenever a
+         * source is added or removed, so <tt>SourcePacketExtension</tt>s must
+         * not be modified after they have been added to a channel.
+         */
+        private String sourcesXML;
+
+        /**
+         * The <tt>Content</tt>s which this <tt>Channel</tt> has been added to
+         * and which index it by its ID and endpoint.
+         */
+        private final List<Content> contents
+            = new CopyOnWriteArrayList<Content>();
 
         /**
          * The list of (RTP) SSRCs which have been seen/received on this
@@ -696,6 +713,57 @@ public Channel()
             super(Channel.ELEMENT_NAME);
         }
 
+        /**
+         * Notes that this <tt>Channel</tt> has been added to a specific
+         * <tt>Content</tt>.
+         *
+         * @param content the <tt>Content</tt> this channel has been added to
+         */
+        void addContent(Content content)
+        {
+            contents.add(content);
+        }
+
+        /**
+         * Notes that this <tt>Channel</tt> has been removed from a specific
+         * <tt>Content</tt>.
+         *
+         * @param content the <tt>Content</tt> this channel has been removed
+         * from
+         */
+        void removeContent(Content content)
+        {
+            contents.remove(content);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Invalidates the index of the <tt>Content</tt>s this channel belongs
+         * to.
+         */
+        @Override
+        public void setEndpoint(String endpoint)
+        {
+            super.setEndpoint(endpoint);
+            for (Content content : contents)
+                content.channelKeysChanged();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Invalidates the index of the <tt>Content</tt>s this channel belongs
+         * to.
+         */
+        @Override
+        public void setID(String id)
+        {
+            super.setID(id);
+            for (Content content : contents)
+                content.channelKeysChanged();
+        }
+
         /**
          * Adds a <tt>payload-type</tt> element defined by XEP-0167: Jingle RTP
          * Sessions to this <tt>channel</tt>.
@@ -780,7 +848,11 @@ public synchronized boolean addSource(SourcePacketExtension source)
             if (source == null)
                 throw new NullPointerException("source");
 
-            return sources.contains(source) ? false : sources.add(source);
+            if (sources.contains(source))
+                return false;
+
+            sourcesXML = null;
+            return sources.add(source);
         }
 
         /**
@@ -800,7 +872,7 @@ public synchronized boolean addSourceGroup(
                 throw new NullPointerException("sourceGroup");
 
             if (sourceGroups == null)
-                sourceGroups = new LinkedList<SourceGroupPacketExtension>();
+                sourceGroups = new ArrayList<SourceGroupPacketExtension>();
 
             return
                 sourceGroups.contains(sourceGroup)
@@ -1157,7 +1229,6 @@ protected void printContent(StringBuilder xml)
             List<PayloadTypePacketExtension> payloadTypes = getPayloadTypes();
             Collection<RTPHdrExtPacketExtension> rtpHdrExtPacketExtensions
                     = getRtpHeaderExtensions();
-            List<SourcePacketExtension> sources = getSources();
             List<SourceGroupPacketExtension> sourceGroups = getSourceGroups();
             int[] ssrcs = getSSRCs();
 
@@ -1167,8 +1238,7 @@ protected void printContent(StringBuilder xml)
             for (RTPHdrExtPacketExtension ext : rtpHdrExtPacketExtensions)
                 xml.append(ext.toXML());
 
-            for (SourcePacketExtension source : sources)
-                xml.append(source.toXML());
+            xml.append(getSourcesXML());
 
             if (sourceGroups != null && sourceGroups.size() != 0)
                 for (SourceGroupPacketExtension sourceGroup : sourceGroups)
@@ -1235,7 +1305,29 @@ public void removeRtpHeaderExtension(RTPHdrExtPacketExtension ext)
          */
         public synchronized boolean removeSource(SourcePacketExtension source)
         {
-            return sources.remove(source);
+            if (!sources.remove(source))
+                return false;
+
+            sourcesXML = null;
+            return true;
+        }
+
+        /**
+         * Gets the XML representation of the sources of this channel.
+         *
+         * @return the XML representation of the sources of this channel
+         */
+        private synchronized String getSourcesXML()
+        {
+            if (sourcesXML == null)
+            {
+                StringBuilder xml = new StringBuilder();
+
+                for (SourcePacketExtension source : sources)
+                    xml.append(source.toXML());
+                sourcesXML = xml.toString();
+            }
+            return sourcesXML;
         }
 
         /**
@@ -1915,7 +2007,29 @@ public void toXML(StringBuilder xml)
          * The list of {@link Channel}s included into this <tt>content</tt> of a
          * <tt>conference</tt> IQ.
          */
-        private final List<Channel> channels = new LinkedList<Channel>();
+        private final List<Channel> channels = new ArrayList<Channel>();
+
+        /**
+         * The first of {@link #channels} with each ID. Like
+         * {@link #channelsByEndpoint} and {@link #channelsIndexed}, guarded by
+         * <tt>channels</tt>.
+         */
+        private final Map<String, Channel> channelsByID
+            = new HashMap<String, Channel>();
+
+        /**
+         * The first of {@link #channels} associated with each endpoint.
+         */
+        private final Map<String, Channel> channelsByEndpoint
+            = new HashMap<String, Channel>();
+
+        /**
+         * Whether {@link #channelsByID} and {@link #channelsByEndpoint} are up
+         * to date. They are rebuilt on lookup after the ID or the endpoint of
+         * one of the channels has changed, or after a channel they referred to
+         * has been removed.
+         */
+        private boolean channelsIndexed = true;
 
         /**
          * The name of the <tt>content</tt> represented by this instance.
@@ -1927,7 +2041,7 @@ public void toXML(StringBuilder xml)
          * <tt>content</tt> of a <tt>conference</tt> IQ.
          */
         private final List<SctpConnection> sctpConnections
-            = new LinkedList<SctpConnection>();
+            = new ArrayList<SctpConnection>();
 
         /**
          * Initializes a new <tt>Content</tt> instance without a name and
@@ -1965,7 +2079,16 @@ public boolean addChannel(Channel channel)
             if (channel == null)
                 throw new NullPointerException("channel");
 
-            return channels.contains(channel) ? false : channels.add(channel);
+            synchronized (channels)
+            {
+                if (channels.contains(channel) || !channels.add(channel))
+                    return false;
+
+                channel.addContent(this);
+                if (channelsIndexed)
+                    indexChannel(channel);
+                return true;
+            }
         }
 
         /**
@@ -2020,7 +2143,10 @@ public boolean addSctpConnection(SctpConnection conn)
          */
         public Channel getChannel(int channelIndex)
         {
-            return getChannels().get(channelIndex);
+            synchronized (channels)
+            {
+                return channels.get(channelIndex);
+            }
         }
 
         /**
@@ -2035,12 +2161,85 @@ public Channel getChannel(int channelIndex)
          */
         public Channel getChannel(String channelID)
         {
-            for (Channel channel : getChannels())
+            if (channelID == null)
+                return null;
+
+            synchronized (channels)
             {
-                if (channelID.equals(channel.getID()))
-                    return channel;
+                indexChannels();
+                return channelsByID.get(channelID);
+            }
+        }
+
+        /**
+         * Gets a <tt>Channel</tt> which is included into this <tt>Content</tt>
+         * and which is associated with a specific endpoint.
+         *
+         * @param endpoint the ID of the endpoint associated with the
+         * <tt>Channel</tt> to be returned
+         * @return the first <tt>Channel</tt> which is included into this
+         * <tt>Content</tt> and which is associated with the specified
+         * <tt>endpoint</tt> if such a <tt>Channel</tt> exists; otherwise,
+         * <tt>null</tt>
+         */
+        public Channel getChannelByEndpoint(String endpoint)
+        {
+            if (endpoint == null)
+                return null;
+
+            synchronized (channels)
+            {
+                indexChannels();
+                return channelsByEndpoint.get(endpoint);
+            }
+        }
+
+        /**
+         * Rebuilds {@link #channelsByID} and {@link #channelsByEndpoint} if
+         * they are not up to date. Must be called with <tt>channels</tt>
+         * locked.
+         */
+        private void indexChannels()
+        {
+            if (channelsIndexed)
+                return;
+
+            channelsByID.clear();
+            channelsByEndpoint.clear();
+            for (Channel channel : channels)
+                indexChannel(channel);
+            channelsIndexed = true;
+        }
+
+        /**
+         * Adds a channel to {@link #channelsByID} and
+         * {@link #channelsByEndpoint} unless a channel which comes before it
+         * has the same ID or endpoint. Must be called with <tt>channels</tt>
+         * locked.
+         *
+         * @param channel the channel to index
+         */
+        private void indexChannel(Channel channel)
+        {
+            String id = channel.getID();
+            String endpoint = channel.getEndpoint();
+
+            if (id != null && !channelsByID.containsKey(id))
+                channelsByID.put(id, channel);
+            if (endpoint != null && !channelsByEndpoint.containsKey(endpoint))
+                channelsByEndpoint.put(endpoint, channel);
+        }
+
+        /**
+         * Notifies this <tt>Content</tt> that the ID or the endpoint of one of
+         * its channels has changed.
+         */
+        void channelKeysChanged()
+        {
+            synchronized (channels)
+            {
+                channelsIndexed = false;
             }
-            return null;
         }
 
         /**
@@ -2067,19 +2266,26 @@ public SctpConnection getSctpConnection(String connectionID)
          */
         public int getChannelCount()
         {
-            return getChannels().size();
+            synchronized (channels)
+            {
+                return channels.size();
+            }
         }
 
         /**
          * Gets a list of the <tt>Channel</tt> included into/associated with
          * this <tt>Content</tt>.
          *
-         * @return an unmodifiable <tt>List</tt> of the <tt>Channel</tt>s
-         * included into/associated with this <tt>Content</tt>
+         * @return an unmodifiable copy of the <tt>List</tt> of the
+         * <tt>Channel</tt>s included into/associated with this <tt>Content</tt>
          */
         public List<Channel> getChannels()
         {
-            return Collections.unmodifiableList(channels);
+            synchronized (channels)
+            {
+                return Collections.unmodifiableList(
+                        new ArrayList<Channel>(channels));
+            }
         }
 
         /**
@@ -2116,7 +2322,21 @@ public List<SctpConnection> getSctpConnections()
          */
         public boolean removeChannel(Channel channel)
         {
-            return channels.remove(channel);
+            synchronized (channels)
+            {
+                if (!channels.remove(channel))
+                    return false;
+
+                channel.removeContent(this);
+
+                // another channel may have the same ID or endpoint
+                if (channelsByID.containsValue(channel)
+                        || channelsByEndpoint.containsValue(channel))
+                {
+                    channelsIndexed = false;
+                }
+                return true;
+            }
         }
 
         /**
@@ -70,6 +70,31 @@
      */
     private SessionDescription localSess = null;
 
+    /**
+     * The SDP <tt>String</tt> of <tt>encodedLocalSess</tt>, which is reused
+     * as long as we keep sending the same session description, e.g. in
+     * session refreshes.
+     */
+    private String localSdp = null;
+
+    /**
+     * The session description which <tt>localSdp</tt> has been encoded
+     * from.
+     */
+    private SessionDescription encodedLocalSess = null;
+
+    /**
+     * The last SDP <tt>String</tt> that we received from the remote peer.
+     */
+    private String remoteSdp = null;
+
+    /**
+     * The session description parsed from <tt>remoteSdp</tt>, which is
+     * reused when the peer sends the same SDP again, e.g. in session
+     * refreshes or re-INVITEs which don't change the media.
+     */
+    private SessionDescription remoteSess = null;
+
     /**
      * A <tt>URL</tt> pointing to a location with call information or a call
      * control web interface related to the <tt>CallPeer</tt> that we are
@@ -147,7 +172,55 @@ public String createOffer()
             SdpUtils.setSessionDirection(offer);
         }
 
-        return offer.toString();
+        return encodeLocalSess(offer);
+    }
+
+    /**
+     * Returns the SDP <tt>String</tt> of a session description that we have
+     * generated, reusing the previous one if the description hasn't changed.
+     *
+     * @param sess the session description to encode
+     * @return the SDP <tt>String</tt> of <tt>sess</tt>
+     */
+    private String encodeLocalSess(SessionDescription sess)
+    {
+        synchronized (offerAnswerLock)
+        {
+            if (sess != encodedLocalSess)
+            {
+                localSdp = sess.toString();
+                encodedLocalSess = sess;
+            }
+            return localSdp;
+        }
+    }
+
+    /**
+     * Parses an SDP <tt>String</tt> received from the remote peer, reusing
+     * the previously parsed description if the peer sent the same SDP again.
+     * The returned description is shared and must not be modified.
+     *
+     * @param sdp the SDP <tt>String</tt> that we'd like to parse
+     * @return the <tt>SessionDescription</tt> corresponding to <tt>sdp</tt>
+     * @throws IllegalArgumentException if <tt>sdp</tt> is not a valid SDP
+     * <tt>String</tt>
+     */
+    private SessionDescription parseRemoteSdp(String sdp)
+        throws IllegalArgumentException
+    {
+        synchronized (offerAnswerLock)
+        {
+            if (remoteSess == null || !sdp.equals(remoteSdp))
+            {
+                remoteSess = SdpUtils.parseSdpString(sdp);
+                remoteSdp = sdp;
+            }
+            else if (logger.isDebugEnabled())
+            {
+                logger.debug("Reusing the parsed SDP of " + getPeer());
+            }
+            return remoteSess;
+        }
     }
 
     /**
@@ -437,10 +510,9 @@ public String processOffer(String offerString)
         throws OperationFailedException,
                IllegalArgumentException
     {
-        SessionDescription offer = SdpUtils.parseSdpString(offerString);
-
         synchronized (offerAnswerLock)
         {
+            SessionDescription offer = parseRemoteSdp(offerString);
             SessionDescription answer = (localSess == null)
                     ? processFirstOffer(offer)
                     : processUpdateOffer(offer, localSess);
@@ -453,7 +525,7 @@ public String processOffer(String offerString)
                 SdpUtils.setSessionDirection(answer);
             }
 
-            return answer.toString();
+            return encodeLocalSess(answer);
         }
     }
 
@@ -1357,7 +1429,7 @@ public void processAnswer(String answer)
         throws OperationFailedException,
                IllegalArgumentException
     {
-        processAnswer(SdpUtils.parseSdpString(answer));
+        processAnswer(parseRemoteSdp(answer));
     }
 
     /**
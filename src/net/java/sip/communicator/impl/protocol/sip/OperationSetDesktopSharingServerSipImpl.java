@@ -33,6 +33,7 @@
 import net.java.sip.communicator.service.hid.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.protocol.media.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.neomedia.MediaType;
@@ -51,7 +52,8 @@
 public class OperationSetDesktopSharingServerSipImpl
     extends OperationSetDesktopStreamingSipImpl
     implements OperationSetDesktopSharingServer,
-               MethodProcessorListener
+               MethodProcessorListener,
+               RemoteControlEventQueue.Handler
 {
     /**
      * Our class logger.
@@ -87,6 +89,7 @@ public void peerStateChanged(CallPeerChangeEvent evt)
                  * lifetime) will throw exception
                  */
                 remoteControlEnabled = false;
+                inputQueue.remove(peer.getAddress());
 
                 try
                 {
@@ -103,7 +106,7 @@ public void peerStateChanged(CallPeerChangeEvent evt)
     /**
      * If the remote control is authorized and thus enabled.
      */
-    private boolean remoteControlEnabled = false;
+    private volatile boolean remoteControlEnabled = false;
 
     /**
      * The <tt>EventPackageNotifier</tt> which implements remote-control
@@ -131,6 +134,19 @@ public void peerStateChanged(CallPeerChangeEvent evt)
      */
     private HIDService hidService = null;
 
+    /**
+     * The stage of the desktop capture pipeline which detects the changes
+     * between captured frames.
+     */
+    private final DesktopCaptureStage captureStage = new DesktopCaptureStage();
+
+    /**
+     * The queue which replays the keyboard and mouse events received from
+     * the peer with remote control granted.
+     */
+    private final RemoteControlEventQueue inputQueue
+        = new RemoteControlEventQueue(this, captureStage);
+
     /**
      * Initializes a new <tt>OperationSetDesktopSharingSipImpl</tt> instance
      * which builds upon the telephony-related functionality of a specific
@@ -327,6 +343,7 @@ public void disableRemoteControl(CallPeer callPeer)
         }
 
         remoteControlEnabled = false;
+        inputQueue.remove(callPeer.getAddress());
     }
 
     /**
@@ -389,6 +406,44 @@ public void responseProcessed(
         }
     }
 
+    /**
+     * Returns the stage of the desktop capture pipeline which detects the
+     * changes between captured frames and adapts the capture rate. It is
+     * notified of the remote control input replayed by this operation set.
+     *
+     * @return the <tt>DesktopCaptureStage</tt> of this operation set
+     */
+    public DesktopCaptureStage getCaptureStage()
+    {
+        return captureStage;
+    }
+
+    /**
+     * Determines whether the peer still has remote control granted, so that
+     * its queued events may be regenerated.
+     *
+     * @param peer the address of the peer
+     * @return <tt>true</tt> if remote control is enabled
+     */
+    public boolean isRemoteControlGranted(String peer)
+    {
+        return remoteControlEnabled;
+    }
+
+    /**
+     * Process an <tt>ComponentEvent</tt> received from remote peer.
+     *
+     * @param event <tt>ComponentEvent</tt> that will be regenerated on local
+     * computer
+     */
+    public void processComponentEvent(ComponentEvent event)
+    {
+        if(event instanceof MouseEvent)
+            processMouseEvent((MouseEvent)event);
+        else if(event instanceof KeyEvent)
+            processKeyboardEvent((KeyEvent)event);
+    }
+
     /**
      * Process keyboard notification received from remote peer.
      *
@@ -612,13 +667,7 @@ protected void processActiveRequest(RequestEvent requestEvent,
                     }
                     events = DesktopSharingProtocolSipImpl.parse(root, size, p);
 
-                    for(ComponentEvent evt : events)
-                    {
-                        if(evt instanceof MouseEvent)
-                            processMouseEvent((MouseEvent)evt);
-                        else if(evt instanceof KeyEvent)
-                            processKeyboardEvent((KeyEvent)evt);
-                    }
+                    inputQueue.add(callPeer.getAddress(), events);
                 }
             }
         }
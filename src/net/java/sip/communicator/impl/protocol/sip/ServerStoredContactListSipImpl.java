@@ -33,6 +33,7 @@
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.ServerStoredDetails.ImageDetail;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.protocol.sip.*;
 import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.Base64; // disambiguation
 
@@ -92,6 +93,29 @@
      */
     private final XCapClient xCapClient = new XCapClientImpl();
 
+    /**
+     * The timer which sends the collected changes to the server when the
+     * batch delay is configured.
+     */
+    private Timer batchTimer;
+
+    /**
+     * The scheduled task sending the collected changes, <tt>null</tt> if
+     * there are no pending changes.
+     */
+    private TimerTask pendingBatchUpdate;
+
+    /**
+     * Indicates whether the resource-lists have changed since they were last
+     * put to the server.
+     */
+    private boolean resourceListsChanged = false;
+
+    /**
+     * Indicates whether the pres-rules have changed since they were last put
+     * to the server.
+     */
+    private boolean presRulesChanged = false;
 
     /**
      * Current presence rules.
@@ -203,7 +227,7 @@ synchronized public ContactSipImpl createContact(
             // Update resoure-lists
             try
             {
-                updateResourceLists();
+                putContactEntry(parentGroup, newContact);
             }
             catch (XCapException e)
             {
@@ -288,7 +312,7 @@ synchronized public void removeContact(ContactSipImpl contact)
             // Update resoure-lists
             try
             {
-                updateResourceLists();
+                deleteContactEntry(parentGroup, contact);
             }
             catch (XCapException e)
             {
@@ -655,29 +679,8 @@ synchronized public void init()
                 return;
             }
             // Process resource-lists
-            ResourceListsType resourceLists = xCapClient.getResourceLists();
-            // Collect all root's subgroups to check if some of them were deleted
-            ListType serverRootList = new ListType();
-            for (ListType list : resourceLists.getList())
-            {
-                // If root group has sub group with ROOT_GROUP_NAME - it is
-                // special group for storing contacts that is not allowed by RFC
-                if (list.getName().equals(ROOT_GROUP_NAME))
-                {
-                    serverRootList.setName(ROOT_GROUP_NAME);
-                    serverRootList.setDisplayName(list.getDisplayName());
-                    serverRootList.getEntries().addAll(list.getEntries());
-                    serverRootList.getEntryRefs().addAll(list.getEntryRefs());
-                    serverRootList.getExternals().addAll(list.getExternals());
-                    serverRootList.setAny(list.getAny());
-                    serverRootList
-                            .setAnyAttributes(list.getAnyAttributes());
-                }
-                else
-                {
-                    serverRootList.getLists().add(list);
-                }
-            }
+            ListType serverRootList
+                    = getServerRootList(xCapClient.getResourceLists());
             boolean updateResourceLists = false;
             // Resolve localy saved contacts and groups with server stored
             // contacts and groups
@@ -773,6 +776,39 @@ synchronized public void init()
         }
     }
 
+    /**
+     * Collects the lists of a resource-lists document under a root list.
+     *
+     * @param resourceLists the resource-lists document.
+     * @return the root list.
+     */
+    private static ListType getServerRootList(ResourceListsType resourceLists)
+    {
+        // Collect all root's subgroups to check if some of them were deleted
+        ListType serverRootList = new ListType();
+        for (ListType list : resourceLists.getList())
+        {
+            // If root group has sub group with ROOT_GROUP_NAME - it is
+            // special group for storing contacts that is not allowed by RFC
+            if (list.getName().equals(ROOT_GROUP_NAME))
+            {
+                serverRootList.setName(ROOT_GROUP_NAME);
+                serverRootList.setDisplayName(list.getDisplayName());
+                serverRootList.getEntries().addAll(list.getEntries());
+                serverRootList.getEntryRefs().addAll(list.getEntryRefs());
+                serverRootList.getExternals().addAll(list.getExternals());
+                serverRootList.setAny(list.getAny());
+                serverRootList
+                        .setAnyAttributes(list.getAnyAttributes());
+            }
+            else
+            {
+                serverRootList.getLists().add(list);
+            }
+        }
+        return serverRootList;
+    }
+
     /**
      * Gets the pres-content image uri.
      *
@@ -824,6 +860,18 @@ public byte[] getImage(URI imageUri)
     @Override
     synchronized public void destroy()
     {
+        // don't lose the changes which are waiting to be sent
+        if (pendingBatchUpdate != null)
+        {
+            pendingBatchUpdate.cancel();
+            sendBatchUpdate();
+        }
+        if (batchTimer != null)
+        {
+            batchTimer.cancel();
+            batchTimer = null;
+        }
+
         xCapClient.disconnect();
 
         List<ContactSipImpl> contacts = getAllContacts(rootGroup);
@@ -1366,6 +1414,22 @@ synchronized void updateResourceLists()
         {
             return;
         }
+        if (scheduleBatchUpdate())
+        {
+            resourceListsChanged = true;
+            return;
+        }
+        putResourceLists();
+    }
+
+    /**
+     * Puts the whole resource-lists document to the server.
+     *
+     * @throws XCapException if there is some error during operation.
+     */
+    private void putResourceLists()
+            throws XCapException
+    {
         ResourceListsType resourceLists = new ResourceListsType();
         for (ListType list : rootGroup.getList().getLists())
         {
@@ -1400,9 +1464,239 @@ synchronized void updatePresRules()
         {
             return;
         }
+        if (scheduleBatchUpdate())
+        {
+            presRulesChanged = true;
+            return;
+        }
         xCapClient.putPresRules(presRules);
     }
 
+    /**
+     * Puts the entry of a newly created contact to the server. Only the entry
+     * is uploaded, unless changes are batched or the server doesn't accept
+     * the element, in which case the whole resource-lists is put.
+     *
+     * @param group the group containing the contact.
+     * @param contact the contact.
+     * @throws XCapException if there is some error during operation.
+     */
+    private void putContactEntry(
+            ContactGroupSipImpl group,
+            ContactSipImpl contact)
+            throws XCapException
+    {
+        if (xCapClient.isConnected()
+                && xCapClient.isResourceListsSupported()
+                && getBatchDelay() <= 0)
+        {
+            try
+            {
+                xCapClient.putResourceListsEntry(
+                        getServerListPath(group), contact.getEntry());
+                return;
+            }
+            catch (XCapException e)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("Cannot put the entry of " + contact
+                        + ", putting the whole resource-lists", e);
+            }
+        }
+        updateResourceLists();
+    }
+
+    /**
+     * Deletes the entry of a removed contact from the server. Only the entry
+     * is deleted, unless changes are batched or the server doesn't accept
+     * the deletion, in which case the whole resource-lists is put.
+     *
+     * @param group the group which contained the contact.
+     * @param contact the contact.
+     * @throws XCapException if there is some error during operation.
+     */
+    private void deleteContactEntry(
+            ContactGroupSipImpl group,
+            ContactSipImpl contact)
+            throws XCapException
+    {
+        if (xCapClient.isConnected()
+                && xCapClient.isResourceListsSupported()
+                && getBatchDelay() <= 0)
+        {
+            try
+            {
+                xCapClient.deleteResourceListsEntry(
+                        getServerListPath(group), contact.getUri());
+                return;
+            }
+            catch (XCapException e)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("Cannot delete the entry of " + contact
+                        + ", putting the whole resource-lists", e);
+            }
+        }
+        updateResourceLists();
+    }
+
+    /**
+     * Returns the names of the server lists from the resource-lists root to
+     * the list corresponding to the given group, the way they are put by
+     * {@link #putResourceLists()}.
+     *
+     * @param group the group.
+     * @return the list names.
+     */
+    private List<String> getServerListPath(ContactGroupSipImpl group)
+    {
+        LinkedList<String> path = new LinkedList<String>();
+
+        if (group == rootGroup)
+        {
+            path.add(ROOT_GROUP_NAME);
+            return path;
+        }
+        while (group != null && group != rootGroup)
+        {
+            path.addFirst(group.getList().getName());
+            group = (ContactGroupSipImpl) group.getParentContactGroup();
+        }
+        return path;
+    }
+
+    /**
+     * Returns the configured delay during which changes are collected before
+     * being sent to the server.
+     *
+     * @return the delay in milliseconds, zero or less if changes are sent
+     * immediately.
+     */
+    private int getBatchDelay()
+    {
+        return sipProvider.getAccountID().getAccountPropertyInt(
+                SipAccountID.OPT_CLIST_BATCH_DELAY, 0);
+    }
+
+    /**
+     * Schedules sending the collected changes to the server if batching is
+     * enabled.
+     *
+     * @return <tt>true</tt> if the change will be sent later with the other
+     * changes, <tt>false</tt> if batching is disabled and it has to be sent
+     * now.
+     */
+    private boolean scheduleBatchUpdate()
+    {
+        int batchDelay = getBatchDelay();
+
+        if (batchDelay <= 0)
+            return false;
+
+        if (pendingBatchUpdate == null)
+        {
+            if (batchTimer == null)
+                batchTimer = new Timer("XCAP batch update timer", true);
+
+            pendingBatchUpdate = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    sendBatchUpdate();
+                }
+            };
+            batchTimer.schedule(pendingBatchUpdate, batchDelay);
+        }
+        return true;
+    }
+
+    /**
+     * Sends the collected changes to the server, one request per changed
+     * document.
+     */
+    private synchronized void sendBatchUpdate()
+    {
+        pendingBatchUpdate = null;
+
+        if (!xCapClient.isConnected())
+            return;
+
+        try
+        {
+            if (resourceListsChanged)
+            {
+                resourceListsChanged = false;
+                putResourceLists();
+            }
+        }
+        catch (XCapException e)
+        {
+            logger.error("Error while putting the batched resource-lists", e);
+            rollbackResourceLists();
+        }
+        try
+        {
+            if (presRulesChanged)
+            {
+                presRulesChanged = false;
+                xCapClient.putPresRules(presRules);
+            }
+        }
+        catch (XCapException e)
+        {
+            // the rules are kept, as they are still used to answer
+            // authorization changes, and are put as a whole with the next
+            // change. The client has already forgotten the ETag of its copy
+            logger.error("Error while putting the batched pres-rules", e);
+        }
+    }
+
+    /**
+     * Rolls the local contact list back to the resource-lists stored on the
+     * server after a batched update, whose changes had already been applied
+     * locally, failed to be put. Contacts and groups which were only added
+     * locally are removed, and the ones which were only removed locally are
+     * added again.
+     */
+    private void rollbackResourceLists()
+    {
+        try
+        {
+            ListType serverRootList
+                    = getServerRootList(xCapClient.getResourceLists());
+
+            clearServerElements(rootGroup);
+            resolveContactGroup(rootGroup, serverRootList, true);
+        }
+        catch (XCapException e)
+        {
+            logger.error("Error while rolling back the resource-lists", e);
+
+            // the local contact list doesn't match the server anymore
+            xCapClient.disconnect();
+        }
+    }
+
+    /**
+     * Clears the elements a group and its subgroups have kept from the
+     * server, before they are resolved against it again.
+     *
+     * @param group the group.
+     */
+    private static void clearServerElements(ContactGroupSipImpl group)
+    {
+        group.getList().getExternals().clear();
+        group.getList().getEntryRefs().clear();
+        group.getList().getAny().clear();
+
+        Iterator<ContactGroup> groupIterator = group.subgroups();
+        while (groupIterator.hasNext())
+        {
+            clearServerElements((ContactGroupSipImpl) groupIterator.next());
+        }
+    }
+
     /**
      * The user accepted authorization request for <tt>contact</tt>
      * @param contact the user has accepted.
@@ -656,7 +656,9 @@ public static SessionDescription createSessionDescription(
      * update our previous <tt>descToUpdate</tt> and advertise the brand new
      * <tt>newMediaDescriptions</tt>. The method also respects other 3264
      * policies like reusing the origin field and augmenting its version number,
-     * for example.
+     * for example. If the update would not change anything,
+     * <tt>descToUpdate</tt> itself is returned so that its version stays the
+     * same, as RFC 3264 requires, and the peer can skip processing it.
      *
      * @param descToUpdate the <tt>SessionDescription</tt> to update.
      * @param newConnectionAddress the <tt>InetAddress</tt> to use in the new
@@ -664,7 +666,7 @@ public static SessionDescription createSessionDescription(
      * @param newMediaDescriptions the descriptions of the new streams to have
      * in the updated session.
      * @return a new <tt>SessionDescription</tt> that updates
-     * <tt>descToUpdate</tt>
+     * <tt>descToUpdate</tt>, or <tt>descToUpdate</tt> if it is unchanged
      * @throws OperationFailedException if the SDP creation failed
      */
     public static SessionDescription createSessionUpdateDescription(
@@ -673,27 +675,6 @@ public static SessionDescription createSessionUpdateDescription(
                           List<MediaDescription> newMediaDescriptions)
             throws OperationFailedException
     {
-        SessionDescription update = createSessionDescription(
-                        newConnectionAddress, null, newMediaDescriptions);
-
-        //extract the previous o= field.
-        //RFC 3264 says we must use it in the update and only change the ver
-        try
-        {
-            Origin o = (Origin)descToUpdate.getOrigin().clone();
-
-            long version = o.getSessionVersion();
-            o.setSessionVersion(version + 1);
-
-            update.setOrigin(o);
-        }
-        catch (Exception e)
-        {
-            // can't happen, ignore
-            if (logger.isInfoEnabled())
-                logger.info("Something very odd just happened.", e);
-        }
-
         //now, RFC 3264 says all previous m= fields must be present and new ones
         //added at the end. We should also disable all m= fields that are not
         //present in the new version. We therefore loop through the previous m=s
@@ -743,6 +724,33 @@ public static SessionDescription createSessionUpdateDescription(
             completeMediaDescList.add(medToAdd);
         }
 
+        if (isUnchanged(descToUpdate, newConnectionAddress, prevMedias,
+                completeMediaDescList))
+        {
+            return descToUpdate;
+        }
+
+        SessionDescription update
+            = createSessionDescription(newConnectionAddress, null, null);
+
+        //extract the previous o= field.
+        //RFC 3264 says we must use it in the update and only change the ver
+        try
+        {
+            Origin o = (Origin)descToUpdate.getOrigin().clone();
+
+            long version = o.getSessionVersion();
+            o.setSessionVersion(version + 1);
+
+            update.setOrigin(o);
+        }
+        catch (Exception e)
+        {
+            // can't happen, ignore
+            if (logger.isInfoEnabled())
+                logger.info("Something very odd just happened.", e);
+        }
+
         try
         {
             update.setMediaDescriptions(completeMediaDescList);
@@ -758,6 +766,54 @@ public static SessionDescription createSessionUpdateDescription(
         return update;
     }
 
+    /**
+     * Determines whether an update of <tt>descToUpdate</tt> with the given
+     * connection address and media descriptions would be identical to it.
+     *
+     * @param descToUpdate the <tt>SessionDescription</tt> to update.
+     * @param newConnectionAddress the address of the new <tt>c=</tt> field.
+     * @param prevMedias the media descriptions of <tt>descToUpdate</tt>.
+     * @param newMedias the complete list of media descriptions of the update.
+     * @return <tt>true</tt> if the update wouldn't change anything.
+     */
+    private static boolean isUnchanged(
+                          SessionDescription       descToUpdate,
+                          InetAddress              newConnectionAddress,
+                          List<MediaDescription>   prevMedias,
+                          List<MediaDescription>   newMedias)
+    {
+        if (prevMedias.size() != newMedias.size())
+            return false;
+
+        Connection c = descToUpdate.getConnection();
+
+        try
+        {
+            if (c == null
+                || !newConnectionAddress.getHostAddress().equals(
+                        c.getAddress()))
+            {
+                return false;
+            }
+        }
+        catch (SdpParseException e)
+        {
+            return false;
+        }
+
+        // the encoding of a media description is the cheapest way to compare
+        // all of its fields and attributes
+        for (int i = 0; i < newMedias.size(); i++)
+        {
+            if (!newMedias.get(i).toString().equals(
+                    prevMedias.get(i).toString()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Determines the address and port where our interlocutor would like to
      * receive RTCP. The method uses the port, and possibly address, indicated
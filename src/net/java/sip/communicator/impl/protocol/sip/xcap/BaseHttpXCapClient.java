@@ -179,6 +179,24 @@ public XCapHttpResponse get(XCapResourceId resourceId)
         return get(getResourceURI(resourceId));
     }
 
+    /**
+     * Gets the resource from the server only if it has changed since the
+     * version identified by <tt>eTag</tt>.
+     *
+     * @param resourceId resource identifier.
+     * @param eTag the ETag of the locally cached version of the resource or
+     * <tt>null</tt> to get the resource unconditionally.
+     * @return the server response, with HTTP code 304 and no content if the
+     * resource has not changed.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public XCapHttpResponse get(XCapResourceId resourceId, String eTag)
+            throws XCapException
+    {
+        return get(getResourceURI(resourceId), eTag);
+    }
+
     /**
      * Gets resource from the server.
      *
@@ -189,6 +207,22 @@ public XCapHttpResponse get(XCapResourceId resourceId)
      */
     protected XCapHttpResponse get(URI uri)
             throws XCapException
+    {
+        return get(uri, null);
+    }
+
+    /**
+     * Gets resource from the server, conditionally if <tt>eTag</tt> is
+     * specified.
+     *
+     * @param uri the resource uri.
+     * @param eTag the value of the If-None-Match header or <tt>null</tt>.
+     * @return the server response.
+     * @throws XCapException if there is error during reading the resource's
+     *                       content.
+     */
+    protected XCapHttpResponse get(URI uri, String eTag)
+            throws XCapException
     {
         DefaultHttpClient httpClient = null;
         try
@@ -197,6 +231,8 @@ protected XCapHttpResponse get(URI uri)
 
             HttpGet getMethod = new HttpGet(uri);
             getMethod.setHeader("Connection", "close");
+            if (eTag != null)
+                getMethod.setHeader(HEADER_IF_NONE_MATCH, eTag);
 
             HttpResponse response = httpClient.execute(getMethod);
             XCapHttpResponse result = createResponse(response);
@@ -65,6 +65,21 @@ public void connect(URI uri, Address userAddress, String username, String passwo
     public XCapHttpResponse get(XCapResourceId resourceId)
             throws XCapException;
 
+    /**
+     * Gets the resource from the server only if it has changed since the
+     * version identified by <tt>eTag</tt>. If it has not changed the server
+     * responds with 304 and no content.
+     *
+     * @param resourceId resource identifier.
+     * @param eTag the ETag of the locally cached version of the resource or
+     * <tt>null</tt> to get the resource unconditionally.
+     * @return the server response.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public XCapHttpResponse get(XCapResourceId resourceId, String eTag)
+            throws XCapException;
+
     /**
      * Puts the resource to the server.
      *
@@ -17,6 +17,8 @@
  */
 package net.java.sip.communicator.impl.protocol.sip.xcap;
 
+import java.util.*;
+
 import net.java.sip.communicator.impl.protocol.sip.xcap.model.resourcelists.*;
 
 /**
@@ -89,4 +91,30 @@ public void deleteResourceLists()
     public ListType getList(String anchor)
             throws XCapException;
 
+    /**
+     * Puts a single entry of the resource-lists to the server, creating it or
+     * replacing the existing entry with the same uri, without uploading the
+     * whole document.
+     *
+     * @param listPath the names of the lists from the resource-lists root to
+     *                 the list containing the entry.
+     * @param entry    the entry to be saved on the server.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public void putResourceListsEntry(List<String> listPath, EntryType entry)
+            throws XCapException;
+
+    /**
+     * Deletes a single entry of the resource-lists from the server.
+     *
+     * @param listPath the names of the lists from the resource-lists root to
+     *                 the list containing the entry.
+     * @param entryUri the uri of the entry to be deleted.
+     * @throws IllegalStateException if the user has not been connected.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public void deleteResourceListsEntry(List<String> listPath, String entryUri)
+            throws XCapException;
+
 }
@@ -19,6 +19,7 @@
 
 import java.io.*;
 import java.net.URI;
+import java.util.*;
 
 import javax.sip.address.*;
 
@@ -29,6 +30,8 @@
 import net.java.sip.communicator.impl.protocol.sip.xcap.model.resourcelists.*;
 import net.java.sip.communicator.impl.protocol.sip.xcap.model.xcapcaps.*;
 import net.java.sip.communicator.util.*;
+import net.java.sip.communicator.util.Base64; // disambiguation
+import net.java.sip.communicator.util.Logger;
 
 import org.apache.http.*;
 import org.jitsi.util.*;
@@ -43,6 +46,12 @@
  */
 public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
 {
+    /**
+     * Class logger.
+     */
+    private static final Logger logger =
+            Logger.getLogger(XCapClientImpl.class);
+
     /**
      * Current xcap-caps.
      */
@@ -63,6 +72,15 @@ public class XCapClientImpl extends BaseHttpXCapClient implements XCapClient
      */
     private boolean presContentSupported;
 
+    /**
+     * The last known content of the documents we have got from or put to the
+     * server together with their ETags, by document uri. Allows us to get the
+     * documents conditionally and not to download them again when they have
+     * not changed, e.g. on every reconnect.
+     */
+    private final Map<String, CachedDocument> documentCache
+        = new HashMap<String, CachedDocument>();
+
     /**
      * Connects user to XCap server. Loads xcap-caps server capabilities and
      * anaylyze if resource-lists, pres-rules, pres-content is supported.
@@ -231,6 +249,61 @@ public ListType getList(String anchor)
 //        }
     }
 
+    /**
+     * Puts a single entry of the resource-lists to the server using an XCAP
+     * node selector, creating it or replacing the existing entry with the same
+     * uri.
+     *
+     * @param listPath the names of the lists from the resource-lists root to
+     *                 the list containing the entry.
+     * @param entry    the entry to be saved on the server.
+     * @throws IllegalStateException if the user has not been connected, or
+     *                               resource-lists is not supported.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public void putResourceListsEntry(List<String> listPath, EntryType entry)
+            throws XCapException
+    {
+        assertConnected();
+        assertResourceListsSupported();
+        XCapResourceId resourceId = new XCapResourceId(
+                getResourceListsDocument(),
+                getEntryNodeSelector(listPath, entry.getUri()));
+        try
+        {
+            String xml = ResourceListsParser.toXml(entry);
+            XCapResource resource = new XCapResource(resourceId, xml,
+                    ResourceListsClient.ELEMENT_CONTENT_TYPE);
+            putResource(resource);
+        }
+        catch (ParsingException e)
+        {
+            throw new XCapException("Entry cannot be parsed", e);
+        }
+    }
+
+    /**
+     * Deletes a single entry of the resource-lists from the server using an
+     * XCAP node selector.
+     *
+     * @param listPath the names of the lists from the resource-lists root to
+     *                 the list containing the entry.
+     * @param entryUri the uri of the entry to be deleted.
+     * @throws IllegalStateException if the user has not been connected, or
+     *                               resource-lists is not supported.
+     * @throws XCapException         if there is some error during operation.
+     */
+    public void deleteResourceListsEntry(List<String> listPath, String entryUri)
+            throws XCapException
+    {
+        assertConnected();
+        assertResourceListsSupported();
+        XCapResourceId resourceId = new XCapResourceId(
+                getResourceListsDocument(),
+                getEntryNodeSelector(listPath, entryUri));
+        deleteResource(resourceId);
+    }
+
     /**
      * Gets the xcap-caps from the server.
      *
@@ -589,8 +662,25 @@ private void putResource(XCapResource resource)
                         httpCode,
                         resource.getId().toString());
             }
+
+            // we can't tell what the server has now, so the next get must
+            // not be answered from our copy
+            cacheDocument(resource.getId(), null, null);
             throw new XCapException(errorMessage);
         }
+
+        if (resource.getId().getNode() == null)
+        {
+            // we know the current content of the document if the server
+            // told us its new version
+            cacheDocument(resource.getId(),
+                    resource.getContent(), response.getETag());
+        }
+        else
+        {
+            // an element has changed, our copy of the document is outdated
+            cacheDocument(resource.getId(), null, null);
+        }
     }
 
     /**
@@ -607,15 +697,35 @@ private String getResource(XCapResourceId resourceId, String contentType)
     {
         try
         {
-            // Load resource from the server
-            XCapHttpResponse response = this.get(resourceId);
+            // Only whole documents are cached
+            CachedDocument cached = null;
+            if (resourceId.getNode() == null)
+            {
+                synchronized (documentCache)
+                {
+                    cached = documentCache.get(
+                            getDocumentCacheKey(resourceId));
+                }
+            }
+
+            // Load resource from the server, unless it hasn't changed
+            XCapHttpResponse response = this.get(resourceId,
+                    (cached == null) ? null : cached.eTag);
             int httpCode = response.getHttpCode();
             byte[] content = response.getContent();
             // Analyze the response
             if (httpCode != HttpStatus.SC_OK)
             {
+                if (httpCode == HttpStatus.SC_NOT_MODIFIED && cached != null)
+                {
+                    if (logger.isDebugEnabled())
+                        logger.debug(resourceId + " not modified since "
+                            + cached.eTag + ", using the cached copy");
+                    return cached.content;
+                }
                 if (httpCode == HttpStatus.SC_NOT_FOUND)
                 {
+                    cacheDocument(resourceId, null, null);
                     return null;
                 }
                 String errorMessage;
@@ -665,7 +775,10 @@ private String getResource(XCapResourceId resourceId, String contentType)
                 throw new XCapException(errorMessage);
             }
 
-            return new String(content, "UTF-8");
+            String result = new String(content, "UTF-8");
+            if (resourceId.getNode() == null)
+                cacheDocument(resourceId, result, response.getETag());
+            return result;
         }
         catch (IOException e)
         {
@@ -709,6 +822,110 @@ private void deleteResource(XCapResourceId resourceId)
             }
             throw new XCapException(errorMessage);
         }
+
+        // either the document or one of its elements is gone
+        cacheDocument(resourceId, null, null);
+    }
+
+    /**
+     * Remembers the content of a document together with its ETag, or forgets
+     * it if the content or the ETag is unknown.
+     *
+     * @param resourceId the identifier of the document or of an element in it.
+     * @param content the content of the document.
+     * @param eTag the ETag of this content.
+     */
+    private void cacheDocument(
+            XCapResourceId resourceId,
+            String content,
+            String eTag)
+    {
+        String key = getDocumentCacheKey(resourceId);
+
+        synchronized (documentCache)
+        {
+            if (content == null || eTag == null)
+                documentCache.remove(key);
+            else
+                documentCache.put(key, new CachedDocument(content, eTag));
+        }
+    }
+
+    /**
+     * Returns the key under which the document of the given resource is
+     * cached.
+     *
+     * @param resourceId the identifier of the document or of an element in it.
+     * @return the uri of the document.
+     */
+    private String getDocumentCacheKey(XCapResourceId resourceId)
+    {
+        return getResourceURI(new XCapResourceId(resourceId.getDocument()))
+                .toString();
+    }
+
+    /**
+     * Escapes an attribute value of a node selector which is quoted with
+     * double quotes, replacing them with <tt>&amp;quot;</tt> as the AttValue
+     * rule of rfc4825 requires.
+     *
+     * @param value the attribute value.
+     * @return the escaped attribute value.
+     */
+    private static String escapeAttValue(String value)
+    {
+        return value.replace("\"", "&quot;");
+    }
+
+    /**
+     * Returns the XCAP node selector of an entry of the resource-lists
+     * document according to rfc4825, percent-encoded so it can be appended
+     * to the document uri.
+     *
+     * @param listPath the names of the lists from the resource-lists root to
+     *                 the list containing the entry.
+     * @param entryUri the uri of the entry.
+     * @return the node selector.
+     */
+    private static String getEntryNodeSelector(
+            List<String> listPath,
+            String entryUri)
+    {
+        StringBuilder selector = new StringBuilder("/resource-lists");
+        for (String listName : listPath)
+        {
+            selector.append("/list[@name=\"")
+                .append(escapeAttValue(listName)).append("\"]");
+        }
+        selector.append("/entry[@uri=\"")
+            .append(escapeAttValue(entryUri)).append("\"]");
+
+        StringBuilder encoded = new StringBuilder(selector.length() + 32);
+        try
+        {
+            for (byte b : selector.toString().getBytes("UTF-8"))
+            {
+                char c = (char) (b & 0xFF);
+                if ((c >= 'a' && c <= 'z')
+                        || (c >= 'A' && c <= 'Z')
+                        || (c >= '0' && c <= '9')
+                        || "-._~!$&'()*+,;=:@/".indexOf(c) != -1)
+                {
+                    encoded.append(c);
+                }
+                else
+                {
+                    encoded.append('%').append(
+                            String.format("%02X", b & 0xFF));
+                }
+            }
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        return encoded.toString();
     }
 
     /**
@@ -780,4 +997,32 @@ public boolean isPresContentSupported()
     {
         return presContentSupported;
     }
+
+    /**
+     * A document as we last got it from or put it to the server.
+     */
+    private static class CachedDocument
+    {
+        /**
+         * The content of the document.
+         */
+        private final String content;
+
+        /**
+         * The ETag of this version of the document.
+         */
+        private final String eTag;
+
+        /**
+         * Creates a cached document.
+         *
+         * @param content the content of the document.
+         * @param eTag the ETag of this version of the document.
+         */
+        CachedDocument(String content, String eTag)
+        {
+            this.content = content;
+            this.eTag = eTag;
+        }
+    }
 }
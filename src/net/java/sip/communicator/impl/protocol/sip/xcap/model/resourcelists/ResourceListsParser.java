@@ -164,6 +164,33 @@ public static String toXml(ResourceListsType resourceLists)
         }
     }
 
+    /**
+     * Creates XML from the entry element, to be put on the server as a single
+     * element of the resource-lists document.
+     *
+     * @param entry the entry to analyze.
+     * @return the entry xml.
+     * @throws ParsingException if there is some error during parsing.
+     */
+    public static String toXml(EntryType entry)
+            throws ParsingException
+    {
+        if (entry == null)
+        {
+            throw new IllegalArgumentException("entry cannot be null");
+        }
+        try
+        {
+            Document document = createDocument();
+            document.appendChild(elementFromEntry(document, entry));
+            return createXml(document);
+        }
+        catch (Exception ex)
+        {
+            throw new ParsingException(ex);
+        }
+    }
+
     /**
      * Creates list object from the element.
      *
@@ -54,6 +54,14 @@
      */
     public static final String SOURCE_NAME = "DAILYMOTION";
 
+    /**
+     * The regex used to extract the video id from a matched link.
+     */
+    private static final Pattern THUMBNAIL_ID_PATTERN
+        = Pattern.compile(
+            "(.+\\/video\\/([a-zA-Z0-9_\\-]+))([?#]([a-zA-Z0-9_\\-]+))*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Constructor for <tt>ReplacementServiceDailymotionImpl</tt>.
      */
@@ -70,11 +78,7 @@ public ReplacementServiceDailymotionImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile(
-                "(.+\\/video\\/([a-zA-Z0-9_\\-]+))([?#]([a-zA-Z0-9_\\-]+))*",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = THUMBNAIL_ID_PATTERN.matcher(sourceString);
 
         String thumbUrl = sourceString;
 
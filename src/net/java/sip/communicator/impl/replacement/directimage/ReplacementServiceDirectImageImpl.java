@@ -18,6 +18,7 @@
 package net.java.sip.communicator.impl.replacement.directimage;
 
 import java.net.*;
+import java.util.*;
 
 import org.jitsi.service.configuration.*;
 
@@ -69,6 +70,26 @@
     private static final String MAX_IMG_SIZE = 
         "net.java.sip.communicator.impl.replacement.directimage.MAX_IMG_SIZE";
 
+    /**
+     * The maximum number of links for which we remember the result of
+     * probing the remote resource.
+     */
+    private static final int PROBE_CACHE_SIZE = 256;
+
+    /**
+     * The sizes of the recently probed images, so that a link repeated in a
+     * busy chat room doesn't open a new connection for every message.
+     */
+    private final Map<String, Integer> imageSizeCache
+        = createProbeCache();
+
+    /**
+     * Whether the recently probed links point to an image. Like the sizes,
+     * only the results of probes which reached the remote resource are kept.
+     */
+    private final Map<String, Boolean> directImageCache
+        = createProbeCache();
+
     /**
      * Constructor for <tt>ReplacementServiceDirectImageImpl</tt>.
      */
@@ -153,6 +174,14 @@ public String getPattern()
      */
     public int getImageSize(String sourceString)
     {
+        synchronized (imageSizeCache)
+        {
+            Integer cached = imageSizeCache.get(sourceString);
+
+            if (cached != null)
+                return cached;
+        }
+
         int length = -1;
         try
         {
@@ -181,6 +210,14 @@ else if (protocol.equals("ftp"))
         catch (Exception e)
         {
             logger.debug("Failed to get the length of the image in bytes", e);
+
+            // don't remember failures, the next message may succeed
+            return -1;
+        }
+
+        synchronized (imageSizeCache)
+        {
+            imageSizeCache.put(sourceString, length);
         }
         return length;
     }
@@ -195,6 +232,14 @@ else if (protocol.equals("ftp"))
     @Override
     public boolean isDirectImage(String sourceString)
     {
+        synchronized (directImageCache)
+        {
+            Boolean cached = directImageCache.get(sourceString);
+
+            if (cached != null)
+                return cached;
+        }
+
         boolean isDirectImage = false;
         try
         {
@@ -221,7 +266,35 @@ else if (protocol.equals("ftp"))
         {
             logger.debug("Failed to retrieve content type information for"
                 + sourceString, e);
+
+            // don't remember failures, the next message may succeed
+            return false;
+        }
+
+        synchronized (directImageCache)
+        {
+            directImageCache.put(sourceString, isDirectImage);
         }
         return isDirectImage;
     }
+
+    /**
+     * Creates a map which keeps only the {@link #PROBE_CACHE_SIZE} most
+     * recently used probe results.
+     *
+     * @return the new map.
+     */
+    private static <V> Map<String, V> createProbeCache()
+    {
+        return new LinkedHashMap<String, V>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+            {
+                return size() > PROBE_CACHE_SIZE;
+            }
+        };
+    }
 }
@@ -63,6 +63,14 @@
      */
     public static final String SOURCE_NAME = "FLICKR";
 
+    /**
+     * The regex used to extract the photo id from a matched link.
+     */
+    private static final Pattern THUMBNAIL_ID_PATTERN
+        = Pattern.compile(
+            "\\/photos\\/[0-9a-zA-Z_\\-\\@]+\\/([0-9]+)(\\/[^\"\\<]*)*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Constructor for <tt>ReplacementServiceFlickrImpl</tt>.
      */
@@ -80,11 +88,7 @@ public ReplacementServiceFlickrImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile(
-                "\\/photos\\/[0-9a-zA-Z_\\-\\@]+\\/([0-9]+)(\\/[^\"\\<]*)*",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = THUMBNAIL_ID_PATTERN.matcher(sourceString);
         String thumbUrl = sourceString;
 
         while (m.find())
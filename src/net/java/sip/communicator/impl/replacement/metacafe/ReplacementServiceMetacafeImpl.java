@@ -54,6 +54,14 @@
      */
     public static final String SOURCE_NAME = "METACAFE";
 
+    /**
+     * The regex used to extract the video id from a matched link.
+     */
+    private static final Pattern THUMBNAIL_ID_PATTERN
+        = Pattern.compile(
+            "\\/watch\\/([a-zA-Z0-9_\\-]+)(\\/[a-zA-Z0-9_\\-\\/]+)*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Constructor for <tt>ReplacementServiceMetacafeImpl</tt>.
      */
@@ -71,11 +79,7 @@ public ReplacementServiceMetacafeImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile(
-                "\\/watch\\/([a-zA-Z0-9_\\-]+)(\\/[a-zA-Z0-9_\\-\\/]+)*",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = THUMBNAIL_ID_PATTERN.matcher(sourceString);
 
         String thumbUrl = sourceString;
 
@@ -54,6 +54,13 @@
      */
     public static final String SOURCE_NAME = "TWITPIC";
 
+    /**
+     * The regex used to extract the picture id from a matched link.
+     */
+    private static final Pattern THUMBNAIL_ID_PATTERN
+        = Pattern.compile("\\.com\\/([^\\/<]*)", Pattern.CASE_INSENSITIVE
+            | Pattern.DOTALL);
+
     /**
      * Constructor for <tt>ReplacementServiceTwitpicImpl</tt>.
      */
@@ -71,11 +78,7 @@ public ReplacementServiceTwitpicImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile("\\.com\\/([^\\/<]*)", Pattern.CASE_INSENSITIVE
-                | Pattern.DOTALL);
-
-        Matcher m = p.matcher(sourceString);
+        Matcher m = THUMBNAIL_ID_PATTERN.matcher(sourceString);
         String thumbUrl = sourceString;
 
         while (m.find())
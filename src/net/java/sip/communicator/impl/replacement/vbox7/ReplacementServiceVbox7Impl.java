@@ -56,6 +56,13 @@
      */
     public static final String SOURCE_NAME = "VBOX7";
 
+    /**
+     * The regex used to extract the video id from a matched link.
+     */
+    private static final Pattern THUMBNAIL_ID_PATTERN
+        = Pattern.compile("\\/play\\:([a-zA-Z0-9_\\-]+)([?&]\\w+=[\\w-]*)*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Constructor for <tt>ReplacementServiceVbox7Impl</tt>.
      */
@@ -72,10 +79,7 @@ public ReplacementServiceVbox7Impl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile("\\/play\\:([a-zA-Z0-9_\\-]+)([?&]\\w+=[\\w-]*)*",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = THUMBNAIL_ID_PATTERN.matcher(sourceString);
         String thumbUrl = sourceString;
         String id = null;
 
@@ -58,6 +58,13 @@
      */
     public static final String SOURCE_NAME = "VIMEO";
 
+    /**
+     * The regex used to extract the video id from a matched link.
+     */
+    private static final Pattern THUMBNAIL_ID_PATTERN
+        = Pattern.compile(".+\\.com\\/([a-zA-Z0-9_\\-]+)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
     /**
      * Constructor for <tt>ReplacementServiceVimeoImpl</tt>.
      */
@@ -74,10 +81,7 @@ public ReplacementServiceVimeoImpl()
      */
     public String getReplacement(String sourceString)
     {
-        final Pattern p =
-            Pattern.compile(".+\\.com\\/([a-zA-Z0-9_\\-]+)",
-                Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-        Matcher m = p.matcher(sourceString);
+        Matcher m = THUMBNAIL_ID_PATTERN.matcher(sourceString);
 
         String thumbUrl = sourceString;
 
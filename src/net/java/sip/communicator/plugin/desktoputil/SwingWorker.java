@@ -235,6 +235,19 @@ public void start()
             executorService = SwingWorker.executorService;
         }
 
+        start(executorService);
+    }
+
+    /**
+     * Starts the worker on the given <tt>ExecutorService</tt> instead of the
+     * shared unbounded one. Allows callers which start many workers to bound
+     * the number of them running concurrently.
+     *
+     * @param executorService the <tt>ExecutorService</tt> to execute
+     * {@link #construct()} on
+     */
+    public void start(ExecutorService executorService)
+    {
         synchronized (this)
         {
             if (future == null || future.isDone())
@@ -1528,6 +1528,22 @@ private void registerDefaultNotifications()
         if(notificationService == null)
             return;
 
+        // Notify of calls before messages, and of messages before typing.
+        for (String eventType
+                : new String[]
+                        {
+                            INCOMING_CALL, OUTGOING_CALL, BUSY_CALL, DIALING,
+                            HANG_UP, CALL_SECURITY_ON, CALL_SECURITY_ERROR
+                        })
+        {
+            notificationService.setPriority(
+                    eventType,
+                    NotificationService.PRIORITY_HIGH);
+        }
+        notificationService.setPriority(
+                PROACTIVE_NOTIFICATION,
+                NotificationService.PRIORITY_LOW);
+
         // Register incoming message notifications.
         notificationService.registerDefaultNotificationForEvent(
                 INCOMING_MESSAGE,
@@ -453,6 +453,11 @@ public void stop(BundleContext bc) throws Exception
                 handleProviderRemoved(provider);
             }
         }
+
+        // Only stop running OTR operations once no more messages pass
+        // through the transformation layers.
+        if(scOtrEngine != null)
+            scOtrEngine.dispose();
     }
 
     /**
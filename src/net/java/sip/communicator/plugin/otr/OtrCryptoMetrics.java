@@ -0,0 +1,110 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.otr;
+
+/**
+ * The latency of the cryptographic operations of a single OTR session, i.e.
+ * the time taken by otr4j to transform the messages sent to and received from
+ * a contact, including the key exchanges they trigger.
+ */
+public class OtrCryptoMetrics
+{
+    /**
+     * The number of operations measured.
+     */
+    private long count = 0;
+
+    /**
+     * The sum of the latencies in nanoseconds of the operations measured.
+     */
+    private long totalLatency = 0;
+
+    /**
+     * The highest latency in nanoseconds measured.
+     */
+    private long maxLatency = 0;
+
+    /**
+     * The latency in nanoseconds of the last operation measured.
+     */
+    private long lastLatency = 0;
+
+    /**
+     * Records the latency of an operation.
+     *
+     * @param latency the latency of the operation in nanoseconds
+     */
+    synchronized void record(long latency)
+    {
+        count++;
+        totalLatency += latency;
+        lastLatency = latency;
+        if (latency > maxLatency)
+            maxLatency = latency;
+    }
+
+    /**
+     * Returns the number of operations measured.
+     *
+     * @return the number of operations measured
+     */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the average latency of the operations measured.
+     *
+     * @return the average latency in nanoseconds, or <tt>0</tt> if no
+     * operation has been measured
+     */
+    public synchronized long getAverageLatency()
+    {
+        return (count == 0) ? 0 : totalLatency / count;
+    }
+
+    /**
+     * Returns the highest latency measured.
+     *
+     * @return the highest latency in nanoseconds
+     */
+    public synchronized long getMaxLatency()
+    {
+        return maxLatency;
+    }
+
+    /**
+     * Returns the latency of the last operation measured.
+     *
+     * @return the latency of the last operation in nanoseconds
+     */
+    public synchronized long getLastLatency()
+    {
+        return lastLatency;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "count=" + count
+            + ", avg=" + (getAverageLatency() / 1000) + "us"
+            + ", max=" + (maxLatency / 1000) + "us"
+            + ", last=" + (lastLatency / 1000) + "us";
+    }
+}
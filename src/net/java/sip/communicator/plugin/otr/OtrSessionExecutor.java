@@ -0,0 +1,543 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.otr;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.otr4j.crypto.*;
+import net.java.otr4j.session.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Runs the operations of OTR sessions on a shared pool of threads. The
+ * operations of a session are run one after the other, in the order they
+ * were submitted, since an otr4j <tt>Session</tt> is not thread-safe, while
+ * the operations of different sessions run in parallel. This way the key
+ * exchange with one contact does not hold up the messages of the others.
+ * <p>
+ * The operations submitted with {@link #submit(SessionID, Callable)} run in
+ * the background. {@link #invoke(SessionID, Callable)} is synchronous: the
+ * caller waits for the result, because the transform layers have to return
+ * the transformed message. It does not take a thread of the pool though. If
+ * no operation of the session is running, the calling thread runs the
+ * pending operations of the session itself, up to its own, so only the
+ * time spent waiting for an operation of the same session is added. An
+ * operation calling <tt>invoke</tt> for another session therefore does not
+ * need a free thread, but two sessions waiting for each other still
+ * deadlock.
+ * <p>
+ * The latency of every operation is recorded in the
+ * {@link OtrCryptoMetrics} of its session.
+ */
+public class OtrSessionExecutor
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>OtrSessionExecutor</tt> class and
+     * its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(OtrSessionExecutor.class);
+
+    /**
+     * The latency in nanoseconds above which an operation is logged.
+     */
+    private static final long SLOW_OPERATION_LATENCY = 100 * 1000 * 1000L;
+
+    /**
+     * The session whose operation is being run by the current thread, if any.
+     */
+    private static final ThreadLocal<SessionID> currentSession
+        = new ThreadLocal<SessionID>();
+
+    /**
+     * The threads running the operations.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * The queues of the sessions which have operations pending or running.
+     */
+    private final Map<SessionID, SessionQueue> queues
+        = new HashMap<SessionID, SessionQueue>();
+
+    /**
+     * The latency metrics by session.
+     */
+    private final ConcurrentMap<SessionID, OtrCryptoMetrics> metrics
+        = new ConcurrentHashMap<SessionID, OtrCryptoMetrics>();
+
+    /**
+     * Creates a new <tt>OtrSessionExecutor</tt> with a thread per processor.
+     */
+    public OtrSessionExecutor()
+    {
+        this(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a new <tt>OtrSessionExecutor</tt>.
+     *
+     * @param threads the maximum number of threads running operations
+     */
+    OtrSessionExecutor(int threads)
+    {
+        ThreadPoolExecutor pool
+            = new ThreadPoolExecutor(
+                    threads, threads,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        private int count = 0;
+
+                        public synchronized Thread newThread(Runnable r)
+                        {
+                            Thread t = new Thread(r, "OTR session " + count++);
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+
+        pool.allowCoreThreadTimeOut(true);
+        this.pool = pool;
+    }
+
+    /**
+     * Warms up the Diffie-Hellman key generation in the background by
+     * generating a key pair and throwing it away. The first key pair
+     * generated in the JVM is by far the slowest because the security
+     * provider and the random number generator have to be set up, which would
+     * otherwise happen in the middle of the first key exchange. Nothing is
+     * kept for later: otr4j creates its key pairs itself, so they cannot be
+     * generated in advance.
+     */
+    public void warmUpDHKeyGeneration()
+    {
+        submitUnordered(
+            new Runnable()
+            {
+                public void run()
+                {
+                    long start = System.nanoTime();
+
+                    try
+                    {
+                        new OtrCryptoEngineImpl().generateDHKeyPair();
+                    }
+                    catch (OtrCryptoException e)
+                    {
+                        logger.warn("Failed to generate a DH key pair.", e);
+                        return;
+                    }
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug(
+                            "Initialized DH key generation in "
+                                + (System.nanoTime() - start) / 1000000
+                                + " ms.");
+                    }
+                }
+            });
+    }
+
+    /**
+     * Runs a task on the pool regardless of any session.
+     *
+     * @param task the task to run
+     * @return <tt>false</tt> if the pool has been shut down
+     */
+    private boolean submitUnordered(Runnable task)
+    {
+        try
+        {
+            pool.execute(task);
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            logger.debug("OTR session executor has been shut down.");
+            return false;
+        }
+    }
+
+    /**
+     * Submits an operation of a session, which is run after the operations of
+     * the session submitted before.
+     *
+     * @param sessionID the session of the operation
+     * @param operation the operation
+     * @param <T> the type of the result of the operation
+     * @return the <tt>Future</tt> of the result of <tt>operation</tt>
+     */
+    public <T> Future<T> submit(SessionID sessionID, Callable<T> operation)
+    {
+        FutureTask<T> task
+            = new FutureTask<T>(new MeasuredOperation<T>(sessionID, operation));
+
+        synchronized (queues)
+        {
+            SessionQueue queue = add(sessionID, task);
+
+            if (queue != null)
+                queue.schedule();
+        }
+        return task;
+    }
+
+    /**
+     * Adds an operation to the queue of its session. Must be called while
+     * holding the lock of <tt>queues</tt>.
+     *
+     * @param sessionID the session of the operation
+     * @param task the operation
+     * @return the queue of the session if nobody is running it yet, in which
+     * case the caller has to run or schedule it, or <tt>null</tt>
+     */
+    private SessionQueue add(SessionID sessionID, FutureTask<?> task)
+    {
+        if (pool.isShutdown())
+        {
+            task.cancel(false);
+            return null;
+        }
+
+        SessionQueue queue = queues.get(sessionID);
+
+        if (queue == null)
+        {
+            queue = new SessionQueue(sessionID);
+            queues.put(sessionID, queue);
+        }
+        return queue.add(task) ? queue : null;
+    }
+
+    /**
+     * Runs an operation of a session after the operations of the session
+     * submitted before and waits for its result. If the current thread is
+     * already running an operation of the same session, e.g. because otr4j
+     * has called back into the plugin, the operation is run right away. If no
+     * operation of the session is running, the current thread runs the
+     * operations of the session up to and including <tt>operation</tt>.
+     *
+     * @param sessionID the session of the operation
+     * @param operation the operation
+     * @param <T> the type of the result of the operation
+     * @return the result of <tt>operation</tt>
+     * @throws Exception if <tt>operation</tt> has failed
+     */
+    public <T> T invoke(SessionID sessionID, Callable<T> operation)
+        throws Exception
+    {
+        if (sessionID.equals(currentSession.get()))
+            return operation.call();
+
+        FutureTask<T> future
+            = new FutureTask<T>(new MeasuredOperation<T>(sessionID, operation));
+        SessionQueue queue;
+
+        synchronized (queues)
+        {
+            queue = add(sessionID, future);
+        }
+        if (queue != null)
+            queue.runUntil(future);
+
+        boolean interrupted = false;
+
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    return future.get();
+                }
+                catch (InterruptedException e)
+                {
+                    // The session has to stay consistent, so wait for the
+                    // operation anyway.
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    Throwable cause = e.getCause();
+
+                    if (cause instanceof Exception)
+                        throw (Exception) cause;
+                    else if (cause instanceof Error)
+                        throw (Error) cause;
+                    else
+                        throw e;
+                }
+            }
+        }
+        finally
+        {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the latency metrics of a session.
+     *
+     * @param sessionID the session
+     * @return the <tt>OtrCryptoMetrics</tt> of the session, which are empty if
+     * no operation of the session has been run yet
+     */
+    public OtrCryptoMetrics getMetrics(SessionID sessionID)
+    {
+        OtrCryptoMetrics sessionMetrics = metrics.get(sessionID);
+
+        if (sessionMetrics == null)
+        {
+            sessionMetrics = new OtrCryptoMetrics();
+
+            OtrCryptoMetrics existing
+                = metrics.putIfAbsent(sessionID, sessionMetrics);
+
+            if (existing != null)
+                sessionMetrics = existing;
+        }
+        return sessionMetrics;
+    }
+
+    /**
+     * Forgets the latency metrics of a session which has gone away.
+     *
+     * @param sessionID the session
+     */
+    public void removeMetrics(SessionID sessionID)
+    {
+        metrics.remove(sessionID);
+    }
+
+    /**
+     * Stops the threads. Pending operations are not run but cancelled, so
+     * that the threads waiting for them in {@link #invoke(SessionID, Callable)}
+     * are released, and operations submitted afterwards are cancelled right
+     * away.
+     */
+    public void shutdown()
+    {
+        synchronized (queues)
+        {
+            pool.shutdownNow();
+            for (SessionQueue queue : queues.values())
+                queue.cancel();
+            queues.clear();
+        }
+    }
+
+    /**
+     * An operation of a session which records its latency and marks the
+     * thread running it as busy with the session.
+     *
+     * @param <T> the type of the result of the operation
+     */
+    private class MeasuredOperation<T>
+        implements Callable<T>
+    {
+        /**
+         * The session of the operation.
+         */
+        private final SessionID sessionID;
+
+        /**
+         * The operation.
+         */
+        private final Callable<T> operation;
+
+        /**
+         * Creates a new <tt>MeasuredOperation</tt>.
+         *
+         * @param sessionID the session of the operation
+         * @param operation the operation
+         */
+        MeasuredOperation(SessionID sessionID, Callable<T> operation)
+        {
+            this.sessionID = sessionID;
+            this.operation = operation;
+        }
+
+        public T call()
+            throws Exception
+        {
+            long start = System.nanoTime();
+            // The thread may be running an operation of another session which
+            // has called invoke().
+            SessionID outerSession = currentSession.get();
+
+            currentSession.set(sessionID);
+            try
+            {
+                return operation.call();
+            }
+            finally
+            {
+                if (outerSession == null)
+                    currentSession.remove();
+                else
+                    currentSession.set(outerSession);
+
+                long latency = System.nanoTime() - start;
+
+                getMetrics(sessionID).record(latency);
+                if (latency > SLOW_OPERATION_LATENCY
+                        && logger.isDebugEnabled())
+                {
+                    logger.debug(
+                        "OTR operation for " + sessionID + " took "
+                            + latency / 1000000 + " ms.");
+                }
+            }
+        }
+    }
+
+    /**
+     * The operations of a session which are waiting to be run. The queue is
+     * run by one thread at a time, either a thread of the pool or a thread
+     * which has called {@link #invoke(SessionID, Callable)}.
+     */
+    private class SessionQueue
+        implements Runnable
+    {
+        /**
+         * The session of the operations.
+         */
+        private final SessionID sessionID;
+
+        /**
+         * The operations waiting to be run. Guarded by <tt>queues</tt>.
+         */
+        private final LinkedList<FutureTask<?>> tasks
+            = new LinkedList<FutureTask<?>>();
+
+        /**
+         * Whether a thread runs the queue or has been asked to. Guarded by
+         * <tt>queues</tt>.
+         */
+        private boolean running = false;
+
+        /**
+         * Creates a new <tt>SessionQueue</tt>.
+         *
+         * @param sessionID the session of the operations
+         */
+        SessionQueue(SessionID sessionID)
+        {
+            this.sessionID = sessionID;
+        }
+
+        /**
+         * Adds an operation. Must be called while holding the lock of
+         * <tt>queues</tt>.
+         *
+         * @param task the operation
+         * @return <tt>true</tt> if the queue has to be run by the caller or
+         * submitted to the pool
+         */
+        boolean add(FutureTask<?> task)
+        {
+            tasks.add(task);
+            if (running)
+                return false;
+            running = true;
+            return true;
+        }
+
+        /**
+         * Cancels the operations waiting to be run. Must be called while
+         * holding the lock of <tt>queues</tt>.
+         */
+        void cancel()
+        {
+            for (FutureTask<?> task : tasks)
+                task.cancel(false);
+            tasks.clear();
+            running = false;
+        }
+
+        /**
+         * Submits the queue to the pool, or cancels it if the pool has been
+         * shut down. Must be called while holding the lock of
+         * <tt>queues</tt>.
+         */
+        void schedule()
+        {
+            if (!submitUnordered(this))
+            {
+                queues.remove(sessionID);
+                cancel();
+            }
+        }
+
+        /**
+         * Runs the operations of the session until there are none left.
+         */
+        public void run()
+        {
+            runUntil(null);
+        }
+
+        /**
+         * Runs the operations of the session in the current thread until
+         * <tt>last</tt> has been run or there are none left. The operations
+         * added in the meantime are left to a thread of the pool.
+         *
+         * @param last the last operation to run in the current thread, or
+         * <tt>null</tt> to run all of them
+         */
+        void runUntil(FutureTask<?> last)
+        {
+            while (true)
+            {
+                FutureTask<?> task;
+
+                synchronized (queues)
+                {
+                    task = tasks.poll();
+                    if (task == null)
+                    {
+                        running = false;
+                        queues.remove(sessionID);
+                        return;
+                    }
+                }
+                task.run();
+                if (task == last)
+                    break;
+            }
+
+            synchronized (queues)
+            {
+                if (tasks.isEmpty())
+                {
+                    running = false;
+                    queues.remove(sessionID);
+                }
+                else if (running)
+                {
+                    schedule();
+                }
+            }
+        }
+    }
+}
@@ -119,6 +119,15 @@ public abstract void respondSmp(OtrContact contact,
      */
     public abstract void refreshSession(OtrContact contact);
 
+    /**
+     * Gets the latency of the cryptographic operations of the Off-the-Record
+     * session with the given {@link OtrContact}.
+     *
+     * @param contact the {@link OtrContact} whose session is measured.
+     * @return the {@link OtrCryptoMetrics} of the session.
+     */
+    public abstract OtrCryptoMetrics getCryptoMetrics(OtrContact contact);
+
     /**
      * Get the outgoing OTRv3 <tt>Session</tt>. This could be the 'master'
      * session as well as a 'slave' session.
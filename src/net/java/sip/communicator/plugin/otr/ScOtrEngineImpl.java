@@ -572,10 +572,20 @@ public static SessionID getSessionID(OtrContact otrContact)
 
     private final OtrSessionManager otrEngine;
 
+    /**
+     * Runs the operations of the OTR sessions, serialized per session and in
+     * parallel across sessions.
+     */
+    private final OtrSessionExecutor sessionExecutor = new OtrSessionExecutor();
+
     public ScOtrEngineImpl()
     {
         otrEngine = new OtrSessionManagerImpl(otrEngineHost);
 
+        // Get the slow first DH key pair generation out of the way before
+        // the first key exchange.
+        sessionExecutor.warmUpDHKeyGeneration();
+
         // Clears the map after previous instance
         // This is required because of OSGi restarts in the same VM on Android
         contactsMap.clear();
@@ -845,17 +855,24 @@ public void chatLinkClicked(URI url)
     @Override
     public void endSession(OtrContact otrContact)
     {
-        SessionID sessionID = getSessionID(otrContact);
-        try
-        {
-            setSessionStatus(otrContact, ScSessionStatus.PLAINTEXT);
+        final SessionID sessionID = getSessionID(otrContact);
 
-            otrEngine.getSession(sessionID).endSession();
-        }
-        catch (OtrException e)
+        setSessionStatus(otrContact, ScSessionStatus.PLAINTEXT);
+        sessionExecutor.submit(sessionID, new Callable<Void>()
         {
-            showError(sessionID, e.getMessage());
-        }
+            public Void call()
+            {
+                try
+                {
+                    otrEngine.getSession(sessionID).endSession();
+                }
+                catch (OtrException e)
+                {
+                    showError(sessionID, e.getMessage());
+                }
+                return null;
+            }
+        });
     }
 
     @Override
@@ -1033,16 +1050,24 @@ public void launchHelp()
     @Override
     public void refreshSession(OtrContact otrContact)
     {
-        SessionID sessionID = getSessionID(otrContact);
-        try
-        {
-            otrEngine.getSession(sessionID).refreshSession();
-        }
-        catch (OtrException e)
+        final SessionID sessionID = getSessionID(otrContact);
+
+        sessionExecutor.submit(sessionID, new Callable<Void>()
         {
-            logger.error("Error refreshing session", e);
-            showError(sessionID, e.getMessage());
-        }
+            public Void call()
+            {
+                try
+                {
+                    otrEngine.getSession(sessionID).refreshSession();
+                }
+                catch (OtrException e)
+                {
+                    logger.error("Error refreshing session", e);
+                    showError(sessionID, e.getMessage());
+                }
+                return null;
+            }
+        });
     }
 
     @Override
@@ -1092,7 +1117,10 @@ public void serviceChanged(ServiceEvent ev)
                     if (provider.equals(
                         otrContact.contact.getProtocolProvider()))
                     {
-                        scSessionStatusMap.remove(getSessionID(otrContact));
+                        SessionID sessionID = getSessionID(otrContact);
+
+                        scSessionStatusMap.remove(sessionID);
+                        sessionExecutor.removeMetrics(sessionID);
                         i.remove();
                     }
                 }
@@ -1157,7 +1185,7 @@ public void showError(SessionID sessionID, String err)
     @Override
     public void startSession(OtrContact otrContact)
     {
-        SessionID sessionID = getSessionID(otrContact);
+        final SessionID sessionID = getSessionID(otrContact);
 
         ScSessionStatus scSessionStatus = getSessionStatus(otrContact);
         scSessionStatus = ScSessionStatus.LOADING;
@@ -1170,26 +1198,45 @@ public void startSession(OtrContact otrContact)
         scheduler.scheduleScSessionStatusChange(
             otrContact, ScSessionStatus.TIMED_OUT);
 
-        try
-        {
-            otrEngine.getSession(sessionID).startSession();
-        }
-        catch (OtrException e)
+        // Starting the session doesn't need to hold up the caller, which is
+        // usually the UI.
+        sessionExecutor.submit(sessionID, new Callable<Void>()
         {
-            logger.error("Error starting session", e);
-            showError(sessionID, e.getMessage());
-        }
+            public Void call()
+            {
+                try
+                {
+                    otrEngine.getSession(sessionID).startSession();
+                }
+                catch (OtrException e)
+                {
+                    logger.error("Error starting session", e);
+                    showError(sessionID, e.getMessage());
+                }
+                return null;
+            }
+        });
     }
 
     @Override
-    public String transformReceiving(OtrContact otrContact, String msgText)
+    public String transformReceiving(OtrContact otrContact,
+                                     final String msgText)
     {
-        SessionID sessionID = getSessionID(otrContact);
+        final SessionID sessionID = getSessionID(otrContact);
         try
         {
-            return otrEngine.getSession(sessionID).transformReceiving(msgText);
+            return sessionExecutor.invoke(sessionID, new Callable<String>()
+            {
+                public String call()
+                    throws OtrException
+                {
+                    return
+                        otrEngine.getSession(sessionID)
+                            .transformReceiving(msgText);
+                }
+            });
         }
-        catch (OtrException e)
+        catch (Exception e)
         {
             logger.error("Error receiving the message", e);
             showError(sessionID, e.getMessage());
@@ -1198,14 +1245,24 @@ public String transformReceiving(OtrContact otrContact, String msgText)
     }
 
     @Override
-    public String[] transformSending(OtrContact otrContact, String msgText)
+    public String[] transformSending(OtrContact otrContact,
+                                     final String msgText)
     {
-        SessionID sessionID = getSessionID(otrContact);
+        final SessionID sessionID = getSessionID(otrContact);
         try
         {
-            return otrEngine.getSession(sessionID).transformSending(msgText);
+            return sessionExecutor.invoke(sessionID, new Callable<String[]>()
+            {
+                public String[] call()
+                    throws OtrException
+                {
+                    return
+                        otrEngine.getSession(sessionID)
+                            .transformSending(msgText);
+                }
+            });
         }
-        catch (OtrException e)
+        catch (Exception e)
         {
             logger.error("Error transforming the message", e);
             showError(sessionID, e.getMessage());
@@ -1213,6 +1270,20 @@ public String[] transformSending(OtrContact otrContact, String msgText)
         }
     }
 
+    @Override
+    public OtrCryptoMetrics getCryptoMetrics(OtrContact otrContact)
+    {
+        return sessionExecutor.getMetrics(getSessionID(otrContact));
+    }
+
+    /**
+     * Stops the threads running the operations of the OTR sessions.
+     */
+    public void dispose()
+    {
+        sessionExecutor.shutdown();
+    }
+
     private Session getSession(OtrContact contact)
     {
         SessionID sessionID = getSessionID(contact);
@@ -156,6 +156,13 @@
      */
     private Timer timer = null;
 
+    /**
+     * Limits the number of concurrent reconnects and orders them by protocol
+     * priority, so that all accounts don't hit the network at once when it
+     * comes back.
+     */
+    private ReconnectScheduler scheduler = null;
+
     /**
      * Start of the delay interval when starting a reconnect.
      */
@@ -220,6 +227,10 @@ public void start(BundleContext bundleContext)
         if(timer == null)
             timer = new Timer("Reconnect timer", true);
 
+        if(scheduler == null)
+            scheduler
+                = new ReconnectScheduler(timer, getConfigurationService());
+
         this.networkAddressManagerService
             = ServiceUtils.getService(
                     bundleContext,
@@ -275,6 +286,12 @@ public void stop(BundleContext bundleContext)
             timer.cancel();
             timer = null;
         }
+
+        if(scheduler != null)
+        {
+            scheduler.clear();
+            scheduler = null;
+        }
     }
 
     /**
@@ -461,6 +478,9 @@ private void handleProviderRemoved(ProtocolProviderService provider)
         {
             currentlyReconnecting.remove(provider).cancel();
         }
+
+        if(scheduler != null)
+            scheduler.forget(provider);
     }
 
     /**
@@ -543,6 +563,9 @@ else if(event.getType() == ChangeEvent.IFACE_DOWN)
                 {
                     ProtocolProviderService pp = iter.next();
 
+                    if(scheduler != null)
+                        scheduler.markDisconnected(pp);
+
                     // if provider is scheduled for reconnect,
                     // cancel it there is no network
                     if(currentlyReconnecting.containsKey(pp))
@@ -650,6 +673,13 @@ private void traceCurrentPPState()
             + currentlyReconnecting.keySet());
         logger.trace("needsReconnection: " + needsReconnection);
         logger.trace("unregisteringProviders: " + unregisteringProviders);
+        if(scheduler != null)
+        {
+            logger.trace("lastReconnectTimes: "
+                + scheduler.getLastReconnectTimes());
+            logger.trace("reconnectCounts: "
+                + scheduler.getReconnectCounts());
+        }
         logger.trace("----");
     }
 
@@ -744,6 +774,13 @@ public void registrationStateChanged(RegistrationStateChangeEvent evt)
                 if(needsReconnection.contains(pp))
                     return;
 
+                // the registration attempt, if any, is over
+                if(scheduler != null)
+                {
+                    scheduler.reconnectFinished(pp, false);
+                    scheduler.markDisconnected(pp);
+                }
+
                 if(connectedInterfaces.isEmpty())
                 {
                     needsReconnection.add(pp);
@@ -780,6 +817,9 @@ else if(evt.getNewState().equals(RegistrationState.REGISTERED))
                     pp,
                     new ArrayList<String>(connectedInterfaces));
 
+                if(scheduler != null)
+                    scheduler.reconnectFinished(pp, true);
+
                 if(currentlyReconnecting.containsKey(pp))
                     currentlyReconnecting.remove(pp).cancel();
 
@@ -798,8 +838,13 @@ else if(evt.getNewState().equals(RegistrationState.UNREGISTERED)
                 // event is by user request
                 if(evt.isUserRequest()
                     || isServerReturnedErroneousInputEvent)
+                {
                     autoReconnEnabledProviders.remove(pp);
 
+                    if(scheduler != null)
+                        scheduler.forget(pp);
+                }
+
                 if(!unregisteringProviders.contains(pp)
                     && currentlyReconnecting.containsKey(pp))
                 {
@@ -861,6 +906,13 @@ private void reconnect(final ProtocolProviderService pp)
                 + Math.random() * RECONNECT_DELAY_MAX)*1000;
         }
 
+        if(scheduler != null)
+        {
+            // spread the reconnects of the accounts which went down together
+            delay = scheduler.applyJitter(delay);
+            scheduler.markDisconnected(pp);
+        }
+
         final ReconnectTask task = new ReconnectTask(pp);
         task.delay = delay;
 
@@ -951,11 +1003,6 @@ else if(evt.getNewState().equals(
          */
         private long delay;
 
-        /**
-         * The thread to execute this task.
-         */
-        private Thread thread = null;
-
         /**
          * Creates the task.
          *
@@ -967,31 +1014,68 @@ public ReconnectTask(ProtocolProviderService provider)
         }
 
         /**
-         * Reconnects the provider.
+         * Hands the reconnect to the scheduler, which runs it in its own
+         * thread as soon as there is a free slot.
          */
         @Override
         public void run()
         {
-            if(thread == null || !Thread.currentThread().equals(thread))
-            {
-                thread = new Thread(this);
-                thread.start();
-            }
-            else
-            {
-                try
-                {
-                    if (logger.isInfoEnabled())
-                        logger.info("Start reconnecting "
-                            + provider.getAccountID().getDisplayName());
+            ReconnectScheduler scheduler
+                = ReconnectPluginActivator.this.scheduler;
 
-                    provider.register(
-                        getUIService().getDefaultSecurityAuthority(provider));
-                } catch (OperationFailedException ex)
+            if(scheduler == null)
+                return;
+
+            scheduler.submit(provider, new Runnable()
+            {
+                public void run()
                 {
-                    logger.error("cannot re-register provider will keep going",
-                                ex);
+                    reconnectProvider();
                 }
+            });
+        }
+
+        /**
+         * Cancels this task and its reconnect if it is waiting in the
+         * scheduler.
+         *
+         * @return <tt>true</tt> if this task was prevented from running.
+         */
+        @Override
+        public boolean cancel()
+        {
+            ReconnectScheduler scheduler
+                = ReconnectPluginActivator.this.scheduler;
+
+            if(scheduler != null)
+                scheduler.cancel(provider);
+
+            return super.cancel();
+        }
+
+        /**
+         * Reconnects the provider.
+         */
+        private void reconnectProvider()
+        {
+            try
+            {
+                if (logger.isInfoEnabled())
+                    logger.info("Start reconnecting "
+                        + provider.getAccountID().getDisplayName());
+
+                provider.register(
+                    getUIService().getDefaultSecurityAuthority(provider));
+            } catch (OperationFailedException ex)
+            {
+                logger.error("cannot re-register provider will keep going",
+                            ex);
+
+                ReconnectScheduler scheduler
+                    = ReconnectPluginActivator.this.scheduler;
+
+                if(scheduler != null)
+                    scheduler.reconnectFinished(provider, false);
             }
         }
     }
@@ -0,0 +1,565 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.reconnectplugin;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Admits the reconnect tasks which are due to the network in a controlled
+ * way. When an interface comes back up every account of the client becomes
+ * due at almost the same moment, so instead of starting them all at once the
+ * scheduler keeps at most a configured number of registrations in progress,
+ * starts the pending ones in protocol priority order (SIP before IM by
+ * default), spreads the delays with random jitter and measures the time each
+ * account needed to get registered again.
+ */
+class ReconnectScheduler
+{
+    /**
+     * The <tt>Logger</tt> used by this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ReconnectScheduler.class);
+
+    /**
+     * The name of the property which holds the maximum number of providers
+     * which are allowed to register concurrently.
+     */
+    static final String MAX_CONCURRENT_RECONNECTS_PROP
+        = "net.java.sip.communicator.plugin.reconnectplugin."
+            + "MAX_CONCURRENT_RECONNECTS";
+
+    /**
+     * The name of the property which holds the maximum random jitter in
+     * milliseconds that is added to each reconnect delay.
+     */
+    static final String RECONNECT_JITTER_PROP
+        = "net.java.sip.communicator.plugin.reconnectplugin.RECONNECT_JITTER";
+
+    /**
+     * The prefix of the properties which hold the reconnect priority of a
+     * protocol, the protocol name is appended to it. Lower values are
+     * reconnected first.
+     */
+    static final String PRIORITY_PROP_PREFIX
+        = "net.java.sip.communicator.plugin.reconnectplugin.PRIORITY.";
+
+    /**
+     * The prefix of the system properties through which the time the last
+     * reconnect of an account took, in milliseconds, is published. The
+     * account unique ID is appended to it.
+     */
+    static final String LAST_RECONNECT_TIME_PROP_PREFIX
+        = "net.java.sip.communicator.plugin.reconnectplugin."
+            + "LAST_RECONNECT_TIME.";
+
+    /**
+     * The prefix of the system properties through which the number of
+     * successful reconnects of an account is published. The account unique
+     * ID is appended to it.
+     */
+    static final String RECONNECT_COUNT_PROP_PREFIX
+        = "net.java.sip.communicator.plugin.reconnectplugin.RECONNECT_COUNT.";
+
+    /**
+     * The default maximum number of concurrent registrations.
+     */
+    private static final int DEFAULT_MAX_CONCURRENT_RECONNECTS = 3;
+
+    /**
+     * The default maximum jitter added to the reconnect delays.
+     */
+    private static final int DEFAULT_RECONNECT_JITTER = 3000; // ms
+
+    /**
+     * The priority of the protocols which have no configured or built-in
+     * priority.
+     */
+    private static final int DEFAULT_PRIORITY = 10;
+
+    /**
+     * The time after which a started reconnect releases its slot even if the
+     * provider has not reported the outcome of the registration.
+     */
+    static final long MAX_RECONNECT_DURATION = 30 * 1000;
+
+    /**
+     * The built-in priorities of the well known protocols.
+     */
+    private static final Map<String, Integer> DEFAULT_PRIORITIES
+        = new HashMap<String, Integer>();
+
+    static
+    {
+        DEFAULT_PRIORITIES.put(ProtocolNames.SIP, 0);
+        DEFAULT_PRIORITIES.put(ProtocolNames.JABBER, 5);
+    }
+
+    /**
+     * The reconnects which are due but wait for a free slot, ordered by
+     * priority and then by the time they became due.
+     */
+    private final PriorityQueue<PendingReconnect> pending
+        = new PriorityQueue<PendingReconnect>();
+
+    /**
+     * The providers currently registering together with the time their
+     * registration was started.
+     */
+    private final Map<ProtocolProviderService, Long> inProgress
+        = new HashMap<ProtocolProviderService, Long>();
+
+    /**
+     * The moments the providers lost their connection, used to compute the
+     * time to reconnect.
+     */
+    private final Map<ProtocolProviderService, Long> disconnectedSince
+        = new HashMap<ProtocolProviderService, Long>();
+
+    /**
+     * The time the last reconnect took, in milliseconds, per account unique
+     * ID.
+     */
+    private final Map<String, Long> lastReconnectTimes
+        = new HashMap<String, Long>();
+
+    /**
+     * The number of successful reconnects per account unique ID.
+     */
+    private final Map<String, Integer> reconnectCounts
+        = new HashMap<String, Integer>();
+
+    /**
+     * The random generator for the jitter.
+     */
+    private final Random random = new Random();
+
+    /**
+     * The timer used to release the slots of reconnects which never report
+     * their outcome.
+     */
+    private final Timer timer;
+
+    /**
+     * The configuration service the limits are read from and the metrics are
+     * published to, <tt>null</tt> to use the defaults.
+     */
+    private final ConfigurationService cfg;
+
+    /**
+     * The time after which a started reconnect releases its slot.
+     */
+    private final long maxReconnectDuration;
+
+    /**
+     * Sequence used to keep the order of reconnects with equal priority.
+     */
+    private long sequence = 0;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param timer the timer used to watch the reconnects in progress.
+     * @param cfg the configuration service, <tt>null</tt> to use the
+     * defaults.
+     */
+    ReconnectScheduler(Timer timer, ConfigurationService cfg)
+    {
+        this(timer, cfg, MAX_RECONNECT_DURATION);
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param timer the timer used to watch the reconnects in progress.
+     * @param cfg the configuration service, <tt>null</tt> to use the
+     * defaults.
+     * @param maxReconnectDuration the time after which a started reconnect
+     * releases its slot even if it has not reported its outcome.
+     */
+    ReconnectScheduler(Timer timer,
+                       ConfigurationService cfg,
+                       long maxReconnectDuration)
+    {
+        this.timer = timer;
+        this.cfg = cfg;
+        this.maxReconnectDuration = maxReconnectDuration;
+    }
+
+    /**
+     * Returns the given delay with random jitter added to it.
+     *
+     * @param delay the delay in milliseconds.
+     * @return the delay with the jitter added.
+     */
+    long applyJitter(long delay)
+    {
+        int jitter = getConfiguredInt(
+            RECONNECT_JITTER_PROP, DEFAULT_RECONNECT_JITTER);
+
+        if(jitter <= 0)
+            return delay;
+
+        synchronized(random)
+        {
+            return delay + random.nextInt(jitter);
+        }
+    }
+
+    /**
+     * Records that the provider has lost its connection, if not already
+     * recorded, so that we can later measure how long the reconnect took.
+     *
+     * @param pp the provider.
+     */
+    synchronized void markDisconnected(ProtocolProviderService pp)
+    {
+        if(!disconnectedSince.containsKey(pp))
+            disconnectedSince.put(pp, System.currentTimeMillis());
+    }
+
+    /**
+     * Queues a reconnect which is due. It is executed immediately if there is
+     * a free slot, or after the reconnects with higher priority otherwise.
+     *
+     * @param pp the provider to reconnect.
+     * @param reconnect the actual reconnect to run.
+     */
+    void submit(ProtocolProviderService pp, Runnable reconnect)
+    {
+        synchronized(this)
+        {
+            // a reconnect which is scheduled again replaces the old one
+            removePending(pp);
+
+            pending.add(new PendingReconnect(
+                pp, reconnect, getPriority(pp), sequence++));
+
+            if(logger.isTraceEnabled())
+                logger.trace("Queued reconnect of " + pp
+                    + ", pending: " + pending.size()
+                    + ", in progress: " + inProgress.size());
+        }
+
+        startPending();
+    }
+
+    /**
+     * Called when a provider has reported the outcome of its registration.
+     * Frees its slot and, on success, records the time the reconnect took.
+     *
+     * @param pp the provider.
+     * @param registered whether the provider is now registered.
+     */
+    void reconnectFinished(ProtocolProviderService pp, boolean registered)
+    {
+        synchronized(this)
+        {
+            inProgress.remove(pp);
+
+            if(registered)
+            {
+                Long since = disconnectedSince.remove(pp);
+
+                if(since != null)
+                {
+                    long duration = System.currentTimeMillis() - since;
+                    String accountUID
+                        = pp.getAccountID().getAccountUniqueID();
+                    Integer count = reconnectCounts.get(accountUID);
+
+                    count = (count == null) ? 1 : count + 1;
+                    lastReconnectTimes.put(accountUID, duration);
+                    reconnectCounts.put(accountUID, count);
+
+                    // published as system properties so that they can be
+                    // read through the configuration service
+                    if(cfg != null)
+                    {
+                        cfg.setProperty(
+                            LAST_RECONNECT_TIME_PROP_PREFIX + accountUID,
+                            duration,
+                            true);
+                        cfg.setProperty(
+                            RECONNECT_COUNT_PROP_PREFIX + accountUID,
+                            count,
+                            true);
+                    }
+
+                    if(logger.isInfoEnabled())
+                        logger.info("Reconnected "
+                            + pp.getAccountID().getDisplayName()
+                            + " in " + duration + " ms.");
+                }
+            }
+        }
+
+        startPending();
+    }
+
+    /**
+     * Cancels the pending or running reconnect of the given provider and
+     * frees its slot.
+     *
+     * @param pp the provider.
+     */
+    void cancel(ProtocolProviderService pp)
+    {
+        synchronized(this)
+        {
+            removePending(pp);
+            inProgress.remove(pp);
+        }
+
+        startPending();
+    }
+
+    /**
+     * Forgets everything about the given provider, it is either removed or
+     * the user does not want it reconnected any more.
+     *
+     * @param pp the provider.
+     */
+    void forget(ProtocolProviderService pp)
+    {
+        synchronized(this)
+        {
+            disconnectedSince.remove(pp);
+        }
+
+        cancel(pp);
+    }
+
+    /**
+     * Discards all pending reconnects.
+     */
+    synchronized void clear()
+    {
+        pending.clear();
+        inProgress.clear();
+        disconnectedSince.clear();
+    }
+
+    /**
+     * Returns the time in milliseconds the last reconnect of every account
+     * which has reconnected took.
+     *
+     * @return a map of account unique IDs to reconnect times.
+     */
+    synchronized Map<String, Long> getLastReconnectTimes()
+    {
+        return new HashMap<String, Long>(lastReconnectTimes);
+    }
+
+    /**
+     * Returns the number of successful reconnects of every account.
+     *
+     * @return a map of account unique IDs to reconnect counts.
+     */
+    synchronized Map<String, Integer> getReconnectCounts()
+    {
+        return new HashMap<String, Integer>(reconnectCounts);
+    }
+
+    /**
+     * Returns the number of reconnects waiting for a free slot.
+     *
+     * @return the number of pending reconnects.
+     */
+    synchronized int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of reconnects holding a slot.
+     *
+     * @return the number of reconnects in progress.
+     */
+    synchronized int getInProgressCount()
+    {
+        return inProgress.size();
+    }
+
+    /**
+     * Starts as many pending reconnects as there are free slots.
+     */
+    private void startPending()
+    {
+        List<PendingReconnect> toStart = new ArrayList<PendingReconnect>();
+
+        synchronized(this)
+        {
+            int maxConcurrent = getConfiguredInt(
+                MAX_CONCURRENT_RECONNECTS_PROP,
+                DEFAULT_MAX_CONCURRENT_RECONNECTS);
+            long now = System.currentTimeMillis();
+
+            // release slots which never reported an outcome
+            Iterator<Map.Entry<ProtocolProviderService, Long>> iter
+                = inProgress.entrySet().iterator();
+            while(iter.hasNext())
+            {
+                if(now - iter.next().getValue() > maxReconnectDuration)
+                    iter.remove();
+            }
+
+            while(!pending.isEmpty()
+                && (maxConcurrent <= 0 || inProgress.size() < maxConcurrent))
+            {
+                PendingReconnect next = pending.poll();
+
+                inProgress.put(next.provider, now);
+                toStart.add(next);
+            }
+        }
+
+        for(final PendingReconnect next : toStart)
+        {
+            new Thread(next.reconnect, "Reconnect "
+                + next.provider.getAccountID().getDisplayName()).start();
+
+            try
+            {
+                timer.schedule(new TimerTask()
+                {
+                    @Override
+                    public void run()
+                    {
+                        startPending();
+                    }
+                }, maxReconnectDuration + 1);
+            }
+            catch(IllegalStateException ex)
+            {
+                // the timer is cancelled, we are stopping
+            }
+        }
+    }
+
+    /**
+     * Removes the pending reconnect of the given provider, if any.
+     *
+     * @param pp the provider.
+     */
+    private void removePending(ProtocolProviderService pp)
+    {
+        Iterator<PendingReconnect> iter = pending.iterator();
+        while(iter.hasNext())
+        {
+            if(iter.next().provider.equals(pp))
+                iter.remove();
+        }
+    }
+
+    /**
+     * Returns the reconnect priority of the protocol of the given provider.
+     *
+     * @param pp the provider.
+     * @return the priority, lower values are reconnected first.
+     */
+    private int getPriority(ProtocolProviderService pp)
+    {
+        String protocol = pp.getProtocolName();
+        Integer defaultPriority = DEFAULT_PRIORITIES.get(protocol);
+
+        return getConfiguredInt(
+            PRIORITY_PROP_PREFIX + protocol,
+            (defaultPriority == null) ? DEFAULT_PRIORITY : defaultPriority);
+    }
+
+    /**
+     * Returns the value of an integer property or the given default if the
+     * configuration service is not available.
+     *
+     * @param propertyName the name of the property.
+     * @param defaultValue the default value.
+     * @return the value of the property.
+     */
+    private int getConfiguredInt(String propertyName, int defaultValue)
+    {
+        return (cfg == null) ? defaultValue
+                             : cfg.getInt(propertyName, defaultValue);
+    }
+
+    /**
+     * A reconnect waiting for a free slot.
+     */
+    private static class PendingReconnect
+        implements Comparable<PendingReconnect>
+    {
+        /**
+         * The provider to reconnect.
+         */
+        private final ProtocolProviderService provider;
+
+        /**
+         * The reconnect to run.
+         */
+        private final Runnable reconnect;
+
+        /**
+         * The priority of the provider.
+         */
+        private final int priority;
+
+        /**
+         * The order in which the reconnect was queued.
+         */
+        private final long sequence;
+
+        /**
+         * Creates a pending reconnect.
+         *
+         * @param provider the provider to reconnect.
+         * @param reconnect the reconnect to run.
+         * @param priority the priority of the provider.
+         * @param sequence the order in which the reconnect was queued.
+         */
+        PendingReconnect(ProtocolProviderService provider,
+                         Runnable reconnect,
+                         int priority,
+                         long sequence)
+        {
+            this.provider = provider;
+            this.reconnect = reconnect;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Orders by priority and then by queueing order.
+         *
+         * @param other the other pending reconnect.
+         * @return the comparison result.
+         */
+        public int compareTo(PendingReconnect other)
+        {
+            if(priority != other.priority)
+                return (priority < other.priority) ? -1 : 1;
+
+            return (sequence < other.sequence) ? -1
+                : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+}
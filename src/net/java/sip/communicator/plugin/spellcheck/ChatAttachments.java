@@ -77,7 +77,8 @@ boolean getFormatting(String word)
             {
                 try
                 {
-                    return !ChatAttachments.this.dict.isCorrect(word);
+                    return !WordVerdictCache.isCorrect(
+                        ChatAttachments.this.dict, word);
                 }
                 catch (NullPointerException exc)
                 {
@@ -219,70 +220,67 @@ private List<JMenuItem> getCorrections(final Word clickedWord)
     {
         ArrayList<JMenuItem> correctionEntries = new ArrayList<JMenuItem>();
 
-        synchronized (this.dict)
+        if (!WordVerdictCache.isCorrect(this.dict, clickedWord.getText()))
         {
-            if (!this.dict.isCorrect(clickedWord.getText()))
+            List<String> corrections
+                = WordVerdictCache.getSuggestions(
+                        this.dict, clickedWord.getText());
+            for (String correction : corrections)
             {
-                List<String> corrections =
-                    this.dict.getSuggestions(clickedWord.getText());
-                for (String correction : corrections)
-                {
-                    JMenuItem newEntry = new JMenuItem(correction);
-                    newEntry.addActionListener(new CorrectionListener(
-                        clickedWord, correction));
-                    correctionEntries.add(newEntry);
+                JMenuItem newEntry = new JMenuItem(correction);
+                newEntry.addActionListener(new CorrectionListener(
+                    clickedWord, correction));
+                correctionEntries.add(newEntry);
 
-                }
+            }
 
-                // entry to add word
-                JMenuItem addWord = new JMenuItem(
-                    resources.getI18NString("plugin.spellcheck.dialog.ADD"),
-                    ADD_WORD_ICON);
-                addWord.addActionListener(new ActionListener()
+            // entry to add word
+            JMenuItem addWord = new JMenuItem(
+                resources.getI18NString("plugin.spellcheck.dialog.ADD"),
+                ADD_WORD_ICON);
+            addWord.addActionListener(new ActionListener()
+            {
+                public void actionPerformed(ActionEvent event)
                 {
-                    public void actionPerformed(ActionEvent event)
+                    try
                     {
-                        try
-                        {
-                            dict.addWord(clickedWord.getText());
+                        WordVerdictCache.addWord(dict, clickedWord.getText());
 
-                            // clears underline
-                            docListener.format(clickedWord);
-                            chat.promptRepaint();
-                        }
-                        catch (SpellDictionaryException exc)
-                        {
-                            String msg =
-                                "Unable to add word to personal dictionary";
-                            logger.error(msg, exc);
-                        }
+                        // clears underline
+                        docListener.format(clickedWord);
+                        chat.promptRepaint();
                     }
-                });
-                correctionEntries.add(addWord);
-
-            }
-
-            JMenuItem spellCheck =
-                new JMenuItem(
-                    resources.getI18NString("plugin.spellcheck.MENU"));
-            correctionEntries.add(spellCheck);
-            spellCheck.addActionListener(new ActionListener()
-            {
-
-                public void actionPerformed(ActionEvent e)
-                {
-                    if(dialog != null) {
-                        dialog.dispose();
+                    catch (SpellDictionaryException exc)
+                    {
+                        String msg =
+                            "Unable to add word to personal dictionary";
+                        logger.error(msg, exc);
                     }
-
-                    dialog =
-                        new SpellCheckerConfigDialog(chat, clickedWord,
-                            dict);
-                    dialog.setVisible(true);
                 }
             });
+            correctionEntries.add(addWord);
 
         }
+
+        JMenuItem spellCheck =
+            new JMenuItem(
+                resources.getI18NString("plugin.spellcheck.MENU"));
+        correctionEntries.add(spellCheck);
+        spellCheck.addActionListener(new ActionListener()
+        {
+
+            public void actionPerformed(ActionEvent e)
+            {
+                if(dialog != null) {
+                    dialog.dispose();
+                }
+
+                dialog =
+                    new SpellCheckerConfigDialog(chat, clickedWord,
+                        dict);
+                dialog.setVisible(true);
+            }
+        });
         return correctionEntries;
 
     }
@@ -18,8 +18,13 @@
 package net.java.sip.communicator.plugin.spellcheck;
 
 import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
 
 import javax.swing.*;
+import javax.swing.Timer;
 import javax.swing.event.*;
 import javax.swing.text.*;
 
@@ -29,6 +34,11 @@
  * Notifies subclasses when words are changed and lets them decide if text
  * should be underlined with a red squiggle. Text appended to the end isn't
  * formatted until the word's completed.
+ * <p>
+ * Changed words are collected while the user types and checked once typing
+ * pauses. The checks run on a worker thread shared by all editors and the
+ * resulting underlines are applied in a single pass on the event dispatch
+ * thread, so neither large pastes nor slow dictionaries hold up typing.
  *
  * @author Damian Johnson
  */
@@ -41,12 +51,55 @@
 
     private static final DefaultHighlighter.DefaultHighlightPainter UNDERLINER;
 
+    /**
+     * Delay in milliseconds after the last change before changed words are
+     * checked.
+     */
+    private static final int CHECK_DELAY = 200;
+
+    /**
+     * Worker thread performing the dictionary lookups of all editors.
+     */
+    private static final ExecutorService CHECKER =
+        Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Spell checker");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+
     private final Highlighter docHighlighter;
 
     private final CaretListener endChecker;
 
     private boolean isEnabled = true;
 
+    /**
+     * Document of the editor, known once it's been changed.
+     */
+    private Document document = null;
+
+    /**
+     * Words waiting to be checked (only accessed from the event dispatch
+     * thread).
+     */
+    private List<PendingWord> pendingWords = new ArrayList<PendingWord>();
+
+    /**
+     * Incremented whenever all underlining is discarded, so checks started
+     * before are ignored.
+     */
+    private int generation = 0;
+
+    /**
+     * Starts checking the pending words once the user stops typing.
+     */
+    private final Timer checkTimer;
+
     static
     {
         UNDERLINER =
@@ -120,6 +173,7 @@ public void caretUpdate(CaretEvent event)
                 {
                     JTextComponent comp = (JTextComponent) event.getSource();
                     Document doc = comp.getDocument();
+                    document = doc;
 
                     boolean currentlyAtEnd = event.getDot() == doc.getLength();
                     if (isEnabled && this.atEnd && !currentlyAtEnd)
@@ -200,6 +254,14 @@ void promptRepaint()
     DocUnderliner(Highlighter docHighlighter)
     {
         this.docHighlighter = docHighlighter;
+        this.checkTimer = new Timer(CHECK_DELAY, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent event)
+            {
+                checkPendingWords();
+            }
+        });
+        this.checkTimer.setRepeats(false);
     }
 
     public void insertUpdate(DocumentEvent event)
@@ -210,6 +272,7 @@ public void insertUpdate(DocumentEvent event)
         try
         {
             Document doc = event.getDocument();
+            this.document = doc;
             String text = doc.getText(0, doc.getLength());
 
             if (event.getLength() == 1)
@@ -296,6 +359,7 @@ public void removeUpdate(DocumentEvent event)
         try
         {
             Document doc = event.getDocument();
+            this.document = doc;
             String text = doc.getText(0, doc.getLength());
             if (text.length() != 0)
             {
@@ -343,7 +407,8 @@ public CaretListener getEndChecker()
     }
 
     /**
-     * Formats the word with the appropriate underlining (or lack thereof).
+     * Schedules the word to be formatted with the appropriate underlining (or
+     * lack thereof) once the user stops typing.
      *
      * @param word word to be formatted
      */
@@ -355,9 +420,160 @@ public void format(Word word)
         String text = word.getText();
         if (text.length() > 0)
         {
-            clearUnderlining(word.getStart(), word.getStart() + text.length());
-            if (getFormatting(text))
-                underlineRange(word.getStart(), word.getStart() + text.length());
+            this.pendingWords.add(
+                new PendingWord(createPosition(word.getStart()), text));
+            this.checkTimer.restart();
+        }
+    }
+
+    /**
+     * Provides a position that tracks changes of the document, so that words
+     * can still be found if text is inserted or removed before them while
+     * they're being checked.
+     *
+     * @param offset offset in the document
+     * @return position at the offset
+     */
+    private Position createPosition(final int offset)
+    {
+        if (this.document != null)
+        {
+            try
+            {
+                return this.document.createPosition(offset);
+            }
+            catch (BadLocationException exc)
+            {
+                String msg = "Bad bounds (programmer error in spell checker)";
+                logger.error(msg, exc);
+            }
+        }
+
+        return new Position()
+        {
+            public int getOffset()
+            {
+                return offset;
+            }
+        };
+    }
+
+    /**
+     * Hands the pending words to the worker thread, which then schedules the
+     * resulting underlining to be applied.
+     */
+    private void checkPendingWords()
+    {
+        if (!this.isEnabled || this.pendingWords.isEmpty())
+            return;
+
+        final List<PendingWord> words = this.pendingWords;
+        final int checkedGeneration = this.generation;
+        this.pendingWords = new ArrayList<PendingWord>();
+
+        CHECKER.execute(new Runnable()
+        {
+            public void run()
+            {
+                for (PendingWord word : words)
+                {
+                    try
+                    {
+                        word.misspelled = getFormatting(word.text);
+                    }
+                    catch (Throwable exc)
+                    {
+                        logger.error("Error words processing", exc);
+                    }
+                }
+
+                SwingUtilities.invokeLater(new Runnable()
+                {
+                    public void run()
+                    {
+                        applyFormatting(words, checkedGeneration);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Applies the underlining of checked words in one pass. Words that have
+     * been changed in the meantime are skipped since they've been queued for
+     * checking again.
+     *
+     * @param words checked words
+     * @param checkedGeneration generation the words were checked in
+     */
+    private void applyFormatting(List<PendingWord> words,
+        int checkedGeneration)
+    {
+        if (!this.isEnabled || checkedGeneration != this.generation)
+            return;
+
+        // ranges of the words that are still present, by start offset
+        TreeMap<Integer, PendingWord> ranges = new TreeMap<Integer, PendingWord>();
+        for (PendingWord word : words)
+        {
+            int start = word.start.getOffset();
+            if (isPresent(word, start))
+                ranges.put(start, word);
+        }
+
+        if (ranges.isEmpty())
+            return;
+
+        // clears previous underlining of the checked words
+        for (Highlighter.Highlight highlight : this.docHighlighter
+            .getHighlights())
+        {
+            Map.Entry<Integer, PendingWord> overlapping =
+                ranges.lowerEntry(highlight.getEndOffset());
+            if (overlapping != null
+                && overlapping.getKey() + overlapping.getValue().text.length()
+                    > highlight.getStartOffset())
+            {
+                this.docHighlighter.removeHighlight(highlight);
+            }
+        }
+
+        for (Map.Entry<Integer, PendingWord> entry : ranges.entrySet())
+        {
+            PendingWord word = entry.getValue();
+            if (word.misspelled)
+            {
+                underlineRange(entry.getKey(),
+                    entry.getKey() + word.text.length());
+            }
+        }
+
+        promptRepaint();
+    }
+
+    /**
+     * Checks if the word is still in the document at the given offset.
+     *
+     * @param word checked word
+     * @param start current offset of the word
+     * @return true if the document still contains the word at the offset
+     */
+    private boolean isPresent(PendingWord word, int start)
+    {
+        if (this.document == null)
+            return true;
+
+        int length = word.text.length();
+        if (start + length > this.document.getLength())
+            return false;
+
+        try
+        {
+            return word.text.equals(this.document.getText(start, length));
+        }
+        catch (BadLocationException exc)
+        {
+            return false;
         }
     }
 
@@ -422,7 +638,10 @@ public void setEnabled(boolean enable, String message)
             if (this.isEnabled)
                 reset(message);
             else
+            {
+                discardPending();
                 this.docHighlighter.removeAllHighlights();
+            }
             promptRepaint();
         }
     }
@@ -438,6 +657,7 @@ public void reset(String message)
             return;
 
         // clears previous underlined sections
+        discardPending();
         this.docHighlighter.removeAllHighlights();
 
         // runs over message
@@ -458,4 +678,38 @@ public void reset(String message)
 
         promptRepaint();
     }
+
+    /**
+     * Discards pending words and ignores checks that are in progress.
+     */
+    private void discardPending()
+    {
+        this.checkTimer.stop();
+        this.pendingWords.clear();
+        this.generation++;
+    }
+
+    /**
+     * Word waiting to be checked.
+     */
+    private static class PendingWord
+    {
+        /**
+         * Position of the start of the word.
+         */
+        private final Position start;
+
+        private final String text;
+
+        /**
+         * Verdict set by the worker thread.
+         */
+        private volatile boolean misspelled = false;
+
+        PendingWord(Position start, String text)
+        {
+            this.start = start;
+            this.text = text;
+        }
+    }
 }
@@ -185,6 +185,7 @@ synchronized void stop()
             this.attachedChats.clear();
             SpellCheckActivator.getUIService().removeChatListener(this);
         }
+        WordVerdictCache.clear();
     }
 
     /**
@@ -446,6 +447,8 @@ void setLocale(Parameters.Locale locale) throws Exception
 
                 this.dict = dict;
                 this.dictLocation = dictLocation;
+                // don't keep the replaced dictionary alive through the cache
+                WordVerdictCache.clear();
                 Parameters.Locale oldLocale = this.locale;
                 this.locale = locale;
 
@@ -119,7 +119,8 @@ public SpellCheckerConfigDialog(Chat chat, Word clickedWord,
         this.setLocation(x, y);
 
         if (!currentWord.getText().equals("  ")
-            && this.dict.isCorrect(currentWord.getText()))
+            && WordVerdictCache.isCorrect(
+                    this.dict, currentWord.getText()))
         {
             nextButton.doClick();
         }
@@ -225,7 +226,8 @@ public Word getNextWord()
 
                     wordIndex =
                         chat.getMessage().indexOf(currentWord.getText());
-                    if (dict.isCorrect(currentWord.getText()))
+                    if (WordVerdictCache.isCorrect(
+                            dict, currentWord.getText()))
                         currentWord.setText("");
                 }
                 else
@@ -267,14 +269,14 @@ public void actionPerformed(ActionEvent e)
                     nextWord = getNextWord();
                 }
 
-                while (dict.isCorrect(nextWord.getText())
+                while (WordVerdictCache.isCorrect(dict, nextWord.getText())
                     && nextWord.getEnd() + 1 != breakIndex)
                 {
                     nextWord = getNextWord();
 
                 }
 
-                if (!dict.isCorrect(nextWord.getText()))
+                if (!WordVerdictCache.isCorrect(dict, nextWord.getText()))
                 {
                     word = nextWord.getText();
                     currentWord.setText(nextWord.getText());
@@ -303,7 +305,7 @@ public void actionPerformed(ActionEvent e)
         suggestionScroll = new JScrollPane(suggestionList);
         suggestionScroll.setAlignmentX(LEFT_ALIGNMENT);
 
-        if (!dict.isCorrect(clickedWord.getText()))
+        if (!WordVerdictCache.isCorrect(dict, clickedWord.getText()))
             setSuggestionModel(clickedWord.getText());
 
         suggestionList.addListSelectionListener(new ListSelectionListener()
@@ -369,7 +371,7 @@ public void actionPerformed(ActionEvent e)
 
                 try
                 {
-                    dict.addWord(currentWord.getText());
+                    WordVerdictCache.addWord(dict, currentWord.getText());
                     chat.promptRepaint();
                 }
                 catch (SpellDictionaryException exc)
@@ -401,7 +403,8 @@ private void setSuggestionModel(String clickedWord)
     {
 
         DefaultListModel dataModel = new DefaultListModel();
-        List<String> corrections = this.dict.getSuggestions(clickedWord);
+        List<String> corrections
+            = WordVerdictCache.getSuggestions(this.dict, clickedWord);
         for (String correction : corrections)
         {
             dataModel.addElement(correction);
@@ -0,0 +1,176 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.spellcheck;
+
+import java.util.*;
+
+import org.dts.spell.dictionary.*;
+
+/**
+ * Least recently used cache of spell checking verdicts, shared by all chat
+ * windows. Verdicts are only valid for the dictionary they were looked up
+ * in, so the cache is emptied when a different dictionary is used.
+ * <p>
+ * The dictionaries aren't thread-safe and are used both by the threads
+ * underlining the chat messages and by the event dispatch thread, so all
+ * dictionary access goes through this class and holds
+ * {@link #DICTIONARY_LOCK}.
+ */
+class WordVerdictCache
+{
+    /**
+     * Maximum number of words whose verdicts are remembered.
+     */
+    private static final int MAX_SIZE = 10000;
+
+    /**
+     * The lock held while a dictionary is used.
+     */
+    private static final Object DICTIONARY_LOCK = new Object();
+
+    /**
+     * Verdicts by word in access order, <tt>true</tt> if the word is spelled
+     * correctly.
+     */
+    private static final Map<String, Boolean> VERDICTS =
+        new LinkedHashMap<String, Boolean>(256, 0.75f, true)
+        {
+            private static final long serialVersionUID = 0L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Boolean> eldest)
+            {
+                return size() > MAX_SIZE;
+            }
+        };
+
+    /**
+     * Dictionary the cached verdicts belong to.
+     */
+    private static SpellDictionary dictionary = null;
+
+    /**
+     * Incremented whenever verdicts are forgotten, so that a verdict looked
+     * up before isn't cached afterwards. Guarded by <tt>VERDICTS</tt>.
+     */
+    private static long generation = 0;
+
+    /**
+     * Checks if a word is spelled correctly, consulting the dictionary only
+     * if the verdict isn't cached yet.
+     *
+     * @param dict dictionary to check the word with
+     * @param word word to be checked
+     * @return true if the word is spelled correctly, false otherwise
+     */
+    static boolean isCorrect(SpellDictionary dict, String word)
+    {
+        long lookupGeneration;
+
+        synchronized (VERDICTS)
+        {
+            if (dict != dictionary)
+            {
+                VERDICTS.clear();
+                dictionary = dict;
+                generation++;
+            }
+
+            Boolean verdict = VERDICTS.get(word);
+            if (verdict != null)
+                return verdict;
+            lookupGeneration = generation;
+        }
+
+        boolean correct;
+        synchronized (DICTIONARY_LOCK)
+        {
+            correct = dict.isCorrect(word);
+        }
+
+        synchronized (VERDICTS)
+        {
+            // the verdict may have been invalidated during the lookup
+            if (lookupGeneration == generation)
+                VERDICTS.put(word, correct);
+        }
+        return correct;
+    }
+
+    /**
+     * Returns the suggested corrections of a word.
+     *
+     * @param dict dictionary to get the suggestions from
+     * @param word misspelled word
+     * @return the suggestions of <tt>dict</tt> for <tt>word</tt>
+     */
+    static List<String> getSuggestions(SpellDictionary dict, String word)
+    {
+        synchronized (DICTIONARY_LOCK)
+        {
+            return dict.getSuggestions(word);
+        }
+    }
+
+    /**
+     * Adds a word to the personal dictionary and forgets its verdict.
+     *
+     * @param dict dictionary to add the word to
+     * @param word word to be added
+     * @throws SpellDictionaryException if the word can't be added
+     */
+    static void addWord(SpellDictionary dict, String word)
+        throws SpellDictionaryException
+    {
+        synchronized (DICTIONARY_LOCK)
+        {
+            dict.addWord(word);
+            invalidate(word);
+        }
+    }
+
+    /**
+     * Forgets the verdict of a word, e.g. after it's been added to the
+     * personal dictionary.
+     *
+     * @param word word whose verdict is outdated
+     */
+    static void invalidate(String word)
+    {
+        synchronized (VERDICTS)
+        {
+            VERDICTS.remove(word);
+            generation++;
+        }
+    }
+
+    /**
+     * Forgets all verdicts and the dictionary they belong to, e.g. when the
+     * dictionary is replaced.
+     */
+    static void clear()
+    {
+        synchronized (VERDICTS)
+        {
+            VERDICTS.clear();
+            dictionary = null;
+            generation++;
+        }
+    }
+}
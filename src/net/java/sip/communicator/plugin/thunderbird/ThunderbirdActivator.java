@@ -101,6 +101,7 @@ static void remove(ThunderbirdContactSourceService service)
     {
         registrations.get(service).unregister();
         registrations.remove(service);
+        service.dispose();
         ConfigurationService config = getConfigService();
         config.removeProperty(service.getBaseConfigProperty());
         for (String prop : config.getPropertyNamesByPrefix(
@@ -158,9 +159,11 @@ public void start(BundleContext bundleContext) throws Exception
      */
     public void stop(BundleContext bundleContext) throws Exception
     {
-        for (ServiceRegistration sr : registrations.values())
+        for (Map.Entry<ThunderbirdContactSourceService, ServiceRegistration>
+                e : registrations.entrySet())
         {
-            sr.unregister();
+            e.getValue().unregister();
+            e.getKey().dispose();
         }
 
         registrations = null;
@@ -0,0 +1,688 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.thunderbird;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jitsi.util.StringUtils;
+
+import mork.*;
+import net.java.sip.communicator.service.contactsource.ContactDetail.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * An in-memory copy of a Thunderbird Mork address book, with an index of the
+ * prefixes of the words of the names, e-mail addresses, phone numbers and
+ * other values of the contacts. The database is parsed in the background when
+ * the address book is created and again whenever its file changes, so that
+ * queries don't have to parse it and only look at the contacts they match.
+ * Changes are detected with a <tt>WatchService</tt> on the directory of the
+ * file and, where it isn't available, when a query finds that the file has
+ * been modified; meanwhile queries are served from the previous copy.
+ */
+class ThunderbirdAddressBook
+{
+    /** Class logger */
+    private final static Logger logger
+        = Logger.getLogger(ThunderbirdAddressBook.class);
+
+    /**
+     * The time in milliseconds to wait after a change of the file before
+     * parsing it, so that Thunderbird is done writing it.
+     */
+    private static final long REFRESH_DELAY = 1000;
+
+    /**
+     * The Mork properties holding the e-mail addresses of a contact.
+     */
+    private static final String[] EMAIL_PROPERTIES
+        = { "PrimaryEmail", "SecondEmail", "DefaultEmail" };
+
+    /**
+     * The Mork properties holding the phone numbers of a contact.
+     */
+    private static final String[] PHONE_PROPERTIES
+        = { "HomePhone", "WorkPhone", "CellularNumber" };
+
+    /**
+     * The categories of the phone numbers in {@link #PHONE_PROPERTIES}.
+     */
+    private static final SubCategory[] PHONE_CATEGORIES
+        = { SubCategory.Home, SubCategory.Work, SubCategory.Mobile };
+
+    /**
+     * The address book database file.
+     */
+    private final File file;
+
+    /**
+     * Parses the database in the background.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Watches the directory of the database file for changes, or
+     * <tt>null</tt> if it isn't watched.
+     */
+    private WatchService watchService;
+
+    /**
+     * The last parsed copy of the database, or <tt>null</tt> if it hasn't
+     * been parsed yet.
+     */
+    private Index index;
+
+    /**
+     * Whether a refresh of {@link #index} has been scheduled.
+     */
+    private boolean refreshScheduled = false;
+
+    /**
+     * The number of times the database file has been parsed, successfully or
+     * not.
+     */
+    private long loadCount = 0;
+
+    /**
+     * Whether the address book has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates an address book for a database file and starts parsing it in
+     * the background.
+     *
+     * @param filename the name of the address book database file
+     */
+    ThunderbirdAddressBook(String filename)
+    {
+        file = new File(filename);
+        executor
+            = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t
+                                = new Thread(r, "ThunderbirdAddressBook");
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+
+        startWatching();
+        synchronized (this)
+        {
+            scheduleRefresh(0);
+        }
+    }
+
+    /**
+     * Starts watching the directory of the database file for changes, which
+     * schedule a refresh of the index.
+     */
+    private void startWatching()
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+
+        if (dir == null)
+            return;
+
+        final Path name = file.toPath().getFileName();
+
+        try
+        {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.toPath().register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch (Exception e)
+        {
+            // Queries will still notice changes by the modification time.
+            logger.info("Cannot watch " + file + " for changes", e);
+            close(watchService);
+            watchService = null;
+            return;
+        }
+
+        final WatchService watchService = this.watchService;
+        Thread watcher
+            = new Thread("ThunderbirdAddressBookWatcher")
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        WatchKey key;
+
+                        while ((key = watchService.take()) != null)
+                        {
+                            for (WatchEvent<?> event : key.pollEvents())
+                            {
+                                if (name.equals(event.context()))
+                                {
+                                    synchronized (ThunderbirdAddressBook.this)
+                                    {
+                                        scheduleRefresh(REFRESH_DELAY);
+                                    }
+                                }
+                            }
+                            if (!key.reset())
+                                break;
+                        }
+                    }
+                    catch (ClosedWatchServiceException e)
+                    {
+                        // The address book has been closed.
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // The address book has been closed.
+                    }
+                }
+            };
+
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Schedules parsing the database file unless it has already been.
+     * Callers must hold the lock of this address book.
+     *
+     * @param delay the time in milliseconds to wait before parsing
+     */
+    private void scheduleRefresh(long delay)
+    {
+        if (refreshScheduled || closed)
+            return;
+
+        refreshScheduled = true;
+        executor.schedule(
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        refresh();
+                    }
+                },
+                delay,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Parses the database file if it has changed since it was last parsed.
+     */
+    private void refresh()
+    {
+        Index oldIndex;
+
+        synchronized (this)
+        {
+            refreshScheduled = false;
+            oldIndex = index;
+        }
+
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Index newIndex = null;
+
+        if ((oldIndex == null) || !oldIndex.isCurrent(lastModified, length))
+        {
+            try
+            {
+                newIndex = parse(lastModified, length);
+            }
+            catch (FileNotFoundException e)
+            {
+                logger.warn("Could not open address book", e);
+            }
+            catch (Exception e)
+            {
+                logger.warn("Could not parse " + file, e);
+            }
+        }
+
+        synchronized (this)
+        {
+            if (newIndex != null)
+                index = newIndex;
+            loadCount++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the last parsed copy of the database, waiting for the database
+     * to be parsed if it hasn't been yet. If the file has been modified since
+     * it has last been parsed, it gets parsed again in the background.
+     *
+     * @return the last parsed copy of the database, or <tt>null</tt> if it
+     * couldn't be parsed
+     * @throws InterruptedException if the current thread has been interrupted
+     * while waiting for the database to be parsed
+     */
+    synchronized Index getIndex()
+        throws InterruptedException
+    {
+        if ((index == null)
+                || !index.isCurrent(file.lastModified(), file.length()))
+            scheduleRefresh(0);
+
+        long count = loadCount;
+
+        while ((index == null) && (loadCount == count) && !closed)
+            wait();
+        return index;
+    }
+
+    /**
+     * Stops watching the database file and releases the parsed copy.
+     */
+    void close()
+    {
+        synchronized (this)
+        {
+            closed = true;
+            index = null;
+            notifyAll();
+        }
+        executor.shutdownNow();
+        close(watchService);
+    }
+
+    /**
+     * Closes <tt>closeable</tt>, ignoring errors.
+     *
+     * @param closeable the resource to close, may be <tt>null</tt>
+     */
+    private static void close(Closeable closeable)
+    {
+        if (closeable == null)
+            return;
+
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Failed to close " + closeable, e);
+        }
+    }
+
+    /**
+     * Parses the Mork database file and indexes its contacts.
+     *
+     * @param lastModified the modification time of the file
+     * @param length the length of the file
+     * @return the parsed copy of the database
+     * @throws IOException if the file could not be read
+     */
+    private Index parse(long lastModified, long length)
+        throws IOException
+    {
+        // parse the Thunderbird Mork database
+        InputStreamReader sr =
+            new InputStreamReader(new FileInputStream(file));
+        MorkDocument md;
+
+        try
+        {
+            md = new MorkDocument(sr);
+        }
+        finally
+        {
+            sr.close();
+        }
+
+        // We now have rows in their tables and additional rows at
+        // transaction level. Put the to a better format:
+        // DB -> Tables -> Rows
+        Map<String, Map<String, Row>> db =
+            new HashMap<String, Map<String, Row>>();
+        for (Table t : md.getTables())
+        {
+            String tableId = t.getTableId() + "/" + t.getScopeName();
+            Map<String, Row> table = db.get(tableId);
+            if (table == null)
+            {
+                table = new HashMap<String, Row>();
+                db.put(tableId, table);
+            }
+
+            for (Row r : t.getRows())
+            {
+                String scope = r.getScopeName();
+                if (scope == null)
+                {
+                    scope = t.getScopeName();
+                }
+
+                table.put(r.getRowId() + "/" + scope, r);
+            }
+        }
+
+        // The additional rows at the root-level update/replace the ones
+        // in the tables. There's usually neither a table nor a scope
+        // defined, so lets just use the default.
+        String defaultScope = md.getDicts().get(0).dereference("^80");
+        for (Row r : md.getRows())
+        {
+            String scope = r.getScopeName();
+            if (scope == null)
+            {
+                scope = defaultScope;
+            }
+
+            String tableId = "1/" + scope;
+            Map<String, Row> table = db.get(tableId);
+            if (table == null)
+            {
+                table = new HashMap<String, Row>();
+                db.put(tableId, table);
+            }
+
+            String rowId = r.getRowId() + "/" + scope;
+            if (rowId.startsWith("-"))
+            {
+                rowId = rowId.substring(1);
+            }
+
+            table.put(rowId, r);
+        }
+
+        // okay, "transactions" are applied, now index the contacts
+        Index index = new Index(lastModified, length);
+        for (Map<String, Row> table : db.values())
+        {
+            for (Map.Entry<String, Row> e : table.entrySet())
+            {
+                if (e.getKey().endsWith(defaultScope))
+                {
+                    index.add(e.getValue());
+                }
+            }
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Indexed " + index.contacts.size()
+                + " contacts of " + file);
+        }
+        return index;
+    }
+
+    /**
+     * A parsed copy of the address book database with the index of its
+     * contacts. It is not modified once parsed.
+     */
+    static class Index
+    {
+        /**
+         * The modification time of the file the copy has been parsed from.
+         */
+        private final long lastModified;
+
+        /**
+         * The length of the file the copy has been parsed from.
+         */
+        private final long length;
+
+        /**
+         * The contacts of the address book.
+         */
+        private final List<Card> contacts = new ArrayList<Card>();
+
+        /**
+         * The indices in {@link #contacts} of the contacts having a value or
+         * a word of a value, by the value or word in lower case.
+         */
+        private final NavigableMap<String, BitSet> words
+            = new TreeMap<String, BitSet>();
+
+        /**
+         * Initializes a new, empty <tt>Index</tt>.
+         *
+         * @param lastModified the modification time of the parsed file
+         * @param length the length of the parsed file
+         */
+        private Index(long lastModified, long length)
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        /**
+         * Determines whether this copy has been parsed from the file as it
+         * currently is.
+         *
+         * @param lastModified the modification time of the file
+         * @param length the length of the file
+         * @return <tt>true</tt> if this copy is up to date
+         */
+        private boolean isCurrent(long lastModified, long length)
+        {
+            return (this.lastModified == lastModified)
+                && (this.length == length);
+        }
+
+        /**
+         * Adds a contact and indexes its values.
+         *
+         * @param r the database row representing the contact
+         */
+        private void add(Row r)
+        {
+            Card contact = new Card(r);
+            int i = contacts.size();
+
+            contacts.add(contact);
+            for (String value : contact.values)
+                addWords(value, i);
+            for (String phone : contact.normalizedPhones)
+                addWords(phone, i);
+        }
+
+        /**
+         * Indexes a value and its words.
+         *
+         * @param value the value
+         * @param i the index of the contact having <tt>value</tt>
+         */
+        private void addWords(String value, int i)
+        {
+            String lowerCaseValue = value.trim().toLowerCase();
+
+            addWord(lowerCaseValue, i);
+            for (String word : lowerCaseValue.split("[^\\p{L}\\p{N}]+"))
+                addWord(word, i);
+        }
+
+        /**
+         * Indexes a word.
+         *
+         * @param word the word
+         * @param i the index of the contact having <tt>word</tt>
+         */
+        private void addWord(String word, int i)
+        {
+            if (word.length() == 0)
+                return;
+
+            BitSet set = words.get(word);
+
+            if (set == null)
+            {
+                set = new BitSet();
+                words.put(word, set);
+            }
+            set.set(i);
+        }
+
+        /**
+         * Returns all the contacts of the address book.
+         *
+         * @return all the contacts of the address book
+         */
+        List<Card> getCards()
+        {
+            return Collections.unmodifiableList(contacts);
+        }
+
+        /**
+         * Returns the contacts having a value or a word of a value starting
+         * with <tt>prefix</tt>, ignoring case, in the order of the address
+         * book.
+         *
+         * @param prefix the prefix to look up
+         * @return the contacts matching <tt>prefix</tt>
+         */
+        List<Card> findByPrefix(String prefix)
+        {
+            String lowerCasePrefix = prefix.trim().toLowerCase();
+
+            if (lowerCasePrefix.length() == 0)
+                return getCards();
+
+            BitSet found = new BitSet(contacts.size());
+
+            for (BitSet set
+                    : words.subMap(
+                            lowerCasePrefix, true,
+                            lowerCasePrefix + Character.MAX_VALUE, false)
+                        .values())
+            {
+                found.or(set);
+            }
+
+            List<Card> result = new ArrayList<Card>(found.cardinality());
+
+            for (int i = found.nextSetBit(0); i >= 0;
+                    i = found.nextSetBit(i + 1))
+            {
+                result.add(contacts.get(i));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A card, i.e. a contact, of the address book, with the values of its
+     * database row which are needed to match and show it.
+     */
+    static class Card
+    {
+        /**
+         * The name to display the contact with.
+         */
+        final String displayName;
+
+        /**
+         * The e-mail addresses of the contact.
+         */
+        final Set<String> emails = new HashSet<String>();
+
+        /**
+         * The normalized phone numbers of the contact.
+         */
+        final List<String> normalizedPhones = new ArrayList<String>();
+
+        /**
+         * The categories of {@link #normalizedPhones}.
+         */
+        final List<SubCategory> phoneCategories = new ArrayList<SubCategory>();
+
+        /**
+         * The phone numbers of the contact as written in the address book.
+         */
+        final List<String> phones = new ArrayList<String>();
+
+        /**
+         * All the values of the database row of the contact.
+         */
+        final List<String> values = new ArrayList<String>();
+
+        /**
+         * Reads a contact from its database row.
+         *
+         * @param r the database row representing the contact
+         */
+        private Card(Row r)
+        {
+            for (Alias value : r.getAliases().values())
+            {
+                if (value != null && value.getValue() != null)
+                    values.add(value.getValue());
+            }
+
+            // e-mail(s)
+            for (String prop : EMAIL_PROPERTIES)
+            {
+                String email = r.getValue(prop);
+                if (!StringUtils.isNullOrEmpty(email, true))
+                {
+                    emails.add(email);
+                }
+            }
+
+            // phone number(s)
+            PhoneNumberI18nService phoneNumberI18nService
+                = ThunderbirdActivator.getPhoneNumberI18nService();
+            for (int i = 0; i < PHONE_PROPERTIES.length; i++)
+            {
+                String phone = r.getValue(PHONE_PROPERTIES[i]);
+                if (StringUtils.isNullOrEmpty(phone, true))
+                {
+                    continue;
+                }
+
+                phones.add(phone);
+                normalizedPhones.add(phoneNumberI18nService.normalize(phone));
+                phoneCategories.add(PHONE_CATEGORIES[i]);
+            }
+
+            // and the dispaly name
+            String displayName = r.getValue("DisplayName");
+            if (StringUtils.isNullOrEmpty(displayName, true))
+            {
+                displayName = r.getValue("LastName");
+                if (displayName != null)
+                {
+                    displayName = displayName.trim();
+                }
+
+                String firstName = r.getValue("FirstName");
+                if (!StringUtils.isNullOrEmpty(firstName, true))
+                {
+                    displayName = firstName + " " + displayName;
+                }
+            }
+            this.displayName = displayName;
+        }
+    }
+}
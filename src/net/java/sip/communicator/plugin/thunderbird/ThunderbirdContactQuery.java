@@ -17,30 +17,32 @@
  */
 package net.java.sip.communicator.plugin.thunderbird;
 
-import java.io.*;
 import java.util.*;
-import java.util.Map.Entry;
 import java.util.regex.*;
 
-import org.jitsi.util.StringUtils;
-
-import mork.*;
+import net.java.sip.communicator.plugin.thunderbird.ThunderbirdAddressBook.*;
 import net.java.sip.communicator.service.contactsource.*;
 import net.java.sip.communicator.service.contactsource.ContactDetail.*;
 import net.java.sip.communicator.service.protocol.*;
-import net.java.sip.communicator.util.*;
 
 /**
  * Queries a Thunderbird address book for contacts matching the given pattern.
+ * Queries for a literal string, which are the ones typed in the search field,
+ * are served by the index of the address book and match the contacts having a
+ * value, or a word of a value, starting with the string. Other patterns are
+ * matched against all the values of every contact.
  *
  * @author Ingo Bauersachs
  */
 public class ThunderbirdContactQuery
     extends AsyncContactQuery<ThunderbirdContactSourceService>
 {
-    /** Class logger */
-    private final static Logger logger = Logger
-        .getLogger(ThunderbirdContactQuery.class);
+    /**
+     * Matches the patterns which contain characters having a special meaning
+     * in regular expressions.
+     */
+    private static final Pattern REGEX_CHARS
+        = Pattern.compile("[\\\\\\[\\]{}()*+?.^$|]");
 
     /**
      * Creates a new instance of this class.
@@ -60,137 +62,127 @@ public ThunderbirdContactQuery(ThunderbirdContactSourceService owner,
     @Override
     protected void run()
     {
-        String filename = super.getContactSource().getFilename();
-        File file = new File(filename);
+        ThunderbirdAddressBook addressBook
+            = super.getContactSource().getAddressBook();
+        Index index;
+
         try
         {
-            if (file.lastModified() > getContactSource().lastDatabaseFileChange)
-            {
-                // parse the Thunderbird Mork database
-                InputStreamReader sr =
-                    new InputStreamReader(new FileInputStream(filename));
-                MorkDocument md = new MorkDocument(sr);
-                sr.close();
+            index = (addressBook == null) ? null : addressBook.getIndex();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            index = null;
+        }
 
-                // We now have rows in their tables and additional rows at
-                // transaction level. Put the to a better format:
-                // DB -> Tables -> Rows
-                Map<String, Map<String, Row>> db =
-                    new HashMap<String, Map<String, Row>>();
-                for (Table t : md.getTables())
-                {
-                    String tableId = t.getTableId() + "/" + t.getScopeName();
-                    Map<String, Row> table = db.get(tableId);
-                    if (table == null)
-                    {
-                        table = new HashMap<String, Row>();
-                        db.put(tableId, table);
-                    }
+        if (index == null)
+        {
+            super.stopped(false);
+            return;
+        }
 
-                    for (Row r : t.getRows())
-                    {
-                        String scope = r.getScopeName();
-                        if (scope == null)
-                        {
-                            scope = t.getScopeName();
-                        }
+        String literal = getLiteralQuery();
 
-                        table.put(r.getRowId() + "/" + scope, r);
-                    }
-                }
+        if (literal != null)
+        {
+            Collection<Card> matches
+                = new LinkedHashSet<Card>(index.findByPrefix(literal));
 
-                // The additional rows at the root-level update/replace the ones
-                // in the tables. There's usually neither a table nor a scope
-                // defined, so lets just use the default.
-                String defaultScope = md.getDicts().get(0).dereference("^80");
-                for (Row r : md.getRows())
+            if (ThunderbirdActivator.getPhoneNumberI18nService()
+                    .isPhoneNumber(literal))
+            {
+                for (Card contact : index.getCards())
                 {
-                    String scope = r.getScopeName();
-                    if (scope == null)
-                    {
-                        scope = defaultScope;
-                    }
-
-                    String tableId = "1/" + scope;
-                    Map<String, Row> table = db.get(tableId);
-                    if (table == null)
-                    {
-                        table = new HashMap<String, Row>();
-                        db.put(tableId, table);
-                    }
-
-                    String rowId = r.getRowId() + "/" + scope;
-                    if (rowId.startsWith("-"))
-                    {
-                        rowId = rowId.substring(1);
-                    }
-
-                    table.put(rowId, r);
+                    if (phoneMatches(contact))
+                        matches.add(contact);
                 }
-
-                super.getContactSource().database = db;
-                super.getContactSource().defaultScope = defaultScope;
-                super.getContactSource().lastDatabaseFileChange =
-                    file.lastModified();
             }
 
-            // okay, "transactions" are applied, now perform the search
-            for (Entry<String, Map<String, Row>> table
-                : super.getContactSource().database.entrySet())
+            for (Card contact : matches)
+                addContact(contact);
+        }
+        else
+        {
+            for (Card contact : index.getCards())
             {
-                for (Map.Entry<String, Row> e : table.getValue().entrySet())
-                {
-                    if (e.getKey().endsWith(getContactSource().defaultScope))
-                    {
-                        readEntry(e.getValue());
-                    }
-                }
+                if (matches(contact))
+                    addContact(contact);
             }
-
-            super.stopped(true);
         }
-        catch (FileNotFoundException e)
+
+        super.stopped(true);
+    }
+
+    /**
+     * Returns the string which the query looks for if it doesn't use the
+     * features of regular expressions.
+     *
+     * @return the string looked for, or <tt>null</tt> if the query is a
+     * regular expression
+     */
+    private String getLiteralQuery()
+    {
+        String pattern = super.query.pattern();
+        int length = pattern.length();
+
+        if ((length >= 4)
+                && pattern.startsWith("\\Q")
+                && (pattern.indexOf("\\E") == length - 2))
         {
-            logger.warn("Could not open address book", e);
+            return pattern.substring(2, length - 2);
         }
-        catch (Exception e)
+        else if (!REGEX_CHARS.matcher(pattern).find())
         {
-            logger.warn("Could not parse " + file, e);
+            return pattern;
         }
+        return null;
     }
 
     /**
-     * Processes a database row by matching it against the query and adding it
-     * to the result set if it matched.
+     * Determines whether a contact matches the query by any of its values.
      *
-     * @param r The database row representing a contact.
+     * @param contact The contact to match.
+     * @return <tt>true</tt> if the contact matches the query.
      */
-    private void readEntry(Row r)
+    private boolean matches(Card contact)
     {
-        // match the pattern against this contact
-        boolean hadMatch = false;
-        for (Alias value : r.getAliases().values())
+        for (String value : contact.values)
         {
-            if (value != null
-                && (super.query.matcher(value.getValue()).find() || super
-                    .phoneNumberMatches(value.getValue())))
-            {
-                hadMatch = true;
-                break;
-            }
+            if (super.query.matcher(value).find())
+                return true;
         }
+        return phoneMatches(contact);
+    }
 
-        // nope, didn't match, ignore
-        if (!hadMatch)
+    /**
+     * Determines whether a contact matches the query by one of its phone
+     * numbers.
+     *
+     * @param contact The contact to match.
+     * @return <tt>true</tt> if a phone number of the contact matches the query.
+     */
+    private boolean phoneMatches(Card contact)
+    {
+        for (String phone : contact.phones)
         {
-            return;
+            if (super.phoneNumberMatches(phone))
+                return true;
         }
+        return false;
+    }
 
+    /**
+     * Adds a contact of the address book to the result set.
+     *
+     * @param contact The contact matching the query.
+     */
+    private void addContact(Card contact)
+    {
         List<ContactDetail> details = new LinkedList<ContactDetail>();
 
         // e-mail(s)
-        for (String email : getPropertySet(r, "PrimaryEmail", "SecondEmail",
-            "DefaultEmail"))
+        for (String email : contact.emails)
         {
             ContactDetail detail = new ContactDetail(email, Category.Email);
             detail.addSupportedOpSet(OperationSetPersistentPresence.class);
@@ -198,84 +190,23 @@ private void readEntry(Row r)
         }
 
         // phone number(s)
-        this.addPhoneDetail(details, r, "HomePhone", SubCategory.Home);
-        this.addPhoneDetail(details, r, "WorkPhone", SubCategory.Work);
-        this.addPhoneDetail(details, r, "CellularNumber", SubCategory.Mobile);
-
-        // and the dispaly name
-        String displayName = r.getValue("DisplayName");
-        if (StringUtils.isNullOrEmpty(displayName, true))
+        for (int i = 0; i < contact.normalizedPhones.size(); i++)
         {
-            displayName = r.getValue("LastName");
-            if (displayName != null)
-            {
-                displayName = displayName.trim();
-            }
+            ContactDetail detail =
+                new ContactDetail(contact.normalizedPhones.get(i),
+                    ContactDetail.Category.Phone,
+                    new ContactDetail.SubCategory[]
+                    { contact.phoneCategories.get(i) });
 
-            String firstName = r.getValue("FirstName");
-            if (!StringUtils.isNullOrEmpty(firstName, true))
-            {
-                displayName = firstName + " " + displayName;
-            }
+            detail.addSupportedOpSet(OperationSetBasicTelephony.class);
+            detail.addSupportedOpSet(OperationSetPersistentPresence.class);
+            details.add(detail);
         }
 
         // create the contact and add it to the results
         GenericSourceContact sc =
-            new GenericSourceContact(super.getContactSource(), displayName,
-                details);
+            new GenericSourceContact(super.getContactSource(),
+                contact.displayName, details);
         addQueryResult(sc);
     }
-
-    /**
-     * Adds a "Phone" {@link ContactDetail} to a query contact.
-     *
-     * @param details The {@link List} of {@link ContactDetail}s to which the
-     *            details is added.
-     * @param r The source database row of the contact.
-     * @param property The source database property name to add as a detail.
-     * @param category The Phone-{@link SubCategory} for the phone number to
-     *            add.
-     */
-    private void addPhoneDetail(List<ContactDetail> details, Row r,
-        String property, SubCategory category)
-    {
-        String phone = r.getValue(property);
-        if (StringUtils.isNullOrEmpty(phone, true))
-        {
-            return;
-        }
-
-        phone
-            = ThunderbirdActivator.getPhoneNumberI18nService().normalize(phone);
-        ContactDetail detail =
-            new ContactDetail(phone, ContactDetail.Category.Phone,
-                new ContactDetail.SubCategory[]
-                { category });
-
-        detail.addSupportedOpSet(OperationSetBasicTelephony.class);
-        detail.addSupportedOpSet(OperationSetPersistentPresence.class);
-        details.add(detail);
-    }
-
-    /**
-     * Gets a set of non-empty properties from the source database row.
-     *
-     * @param r The source database row to process.
-     * @param properties The property-names to extract.
-     * @return A set of non-empty properties from the source database row.
-     */
-    private Set<String> getPropertySet(Row r, String... properties)
-    {
-        Set<String> validValues = new HashSet<String>(properties.length);
-        for (String prop : properties)
-        {
-            String value = r.getValue(prop);
-            if (!StringUtils.isNullOrEmpty(value, true))
-            {
-                validValues.add(value);
-            }
-        }
-
-        return validValues;
-    }
 }
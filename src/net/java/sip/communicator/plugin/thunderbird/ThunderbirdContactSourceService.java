@@ -17,12 +17,10 @@
  */
 package net.java.sip.communicator.plugin.thunderbird;
 
-import java.util.Map;
 import java.util.regex.*;
 
 import org.jitsi.service.configuration.*;
 
-import mork.Row;
 import net.java.sip.communicator.service.contactsource.*;
 
 /**
@@ -85,18 +83,11 @@
     /** Value of property {@link #PNAME_PREFIX} */
     private String prefix;
 
-    /** Date/time when the Thunderbird database file was last changed. */
-    long lastDatabaseFileChange = 0;
-
     /**
-     * The parsed Thunderbird database. This field is used as a cache and set by
-     * the query. It is re-set when the file date is newer than
-     * {@link #lastDatabaseFileChange}
+     * The parsed and indexed Thunderbird database, or <tt>null</tt> if no
+     * database file is configured.
      */
-    Map<String, Map<String, Row>> database;
-
-    /** Name of the default namespace in the Thunderbird database. */
-    String defaultScope;
+    private ThunderbirdAddressBook addressBook;
 
     /**
      * Creates a new instance of this class.
@@ -113,6 +104,10 @@ public ThunderbirdContactSourceService(String baseConfigProperty)
             config.getString(baseConfigProperty + "." + PNAME_DISPLAYNAME);
         this.index = config.getInt(baseConfigProperty + "." + PNAME_INDEX, 0);
         this.prefix = config.getString(baseConfigProperty + "." + PNAME_PREFIX);
+        if (this.fileName != null)
+        {
+            this.addressBook = new ThunderbirdAddressBook(this.fileName);
+        }
     }
 
     /**
@@ -252,8 +247,47 @@ String getFilename()
      */
     void setFilename(String filename)
     {
-        this.fileName = filename;
+        ThunderbirdAddressBook oldAddressBook;
+
+        synchronized (this)
+        {
+            this.fileName = filename;
+            oldAddressBook = this.addressBook;
+            this.addressBook = (filename == null)
+                ? null
+                : new ThunderbirdAddressBook(filename);
+        }
+
+        if (oldAddressBook != null)
+        {
+            oldAddressBook.close();
+        }
+
         config.setProperty(this.baseConfigProperty + "." + PNAME_FILENAME,
             filename);
     }
+
+    /**
+     * Gets the parsed and indexed address book database processed by this
+     * ContactSource.
+     *
+     * @return The address book database, or <tt>null</tt> if no database file
+     *         is configured.
+     */
+    synchronized ThunderbirdAddressBook getAddressBook()
+    {
+        return this.addressBook;
+    }
+
+    /**
+     * Stops watching the address book database and releases its parsed copy.
+     */
+    synchronized void dispose()
+    {
+        if (this.addressBook != null)
+        {
+            this.addressBook.close();
+            this.addressBook = null;
+        }
+    }
 }
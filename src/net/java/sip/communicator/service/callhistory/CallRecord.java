@@ -73,6 +73,12 @@
      */
     protected int endReason = -1;
 
+    /**
+     * The summary of the quality of the media streams of the call, or
+     * <tt>null</tt> if it wasn't sampled.
+     */
+    protected String qualitySummary = null;
+
     /**
      * Creates CallRecord
      */
@@ -169,4 +175,14 @@ public int getEndReason()
     {
         return endReason;
     }
+
+    /**
+     * Returns the summary of the quality of the media streams of the call,
+     * as recorded by the <tt>CallQualityMetricsService</tt> when it ended.
+     * @return the quality summary, or <tt>null</tt> if it wasn't sampled
+     */
+    public String getQualitySummary()
+    {
+        return qualitySummary;
+    }
 }
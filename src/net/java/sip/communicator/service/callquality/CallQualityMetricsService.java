@@ -0,0 +1,71 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.callquality;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Samples the statistics of the media streams of every call at a regular
+ * interval, whether or not they are shown to the user, and keeps them as
+ * histograms. Monitoring tools may read them through this service while the
+ * calls are in progress and for a while after they have ended; the call
+ * history stores a summary of them with every call.
+ */
+public interface CallQualityMetricsService
+{
+    /**
+     * The name of the property which specifies the interval in milliseconds
+     * at which the streams are sampled.
+     */
+    public static final String SAMPLING_INTERVAL_PROPERTY
+        = "net.java.sip.communicator.service.callquality.SAMPLING_INTERVAL";
+
+    /**
+     * The default interval in milliseconds at which the streams are sampled.
+     */
+    public static final long DEFAULT_SAMPLING_INTERVAL = 1000;
+
+    /**
+     * Returns the calls which are currently sampled.
+     *
+     * @return the calls in progress
+     */
+    public List<Call> getActiveCalls();
+
+    /**
+     * Returns the metrics of all streams of a call, which is either in
+     * progress or has recently ended.
+     *
+     * @param call the call
+     * @return the metrics of the streams of <tt>call</tt>, which is empty if
+     * it isn't known
+     */
+    public List<StreamQualityMetrics> getMetrics(Call call);
+
+    /**
+     * Returns a one-line summary of the metrics of all streams of a call,
+     * which is either in progress or has recently ended.
+     *
+     * @param call the call
+     * @return the summary of the metrics of <tt>call</tt>, or <tt>null</tt>
+     * if none of its streams has been sampled
+     */
+    public String getSummary(Call call);
+}
@@ -0,0 +1,234 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.callquality;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A histogram of non-negative values which may be recorded and read
+ * concurrently without locking. Like an HDR histogram, values below
+ * {@link #SUB_BUCKET_COUNT} are counted exactly and larger ones in buckets
+ * whose width doubles with every power of two, so that percentiles are
+ * reported with a relative error below one percent whatever the magnitude
+ * of the values, using a fixed and small amount of memory.
+ * <p>
+ * Values above the highest trackable value given at construction are counted
+ * as that value.
+ */
+public class QualityHistogram
+{
+    /**
+     * The number of bits of precision of the recorded values.
+     */
+    private static final int PRECISION_BITS = 8;
+
+    /**
+     * The number of values counted exactly.
+     */
+    public static final int SUB_BUCKET_COUNT = 1 << PRECISION_BITS;
+
+    /**
+     * Half of {@link #SUB_BUCKET_COUNT}, the number of buckets between two
+     * consecutive powers of two above <tt>SUB_BUCKET_COUNT</tt>.
+     */
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * The highest value which is counted as itself.
+     */
+    private final long highestTrackableValue;
+
+    /**
+     * The number of values recorded in every bucket.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * The number of values recorded.
+     */
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * The sum of the values recorded.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * The lowest value recorded.
+     */
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * The highest value recorded.
+     */
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Initializes a new <tt>QualityHistogram</tt> for values between
+     * <tt>0</tt> and <tt>highestTrackableValue</tt>.
+     *
+     * @param highestTrackableValue the highest value which is counted as
+     * itself
+     */
+    public QualityHistogram(long highestTrackableValue)
+    {
+        if (highestTrackableValue < 1)
+        {
+            throw new IllegalArgumentException(
+                    "highestTrackableValue " + highestTrackableValue);
+        }
+
+        this.highestTrackableValue = highestTrackableValue;
+        counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+    }
+
+    /**
+     * Returns the index of the bucket counting <tt>value</tt>.
+     *
+     * @param value a non-negative value
+     * @return the index of the bucket counting <tt>value</tt>
+     */
+    private static int indexOf(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int shift = 64 - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+
+        return
+            SUB_BUCKET_COUNT
+                + (shift - 1) * SUB_BUCKET_HALF_COUNT
+                + (int) ((value >>> shift) - SUB_BUCKET_HALF_COUNT);
+    }
+
+    /**
+     * Returns the highest value counted by a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the highest value counted by the bucket at <tt>index</tt>
+     */
+    private static long highestValueAt(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket
+            = offset % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as <tt>0</tt>.
+     *
+     * @param value the value to record
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+        else if (value > highestTrackableValue)
+            value = highestTrackableValue;
+
+        counts.incrementAndGet(indexOf(value));
+        sum.addAndGet(value);
+
+        long current;
+
+        while (value < (current = min.get())
+                && !min.compareAndSet(current, value));
+        while (value > (current = max.get())
+                && !max.compareAndSet(current, value));
+
+        // Counted last, so that readers which see a value counted see its
+        // bucket too.
+        totalCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the number of values recorded
+     */
+    public long getTotalCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the lowest value recorded.
+     *
+     * @return the lowest value recorded, or <tt>0</tt> if none has been
+     */
+    public long getMin()
+    {
+        return (getTotalCount() == 0) ? 0 : min.get();
+    }
+
+    /**
+     * Returns the highest value recorded.
+     *
+     * @return the highest value recorded, or <tt>0</tt> if none has been
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return the mean of the values recorded, or <tt>0</tt> if none has been
+     */
+    public double getMean()
+    {
+        long count = getTotalCount();
+
+        return (count == 0) ? 0 : ((double) sum.get()) / count;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded
+     * values fall, within the precision of the histogram.
+     *
+     * @param percentile the percentage, between <tt>0</tt> and <tt>100</tt>
+     * @return the value at <tt>percentile</tt>, or <tt>0</tt> if no value has
+     * been recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long count = getTotalCount();
+
+        if (count == 0)
+            return 0;
+
+        long target
+            = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length(); i++)
+        {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(highestValueAt(i), getMax());
+        }
+        return getMax();
+    }
+}
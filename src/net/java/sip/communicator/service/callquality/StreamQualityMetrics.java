@@ -0,0 +1,111 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.callquality;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.service.neomedia.*;
+
+/**
+ * The quality metrics of a media stream of a <tt>CallPeer</tt>, sampled
+ * periodically by the <tt>CallQualityMetricsService</tt> during the whole
+ * call. Every metric is kept as a <tt>QualityHistogram</tt> of its samples,
+ * which may be read while the call goes on.
+ */
+public interface StreamQualityMetrics
+{
+    /**
+     * Returns the <tt>CallPeer</tt> the stream is exchanged with.
+     *
+     * @return the <tt>CallPeer</tt> the stream is exchanged with
+     */
+    public CallPeer getCallPeer();
+
+    /**
+     * Returns the type of the media of the stream.
+     *
+     * @return the <tt>MediaType</tt> of the stream
+     */
+    public MediaType getMediaType();
+
+    /**
+     * Returns the samples of the jitter of the received RTP packets, in
+     * milliseconds.
+     *
+     * @return the histogram of the download jitter
+     */
+    public QualityHistogram getJitter();
+
+    /**
+     * Returns the samples of the percentage of received RTP packets which
+     * were lost, in hundredths of a percent.
+     *
+     * @return the histogram of the download packet loss
+     */
+    public QualityHistogram getPacketLoss();
+
+    /**
+     * Returns the samples of the round trip time computed from RTCP, in
+     * milliseconds.
+     *
+     * @return the histogram of the round trip time
+     */
+    public QualityHistogram getRoundTripTime();
+
+    /**
+     * Returns the samples of the bitrate of the received stream, in kilobits
+     * per second.
+     *
+     * @return the histogram of the download bitrate
+     */
+    public QualityHistogram getDownloadBitrate();
+
+    /**
+     * Returns the samples of the bitrate of the sent stream, in kilobits per
+     * second.
+     *
+     * @return the histogram of the upload bitrate
+     */
+    public QualityHistogram getUploadBitrate();
+
+    /**
+     * Returns the samples of the delay introduced by the jitter buffer, in
+     * milliseconds.
+     *
+     * @return the histogram of the jitter buffer delay
+     */
+    public QualityHistogram getJitterBufferDelay();
+
+    /**
+     * Returns a description of the ICE candidate pair the stream was last
+     * seen on: the extended type of the candidates followed by the local and
+     * remote addresses.
+     *
+     * @return the ICE candidate pair of the stream, or <tt>null</tt> if the
+     * stream doesn't use ICE
+     */
+    public String getIceCandidatePair();
+
+    /**
+     * Returns the time of the last sample.
+     *
+     * @return the time in milliseconds of the last sample, or <tt>0</tt> if
+     * the stream hasn't been sampled yet
+     */
+    public long getLastSampleTime();
+}
@@ -71,6 +71,8 @@
 
     private String id = null;
 
+    private long transferredBytes = 0;
+
     /**
      * Constructs new FileRecord
      *
@@ -88,6 +90,31 @@ public FileRecord(
         Date date,
         File file,
         String status)
+    {
+        this(id, contact, direction, date, file, status, 0);
+    }
+
+    /**
+     * Constructs new FileRecord of a transfer which may have ended before the
+     * whole file was transferred.
+     *
+     * @param id
+     * @param contact
+     * @param direction
+     * @param date
+     * @param file
+     * @param status
+     * @param transferredBytes the number of bytes transferred when a canceled
+     * or failed transfer ended
+     */
+    public FileRecord(
+        String id,
+        Contact contact,
+        String direction,
+        Date date,
+        File file,
+        String status,
+        long transferredBytes)
     {
         this.contact = contact;
         this.direction = direction;
@@ -95,6 +122,7 @@ public FileRecord(
         this.file = file;
         this.status = status;
         this.id = id;
+        this.transferredBytes = transferredBytes;
     }
 
     /**
@@ -150,4 +178,14 @@ public String getID()
     {
         return id;
     }
+
+    /**
+     * The number of bytes transferred when a canceled or failed transfer
+     * ended, i.e. the offset at which the transfer may be resumed.
+     * @return the number of bytes transferred, or 0 if unknown.
+     */
+    public long getTransferredBytes()
+    {
+        return transferredBytes;
+    }
 }
@@ -80,6 +80,21 @@ public void addRecord(String[] propertyValues,
     public void addRecord(String[] propertyValues, Date timestamp)
         throws IOException;
 
+    /**
+     * Stores several records complying with the historyRecordStructure,
+     * writing the history to disk once rather than once per record.
+     *
+     * @param propertyValues
+     *            The values of the records, in the order they are to be
+     *            added.
+     * @param timestamp
+     *            The timestamp of the records.
+     *
+     * @throws IOException
+     */
+    public void addRecords(List<String[]> propertyValues, Date timestamp)
+        throws IOException;
+
     /**
      * Stores the passed propertyValues complying with the
      * historyRecordStructure.
@@ -117,6 +132,20 @@ public void updateRecord(
     public void updateRecord(HistoryRecordUpdater updater)
         throws IOException;
 
+    /**
+     * Updates history record using given <tt>HistoryRecordUpdater</tt> instance
+     * like {@link #updateRecord(HistoryRecordUpdater)}, but only looks at the
+     * records with timestamp between <tt>startDate</tt> and <tt>endDate</tt>,
+     * so that only the files which may contain them are read.
+     * @param updater the <tt>HistoryRecordUpdater</tt> instance.
+     * @param startDate start of the interval in which we search, or
+     * <tt>null</tt>
+     * @param endDate end of the interval in which we search, or <tt>null</tt>
+     */
+    public void updateRecord(
+            HistoryRecordUpdater updater, Date startDate, Date endDate)
+        throws IOException;
+
     /**
      * This interface is used to find a history record to update and to get the
      * new values for the record.
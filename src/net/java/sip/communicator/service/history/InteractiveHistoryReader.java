@@ -17,6 +17,8 @@
  */
 package net.java.sip.communicator.service.history;
 
+import java.util.*;
+
 /**
  * The <tt>InteractiveHistoryReader</tt> allows to search in the history in an
  * interactive way, i.e. be able to cancel the search at any time and track the
@@ -55,4 +57,28 @@ public HistoryQuery findByKeywords( String[] keywords,
     public HistoryQuery findByKeyword(  String keyword,
                                         String field,
                                         int recordCount);
+
+    /**
+     * Searches the given periods of the history for the records containing a
+     * keyword, the keyword of every period being at the same index as its
+     * start and end dates. Only the files which may contain records in the
+     * periods are read, so callers keeping their own index of the times their
+     * records were written at don't have to search the whole history. A
+     * record found in several periods is returned once.
+     *
+     * @param startDates the starts of the periods, inclusive
+     * @param endDates the ends of the periods, exclusive
+     * @param keywords the keyword to search for in every period
+     * @param field the field where to look for the keywords
+     * @param recordCount limits the result to this record count
+     * @return a <tt>HistoryQuery</tt> object allowing to track this query
+     * @throws RuntimeException
+     *             Thrown if an exception occurs during the execution of the
+     *             query, such as internal IO error.
+     */
+    public HistoryQuery findByPeriods(  Date[] startDates,
+                                        Date[] endDates,
+                                        String[] keywords,
+                                        String field,
+                                        int recordCount);
 }
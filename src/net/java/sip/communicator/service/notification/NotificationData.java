@@ -67,6 +67,12 @@
     private final String message;
     private final String title;
 
+    /**
+     * Whether the notification has been stopped, in which case its actions
+     * which haven't been dispatched yet are not to be.
+     */
+    private volatile boolean stopped = false;
+
     /**
      * Creates a new instance of this class.
      *
@@ -162,4 +168,34 @@ String getTitle()
     {
         return title;
     }
+
+    /**
+     * Creates a copy of this notification with another message, e.g. the
+     * messages of several notifications merged into one.
+     *
+     * @param message the message of the copy
+     * @return a copy of this notification with <tt>message</tt>
+     */
+    NotificationData withMessage(String message)
+    {
+        return new NotificationData(eventType, title, message, icon, extras);
+    }
+
+    /**
+     * Determines whether the notification has been stopped.
+     *
+     * @return <tt>true</tt> if the notification has been stopped
+     */
+    boolean isStopped()
+    {
+        return stopped;
+    }
+
+    /**
+     * Marks the notification as stopped.
+     */
+    void setStopped()
+    {
+        stopped = true;
+    }
 }
@@ -0,0 +1,688 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Runs the actions of the fired notifications on threads of its own, so that
+ * firing a notification doesn't block the thread of the event which caused
+ * it, e.g. while a command is executed or a popup shown. Every action type
+ * has a bounded queue which is drained by one thread at a time, so that the
+ * actions of a handler are still executed one after the other. Queued actions
+ * are executed by decreasing priority, and in the order they have been queued
+ * for a same priority.
+ * <p>
+ * Actions which are given a coalescing key, usually made of the event type and
+ * the source of the notification, are coalesced: an action is merged, through
+ * {@link Task#coalesce(Task)}, into the one with the same key still waiting in
+ * its queue, and is deferred until the coalescing interval has elapsed if one
+ * with the same key has been executed less than the coalescing interval
+ * before. The later actions with that key are merged into the deferred one,
+ * so a burst of actions with the same key results in at most one action per
+ * coalescing interval, and no action is lost unless it is merged.
+ * <p>
+ * When a queue is full, the action with the lowest priority is dropped. The
+ * dispatcher counts the executed, coalesced, deferred and dropped actions and
+ * the time they have waited in their queue, see {@link #getStatistics()}.
+ */
+class NotificationDispatcher
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>NotificationDispatcher</tt> class
+     * and its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(NotificationDispatcher.class);
+
+    /**
+     * The time in milliseconds an action may wait in its queue before a
+     * warning is logged.
+     */
+    private static final long LATENCY_WARNING_THRESHOLD = 1000;
+
+    /**
+     * The number of actions which may wait in the queue of an action type.
+     */
+    private final int capacity;
+
+    /**
+     * The time in milliseconds during which actions with the same coalescing
+     * key are coalesced.
+     */
+    private final long coalescingInterval;
+
+    /**
+     * The executor providing the threads which drain the queues.
+     */
+    private final ExecutorService executor
+        = Executors.newCachedThreadPool(
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t = new Thread(r, "NotificationDispatcher");
+
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+    /**
+     * The executor which queues the deferred actions once the coalescing
+     * interval has elapsed.
+     */
+    private final ScheduledExecutorService scheduler
+        = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t
+                            = new Thread(r, "NotificationDispatcherScheduler");
+
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+    /**
+     * The queues of the actions, by action type.
+     */
+    private final Map<String, ActionQueue> queues
+        = new HashMap<String, ActionQueue>();
+
+    /**
+     * The number of actions which have been queued, used to execute the ones
+     * with the same priority in the order they have been queued.
+     */
+    private long sequence = 0;
+
+    /**
+     * Initializes a new <tt>NotificationDispatcher</tt>.
+     *
+     * @param capacity the number of actions which may wait in the queue of an
+     * action type
+     * @param coalescingInterval the time in milliseconds during which actions
+     * with the same coalescing key are coalesced
+     */
+    NotificationDispatcher(int capacity, long coalescingInterval)
+    {
+        this.capacity = Math.max(1, capacity);
+        this.coalescingInterval = coalescingInterval;
+    }
+
+    /**
+     * Queues an action to be executed by the thread draining the queue of its
+     * action type.
+     *
+     * @param actionType the type of the action
+     * @param task the action
+     */
+    void dispatch(String actionType, Task task)
+    {
+        ActionQueue queue;
+
+        synchronized (queues)
+        {
+            if (executor.isShutdown())
+                return;
+
+            queue = queues.get(actionType);
+            if (queue == null)
+            {
+                queue = new ActionQueue(actionType);
+                queues.put(actionType, queue);
+            }
+            task.sequence = sequence++;
+        }
+        queue.add(task);
+    }
+
+    /**
+     * Determines whether an action showing a specific notification waits in
+     * the queue of an action type.
+     *
+     * @param actionType the type of the action
+     * @param data the notification
+     * @return <tt>true</tt> if an action showing <tt>data</tt> waits in the
+     * queue of <tt>actionType</tt>
+     */
+    boolean isPending(String actionType, NotificationData data)
+    {
+        ActionQueue queue;
+
+        synchronized (queues)
+        {
+            queue = queues.get(actionType);
+        }
+        return (queue != null) && queue.contains(data);
+    }
+
+    /**
+     * Returns the numbers of actions which have been executed, coalesced,
+     * deferred and dropped, the number of actions waiting, and the mean and
+     * maximum time in milliseconds they waited in their queue, for every
+     * action type.
+     *
+     * @return the statistics of the dispatcher by action type and statistic
+     * name separated by a dot, e.g. <tt>PopupMessageAction.coalesced</tt>
+     * @see NotificationService#getDispatchStatistics()
+     */
+    Map<String, Long> getStatistics()
+    {
+        Map<String, Long> statistics = new TreeMap<String, Long>();
+
+        synchronized (queues)
+        {
+            for (ActionQueue queue : queues.values())
+                queue.putStatistics(statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * Stops executing actions. The ones still waiting in their queue or
+     * deferred are discarded.
+     */
+    void stop()
+    {
+        synchronized (queues)
+        {
+            executor.shutdownNow();
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * An action of a notification, queued with its priority.
+     */
+    abstract static class Task
+        implements Runnable
+    {
+        /**
+         * The notification which the action shows, or <tt>null</tt> if the
+         * action stops one.
+         */
+        final NotificationData data;
+
+        /**
+         * The priority of the action, the higher first.
+         */
+        final int priority;
+
+        /**
+         * The key of the actions which are coalesced with this one, or
+         * <tt>null</tt> if it is never coalesced.
+         */
+        final Object coalescingKey;
+
+        /**
+         * The order in which the action has been queued.
+         */
+        long sequence;
+
+        /**
+         * The time in milliseconds the action has been queued at.
+         */
+        long queuedTime;
+
+        /**
+         * Whether the action waits for the coalescing interval to elapse
+         * before it is queued.
+         */
+        boolean deferred;
+
+        /**
+         * Initializes a new <tt>Task</tt>.
+         *
+         * @param data the notification which the action shows, or
+         * <tt>null</tt> if the action stops one
+         * @param priority the priority of the action
+         * @param coalescingKey the key of the actions which are coalesced with
+         * this one, or <tt>null</tt> if it is never coalesced
+         */
+        Task(NotificationData data, int priority, Object coalescingKey)
+        {
+            this.data = data;
+            this.priority = priority;
+            this.coalescingKey = coalescingKey;
+        }
+
+        /**
+         * Returns the action to execute instead of this one, which waits to
+         * be executed, and of a later action with the same coalescing key.
+         * By default the later action replaces this one, which suits the
+         * actions which only signal that something happened, such as sounds.
+         *
+         * @param later the later action with the same coalescing key
+         * @return the action to execute instead of both actions
+         */
+        Task coalesce(Task later)
+        {
+            return later;
+        }
+
+        /**
+         * Determines whether this action is to be executed before another.
+         *
+         * @param other the other action
+         * @return <tt>true</tt> if this action is to be executed before
+         * <tt>other</tt>
+         */
+        boolean precedes(Task other)
+        {
+            return
+                (priority != other.priority)
+                    ? (priority > other.priority)
+                    : (sequence < other.sequence);
+        }
+    }
+
+    /**
+     * Orders the actions by decreasing priority, then in the order they have
+     * been queued.
+     */
+    private static final Comparator<Task> TASK_ORDER
+        = new Comparator<Task>()
+        {
+            public int compare(Task t1, Task t2)
+            {
+                return t1.precedes(t2) ? -1 : (t2.precedes(t1) ? 1 : 0);
+            }
+        };
+
+    /**
+     * The queue of the actions of an action type and the statistics of their
+     * execution.
+     */
+    private class ActionQueue
+        implements Runnable
+    {
+        /**
+         * The type of the actions.
+         */
+        private final String actionType;
+
+        /**
+         * The actions waiting to be executed.
+         */
+        private final PriorityQueue<Task> tasks
+            = new PriorityQueue<Task>(capacity, TASK_ORDER);
+
+        /**
+         * The actions waiting to be executed, by coalescing key.
+         */
+        private final Map<Object, Task> pending = new HashMap<Object, Task>();
+
+        /**
+         * The times in milliseconds the last actions have been executed at, by
+         * coalescing key.
+         */
+        private final Map<Object, Long> lastExecutionTimes
+            = new HashMap<Object, Long>();
+
+        /**
+         * Whether a thread is draining the queue.
+         */
+        private boolean draining = false;
+
+        /**
+         * The number of actions executed.
+         */
+        private long executed = 0;
+
+        /**
+         * The number of actions discarded because they have been coalesced
+         * with another.
+         */
+        private long coalesced = 0;
+
+        /**
+         * The number of actions deferred because one with the same coalescing
+         * key had just been executed.
+         */
+        private long deferred = 0;
+
+        /**
+         * The number of actions which are currently deferred.
+         */
+        private int deferredCount = 0;
+
+        /**
+         * The number of actions dropped because the queue was full.
+         */
+        private long dropped = 0;
+
+        /**
+         * The sum of the times in milliseconds the executed actions have
+         * waited in the queue.
+         */
+        private long totalLatency = 0;
+
+        /**
+         * The longest time in milliseconds an executed action has waited in
+         * the queue.
+         */
+        private long maxLatency = 0;
+
+        /**
+         * Initializes a new <tt>ActionQueue</tt>.
+         *
+         * @param actionType the type of the actions
+         */
+        ActionQueue(String actionType)
+        {
+            this.actionType = actionType;
+        }
+
+        /**
+         * Queues an action, coalescing or deferring it, or dropping the one
+         * with the lowest priority if needed, and starts draining the queue
+         * unless a thread is already doing so.
+         *
+         * @param task the action
+         */
+        synchronized void add(Task task)
+        {
+            long now = System.currentTimeMillis();
+            Object key = task.coalescingKey;
+
+            task.queuedTime = now;
+            if (key != null)
+            {
+                Task waiting = pending.get(key);
+
+                if (waiting != null)
+                {
+                    Task merged = waiting.coalesce(task);
+
+                    // Keep the place of the waiting action.
+                    merged.sequence = waiting.sequence;
+                    merged.queuedTime = waiting.queuedTime;
+                    merged.deferred = waiting.deferred;
+                    pending.put(key, merged);
+                    if (!waiting.deferred)
+                    {
+                        tasks.remove(waiting);
+                        tasks.add(merged);
+                    }
+                    coalesced++;
+                    return;
+                }
+
+                Long lastExecutionTime = lastExecutionTimes.get(key);
+
+                if ((lastExecutionTime != null)
+                        && (now - lastExecutionTime < coalescingInterval))
+                {
+                    defer(task, lastExecutionTime + coalescingInterval - now);
+                    return;
+                }
+            }
+            queue(task);
+        }
+
+        /**
+         * Queues an action once the coalescing interval has elapsed. The
+         * actions with the same coalescing key are merged into it until then.
+         * Must be called with this queue locked.
+         *
+         * @param task the action
+         * @param delay the time in milliseconds until the coalescing interval
+         * elapses
+         */
+        private void defer(Task task, long delay)
+        {
+            final Object key = task.coalescingKey;
+
+            // The actions of as many sources as there are may be deferred.
+            if (deferredCount >= capacity)
+            {
+                dropped++;
+                logger.warn(
+                        "Dropping a notification of type " + actionType
+                            + ", " + dropped + " dropped so far.");
+                return;
+            }
+
+            try
+            {
+                scheduler.schedule(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                release(key);
+                            }
+                        },
+                        delay,
+                        TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException ree)
+            {
+                // The dispatcher has been stopped.
+                return;
+            }
+            task.deferred = true;
+            pending.put(key, task);
+            deferred++;
+            deferredCount++;
+        }
+
+        /**
+         * Queues the deferred action with a specific coalescing key.
+         *
+         * @param key the coalescing key of the deferred action
+         */
+        private synchronized void release(Object key)
+        {
+            Task task = pending.get(key);
+
+            if ((task != null) && task.deferred)
+            {
+                pending.remove(key);
+                task.deferred = false;
+                deferredCount--;
+                queue(task);
+            }
+        }
+
+        /**
+         * Queues an action, dropping the one with the lowest priority if the
+         * queue is full, and starts draining the queue unless a thread is
+         * already doing so. Must be called with this queue locked.
+         *
+         * @param task the action
+         */
+        private void queue(Task task)
+        {
+            Object key = task.coalescingKey;
+
+            if (tasks.size() >= capacity)
+            {
+                Task lowest = null;
+
+                for (Task t : tasks)
+                {
+                    if ((lowest == null) || lowest.precedes(t))
+                        lowest = t;
+                }
+                dropped++;
+                logger.warn(
+                        "Dropping a notification of type " + actionType
+                            + ", " + dropped + " dropped so far.");
+                if (!task.precedes(lowest))
+                    return;
+
+                tasks.remove(lowest);
+                if (lowest.coalescingKey != null)
+                    pending.remove(lowest.coalescingKey);
+            }
+
+            tasks.add(task);
+            if (key != null)
+                pending.put(key, task);
+
+            if (!draining)
+            {
+                try
+                {
+                    executor.execute(this);
+                    draining = true;
+                }
+                catch (RejectedExecutionException ree)
+                {
+                    // The dispatcher has been stopped.
+                    tasks.clear();
+                    pending.clear();
+                }
+            }
+        }
+
+        /**
+         * Determines whether an action showing a specific notification waits
+         * in the queue or is deferred.
+         *
+         * @param data the notification
+         * @return <tt>true</tt> if an action showing <tt>data</tt> waits in
+         * the queue or is deferred
+         */
+        synchronized boolean contains(NotificationData data)
+        {
+            for (Task task : tasks)
+            {
+                if (task.data == data)
+                    return true;
+            }
+            for (Task task : pending.values())
+            {
+                if (task.data == data)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Removes the action to execute next from the queue and updates the
+         * statistics.
+         *
+         * @return the action to execute next, or <tt>null</tt> if the queue is
+         * empty in which case the thread draining it is to return
+         */
+        private synchronized Task poll()
+        {
+            Task task = tasks.poll();
+
+            if (task == null)
+            {
+                draining = false;
+                return null;
+            }
+
+            long now = System.currentTimeMillis();
+            long latency = now - task.queuedTime;
+            Object key = task.coalescingKey;
+
+            if (key != null)
+            {
+                pending.remove(key);
+                if (coalescingInterval > 0)
+                {
+                    // Forget the keys which can't coalesce anything anymore.
+                    if (lastExecutionTimes.size() >= capacity)
+                    {
+                        Iterator<Long> iter
+                            = lastExecutionTimes.values().iterator();
+
+                        while (iter.hasNext())
+                        {
+                            if (now - iter.next() >= coalescingInterval)
+                                iter.remove();
+                        }
+                    }
+                    lastExecutionTimes.put(key, now);
+                }
+            }
+
+            executed++;
+            totalLatency += latency;
+            if (latency > maxLatency)
+                maxLatency = latency;
+            if (latency > LATENCY_WARNING_THRESHOLD)
+            {
+                logger.warn(
+                        "A notification of type " + actionType
+                            + " has been delayed by " + latency + " ms.");
+            }
+            return task;
+        }
+
+        /**
+         * Executes the queued actions until the queue is empty.
+         */
+        public void run()
+        {
+            Task task;
+
+            while ((task = poll()) != null)
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+
+                    logger.error(
+                            "Error dispatching notification of type "
+                                + actionType,
+                            t);
+                }
+            }
+        }
+
+        /**
+         * Puts the statistics of the actions of this queue in a map.
+         *
+         * @param statistics the map to put the statistics in, by action type
+         * and statistic name separated by a dot
+         */
+        synchronized void putStatistics(Map<String, Long> statistics)
+        {
+            String prefix = actionType + '.';
+
+            statistics.put(prefix + "executed", executed);
+            statistics.put(prefix + "coalesced", coalesced);
+            statistics.put(prefix + "deferred", deferred);
+            statistics.put(prefix + "dropped", dropped);
+            statistics.put(
+                    prefix + "pending",
+                    (long) (tasks.size() + deferredCount));
+            statistics.put(
+                    prefix + "meanLatency",
+                    (executed == 0) ? 0 : (totalLatency / executed));
+            statistics.put(prefix + "maxLatency", maxLatency);
+        }
+    }
+}
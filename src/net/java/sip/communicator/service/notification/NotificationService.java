@@ -33,6 +33,24 @@
  */
 public interface NotificationService
 {
+    /**
+     * The priority of the notifications which are to be dispatched before
+     * the others, e.g. the ones of calls.
+     */
+    public static final int PRIORITY_HIGH = 10;
+
+    /**
+     * The priority of the notifications of the event types which haven't
+     * been given one.
+     */
+    public static final int PRIORITY_NORMAL = 5;
+
+    /**
+     * The priority of the notifications which may wait for the others, e.g.
+     * the ones of typing.
+     */
+    public static final int PRIORITY_LOW = 0;
+
     /**
      * Registers a notification for the given <tt>eventType</tt> by specifying
      * the action to be performed when a notification is fired for this event.
@@ -352,4 +370,29 @@ public NotificationData fireNotification(
      * @param data Additional data for the event.
      */
     public boolean isPlayingNotification(NotificationData data);
+
+    /**
+     * Sets the priority of the notifications of the specified
+     * <tt>eventType</tt>. The actions of the fired notifications are executed
+     * asynchronously and the ones of higher priority first, e.g. the ones of
+     * an incoming call before the ones of a chat message.
+     *
+     * @param eventType the name of the event (as defined by the plugin that's
+     * registering it)
+     * @param priority the priority of the notifications, one of the
+     * <tt>PRIORITY_XXX</tt> constants or a value in between
+     */
+    public void setPriority(String eventType, int priority);
+
+    /**
+     * Returns the statistics of the asynchronous execution of the actions of
+     * the fired notifications: for every action type, the numbers of actions
+     * which have been executed, coalesced, deferred and dropped, the number of
+     * actions waiting to be executed, and the mean and maximum time in
+     * milliseconds they waited.
+     *
+     * @return the statistics by action type and statistic name separated by a
+     * dot, e.g. <tt>PopupMessageAction.coalesced</tt>
+     */
+    public Map<String, Long> getDispatchStatistics();
 }
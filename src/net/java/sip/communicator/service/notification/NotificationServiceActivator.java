@@ -37,6 +37,7 @@
     protected static BundleContext bundleContext;
     private static ConfigurationService configService;
     private ServiceRegistration notificationService;
+    private NotificationServiceImpl notificationServiceImpl;
 
     public void start(BundleContext bc) throws Exception
     {
@@ -47,9 +48,10 @@ public void start(BundleContext bc) throws Exception
             logger.logEntry();
             logger.info("Notification Service...[  STARTED ]");
 
+            notificationServiceImpl = new NotificationServiceImpl();
             notificationService = bundleContext.registerService(
                 NotificationService.class.getName(),
-                new NotificationServiceImpl(),
+                notificationServiceImpl,
                 null);
 
             logger.info("Notification Service ...[REGISTERED]");
@@ -63,6 +65,7 @@ public void start(BundleContext bc) throws Exception
     public void stop(BundleContext bc) throws Exception
     {
         notificationService.unregister();
+        notificationServiceImpl.stop();
         logger.info("Notification Service ...[STOPPED]");
     }
 
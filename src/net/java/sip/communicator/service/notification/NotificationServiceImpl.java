@@ -25,6 +25,7 @@
 import static net.java.sip.communicator.service.notification.event.NotificationEventTypeEvent.EVENT_TYPE_REMOVED;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.service.notification.event.*;
 import net.java.sip.communicator.util.*;
@@ -43,6 +44,35 @@
     private static final String NOTIFICATIONS_PREFIX
         = "net.java.sip.communicator.impl.notifications";
 
+    /**
+     * The name of the property which specifies the number of actions of a
+     * type which may wait to be executed before the ones with the lowest
+     * priority are dropped.
+     */
+    private static final String DISPATCH_QUEUE_CAPACITY_PROPERTY
+        = "net.java.sip.communicator.service.notification"
+            + ".DISPATCH_QUEUE_CAPACITY";
+
+    /**
+     * The default number of actions of a type which may wait to be executed.
+     */
+    private static final int DEFAULT_DISPATCH_QUEUE_CAPACITY = 64;
+
+    /**
+     * The name of the property which specifies the time in milliseconds
+     * during which the notifications of an event type from a same source are
+     * coalesced.
+     */
+    private static final String COALESCING_INTERVAL_PROPERTY
+        = "net.java.sip.communicator.service.notification"
+            + ".COALESCING_INTERVAL";
+
+    /**
+     * The default time in milliseconds during which the notifications of an
+     * event type from a same source are coalesced.
+     */
+    private static final long DEFAULT_COALESCING_INTERVAL = 1000;
+
     /**
      * Defines the number of actions that have to be registered before cached
      * notifications are fired.
@@ -75,6 +105,17 @@
     private final Logger logger
         = Logger.getLogger(NotificationServiceImpl.class);
 
+    /**
+     * Executes the actions of the fired notifications asynchronously.
+     */
+    private final NotificationDispatcher dispatcher;
+
+    /**
+     * The priorities of the notifications, by event type.
+     */
+    private final Map<String, Integer> priorities
+        = new ConcurrentHashMap<String, Integer>();
+
     /**
      * Queue to cache fired notifications before all handlers are registered.
      */
@@ -95,6 +136,37 @@
     {
         // Load all previously saved notifications.
         this.loadNotifications();
+
+        dispatcher
+            = new NotificationDispatcher(
+                    configService.getInt(
+                            DISPATCH_QUEUE_CAPACITY_PROPERTY,
+                            DEFAULT_DISPATCH_QUEUE_CAPACITY),
+                    configService.getLong(
+                            COALESCING_INTERVAL_PROPERTY,
+                            DEFAULT_COALESCING_INTERVAL));
+    }
+
+    /**
+     * Stops executing the actions of the fired notifications.
+     */
+    void stop()
+    {
+        dispatcher.stop();
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Notification dispatch statistics: "
+                        + dispatcher.getStatistics());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getDispatchStatistics()
+    {
+        return dispatcher.getStatistics();
     }
 
     /**
@@ -221,89 +293,167 @@ public void addNotificationChangeListener(
     }
 
     /**
-     * Executes a notification data object on the handlers.
+     * Executes a notification data object on the handlers. The actions are
+     * queued to be executed asynchronously, according to the priority of the
+     * event type.
      *
      * @param data The notification data to act upon.
      */
-    private void fireNotification(NotificationData data)
+    private void fireNotification(final NotificationData data)
     {
         Notification notification = notifications.get(data.getEventType());
 
         if((notification == null) || !notification.isActive())
             return;
 
-        for(NotificationAction action : notification.getActions().values())
+        int priority = getPriority(data.getEventType());
+
+        for(final NotificationAction action
+                : notification.getActions().values())
         {
-            String actionType = action.getActionType();
+            final String actionType = action.getActionType();
 
             if(!action.isEnabled())
                 continue;
 
-            NotificationHandler handler = handlers.get(actionType);
+            final NotificationHandler handler = handlers.get(actionType);
 
             if (handler == null)
                 continue;
 
-            try
+            if(actionType.equals(ACTION_SOUND))
             {
-                if(actionType.equals(ACTION_POPUP_MESSAGE))
-                {
-                    ((PopupMessageNotificationHandler) handler).popupMessage(
-                        (PopupMessageNotificationAction) action,
-                        data.getTitle(),
-                        data.getMessage(),
-                        data.getIcon(),
-                        data.getExtra(
-                            NotificationData
-                                .POPUP_MESSAGE_HANDLER_TAG_EXTRA));
-                }
-                else if(actionType.equals(ACTION_LOG_MESSAGE))
-                {
-                    ((LogMessageNotificationHandler) handler).logMessage(
-                        (LogMessageNotificationAction) action,
-                        data.getMessage());
-                }
-                else if(actionType.equals(ACTION_SOUND))
-                {
-                    SoundNotificationAction soundNotificationAction
-                        = (SoundNotificationAction) action;
+                SoundNotificationAction soundNotificationAction
+                    = (SoundNotificationAction) action;
 
-                    if(soundNotificationAction.isSoundNotificationEnabled()
-                        || soundNotificationAction.isSoundPlaybackEnabled()
-                        || soundNotificationAction.isSoundPCSpeakerEnabled())
-                    {
-                        ((SoundNotificationHandler) handler).start(
-                            (SoundNotificationAction) action,
-                            data);
-                    }
-                }
-                else if(actionType.equals(ACTION_COMMAND))
-                {
-                    @SuppressWarnings("unchecked")
-                    Map<String, String> cmdargs
-                        = (Map<String, String>)
-                        data.getExtra(
-                            NotificationData
-                                .COMMAND_NOTIFICATION_HANDLER_CMDARGS_EXTRA);
-
-                    ((CommandNotificationHandler) handler).execute(
-                        (CommandNotificationAction) action,
-                        cmdargs);
-                }
-                else if(actionType.equals(ACTION_VIBRATE))
-                {
-                    ((VibrateNotificationHandler) handler).vibrate(
-                        (VibrateNotificationAction) action);
-                }
-            }
-            catch(Exception e)
-            {
-                logger.error("Error dispatching notification of type"
-                    + actionType + " from " + handler, e);
+                if(!soundNotificationAction.isSoundNotificationEnabled()
+                    && !soundNotificationAction.isSoundPlaybackEnabled()
+                    && !soundNotificationAction.isSoundPCSpeakerEnabled())
+                    continue;
             }
+
+            dispatcher.dispatch(
+                    actionType,
+                    new ActionTask(
+                            handler,
+                            action,
+                            data,
+                            priority,
+                            getCoalescingKey(action, data, priority)));
         }
     }
 
+    /**
+     * Executes an action of a notification on its handler.
+     *
+     * @param handler the handler of the action type
+     * @param action the action to execute
+     * @param data the notification
+     */
+    private void executeAction(NotificationHandler handler,
+                               NotificationAction action,
+                               NotificationData data)
+    {
+        String actionType = action.getActionType();
+
+        if(actionType.equals(ACTION_POPUP_MESSAGE))
+        {
+            ((PopupMessageNotificationHandler) handler).popupMessage(
+                (PopupMessageNotificationAction) action,
+                data.getTitle(),
+                data.getMessage(),
+                data.getIcon(),
+                data.getExtra(
+                    NotificationData.POPUP_MESSAGE_HANDLER_TAG_EXTRA));
+        }
+        else if(actionType.equals(ACTION_LOG_MESSAGE))
+        {
+            ((LogMessageNotificationHandler) handler).logMessage(
+                (LogMessageNotificationAction) action,
+                data.getMessage());
+        }
+        else if(actionType.equals(ACTION_SOUND))
+        {
+            ((SoundNotificationHandler) handler).start(
+                (SoundNotificationAction) action,
+                data);
+        }
+        else if(actionType.equals(ACTION_COMMAND))
+        {
+            @SuppressWarnings("unchecked")
+            Map<String, String> cmdargs
+                = (Map<String, String>)
+                data.getExtra(
+                    NotificationData.COMMAND_NOTIFICATION_HANDLER_CMDARGS_EXTRA);
+
+            ((CommandNotificationHandler) handler).execute(
+                (CommandNotificationAction) action,
+                cmdargs);
+        }
+        else if(actionType.equals(ACTION_VIBRATE))
+        {
+            ((VibrateNotificationHandler) handler).vibrate(
+                (VibrateNotificationAction) action);
+        }
+    }
+
+    /**
+     * Returns the key of the actions which are coalesced with an action of a
+     * notification, i.e. the ones of the same type for the same event type and
+     * source. The notifications of high priority, the logs, commands and
+     * looping sounds are never coalesced.
+     *
+     * @param action the action
+     * @param data the notification
+     * @param priority the priority of the notification
+     * @return the key of the actions which are coalesced with
+     * <tt>action</tt>, or <tt>null</tt> if it is never coalesced
+     */
+    private static Object getCoalescingKey(NotificationAction action,
+                                           NotificationData data,
+                                           int priority)
+    {
+        String actionType = action.getActionType();
+
+        if ((priority >= PRIORITY_HIGH)
+                || actionType.equals(ACTION_LOG_MESSAGE)
+                || actionType.equals(ACTION_COMMAND)
+                || ((action instanceof SoundNotificationAction)
+                    && (((SoundNotificationAction) action).getLoopInterval()
+                            >= 0)))
+            return null;
+
+        // The tag of popups identifies the contact or chat room which caused
+        // the notification, and the title does so for the others.
+        Object source
+            = data.getExtra(NotificationData.POPUP_MESSAGE_HANDLER_TAG_EXTRA);
+
+        if (source == null)
+            source = data.getTitle();
+        return Arrays.asList(data.getEventType(), source);
+    }
+
+    /**
+     * Returns the priority of the notifications of an event type.
+     *
+     * @param eventType the event type
+     * @return the priority of the notifications of <tt>eventType</tt>
+     */
+    private int getPriority(String eventType)
+    {
+        Integer priority = priorities.get(eventType);
+
+        return (priority == null) ? PRIORITY_NORMAL : priority;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setPriority(String eventType, int priority)
+    {
+        priorities.put(eventType, priority);
+    }
+
     /**
      * If there is a registered event notification of the given
      * <tt>eventType</tt> and the event notification is currently activated, we
@@ -1378,58 +1528,157 @@ public void setActive(String eventType, boolean isActive)
      *
      * @param data the data that has been returned when firing the event..
      */
-    public void stopNotification(NotificationData data)
+    public void stopNotification(final NotificationData data)
     {
-        Iterable<NotificationHandler> soundHandlers
-            = getActionHandlers(NotificationAction.ACTION_SOUND);
+        data.setStopped();
 
-        // There could be no sound action handler for this event type
-        if (soundHandlers != null)
+        // The stops are queued with the highest priority so that they are
+        // executed after the start which may be executing and before the
+        // other queued actions.
+        for (final NotificationHandler handler
+                : getActionHandlers(NotificationAction.ACTION_SOUND))
         {
-            for (NotificationHandler handler : soundHandlers)
+            if (handler instanceof SoundNotificationHandler)
             {
-                if (handler instanceof SoundNotificationHandler)
-                    ((SoundNotificationHandler) handler).stop(data);
+                dispatcher.dispatch(
+                        NotificationAction.ACTION_SOUND,
+                        new NotificationDispatcher.Task(
+                                null,
+                                Integer.MAX_VALUE,
+                                null)
+                        {
+                            public void run()
+                            {
+                                ((SoundNotificationHandler) handler).stop(
+                                        data);
+                            }
+                        });
             }
         }
 
-        Iterable<NotificationHandler> vibrateHandlers
-            = getActionHandlers(NotificationAction.ACTION_VIBRATE);
-
-        if(vibrateHandlers != null)
+        for (final NotificationHandler handler
+                : getActionHandlers(NotificationAction.ACTION_VIBRATE))
         {
-            for(NotificationHandler handler : vibrateHandlers)
-            {
-                ((VibrateNotificationHandler)handler).cancel();
-            }
+            dispatcher.dispatch(
+                    NotificationAction.ACTION_VIBRATE,
+                    new NotificationDispatcher.Task(
+                            null,
+                            Integer.MAX_VALUE,
+                            null)
+                    {
+                        public void run()
+                        {
+                            ((VibrateNotificationHandler) handler).cancel();
+                        }
+                    });
         }
     }
 
     /**
-     * Tells if the given sound notification is currently played.
+     * Tells if the given sound notification is currently played, or is about
+     * to be.
      *
      * @param data Additional data for the event.
      */
     public boolean isPlayingNotification(NotificationData data)
     {
-        boolean isPlaying = false;
+        if (data.isStopped())
+            return false;
+        if (dispatcher.isPending(NotificationAction.ACTION_SOUND, data))
+            return true;
 
-        Iterable<NotificationHandler> soundHandlers
-            = getActionHandlers(NotificationAction.ACTION_SOUND);
+        boolean isPlaying = false;
 
-        // There could be no sound action handler for this event type
-        if (soundHandlers != null)
+        for (NotificationHandler handler
+                : getActionHandlers(NotificationAction.ACTION_SOUND))
         {
-            for (NotificationHandler handler : soundHandlers)
+            if (handler instanceof SoundNotificationHandler)
             {
-                if (handler instanceof SoundNotificationHandler)
-                {
-                    isPlaying
-                        |= ((SoundNotificationHandler) handler).isPlaying(data);
-                }
+                isPlaying
+                    |= ((SoundNotificationHandler) handler).isPlaying(data);
             }
         }
 
         return isPlaying;
     }
+
+    /**
+     * The execution of an action of a fired notification by its handler.
+     */
+    private class ActionTask
+        extends NotificationDispatcher.Task
+    {
+        /**
+         * The handler of the action type.
+         */
+        private final NotificationHandler handler;
+
+        /**
+         * The action to execute.
+         */
+        private final NotificationAction action;
+
+        /**
+         * Initializes a new <tt>ActionTask</tt>.
+         *
+         * @param handler the handler of the action type
+         * @param action the action to execute
+         * @param data the notification
+         * @param priority the priority of the notification
+         * @param coalescingKey the key of the actions which are coalesced with
+         * this one, or <tt>null</tt> if it is never coalesced
+         */
+        ActionTask(NotificationHandler handler,
+                   NotificationAction action,
+                   NotificationData data,
+                   int priority,
+                   Object coalescingKey)
+        {
+            super(data, priority, coalescingKey);
+            this.handler = handler;
+            this.action = action;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * The messages of popups are merged into one popup so that none is
+         * lost, the other actions are replaced by the later one.
+         */
+        @Override
+        NotificationDispatcher.Task coalesce(NotificationDispatcher.Task later)
+        {
+            if (!action.getActionType().equals(ACTION_POPUP_MESSAGE))
+                return later;
+
+            String message = data.getMessage();
+            String laterMessage = later.data.getMessage();
+
+            if ((message == null) || (message.length() == 0))
+                message = laterMessage;
+            else if ((laterMessage != null) && (laterMessage.length() != 0))
+                message = message + "\n" + laterMessage;
+
+            return
+                new ActionTask(
+                        handler,
+                        action,
+                        later.data.withMessage(message),
+                        Math.max(priority, later.priority),
+                        coalescingKey);
+        }
+
+        public void run()
+        {
+            String actionType = action.getActionType();
+
+            // A stopped notification mustn't start playing.
+            if (data.isStopped()
+                    && (actionType.equals(ACTION_SOUND)
+                        || actionType.equals(ACTION_VIBRATE)))
+                return;
+
+            executeAction(handler, action, data);
+        }
+    }
 }
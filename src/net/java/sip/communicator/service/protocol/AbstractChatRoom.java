@@ -123,6 +123,51 @@ protected void fireConferencePublishedEvent(
             listener.conferencePublished(evt);
     }
     
+    /**
+     * Notifies <tt>ChatRoomMemberPresenceListener</tt>s of the members this
+     * chat room had when the local user joined it. The
+     * <tt>ChatRoomMemberListListener</tt>s receive a single
+     * <tt>ChatRoomMemberListEvent</tt> and the others a
+     * <tt>ChatRoomMemberPresenceChangeEvent</tt> with the reason
+     * <tt>REASON_USER_LIST</tt> for every member.
+     *
+     * @param members the members of this chat room.
+     * @param listeners the listeners to notify.
+     */
+    protected void fireMemberListEvent(
+            Collection<ChatRoomMember> members,
+            Iterable<? extends ChatRoomMemberPresenceListener> listeners)
+    {
+        if (members.isEmpty())
+            return;
+
+        ChatRoomMemberListEvent evt
+            = new ChatRoomMemberListEvent(this, members);
+
+        for (ChatRoomMemberPresenceListener listener : listeners)
+        {
+            if (listener instanceof ChatRoomMemberListListener)
+            {
+                ((ChatRoomMemberListListener) listener).memberListReceived(
+                        evt);
+            }
+            else
+            {
+                for (ChatRoomMember member : evt.getMembers())
+                {
+                    listener.memberPresenceChanged(
+                            new ChatRoomMemberPresenceChangeEvent(
+                                    this,
+                                    member,
+                                    ChatRoomMemberPresenceChangeEvent
+                                        .MEMBER_JOINED,
+                                    ChatRoomMemberPresenceChangeEvent
+                                        .REASON_USER_LIST));
+                }
+            }
+        }
+    }
+
     /**
      * Processes the <tt>ConferenceDescription</tt> instance and adds/removes 
      * it to the list of conferences.
@@ -51,6 +51,56 @@
 
     private int status;
 
+    /**
+     * The minimum time in milliseconds between two progress events fired by
+     * {@link #updateProgress(long, long)}.
+     */
+    public static final long PROGRESS_EVENT_INTERVAL = 250;
+
+    /**
+     * The time in milliseconds over which the transfer rate is measured before
+     * it is folded into the smoothed rate.
+     */
+    private static final long TRANSFER_RATE_WINDOW = 1000;
+
+    /**
+     * The weight of the last measured rate in the smoothed transfer rate.
+     */
+    private static final double TRANSFER_RATE_WEIGHT = 0.3;
+
+    /**
+     * The lock protecting the progress and transfer rate fields.
+     */
+    private final Object progressLock = new Object();
+
+    /**
+     * The time of the last progress event, or <tt>-1</tt> if none was fired.
+     */
+    private long lastProgressTimestamp = -1;
+
+    /**
+     * The progress reported by the last progress event.
+     */
+    private long lastProgress = -1;
+
+    /**
+     * The start of the current transfer rate measurement window, or
+     * <tt>-1</tt> if none was started.
+     */
+    private long rateWindowTimestamp = -1;
+
+    /**
+     * The progress at the start of the current transfer rate measurement
+     * window.
+     */
+    private long rateWindowProgress;
+
+    /**
+     * The smoothed transfer rate in bytes per second, or <tt>-1</tt> if it
+     * isn't known yet.
+     */
+    private double transferRate = -1;
+
     /**
      * Cancels this file transfer. When this method is called transfer should
      * be interrupted.
@@ -187,6 +237,79 @@ public void fireStatusChangeEvent(int newStatus, String reason)
         }
     }
 
+    /**
+     * Returns the smoothed transfer rate of this file transfer.
+     *
+     * @return the transfer rate in bytes per second or <tt>-1</tt> if it isn't
+     * known yet
+     */
+    public double getTransferRate()
+    {
+        synchronized (progressLock)
+        {
+            return transferRate;
+        }
+    }
+
+    /**
+     * Reports the number of bytes transferred so far. Meant to be called as
+     * often as convenient, e.g. for every buffer written by the stream of the
+     * transfer or on every tick of the {@link FileTransferProgressMonitor}:
+     * the transfer rate is updated every time but progress listeners are
+     * notified at most every {@link #PROGRESS_EVENT_INTERVAL} milliseconds
+     * and only when the progress changed.
+     *
+     * @param timestamp the time of the measurement
+     * @param progress the number of bytes transferred so far
+     */
+    public void updateProgress(long timestamp, long progress)
+    {
+        synchronized (progressLock)
+        {
+            updateTransferRate(timestamp, progress);
+
+            if (progress == lastProgress
+                    || (lastProgressTimestamp != -1
+                        && timestamp - lastProgressTimestamp
+                            < PROGRESS_EVENT_INTERVAL))
+                return;
+        }
+
+        fireProgressChangeEvent(timestamp, progress);
+    }
+
+    /**
+     * Folds the given measurement into the smoothed transfer rate once a
+     * measurement window has elapsed.
+     *
+     * @param timestamp the time of the measurement
+     * @param progress the number of bytes transferred so far
+     */
+    private void updateTransferRate(long timestamp, long progress)
+    {
+        if (rateWindowTimestamp == -1 || progress < rateWindowProgress)
+        {
+            rateWindowTimestamp = timestamp;
+            rateWindowProgress = progress;
+            return;
+        }
+
+        long elapsed = timestamp - rateWindowTimestamp;
+
+        if (elapsed < TRANSFER_RATE_WINDOW)
+            return;
+
+        double rate = (progress - rateWindowProgress) * 1000d / elapsed;
+
+        transferRate
+            = (transferRate < 0)
+                ? rate
+                : TRANSFER_RATE_WEIGHT * rate
+                    + (1 - TRANSFER_RATE_WEIGHT) * transferRate;
+        rateWindowTimestamp = timestamp;
+        rateWindowProgress = progress;
+    }
+
     /**
      * Notifies all status listeners that a new
      * <tt>FileTransferProgressEvent</tt> occured.
@@ -195,6 +318,16 @@ public void fireStatusChangeEvent(int newStatus, String reason)
      */
     public void fireProgressChangeEvent(long timestamp, long progress)
     {
+        double rate;
+
+        synchronized (progressLock)
+        {
+            updateTransferRate(timestamp, progress);
+            lastProgressTimestamp = timestamp;
+            lastProgress = progress;
+            rate = transferRate;
+        }
+
         Collection<FileTransferProgressListener> listeners = null;
         synchronized (progressListeners)
         {
@@ -203,7 +336,7 @@ public void fireProgressChangeEvent(long timestamp, long progress)
         }
 
         FileTransferProgressEvent progressEvent
-            = new FileTransferProgressEvent(this, timestamp, progress);
+            = new FileTransferProgressEvent(this, timestamp, progress, rate);
 
         Iterator<FileTransferProgressListener> listenersIter
             = listeners.iterator();
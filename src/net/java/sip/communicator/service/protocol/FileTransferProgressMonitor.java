@@ -0,0 +1,178 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Samples the progress of file transfers whose protocol library doesn't
+ * report the bytes it transferred, using a single timer shared by all
+ * transfers of all protocols instead of a polling thread per transfer.
+ * Transfers which are able to report their progress from their streams
+ * should call {@link AbstractFileTransfer#updateProgress(long, long)}
+ * directly instead.
+ * <p>
+ * The timer runs only while there are transfers to sample.
+ */
+public class FileTransferProgressMonitor
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>FileTransferProgressMonitor</tt>
+     * class and its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(FileTransferProgressMonitor.class);
+
+    /**
+     * The interval in milliseconds at which the registered probes are
+     * sampled.
+     */
+    public static final long SAMPLING_INTERVAL = 100;
+
+    /**
+     * Samples the state of a single file transfer.
+     */
+    public interface Probe
+    {
+        /**
+         * Samples the state of the file transfer and reports changes to its
+         * listeners.
+         *
+         * @param timestamp the time of the sample
+         * @return <tt>true</tt> to be sampled again, <tt>false</tt> if the
+         * transfer has ended and the probe is to be removed
+         */
+        public boolean sample(long timestamp);
+    }
+
+    /**
+     * The probes currently being sampled.
+     */
+    private static final List<Probe> probes = new ArrayList<Probe>();
+
+    /**
+     * The timer sampling the probes, or <tt>null</tt> if there are none.
+     */
+    private static Timer timer;
+
+    /**
+     * Starts sampling the given probe until it reports that its transfer has
+     * ended.
+     *
+     * @param probe the probe to sample
+     */
+    public static void add(Probe probe)
+    {
+        synchronized (probes)
+        {
+            probes.add(probe);
+
+            if (timer == null)
+            {
+                timer = new Timer("FileTransferProgressMonitor", true);
+                timer.schedule(
+                        new TimerTask()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                sampleProbes();
+                            }
+                        },
+                        SAMPLING_INTERVAL,
+                        SAMPLING_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Stops sampling the given probe.
+     *
+     * @param probe the probe to remove
+     */
+    public static void remove(Probe probe)
+    {
+        synchronized (probes)
+        {
+            probes.remove(probe);
+            stopTimerIfIdle();
+        }
+    }
+
+    /**
+     * Samples all registered probes once, removing those whose transfers have
+     * ended.
+     */
+    private static void sampleProbes()
+    {
+        List<Probe> probesToSample;
+
+        synchronized (probes)
+        {
+            probesToSample = new ArrayList<Probe>(probes);
+        }
+
+        long timestamp = System.currentTimeMillis();
+
+        for (Probe probe : probesToSample)
+        {
+            boolean keep;
+
+            try
+            {
+                keep = probe.sample(timestamp);
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+
+                logger.error("Failed to sample file transfer " + probe, t);
+                keep = false;
+            }
+
+            if (!keep)
+            {
+                synchronized (probes)
+                {
+                    probes.remove(probe);
+                }
+            }
+        }
+
+        synchronized (probes)
+        {
+            stopTimerIfIdle();
+        }
+    }
+
+    /**
+     * Cancels the timer if there are no probes left. Must be called while
+     * holding the lock on <tt>probes</tt>.
+     */
+    private static void stopTimerIfIdle()
+    {
+        if (probes.isEmpty() && timer != null)
+        {
+            timer.cancel();
+            timer = null;
+        }
+    }
+}
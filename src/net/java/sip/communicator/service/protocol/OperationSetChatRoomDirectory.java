@@ -0,0 +1,47 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol;
+
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * Provides incremental searches of the chat rooms existing on the server.
+ * Unlike {@link OperationSetMultiUserChat#getExistingChatRooms()}, which
+ * returns once the whole list has been retrieved, the matching chat rooms are
+ * delivered as they are received, so that the first results may be shown
+ * while servers with large directories are still listing.
+ */
+public interface OperationSetChatRoomDirectory
+    extends OperationSet
+{
+    /**
+     * Searches the chat rooms existing on the server whose names contain
+     * <tt>query</tt>, ignoring case. The matching chat rooms are delivered to
+     * <tt>listener</tt> in batches, from the calling thread. The method
+     * returns once all matching chat rooms have been delivered.
+     *
+     * @param query the substring to search for, the empty string matches all
+     * chat rooms
+     * @param listener the listener the matching chat rooms are delivered to
+     * @throws OperationFailedException if the chat rooms could not be
+     * retrieved from the server
+     */
+    public void searchChatRooms(String query,
+                                ChatRoomDirectoryListener listener)
+        throws OperationFailedException;
+}
@@ -0,0 +1,89 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.event;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Dispatched to notify interested parties of the members a chat room had when
+ * the local user joined it, all at once rather than with a
+ * <tt>ChatRoomMemberPresenceChangeEvent</tt> for every member.
+ */
+public class ChatRoomMemberListEvent
+    extends EventObject
+{
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 0L;
+
+    /**
+     * The members of the chat room.
+     */
+    private final List<ChatRoomMember> members;
+
+    /**
+     * Creates a <tt>ChatRoomMemberListEvent</tt> listing the members of a
+     * chat room.
+     *
+     * @param sourceRoom the <tt>ChatRoom</tt> that produced this event
+     * @param members the <tt>ChatRoomMember</tt>s that this event is about
+     */
+    public ChatRoomMemberListEvent(ChatRoom sourceRoom,
+                                   Collection<ChatRoomMember> members)
+    {
+        super(sourceRoom);
+        this.members
+            = Collections.unmodifiableList(
+                    new ArrayList<ChatRoomMember>(members));
+    }
+
+    /**
+     * Returns the chat room that produced this event.
+     *
+     * @return the <tt>ChatRoom</tt> that produced this event
+     */
+    public ChatRoom getChatRoom()
+    {
+        return (ChatRoom) getSource();
+    }
+
+    /**
+     * Returns the chat room members that this event is about.
+     *
+     * @return the <tt>ChatRoomMember</tt>s that this event is about
+     */
+    public List<ChatRoomMember> getMembers()
+    {
+        return members;
+    }
+
+    /**
+     * Returns a String representation of this event.
+     *
+     * @return String representation of this event
+     */
+    @Override
+    public String toString()
+    {
+        return "ChatRoomMemberListEvent[sourceRoom=" + getChatRoom()
+            + " members=" + members.size() + "]";
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.event;
+
+/**
+ * A <tt>ChatRoomMemberPresenceListener</tt> which is notified of the members
+ * a chat room had when the local user joined it with a single
+ * <tt>ChatRoomMemberListEvent</tt>. Listeners which don't implement this
+ * interface receive a <tt>ChatRoomMemberPresenceChangeEvent</tt> of type
+ * <tt>MEMBER_JOINED</tt> with the reason <tt>REASON_USER_LIST</tt> for every
+ * member instead.
+ */
+public interface ChatRoomMemberListListener
+    extends ChatRoomMemberPresenceListener
+{
+    /**
+     * Called to notify interested parties of the members a chat room had when
+     * the local user joined it.
+     *
+     * @param evt the <tt>ChatRoomMemberListEvent</tt> instance containing the
+     * source chat room and its members
+     */
+    public void memberListReceived(ChatRoomMemberListEvent evt);
+}
@@ -45,6 +45,12 @@
      */
     private long timestamp;
 
+    /**
+     * The smoothed transfer rate in bytes per second, or <tt>-1</tt> if it
+     * isn't known yet.
+     */
+    private double transferRate;
+
     /**
      * Creates a <tt>FileTransferProgressEvent</tt> by specifying the source
      * file transfer object, that triggered the event and the new progress
@@ -58,11 +64,32 @@
     public FileTransferProgressEvent(   FileTransfer fileTransfer,
                                         long timestamp,
                                         long progress)
+    {
+        this(fileTransfer, timestamp, progress, -1);
+    }
+
+    /**
+     * Creates a <tt>FileTransferProgressEvent</tt> by specifying the source
+     * file transfer object, that triggered the event, the new progress value
+     * and the current transfer rate.
+     *
+     * @param fileTransfer the source file transfer object, that triggered the
+     * event
+     * @param timestamp when this event occured
+     * @param progress the new progress value
+     * @param transferRate the transfer rate in bytes per second or <tt>-1</tt>
+     * if it isn't known
+     */
+    public FileTransferProgressEvent(   FileTransfer fileTransfer,
+                                        long timestamp,
+                                        long progress,
+                                        double transferRate)
     {
         super(fileTransfer);
 
         this.timestamp = timestamp;
         this.progress = progress;
+        this.transferRate = transferRate;
     }
 
     /**
@@ -94,4 +121,31 @@ public long getTimestamp()
     {
         return timestamp;
     }
+
+    /**
+     * Returns the transfer rate of the file transfer in bytes per second.
+     *
+     * @return the transfer rate of the file transfer in bytes per second or
+     * <tt>-1</tt> if it isn't known yet
+     */
+    public double getTransferRate()
+    {
+        return transferRate;
+    }
+
+    /**
+     * Returns the estimated time needed to transfer the rest of a file of the
+     * given size at the current transfer rate.
+     *
+     * @param fileSize the size of the transferred file in bytes
+     * @return the estimated time left in seconds or <tt>-1</tt> if it can't be
+     * estimated yet
+     */
+    public long getEstimatedTime(long fileSize)
+    {
+        if (transferRate <= 0 || fileSize < progress)
+            return -1;
+
+        return Math.round((fileSize - progress) / transferRate);
+    }
 }
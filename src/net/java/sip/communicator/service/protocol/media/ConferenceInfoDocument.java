@@ -171,6 +171,66 @@
      */
     private final List<User> usersList = new LinkedList<User>();
 
+    /**
+     * The <tt>User</tt>s of <tt>usersList</tt> by <tt>entity</tt>, so that
+     * looking up users while diffing or applying partial notifications of
+     * large conferences doesn't require a scan of the whole list.
+     */
+    private final Map<String, User> usersByEntity = new HashMap<String, User>();
+
+    /**
+     * The <tt>DocumentBuilder</tt>s used to create and parse documents, one
+     * per thread because they are not thread safe and are expensive to create
+     * for every notification.
+     */
+    private static final ThreadLocal<DocumentBuilder> documentBuilders
+        = new ThreadLocal<DocumentBuilder>()
+        {
+            @Override
+            protected DocumentBuilder initialValue()
+            {
+                try
+                {
+                    return XMLUtils.newDocumentBuilderFactory()
+                            .newDocumentBuilder();
+                }
+                catch (ParserConfigurationException pce)
+                {
+                    logger.error("Failed to create a DocumentBuilder", pce);
+                    return null;
+                }
+            }
+        };
+
+    /**
+     * The <tt>Transformer</tt>s used to serialize documents, one per thread
+     * because they are not thread safe and are expensive to create for every
+     * notification.
+     */
+    private static final ThreadLocal<Transformer> transformers
+        = new ThreadLocal<Transformer>()
+        {
+            @Override
+            protected Transformer initialValue()
+            {
+                try
+                {
+                    Transformer transformer
+                        = TransformerFactory.newInstance().newTransformer();
+
+                    transformer.setOutputProperty(
+                            OutputKeys.OMIT_XML_DECLARATION,
+                            "yes");
+                    return transformer;
+                }
+                catch (TransformerConfigurationException tce)
+                {
+                    logger.error("Failed to create a Transformer", tce);
+                    return null;
+                }
+            }
+        };
+
     /**
      * Creates a new <tt>ConferenceInfoDocument</tt> instance.
      *
@@ -181,7 +241,7 @@ public ConferenceInfoDocument()
     {
         try
         {
-            document = XMLUtils.createDocument();
+            document = getDocumentBuilder().newDocument();
         }
         catch (Exception e)
         {
@@ -236,8 +296,7 @@ public ConferenceInfoDocument(String xml)
         try
         {
             document
-                = XMLUtils.newDocumentBuilderFactory().newDocumentBuilder()
-                        .parse(new ByteArrayInputStream(bytes));
+                = getDocumentBuilder().parse(new ByteArrayInputStream(bytes));
         }
         catch (Exception e)
         {
@@ -277,9 +336,36 @@ public ConferenceInfoDocument(String xml)
         {
             User user = new User((Element)usersNodeList.item(i));
             usersList.add(user);
+
+            // keep the first of users with the same entity, like getUser did
+            String entity = user.getEntity();
+            if (!usersByEntity.containsKey(entity))
+                usersByEntity.put(entity, user);
         }
     }
 
+    /**
+     * Returns the <tt>DocumentBuilder</tt> of the current thread, reset to its
+     * initial configuration.
+     *
+     * @return the <tt>DocumentBuilder</tt> of the current thread.
+     * @throws XMLException if a <tt>DocumentBuilder</tt> could not be created.
+     */
+    private static DocumentBuilder getDocumentBuilder()
+            throws XMLException
+    {
+        DocumentBuilder documentBuilder = documentBuilders.get();
+
+        if (documentBuilder == null)
+        {
+            // try again next time
+            documentBuilders.remove();
+            throw new XMLException("Failed to create a DocumentBuilder");
+        }
+        documentBuilder.reset();
+        return documentBuilder;
+    }
+
     /**
      * Creates a new <tt>ConferenceInfoDocument</tt> instance that represents
      * a copy of <tt>confInfo</tt>
@@ -505,11 +591,14 @@ public String toXml()
     {
         try
         {
-            Transformer transformer
-                    = TransformerFactory.newInstance().newTransformer();
+            Transformer transformer = transformers.get();
+            if (transformer == null)
+            {
+                transformers.remove();
+                return null;
+            }
+
             StringWriter buffer = new StringWriter();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION,
-                    "yes");
             transformer.transform(new DOMSource(conferenceInfo),
                     new StreamResult(buffer));
             return buffer.toString();
@@ -558,12 +647,7 @@ public User getUser(String entity)
     {
         if (entity == null)
             return null;
-        for(User u : usersList)
-        {
-            if (entity.equals(u.getEntity()))
-                return u;
-        }
-        return null;
+        return usersByEntity.get(entity);
     }
 
     /**
@@ -577,11 +661,18 @@ public User addNewUser(String entity)
     {
         Element userElement = document.createElement(USER_ELEMENT_NAME);
         User user = new User(userElement);
-        user.setEntity(entity);
 
+        if (entity != null && !entity.equals(""))
+            userElement.setAttribute(ENTITY_ATTR_NAME, entity);
         users.appendChild(userElement);
         usersList.add(user);
 
+        // the new user comes last, so it is only indexed if no other user
+        // has its entity
+        entity = user.getEntity();
+        if (!usersByEntity.containsKey(entity))
+            usersByEntity.put(entity, user);
+
         return user;
     }
 
@@ -610,7 +701,57 @@ public void removeUser(String entity)
         {
             usersList.remove(user);
             users.removeChild(user.userElement);
+            // another user may have the same entity
+            indexEntity(entity);
+        }
+    }
+
+    /**
+     * Updates <tt>usersByEntity</tt> after the entity of a user has changed.
+     * Only when the user was the first with its old entity, or another user
+     * has its new entity, do the users need to be gone through.
+     *
+     * @param user the user whose entity has changed.
+     * @param oldEntity the previous entity of <tt>user</tt>.
+     */
+    private void entityChanged(User user, String oldEntity)
+    {
+        String entity = user.getEntity();
+
+        if (entity.equals(oldEntity))
+            return;
+
+        if (usersByEntity.get(oldEntity) == user)
+            indexEntity(oldEntity);
+
+        User first = usersByEntity.get(entity);
+
+        if (first == null)
+            usersByEntity.put(entity, user);
+        else if (first != user)
+            indexEntity(entity);
+    }
+
+    /**
+     * Updates the entry of <tt>usersByEntity</tt> for an entity, so that it
+     * maps to the first user with that entity in document order, like a scan
+     * of <tt>usersList</tt> would find.
+     *
+     * @param entity the entity whose entry to update.
+     */
+    private void indexEntity(String entity)
+    {
+        for (User user : usersList)
+        {
+            String userEntity = user.getEntity();
+
+            if (entity == null ? userEntity == null : entity.equals(userEntity))
+            {
+                usersByEntity.put(entity, user);
+                return;
+            }
         }
+        usersByEntity.remove(entity);
     }
 
     /**
@@ -792,10 +933,14 @@ private User(Element user)
          */
         public void setEntity(String entity)
         {
+            String oldEntity = getEntity();
+
             if (entity == null || entity.equals(""))
                 userElement.removeAttribute(ENTITY_ATTR_NAME);
             else
                 userElement.setAttribute(ENTITY_ATTR_NAME, entity);
+
+            entityChanged(this, oldEntity);
         }
 
         /**
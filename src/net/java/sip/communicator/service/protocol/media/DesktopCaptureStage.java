@@ -0,0 +1,469 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A stage of the desktop sharing capture pipeline which sits between the
+ * screen capture and the video encoder. It compares every captured frame
+ * with the previous one tile by tile, reports the tiles which have changed so
+ * that frames without any change may be dropped instead of encoded, and
+ * stretches the capture interval while the screen stays static. Remote
+ * control input brings the interval back to its minimum since it is likely
+ * to change the screen.
+ * <p>
+ * The screen grabber and the encoder live in libjitsi, so the capture device
+ * drives this stage: it passes every captured frame to
+ * {@link #process(int[], int, int, long)}, encodes only the frames with
+ * changes, reports the encode time with {@link #frameEncoded(long)} and waits
+ * {@link #getCaptureInterval()} before the next capture. The desktop sharing
+ * servers expose their stage and notify it of the remote control input they
+ * replay.
+ * <p>
+ * The times spent capturing and encoding the frames are recorded in
+ * microseconds.
+ */
+public class DesktopCaptureStage
+{
+    /**
+     * The width and height in pixels of the tiles frames are compared by.
+     */
+    public static final int TILE_SIZE = 32;
+
+    /**
+     * The default interval in milliseconds between two captures while the
+     * screen changes.
+     */
+    public static final long DEFAULT_MIN_INTERVAL = 100;
+
+    /**
+     * The default interval in milliseconds between two captures once the
+     * screen has been static for a while.
+     */
+    public static final long DEFAULT_MAX_INTERVAL = 1000;
+
+    /**
+     * The number of consecutive unchanged frames after which the capture
+     * interval starts to grow.
+     */
+    private static final int IDLE_FRAME_THRESHOLD = 10;
+
+    /**
+     * The interval between two captures while the screen changes.
+     */
+    private final long minInterval;
+
+    /**
+     * The interval between two captures once the screen is static.
+     */
+    private final long maxInterval;
+
+    /**
+     * The pixels of the last processed frame, or <tt>null</tt> if no frame
+     * has been processed since the size of the frames last changed.
+     */
+    private int[] previous;
+
+    /**
+     * The width of the last processed frame.
+     */
+    private int width;
+
+    /**
+     * The height of the last processed frame.
+     */
+    private int height;
+
+    /**
+     * The current interval in milliseconds between two captures.
+     */
+    private long interval;
+
+    /**
+     * The number of consecutive frames without any change.
+     */
+    private int unchangedFrames = 0;
+
+    /**
+     * The number of frames which had changes and had to be encoded.
+     */
+    private long changedFrameCount = 0;
+
+    /**
+     * The number of frames which were dropped because nothing had changed.
+     */
+    private long skippedFrameCount = 0;
+
+    /**
+     * The times spent capturing the frames.
+     */
+    private final FrameTimes captureTimes = new FrameTimes();
+
+    /**
+     * The times spent encoding the frames with changes.
+     */
+    private final FrameTimes encodeTimes = new FrameTimes();
+
+    /**
+     * Initializes a new <tt>DesktopCaptureStage</tt> with the default capture
+     * intervals.
+     */
+    public DesktopCaptureStage()
+    {
+        this(DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL);
+    }
+
+    /**
+     * Initializes a new <tt>DesktopCaptureStage</tt>.
+     *
+     * @param minInterval the interval in milliseconds between two captures
+     * while the screen changes
+     * @param maxInterval the interval in milliseconds between two captures
+     * once the screen is static
+     */
+    public DesktopCaptureStage(long minInterval, long maxInterval)
+    {
+        if (minInterval < 1 || maxInterval < minInterval)
+        {
+            throw new IllegalArgumentException(
+                    "intervals " + minInterval + ", " + maxInterval);
+        }
+
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        interval = minInterval;
+    }
+
+    /**
+     * Processes a captured frame and returns the tiles which differ from the
+     * previous frame. The whole frame is reported as changed when it is the
+     * first one or when its size differs from the previous one.
+     *
+     * @param pixels the pixels of the frame, row by row
+     * @param width the width of the frame
+     * @param height the height of the frame
+     * @param captureTime the time in nanoseconds the capture took
+     * @return the changed tiles with adjacent tiles of a row merged, empty if
+     * the frame doesn't need to be encoded
+     */
+    public synchronized List<Rectangle> process(int[] pixels,
+                                                int width,
+                                                int height,
+                                                long captureTime)
+    {
+        if (width < 1 || height < 1 || pixels.length < width * height)
+        {
+            throw new IllegalArgumentException(
+                    "frame " + width + "x" + height);
+        }
+
+        captureTimes.record(captureTime / 1000);
+
+        List<Rectangle> dirtyTiles;
+
+        if (previous == null || width != this.width || height != this.height)
+        {
+            previous = Arrays.copyOf(pixels, width * height);
+            this.width = width;
+            this.height = height;
+            dirtyTiles = new ArrayList<Rectangle>(1);
+            dirtyTiles.add(new Rectangle(0, 0, width, height));
+        }
+        else
+        {
+            dirtyTiles = findDirtyTiles(pixels);
+        }
+
+        if (dirtyTiles.isEmpty())
+        {
+            skippedFrameCount++;
+            if (++unchangedFrames >= IDLE_FRAME_THRESHOLD)
+            {
+                interval = Math.min(interval * 2, maxInterval);
+                unchangedFrames = 0;
+            }
+        }
+        else
+        {
+            changedFrameCount++;
+            unchangedFrames = 0;
+            interval = minInterval;
+        }
+        return dirtyTiles;
+    }
+
+    /**
+     * Compares a frame of the same size as the previous one with it tile by
+     * tile, and copies the changed tiles over the previous frame.
+     *
+     * @param pixels the pixels of the frame
+     * @return the changed tiles with adjacent tiles of a row merged
+     */
+    private List<Rectangle> findDirtyTiles(int[] pixels)
+    {
+        List<Rectangle> dirtyTiles = new ArrayList<Rectangle>();
+
+        for (int tileY = 0; tileY < height; tileY += TILE_SIZE)
+        {
+            int tileHeight = Math.min(TILE_SIZE, height - tileY);
+            Rectangle run = null;
+
+            for (int tileX = 0; tileX < width; tileX += TILE_SIZE)
+            {
+                int tileWidth = Math.min(TILE_SIZE, width - tileX);
+
+                if (updateTile(pixels, tileX, tileY, tileWidth, tileHeight))
+                {
+                    if (run == null)
+                    {
+                        run = new Rectangle(tileX, tileY, 0, tileHeight);
+                        dirtyTiles.add(run);
+                    }
+                    run.width += tileWidth;
+                }
+                else
+                {
+                    run = null;
+                }
+            }
+        }
+        return dirtyTiles;
+    }
+
+    /**
+     * Determines whether a tile differs from the previous frame and, if it
+     * does, copies it over the previous frame.
+     *
+     * @param pixels the pixels of the frame
+     * @param tileX the abscissa of the tile
+     * @param tileY the ordinate of the tile
+     * @param tileWidth the width of the tile
+     * @param tileHeight the height of the tile
+     * @return <tt>true</tt> if the tile has changed
+     */
+    private boolean updateTile(int[] pixels,
+                               int tileX,
+                               int tileY,
+                               int tileWidth,
+                               int tileHeight)
+    {
+        int firstChangedRow = -1;
+
+        for (int y = tileY; y < tileY + tileHeight; y++)
+        {
+            int offset = y * width + tileX;
+
+            for (int i = offset; i < offset + tileWidth; i++)
+            {
+                if (pixels[i] != previous[i])
+                {
+                    firstChangedRow = y;
+                    break;
+                }
+            }
+            if (firstChangedRow != -1)
+                break;
+        }
+
+        if (firstChangedRow == -1)
+            return false;
+
+        // The rows above the first changed one are equal already.
+        for (int y = firstChangedRow; y < tileY + tileHeight; y++)
+        {
+            int offset = y * width + tileX;
+
+            System.arraycopy(pixels, offset, previous, offset, tileWidth);
+        }
+        return true;
+    }
+
+    /**
+     * Records the time it took to encode a frame with changes.
+     *
+     * @param encodeTime the time in nanoseconds the encoding took
+     */
+    public void frameEncoded(long encodeTime)
+    {
+        encodeTimes.record(encodeTime / 1000);
+    }
+
+    /**
+     * Notifies this stage that remote control input has been received, which
+     * brings the capture interval back to its minimum.
+     */
+    public synchronized void inputReceived()
+    {
+        unchangedFrames = 0;
+        interval = minInterval;
+    }
+
+    /**
+     * Forgets the previous frame so that the next one is reported as changed
+     * as a whole, e.g. when the encoder needs a key frame.
+     */
+    public synchronized void reset()
+    {
+        previous = null;
+        unchangedFrames = 0;
+        interval = minInterval;
+    }
+
+    /**
+     * Returns the interval the next frame should be captured after.
+     *
+     * @return the interval in milliseconds between two captures
+     */
+    public synchronized long getCaptureInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * Returns the number of frames which had changes.
+     *
+     * @return the number of frames which had changes
+     */
+    public synchronized long getChangedFrameCount()
+    {
+        return changedFrameCount;
+    }
+
+    /**
+     * Returns the number of frames which were dropped because nothing had
+     * changed.
+     *
+     * @return the number of frames which were dropped
+     */
+    public synchronized long getSkippedFrameCount()
+    {
+        return skippedFrameCount;
+    }
+
+    /**
+     * Returns the times spent capturing frames.
+     *
+     * @return the capture times in microseconds
+     */
+    public FrameTimes getCaptureTimes()
+    {
+        return captureTimes;
+    }
+
+    /**
+     * Returns the times spent encoding frames.
+     *
+     * @return the encode times in microseconds
+     */
+    public FrameTimes getEncodeTimes()
+    {
+        return encodeTimes;
+    }
+
+    /**
+     * The times spent on a step of the processing of the frames.
+     */
+    public static class FrameTimes
+    {
+        /**
+         * The number of frames measured.
+         */
+        private long count = 0;
+
+        /**
+         * The sum of the times in microseconds measured.
+         */
+        private long total = 0;
+
+        /**
+         * The highest time in microseconds measured.
+         */
+        private long max = 0;
+
+        /**
+         * The time in microseconds of the last frame measured.
+         */
+        private long last = 0;
+
+        /**
+         * Records the time spent on a frame.
+         *
+         * @param time the time in microseconds
+         */
+        synchronized void record(long time)
+        {
+            count++;
+            total += time;
+            last = time;
+            if (time > max)
+                max = time;
+        }
+
+        /**
+         * Returns the number of frames measured.
+         *
+         * @return the number of frames measured
+         */
+        public synchronized long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the average time spent on a frame.
+         *
+         * @return the average time in microseconds, <tt>0</tt> if no frame
+         * has been measured
+         */
+        public synchronized long getAverage()
+        {
+            return (count == 0) ? 0 : total / count;
+        }
+
+        /**
+         * Returns the highest time spent on a frame.
+         *
+         * @return the highest time in microseconds
+         */
+        public synchronized long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * Returns the time spent on the last frame.
+         *
+         * @return the time in microseconds of the last frame
+         */
+        public synchronized long getLast()
+        {
+            return last;
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            return
+                "count=" + count + ", average=" + getAverage() + "us, max="
+                    + max + "us, last=" + last + "us";
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.awt.event.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Queues the keyboard and mouse events received from the peers which
+ * remotely control the shared desktop and replays them on a thread of its
+ * own, so that the thread which received them goes back to the network as
+ * soon as possible. The events queued while earlier ones are being replayed
+ * are replayed as one batch, in which consecutive mouse moves of a peer are
+ * coalesced into the last one since only the final position of the pointer
+ * matters. The events of a peer whose remote control has been revoked are
+ * dropped with {@link #remove(String)}, and the handler is asked again
+ * whether a peer is allowed to control the desktop before each event of the
+ * peer is replayed. The {@link DesktopCaptureStage} of the shared desktop, if
+ * any, is notified of every replayed batch since it is likely to change the
+ * screen.
+ */
+public class RemoteControlEventQueue
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>RemoteControlEventQueue</tt> class
+     * and its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(RemoteControlEventQueue.class);
+
+    /**
+     * The time in seconds the replaying thread waits for new events before it
+     * exits.
+     */
+    private static final long KEEP_ALIVE_TIME = 30;
+
+    /**
+     * Regenerates the events on the local desktop.
+     */
+    public interface Handler
+    {
+        /**
+         * Determines whether a peer is still allowed to remotely control the
+         * local desktop.
+         *
+         * @param peer the address of the peer
+         * @return <tt>true</tt> if the events of <tt>peer</tt> may be
+         * regenerated
+         */
+        public boolean isRemoteControlGranted(String peer);
+
+        /**
+         * Regenerates an event received from the remote peer on the local
+         * desktop.
+         *
+         * @param event the event to regenerate
+         */
+        public void processComponentEvent(ComponentEvent event);
+    }
+
+    /**
+     * The handler which regenerates the events.
+     */
+    private final Handler handler;
+
+    /**
+     * The capture stage to notify of the replayed input, or <tt>null</tt>.
+     */
+    private final DesktopCaptureStage captureStage;
+
+    /**
+     * The events which have been received and not replayed yet.
+     */
+    private final List<PeerEvent> pending = new ArrayList<PeerEvent>();
+
+    /**
+     * Whether a task replaying the pending events has been submitted and has
+     * not returned yet.
+     */
+    private boolean replaying = false;
+
+    /**
+     * The executor of the replaying task, whose single thread exits when no
+     * events have been received for a while.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The task which replays the pending events.
+     */
+    private final Runnable replayTask
+        = new Runnable()
+        {
+            public void run()
+            {
+                replayPending();
+            }
+        };
+
+    /**
+     * Initializes a new <tt>RemoteControlEventQueue</tt>.
+     *
+     * @param handler the handler which regenerates the events
+     */
+    public RemoteControlEventQueue(Handler handler)
+    {
+        this(handler, null);
+    }
+
+    /**
+     * Initializes a new <tt>RemoteControlEventQueue</tt>.
+     *
+     * @param handler the handler which regenerates the events
+     * @param captureStage the capture stage to notify of the replayed input,
+     * or <tt>null</tt>
+     */
+    public RemoteControlEventQueue(Handler handler,
+                                   DesktopCaptureStage captureStage)
+    {
+        if (handler == null)
+            throw new NullPointerException("handler");
+
+        this.handler = handler;
+        this.captureStage = captureStage;
+
+        executor
+            = new ThreadPoolExecutor(
+                    1, 1,
+                    KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread t = new Thread(r, "Remote control input");
+
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues events received from a remote peer.
+     *
+     * @param peer the address of the peer the events have been received from
+     * @param events the events in the order they have been received
+     */
+    public void add(String peer, Collection<? extends ComponentEvent> events)
+    {
+        if (events.isEmpty())
+            return;
+
+        synchronized (pending)
+        {
+            for (ComponentEvent event : events)
+                pending.add(new PeerEvent(peer, event));
+            if (replaying)
+                return;
+            replaying = true;
+        }
+
+        try
+        {
+            executor.execute(replayTask);
+        }
+        catch (RejectedExecutionException ree)
+        {
+            synchronized (pending)
+            {
+                pending.clear();
+                replaying = false;
+            }
+            logger.error("Failed to replay remote control events", ree);
+        }
+    }
+
+    /**
+     * Drops the events of a peer which have not been replayed yet, e.g.
+     * because its remote control has been revoked or its call has ended.
+     *
+     * @param peer the address of the peer
+     */
+    public void remove(String peer)
+    {
+        synchronized (pending)
+        {
+            for (Iterator<PeerEvent> i = pending.iterator(); i.hasNext();)
+            {
+                if (i.next().peer.equals(peer))
+                    i.remove();
+            }
+        }
+    }
+
+    /**
+     * Replays the pending events batch by batch until there are none left.
+     */
+    private void replayPending()
+    {
+        while (true)
+        {
+            List<PeerEvent> batch;
+
+            synchronized (pending)
+            {
+                if (pending.isEmpty())
+                {
+                    replaying = false;
+                    return;
+                }
+                batch = coalesce(pending);
+                pending.clear();
+            }
+
+            boolean replayed = false;
+
+            for (PeerEvent peerEvent : batch)
+            {
+                // The remote control of the peer may have been revoked since
+                // the batch has been taken.
+                if (!handler.isRemoteControlGranted(peerEvent.peer))
+                    continue;
+
+                try
+                {
+                    handler.processComponentEvent(peerEvent.event);
+                    replayed = true;
+                }
+                catch (RuntimeException re)
+                {
+                    logger.error("Failed to replay " + peerEvent.event, re);
+                }
+            }
+            if (replayed && (captureStage != null))
+                captureStage.inputReceived();
+        }
+    }
+
+    /**
+     * Removes from a sequence of events the mouse moves which are directly
+     * followed by another mouse move of the same peer.
+     *
+     * @param events the events in the order they have been received
+     * @return the events to replay in the order they have to be replayed
+     */
+    static List<PeerEvent> coalesce(List<PeerEvent> events)
+    {
+        List<PeerEvent> coalesced = new ArrayList<PeerEvent>(events.size());
+        int count = events.size();
+
+        for (int i = 0; i < count; i++)
+        {
+            PeerEvent event = events.get(i);
+
+            if (i + 1 < count
+                    && event.isMouseMove()
+                    && events.get(i + 1).isMouseMove()
+                    && event.peer.equals(events.get(i + 1).peer))
+            {
+                continue;
+            }
+            coalesced.add(event);
+        }
+        return coalesced;
+    }
+
+    /**
+     * An event together with the peer it has been received from.
+     */
+    static class PeerEvent
+    {
+        /**
+         * The address of the peer the event has been received from.
+         */
+        final String peer;
+
+        /**
+         * The event.
+         */
+        final ComponentEvent event;
+
+        /**
+         * Initializes a new <tt>PeerEvent</tt>.
+         *
+         * @param peer the address of the peer
+         * @param event the event
+         */
+        PeerEvent(String peer, ComponentEvent event)
+        {
+            this.peer = peer;
+            this.event = event;
+        }
+
+        /**
+         * Determines whether the event is a mouse move.
+         *
+         * @return <tt>true</tt> if the event is a mouse move
+         */
+        boolean isMouseMove()
+        {
+            return
+                (event instanceof MouseEvent)
+                    && (event.getID() == MouseEvent.MOUSE_MOVED);
+        }
+    }
+}
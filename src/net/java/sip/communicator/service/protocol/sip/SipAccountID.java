@@ -65,6 +65,14 @@
      */
     public static final String OPT_CLIST_PASSWORD = "OPT_CLIST_PASSWORD";
 
+    /**
+     * The name of the property under which the user may specify the delay in
+     * milliseconds during which changes to the contact list are collected and
+     * then sent to the XCAP server in a single request. Zero or missing sends
+     * every change immediately.
+     */
+    public static final String OPT_CLIST_BATCH_DELAY = "OPT_CLIST_BATCH_DELAY";
+
     /**
      * Default properties prefix used in jitsi-defaults.properties file
      * for SIP protocol.
@@ -0,0 +1,263 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.callhistory;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.callhistory.*;
+
+import org.easymock.*;
+import org.osgi.framework.*;
+
+public class CallHistoryIndexTest
+    extends TestCase
+{
+    private File file;
+
+    private CallHistoryIndex index;
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        // no PhoneNumberI18nService, addresses are only lower cased
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.replay(bc);
+        CallHistoryActivator.bundleContext = bc;
+
+        this.file = File.createTempFile("callhistory", ".index");
+        this.file.delete();
+        this.index = new CallHistoryIndex(this.file);
+    }
+
+    public void tearDown() throws Exception
+    {
+        this.index.close();
+        this.file.delete();
+        CallHistoryActivator.bundleContext = null;
+        super.tearDown();
+    }
+
+    public void testNotReadyUntilBuilt()
+    {
+        Assert.assertFalse(this.index.load());
+        Assert.assertFalse(this.index.isReady());
+        Assert.assertFalse(this.file.exists());
+
+        this.index.build(new HashMap<CallRecord, Date>());
+        Assert.assertTrue(this.index.isReady());
+        Assert.assertTrue(this.file.exists());
+    }
+
+    public void testBuildAndLoad()
+    {
+        Map<CallRecord, Date> records = new HashMap<CallRecord, Date>();
+        records.put(record(1000, "sip:alice@example.com"), new Date(2000));
+        records.put(record(3000, "sip:bob@example.com"), new Date(4000));
+        this.index.build(records);
+
+        CallHistoryIndex loaded = new CallHistoryIndex(this.file);
+        Assert.assertTrue(loaded.load());
+        Assert.assertTrue(loaded.isReady());
+
+        List<CallHistoryIndex.Entry> entries = loaded.findByPeer("alice", 10);
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals("sip:alice@example.com", entries.get(0).peerAddress);
+        Assert.assertEquals(1000, entries.get(0).getStartDate().getTime());
+        Assert.assertEquals(2001, entries.get(0).getEndDate().getTime());
+        loaded.close();
+    }
+
+    public void testAddIsPersisted()
+    {
+        this.index.build(new HashMap<CallRecord, Date>());
+        this.index.add(record(1000, "sip:alice@example.com"), new Date(2000));
+
+        CallHistoryIndex loaded = new CallHistoryIndex(this.file);
+        Assert.assertTrue(loaded.load());
+        Assert.assertEquals(1, loaded.findByPeer("alice", 10).size());
+        loaded.close();
+    }
+
+    public void testUpdateMovesEndOfPeriod()
+    {
+        this.index.build(new HashMap<CallRecord, Date>());
+        this.index.add(record(1000, "sip:alice@example.com"), new Date(2000));
+
+        CallHistoryIndex.Entry entry
+            = this.index.findByPeer("sip:alice@example.com", 1000L).get(0);
+        this.index.updated(entry, 5000);
+        Assert.assertEquals(5001, entry.getEndDate().getTime());
+
+        // an older time doesn't shrink the period
+        this.index.updated(entry, 3000);
+        Assert.assertEquals(5001, entry.getEndDate().getTime());
+
+        CallHistoryIndex loaded = new CallHistoryIndex(this.file);
+        Assert.assertTrue(loaded.load());
+        Assert.assertEquals(
+            5001,
+            loaded.findByPeer("alice", 1).get(0).getEndDate().getTime());
+        loaded.close();
+    }
+
+    public void testFindByPeerMatchesSubstrings()
+    {
+        this.index.build(new HashMap<CallRecord, Date>());
+        this.index.add(record(1000, "sip:alice@example.com"), new Date(1000));
+        this.index.add(record(2000, "sip:Malik@example.org"), new Date(2000));
+        this.index.add(record(3000, "sip:bob@example.com"), new Date(3000));
+
+        Assert.assertEquals(
+            Arrays.asList("sip:Malik@example.org", "sip:alice@example.com"),
+            addresses(this.index.findByPeer("ali", 10)));
+        Assert.assertEquals(
+            Arrays.asList("sip:Malik@example.org"),
+            addresses(this.index.findByPeer("MALIK@", 10)));
+        Assert.assertEquals(
+            Arrays.asList("sip:bob@example.com", "sip:alice@example.com"),
+            addresses(this.index.findByPeer("example.com", 10)));
+        Assert.assertEquals(
+            Arrays.asList("sip:bob@example.com"),
+            addresses(this.index.findByPeer("b", 10)));
+        Assert.assertTrue(this.index.findByPeer("carol", 10).isEmpty());
+        // all the trigrams exist but not the whole string
+        Assert.assertTrue(this.index.findByPeer("bob@example.org", 10)
+            .isEmpty());
+        Assert.assertEquals(3, this.index.findByPeer("", 10).size());
+    }
+
+    public void testFindByPeerReturnsMostRecentFirst()
+    {
+        this.index.build(new HashMap<CallRecord, Date>());
+        for (int i = 0; i < 5; i++)
+        {
+            this.index.add(
+                record(1000 * i, "sip:alice@example.com"),
+                new Date(1000 * i + 500));
+            this.index.add(
+                record(1000 * i + 1, "sip:bob@example.com"),
+                new Date(1000 * i + 600));
+        }
+
+        List<CallHistoryIndex.Entry> entries
+            = this.index.findByPeer("example", 3);
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals(4600, entries.get(0).getEndDate().getTime() - 1);
+        Assert.assertEquals(4500, entries.get(1).getEndDate().getTime() - 1);
+        Assert.assertEquals(3600, entries.get(2).getEndDate().getTime() - 1);
+    }
+
+    public void testFindByPeerAndTime()
+    {
+        this.index.build(new HashMap<CallRecord, Date>());
+        this.index.add(record(1000, "sip:alice@example.com"), new Date(2000));
+        this.index.add(record(5000, "sip:alice@example.com"), new Date(6000));
+
+        Assert.assertEquals(
+            1, this.index.findByPeer("sip:alice@example.com", 1500L).size());
+        Assert.assertEquals(
+            0, this.index.findByPeer("sip:alice@example.com", 3000L).size());
+        Assert.assertEquals(
+            0, this.index.findByPeer("sip:bob@example.com", 1500L).size());
+    }
+
+    public void testClear()
+    {
+        this.index.build(new HashMap<CallRecord, Date>());
+        this.index.add(record(1000, "sip:alice@example.com"), new Date(2000));
+        this.index.clear();
+
+        Assert.assertTrue(this.index.isReady());
+        Assert.assertTrue(this.index.findByPeer("alice", 10).isEmpty());
+        Assert.assertTrue(this.index.isCurrent(null));
+    }
+
+    public void testStaleIndexIsDetected()
+    {
+        this.index.build(new HashMap<CallRecord, Date>());
+        Assert.assertTrue(this.index.isCurrent(null));
+
+        this.index.add(record(1000, "sip:alice@example.com"), new Date(2000));
+        Assert.assertTrue(this.index.isCurrent(new Date(2000)));
+        // the history has been erased without going through the index
+        Assert.assertFalse(this.index.isCurrent(null));
+        // a record has been written without going through the index
+        Assert.assertFalse(this.index.isCurrent(new Date(2001)));
+
+        // the newest record is known after a reload, even without peers
+        this.index.add(record(3000), new Date(4000));
+        CallHistoryIndex loaded = new CallHistoryIndex(this.file);
+        Assert.assertTrue(loaded.load());
+        Assert.assertTrue(loaded.isCurrent(new Date(4000)));
+        Assert.assertFalse(loaded.isCurrent(new Date(4001)));
+        loaded.close();
+    }
+
+    public void testRebuildAfterInvalidate()
+    {
+        this.index.build(new HashMap<CallRecord, Date>());
+        this.index.add(record(1000, "sip:alice@example.com"), new Date(2000));
+
+        this.index.invalidate();
+        Assert.assertFalse(this.index.isReady());
+        Assert.assertTrue(this.index.findByPeer("alice", 10).isEmpty());
+
+        // a call recorded during the rebuild is kept
+        this.index.add(record(5000, "sip:carol@example.com"), new Date(6000));
+        Map<CallRecord, Date> records = new HashMap<CallRecord, Date>();
+        records.put(record(1000, "sip:alice@example.com"), new Date(2000));
+        records.put(record(3000, "sip:bob@example.com"), new Date(4000));
+        this.index.build(records);
+
+        Assert.assertTrue(this.index.isReady());
+        Assert.assertTrue(this.index.isCurrent(new Date(6000)));
+        Assert.assertEquals(3, this.index.findByPeer("example", 10).size());
+
+        CallHistoryIndex loaded = new CallHistoryIndex(this.file);
+        Assert.assertTrue(loaded.load());
+        Assert.assertEquals(3, loaded.findByPeer("example", 10).size());
+        loaded.close();
+    }
+
+    private static CallRecord record(long start, String... peerAddresses)
+    {
+        CallRecordImpl record
+            = new CallRecordImpl(
+                    CallRecord.OUT, new Date(start), new Date(start + 100));
+        for (String peerAddress : peerAddresses)
+        {
+            record.getPeerRecords().add(
+                new CallPeerRecordImpl(
+                        peerAddress, new Date(start), new Date(start + 100)));
+        }
+        return record;
+    }
+
+    private static List<String> addresses(List<CallHistoryIndex.Entry> entries)
+    {
+        List<String> addresses = new ArrayList<String>();
+        for (CallHistoryIndex.Entry entry : entries)
+        {
+            addresses.add(entry.peerAddress);
+        }
+        return addresses;
+    }
+}
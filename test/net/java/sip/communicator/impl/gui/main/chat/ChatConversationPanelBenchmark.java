@@ -0,0 +1,121 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.gui.main.chat;
+
+import java.util.*;
+
+import net.java.sip.communicator.slick.benchmark.*;
+
+/**
+ * Benchmarks the formatting every incoming and outgoing chat message goes
+ * through in the <tt>ChatConversationPanel</tt>. Unlike the benchmarks of
+ * the <tt>BenchmarkLick</tt> it doesn't need a running framework and is
+ * started on its own by the <tt>benchmark</tt> Ant target.
+ */
+public class ChatConversationPanelBenchmark
+{
+    /**
+     * The number of messages formatted in every measured iteration.
+     */
+    private static final int MESSAGE_COUNT = 500;
+
+    /**
+     * Runs the benchmarks and writes their results.
+     *
+     * @param args ignored.
+     * @throws Exception if a benchmark fails.
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner("chat");
+        final List<String> plainMessages = new ArrayList<String>();
+        final List<String> htmlMessages = new ArrayList<String>();
+        Random random = new Random(0);
+
+        for (int i = 0; i < MESSAGE_COUNT; i++)
+        {
+            StringBuilder message = new StringBuilder();
+            int words = 5 + random.nextInt(40);
+
+            for (int j = 0; j < words; j++)
+            {
+                switch (random.nextInt(20))
+                {
+                case 0:
+                    message.append("http://www.example.com/page?id=")
+                        .append(j).append("&lang=en");
+                    break;
+                case 1:
+                    message.append("www.jitsi.org");
+                    break;
+                case 2:
+                    message.append("keyword");
+                    break;
+                case 3:
+                    message.append("<3 & \"quotes\"\n");
+                    break;
+                default:
+                    message.append("word").append(j);
+                }
+                message.append(' ');
+            }
+            plainMessages.add(message.toString());
+            htmlMessages.add(
+                    "<b>" + message.toString().replace("\n", "<br/>")
+                        + "</b><img src=\"file:///tmp/image" + i
+                        + ".png\"/><a href=\"http://www.example.com\">"
+                        + "link</a>");
+        }
+
+        runner.measure(
+                "ChatConversationPanel.formatPlainText",
+                MESSAGE_COUNT,
+                new BenchmarkRunner.Operation()
+                {
+                    public void run()
+                    {
+                        for (String message : plainMessages)
+                        {
+                            ChatConversationPanel.formatMessageAsHTML(
+                                    message,
+                                    ChatHtmlUtils.TEXT_CONTENT_TYPE,
+                                    "keyword");
+                        }
+                    }
+                });
+        runner.measure(
+                "ChatConversationPanel.formatHtml",
+                MESSAGE_COUNT,
+                new BenchmarkRunner.Operation()
+                {
+                    public void run()
+                    {
+                        for (String message : htmlMessages)
+                        {
+                            ChatConversationPanel.formatMessageAsHTML(
+                                    message,
+                                    ChatHtmlUtils.HTML_CONTENT_TYPE,
+                                    "keyword");
+                        }
+                    }
+                });
+
+        runner.writeResults();
+    }
+}
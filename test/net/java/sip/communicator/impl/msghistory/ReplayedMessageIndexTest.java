@@ -0,0 +1,132 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.easymock.*;
+
+public class ReplayedMessageIndexTest
+    extends TestCase
+{
+    private static final long TIME = 1000000;
+
+    private ChatRoom room;
+
+    private ReplayedMessageIndex index;
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        this.room = EasyMock.createNiceMock(ChatRoom.class);
+        EasyMock.replay(this.room);
+        this.index = new ReplayedMessageIndex();
+    }
+
+    public void testSameUidMatchesWhateverTheTime()
+    {
+        this.index.add(received("alice", "hello", "id1", TIME));
+
+        Assert.assertTrue(
+            this.index.contains(
+                received("alice", "hello", "id1", TIME + 3600000)));
+        // the UID of a delivered message is another key
+        Assert.assertFalse(
+            this.index.contains(delivered("hello", "id1", TIME + 3600000)));
+    }
+
+    public void testSameContentMatchesWithinTheWindowOnly()
+    {
+        this.index.add(received("alice", "ok", "id1", TIME));
+
+        Assert.assertTrue(
+            this.index.contains(received("bob", "ok", "id2", TIME + 10000)));
+        Assert.assertTrue(
+            this.index.contains(received("bob", "ok", "id2", TIME - 10000)));
+        // a later "ok" is another message
+        Assert.assertFalse(
+            this.index.contains(received("bob", "ok", "id2", TIME + 10001)));
+        Assert.assertFalse(
+            this.index.contains(received("bob", "ok", "id2", TIME - 10001)));
+    }
+
+    public void testSameSenderAndTimeMatches()
+    {
+        this.index.add(received("alice", "hello", "id1", TIME));
+
+        Assert.assertTrue(
+            this.index.contains(received("alice", "hello!", "id2", TIME)));
+        Assert.assertFalse(
+            this.index.contains(received("alice", "hello!", "id2", TIME + 1)));
+        Assert.assertFalse(
+            this.index.contains(received("bob", "hello!", "id2", TIME)));
+    }
+
+    public void testDirectionsAreNotMixed()
+    {
+        this.index.add(received("alice", "ok", "id1", TIME));
+
+        Assert.assertFalse(this.index.contains(delivered("ok", "id2", TIME)));
+
+        this.index.add(delivered("ok", "id2", TIME));
+        Assert.assertTrue(this.index.contains(delivered("ok", "id3", TIME)));
+    }
+
+    private ChatRoomMessageReceivedEvent received(
+        String sender, String content, String uid, long time)
+    {
+        ChatRoomMember member = EasyMock.createNiceMock(ChatRoomMember.class);
+        EasyMock.expect(member.getContactAddress()).andStubReturn(sender);
+        EasyMock.replay(member);
+
+        return new ChatRoomMessageReceivedEvent(
+                this.room,
+                member,
+                new Date(time),
+                new TestMessage(content, uid),
+                ChatRoomMessageReceivedEvent.CONVERSATION_MESSAGE_RECEIVED);
+    }
+
+    private ChatRoomMessageDeliveredEvent delivered(
+        String content, String uid, long time)
+    {
+        return new ChatRoomMessageDeliveredEvent(
+                this.room,
+                new Date(time),
+                new TestMessage(content, uid),
+                ChatRoomMessageDeliveredEvent.CONVERSATION_MESSAGE_DELIVERED);
+    }
+
+    private static class TestMessage
+        extends AbstractMessage
+    {
+        TestMessage(String content, String uid)
+        {
+            super(
+                content,
+                OperationSetBasicInstantMessaging.DEFAULT_MIME_TYPE,
+                OperationSetBasicInstantMessaging.DEFAULT_MIME_ENCODING,
+                null,
+                uid);
+        }
+    }
+}
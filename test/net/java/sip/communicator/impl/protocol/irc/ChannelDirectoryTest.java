@@ -0,0 +1,159 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.*;
+
+import junit.framework.*;
+
+public class ChannelDirectoryTest
+    extends TestCase
+{
+    public void testConstruction()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        Assert.assertNull(directory.getFilter());
+        Assert.assertEquals(0, directory.size());
+        Assert.assertTrue(directory.search("").isEmpty());
+    }
+
+    public void testAddNullName()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        try
+        {
+            directory.add(null, 1, null);
+            Assert.fail("Should have thrown IAE for null name.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testColumns()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        int first = directory.add("#jitsi", 42, "Jitsi development");
+        int second = directory.add("#java", 1200, null);
+        Assert.assertEquals(2, directory.size());
+        Assert.assertEquals("#jitsi", directory.getName(first));
+        Assert.assertEquals(42, directory.getUserCount(first));
+        Assert.assertEquals("Jitsi development", directory.getTopic(first));
+        Assert.assertEquals("#java", directory.getName(second));
+        Assert.assertEquals(1200, directory.getUserCount(second));
+        Assert.assertNull(directory.getTopic(second));
+    }
+
+    public void testUnknownId()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        directory.add("#jitsi", 42, null);
+        try
+        {
+            directory.getName(1);
+            Assert.fail("Should have thrown for unknown id.");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+        }
+    }
+
+    public void testSearchEmptyQueryReturnsAll()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        directory.add("#jitsi", 42, null);
+        directory.add("#java", 1200, null);
+        Assert.assertEquals(Arrays.asList("#jitsi", "#java"),
+            directory.search(""));
+    }
+
+    public void testSearchShortQuery()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        directory.add("#jitsi", 42, null);
+        directory.add("#java", 1200, null);
+        directory.add("#linux", 900, null);
+        Assert.assertEquals(Arrays.asList("#jitsi", "#java"),
+            directory.search("#J"));
+    }
+
+    public void testSearchSubstringIgnoresCase()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        directory.add("#Jitsi-Dev", 42, null);
+        directory.add("#jitsi", 10, null);
+        directory.add("#java", 1200, null);
+        directory.add("##devops", 15, null);
+        Assert.assertEquals(Arrays.asList("#Jitsi-Dev", "#jitsi"),
+            directory.search("JITS"));
+        Assert.assertEquals(Arrays.asList("#Jitsi-Dev", "##devops"),
+            directory.search("dev"));
+        Assert.assertTrue(directory.search("python").isEmpty());
+    }
+
+    public void testSearchRepeatedTrigram()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        directory.add("#aaaaaa", 1, null);
+        Assert.assertEquals(Arrays.asList("#aaaaaa"),
+            directory.search("aaaa"));
+    }
+
+    public void testSearchRequiresWholeQuery()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        // Contains all trigrams of the query but not the query itself.
+        directory.add("#abcd-bcde", 1, null);
+        Assert.assertTrue(directory.search("abcde").isEmpty());
+    }
+
+    public void testGrowsBeyondInitialCapacity()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        for (int i = 0; i < 1000; i++)
+        {
+            directory.add("#channel" + i, i, "topic " + i);
+        }
+        Assert.assertEquals(1000, directory.size());
+        Assert.assertEquals("#channel999", directory.getName(999));
+        Assert.assertEquals(999, directory.getUserCount(999));
+        Assert.assertEquals(Arrays.asList("#channel999"),
+            directory.search("nel999"));
+        Assert.assertEquals(111, directory.search("el9").size());
+    }
+
+    public void testMatches()
+    {
+        ChannelDirectory directory = new ChannelDirectory(null);
+        int id = directory.add("#Jitsi", 42, null);
+        Assert.assertTrue(directory.matches(id, "jit"));
+        Assert.assertTrue(directory.matches(id, ""));
+        Assert.assertFalse(directory.matches(id, "java"));
+    }
+
+    public void testCovers()
+    {
+        Assert.assertTrue(new ChannelDirectory(null).covers("anything"));
+        ChannelDirectory filtered = new ChannelDirectory("jit");
+        Assert.assertEquals("jit", filtered.getFilter());
+        Assert.assertTrue(filtered.covers("jit"));
+        Assert.assertTrue(filtered.covers("#JITSI"));
+        Assert.assertFalse(filtered.covers("ji"));
+        Assert.assertFalse(filtered.covers("java"));
+    }
+}
@@ -106,4 +106,27 @@ public void testParseSimpleInvalidValue()
         ISupport.parseChanLimit(destination, "bla");
         Assert.assertEquals(0, destination.size());
     }
+
+    public void testParseLineLengthMissing()
+    {
+        Assert.assertEquals(-1, ISupport.parseLineLength(null));
+    }
+
+    public void testParseLineLengthLarge()
+    {
+        Assert.assertEquals(2048, ISupport.parseLineLength("2048"));
+    }
+
+    public void testParseLineLengthSmall()
+    {
+        Assert.assertEquals(256, ISupport.parseLineLength("256"));
+    }
+
+    public void testParseLineLengthInvalid()
+    {
+        Assert.assertEquals(-1, ISupport.parseLineLength(""));
+        Assert.assertEquals(-1, ISupport.parseLineLength("abc"));
+        Assert.assertEquals(-1, ISupport.parseLineLength("0"));
+        Assert.assertEquals(-1, ISupport.parseLineLength("-5"));
+    }
 }
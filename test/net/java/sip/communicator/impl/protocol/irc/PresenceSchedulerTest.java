@@ -0,0 +1,137 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+public class PresenceSchedulerTest
+    extends TestCase
+{
+    private PresenceScheduler scheduler;
+
+    public void tearDown() throws Exception
+    {
+        if (this.scheduler != null)
+        {
+            this.scheduler.stop();
+        }
+        super.tearDown();
+    }
+
+    public void testConstructionTooShortPeriod()
+    {
+        try
+        {
+            new PresenceScheduler(1L);
+            Assert.fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testScheduleNullTask()
+    {
+        this.scheduler = new PresenceScheduler(1200L);
+        try
+        {
+            this.scheduler.schedule(null);
+            Assert.fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testSpreadTaskRunsEverySlot() throws InterruptedException
+    {
+        this.scheduler = new PresenceScheduler(240L);
+        final CountDownLatch latch =
+            new CountDownLatch(this.scheduler.getSlots());
+        this.scheduler.scheduleSpread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        });
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testPeriodicTaskRunsAfterFullPeriod()
+        throws InterruptedException
+    {
+        this.scheduler = new PresenceScheduler(1200L);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        this.scheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                latch.countDown();
+            }
+        });
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= 1000000000L);
+    }
+
+    public void testCancelledTaskDoesNotRun() throws InterruptedException
+    {
+        this.scheduler = new PresenceScheduler(120L);
+        final AtomicInteger count = new AtomicInteger();
+        final PresenceScheduler.Registration registration =
+            this.scheduler.scheduleSpread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    count.incrementAndGet();
+                }
+            });
+        registration.cancel();
+        Thread.sleep(100L);
+        Assert.assertEquals(0, count.get());
+    }
+
+    public void testStoppedSchedulerIgnoresTasks()
+    {
+        this.scheduler = new PresenceScheduler(1200L);
+        this.scheduler.stop();
+        this.scheduler.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Assert.fail("Task should not run.");
+            }
+        }, 0L);
+        this.scheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Assert.fail("Task should not run.");
+            }
+        });
+    }
+}
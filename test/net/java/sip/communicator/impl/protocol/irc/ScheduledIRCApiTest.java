@@ -0,0 +1,270 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.irc;
+
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+import org.easymock.*;
+
+import com.ircclouds.irc.api.*;
+import com.ircclouds.irc.api.domain.*;
+import com.ircclouds.irc.api.listeners.*;
+import com.ircclouds.irc.api.state.*;
+
+public class ScheduledIRCApiTest
+    extends TestCase
+{
+    private IRCApi ircMock;
+    private IIRCState stateMock;
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        this.ircMock = EasyMock.createStrictMock(IRCApi.class);
+        this.stateMock = EasyMock.createMock(IIRCState.class);
+        this.ircMock.addListener(EasyMock.anyObject(IMessageListener.class));
+    }
+
+    public void testConstructionNullIrc()
+    {
+        EasyMock.replay(this.ircMock, this.stateMock);
+        try
+        {
+            new ScheduledIRCApi(null, this.stateMock, 1, 0L);
+            Assert.fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testConstructionNullState()
+    {
+        EasyMock.replay(this.ircMock, this.stateMock);
+        try
+        {
+            new ScheduledIRCApi(this.ircMock, null, 1, 0L);
+            Assert.fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testConstructionBadBurst()
+    {
+        EasyMock.replay(this.ircMock, this.stateMock);
+        try
+        {
+            new ScheduledIRCApi(this.ircMock, this.stateMock, 0, 0L);
+            Assert.fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testConstructionNegativeInterval()
+    {
+        EasyMock.replay(this.ircMock, this.stateMock);
+        try
+        {
+            new ScheduledIRCApi(this.ircMock, this.stateMock, 1, -1L);
+            Assert.fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testClassify()
+    {
+        Assert.assertEquals(ScheduledIRCApi.Priority.HIGH,
+            ScheduledIRCApi.classify("AWAY :gone fishing"));
+        Assert.assertEquals(ScheduledIRCApi.Priority.HIGH,
+            ScheduledIRCApi.classify("monitor + foo,bar"));
+        Assert.assertEquals(ScheduledIRCApi.Priority.HIGH,
+            ScheduledIRCApi.classify("ISON"));
+        Assert.assertEquals(ScheduledIRCApi.Priority.LOW,
+            ScheduledIRCApi.classify("WHOIS foo"));
+        Assert.assertEquals(ScheduledIRCApi.Priority.LOW,
+            ScheduledIRCApi.classify("LIST"));
+        Assert.assertEquals(ScheduledIRCApi.Priority.NORMAL,
+            ScheduledIRCApi.classify("PRIVMSG #test :hello"));
+    }
+
+    public void testHighPriorityFirst() throws InterruptedException
+    {
+        final CountDownLatch sent = new CountDownLatch(3);
+        this.ircMock.rawMessage("AWAY :gone");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        this.ircMock.message("#test", "hello");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        this.ircMock.rawMessage("WHO #test");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        EasyMock.replay(this.ircMock, this.stateMock);
+        final ScheduledIRCApi scheduler =
+            new ScheduledIRCApi(this.ircMock, this.stateMock, 5, 0L);
+        scheduler.rawMessage("WHO #test");
+        scheduler.message("#test", "hello");
+        scheduler.rawMessage("AWAY :gone");
+        Assert.assertEquals(3, scheduler.getQueueSize());
+        scheduler.start();
+        Assert.assertTrue(sent.await(5, TimeUnit.SECONDS));
+        scheduler.stop();
+        EasyMock.verify(this.ircMock);
+    }
+
+    public void testCoalesceJoins() throws InterruptedException
+    {
+        final CountDownLatch sent = new CountDownLatch(1);
+        this.ircMock.rawMessage("JOIN #secret,#a,#b key");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        EasyMock.replay(this.ircMock, this.stateMock);
+        final ScheduledIRCApi scheduler =
+            new ScheduledIRCApi(this.ircMock, this.stateMock, 5, 0L);
+        scheduler.joinChannel("#a");
+        scheduler.joinChannel("#secret", "key");
+        scheduler.joinChannel("#b", "");
+        scheduler.start();
+        Assert.assertTrue(sent.await(5, TimeUnit.SECONDS));
+        scheduler.stop();
+        EasyMock.verify(this.ircMock);
+    }
+
+    public void testCoalescedJoinsFitInOneLine() throws InterruptedException
+    {
+        final String[] channels = new String[5];
+        for (int i = 0; i < channels.length; i++)
+        {
+            final StringBuilder channel = new StringBuilder("#" + i);
+            while (channel.length() < 100)
+            {
+                channel.append('x');
+            }
+            channels[i] = channel.toString();
+        }
+        final CountDownLatch sent = new CountDownLatch(2);
+        final String first = "JOIN " + channels[0] + "," + channels[1] + ","
+            + channels[2] + "," + channels[3];
+        Assert.assertTrue(first.length() <= 510);
+        this.ircMock.rawMessage(first);
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        this.ircMock.rawMessage("JOIN " + channels[4]);
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        EasyMock.replay(this.ircMock, this.stateMock);
+        final ScheduledIRCApi scheduler =
+            new ScheduledIRCApi(this.ircMock, this.stateMock, 5, 0L);
+        for (String channel : channels)
+        {
+            scheduler.joinChannel(channel);
+        }
+        scheduler.start();
+        Assert.assertTrue(sent.await(5, TimeUnit.SECONDS));
+        scheduler.stop();
+        EasyMock.verify(this.ircMock);
+    }
+
+    public void testJoinsDoNotOvertakeOtherTasks()
+        throws InterruptedException
+    {
+        final CountDownLatch sent = new CountDownLatch(3);
+        this.ircMock.rawMessage("JOIN #a");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        this.ircMock.leaveChannel("#b");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        this.ircMock.rawMessage("JOIN #b");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        EasyMock.replay(this.ircMock, this.stateMock);
+        final ScheduledIRCApi scheduler =
+            new ScheduledIRCApi(this.ircMock, this.stateMock, 5, 0L);
+        scheduler.joinChannel("#a");
+        scheduler.leaveChannel("#b");
+        scheduler.joinChannel("#b");
+        scheduler.start();
+        Assert.assertTrue(sent.await(5, TimeUnit.SECONDS));
+        scheduler.stop();
+        EasyMock.verify(this.ircMock);
+    }
+
+    public void testRateLimited() throws InterruptedException
+    {
+        final CountDownLatch sent = new CountDownLatch(2);
+        this.ircMock.message("#test", "first");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        this.ircMock.message("#test", "second");
+        EasyMock.expectLastCall().andAnswer(new CountDown(sent));
+        EasyMock.replay(this.ircMock, this.stateMock);
+        final ScheduledIRCApi scheduler =
+            new ScheduledIRCApi(this.ircMock, this.stateMock, 1, 200L);
+        scheduler.message("#test", "first");
+        scheduler.message("#test", "second");
+        final long start = System.nanoTime();
+        scheduler.start();
+        Assert.assertTrue(sent.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= 150000000L);
+        scheduler.stop();
+        EasyMock.verify(this.ircMock);
+    }
+
+    public void testStopFailsQueuedJoins()
+    {
+        EasyMock.replay(this.ircMock, this.stateMock);
+        final ScheduledIRCApi scheduler =
+            new ScheduledIRCApi(this.ircMock, this.stateMock, 1, 0L);
+        final boolean[] failed = new boolean[1];
+        scheduler.joinChannel("#test", new Callback<IRCChannel>()
+        {
+            @Override
+            public void onSuccess(final IRCChannel channel)
+            {
+                Assert.fail("Join should not have succeeded.");
+            }
+
+            @Override
+            public void onFailure(final Exception e)
+            {
+                failed[0] = true;
+            }
+        });
+        scheduler.stop();
+        Assert.assertTrue(failed[0]);
+        Assert.assertEquals(0, scheduler.getQueueSize());
+        EasyMock.verify(this.ircMock);
+    }
+
+    private static final class CountDown
+        implements IAnswer<Object>
+    {
+        private final CountDownLatch latch;
+
+        private CountDown(final CountDownLatch latch)
+        {
+            this.latch = latch;
+        }
+
+        @Override
+        public Object answer() throws Throwable
+        {
+            this.latch.countDown();
+            return null;
+        }
+    }
+}
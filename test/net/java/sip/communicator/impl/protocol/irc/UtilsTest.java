@@ -17,6 +17,8 @@
  */
 package net.java.sip.communicator.impl.protocol.irc;
 
+import java.util.*;
+
 import junit.framework.*;
 
 /**
@@ -206,4 +208,71 @@ public void testStyleAsNotice()
         Assert.assertEquals("<i>MrNiceGuy</i>: hello world",
             Utils.styleAsNotice(message, nick));
     }
+
+    public void testSplitMessageNull()
+    {
+        try
+        {
+            Utils.splitMessage(null, 10);
+            Assert.fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testSplitMessageTooSmallMaximum()
+    {
+        try
+        {
+            Utils.splitMessage("hello", 1);
+            Assert.fail("Should have failed with IAE.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void testSplitEmptyMessage()
+    {
+        Assert.assertEquals(Arrays.asList(""), Utils.splitMessage("", 10));
+    }
+
+    public void testSplitShortMessage()
+    {
+        Assert.assertEquals(Arrays.asList("hello world"),
+            Utils.splitMessage("hello world", 11));
+    }
+
+    public void testSplitMessageAtSpace()
+    {
+        Assert.assertEquals(Arrays.asList("hello big", "world"),
+            Utils.splitMessage("hello big world", 10));
+    }
+
+    public void testSplitMessageWithoutSpaces()
+    {
+        Assert.assertEquals(Arrays.asList("abcd", "efgh", "ij"),
+            Utils.splitMessage("abcdefghij", 4));
+    }
+
+    public void testSplitMessageKeepsSurrogatePairs()
+    {
+        final String smiley = "\uD83D\uDE00";
+        Assert.assertEquals(Arrays.asList("abc", smiley, "d"),
+            Utils.splitMessage("abc" + smiley + "d", 4));
+    }
+
+    public void testSplitMessageByEncodedLength()
+    {
+        Assert.assertEquals(
+            Arrays.asList("\u00e9\u00e9", "\u00e9\u00e9", "\u00e9"),
+            Utils.splitMessage("\u00e9\u00e9\u00e9\u00e9\u00e9", 4));
+    }
+
+    public void testUtf8Length()
+    {
+        Assert.assertEquals(0, Utils.utf8Length(""));
+        Assert.assertEquals(10, Utils.utf8Length("a\u00e9\u20ac\uD83D\uDE00"));
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.easymock.*;
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.packet.*;
+
+public class MessageRoutingTableTest
+    extends TestCase
+{
+    private static final String ALICE = "alice@example.com";
+
+    private static final String ALICE_PHONE = ALICE + "/phone";
+
+    private static final String ALICE_PC = ALICE + "/pc";
+
+    private MessageRoutingTable table;
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        this.table = new MessageRoutingTable(60 * 60 * 1000);
+    }
+
+    public void testMessageBindsActiveJid()
+    {
+        Assert.assertNull(this.table.getActiveJid(ALICE));
+
+        this.table.putThreadID(ALICE_PHONE, "t1");
+        Assert.assertEquals(ALICE_PHONE, this.table.getActiveJid(ALICE));
+        Assert.assertEquals("t1", this.table.getThreadID(ALICE_PHONE));
+
+        this.table.putThreadID(ALICE_PC, "t2");
+        Assert.assertEquals(
+            ALICE_PC, this.table.getActiveJid("Alice@Example.com"));
+        Assert.assertEquals("t1", this.table.getThreadID(ALICE_PHONE));
+        Assert.assertEquals(1, this.table.getRouteCount());
+    }
+
+    public void testUnavailablePresenceReleasesActiveJid()
+    {
+        this.table.putThreadID(ALICE_PHONE, "t1");
+
+        // another resource going offline changes nothing
+        this.table.processPacket(unavailable(ALICE_PC));
+        Assert.assertEquals(ALICE_PHONE, this.table.getActiveJid(ALICE));
+
+        this.table.processPacket(unavailable(ALICE_PHONE));
+        Assert.assertEquals(ALICE, this.table.getActiveJid(ALICE));
+        Assert.assertNull(this.table.getThreadID(ALICE_PHONE));
+
+        Presence available = new Presence(Presence.Type.available);
+        available.setFrom(ALICE_PHONE);
+        this.table.putThreadID(ALICE_PHONE, "t2");
+        this.table.processPacket(available);
+        Assert.assertEquals(ALICE_PHONE, this.table.getActiveJid(ALICE));
+    }
+
+    public void testCarbonsBindActiveJid()
+    {
+        // a message received by another resource of ours
+        this.table.putCarbonThreadID(ALICE_PHONE, "t1", false);
+        Assert.assertEquals(ALICE_PHONE, this.table.getActiveJid(ALICE));
+
+        // a message sent by another resource of ours, routed by the server
+        this.table.putCarbonThreadID(ALICE, "t2", true);
+        Assert.assertEquals(ALICE_PHONE, this.table.getActiveJid(ALICE));
+        Assert.assertEquals("t2", this.table.getThreadID(ALICE));
+
+        // a message sent by another resource of ours to a resource
+        this.table.putCarbonThreadID(ALICE_PC, "t3", true);
+        Assert.assertEquals(ALICE_PC, this.table.getActiveJid(ALICE));
+        Assert.assertEquals("t3", this.table.getThreadID(ALICE_PC));
+    }
+
+    public void testSentCarbonToBareJidBindsNewConversation()
+    {
+        this.table.putCarbonThreadID(ALICE, "t1", true);
+        Assert.assertEquals(ALICE, this.table.getActiveJid(ALICE));
+    }
+
+    public void testSubscriptionEventsClearContactCache()
+    {
+        Contact first = contact(ALICE);
+        Contact second = contact(ALICE);
+        Contact third = contact(ALICE);
+        OperationSetPersistentPresenceJabberImpl opSetPersPresence
+            = EasyMock.createNiceMock(
+                    OperationSetPersistentPresenceJabberImpl.class);
+
+        // every lookup is checked once more before being cached
+        EasyMock.expect(opSetPersPresence.findContactByID(ALICE))
+            .andReturn(first).times(2)
+            .andReturn(second).times(2)
+            .andReturn(third).times(2);
+        EasyMock.replay(opSetPersPresence);
+        start(opSetPersPresence);
+
+        Assert.assertSame(first, this.table.getContact(ALICE));
+        Assert.assertSame(first, this.table.getContact(ALICE));
+
+        this.table.subscriptionRemoved(
+            new SubscriptionEvent(
+                    first, null, null, SubscriptionEvent.SUBSCRIPTION_REMOVED));
+        Assert.assertSame(second, this.table.getContact(ALICE));
+        Assert.assertSame(second, this.table.getContact(ALICE));
+
+        // an unrelated contact doesn't clear the cache
+        this.table.subscriptionCreated(
+            new SubscriptionEvent(
+                    contact("bob@example.com"),
+                    null,
+                    null,
+                    SubscriptionEvent.SUBSCRIPTION_CREATED));
+        Assert.assertSame(second, this.table.getContact(ALICE));
+
+        this.table.subscriptionMoved(
+            new SubscriptionMovedEvent(second, null, null, null));
+        Assert.assertSame(third, this.table.getContact(ALICE));
+        Assert.assertSame(third, this.table.getContact(ALICE));
+        EasyMock.verify(opSetPersPresence);
+    }
+
+    public void testUnknownJidIsNotCached()
+    {
+        OperationSetPersistentPresenceJabberImpl opSetPersPresence
+            = EasyMock.createNiceMock(
+                    OperationSetPersistentPresenceJabberImpl.class);
+
+        EasyMock.replay(opSetPersPresence);
+        start(opSetPersPresence);
+
+        Assert.assertNull(this.table.getContact("spam@example.com"));
+        Assert.assertEquals(0, this.table.getRouteCount());
+    }
+
+    public void testUnusedRoutesAreRemoved() throws Exception
+    {
+        this.table = new MessageRoutingTable(0, 0);
+
+        Contact alice = contact(ALICE);
+        OperationSetPersistentPresenceJabberImpl opSetPersPresence
+            = EasyMock.createNiceMock(
+                    OperationSetPersistentPresenceJabberImpl.class);
+
+        EasyMock.expect(opSetPersPresence.findContactByID(ALICE))
+            .andStubReturn(alice);
+        EasyMock.replay(opSetPersPresence);
+        start(opSetPersPresence);
+
+        Assert.assertSame(alice, this.table.getContact(ALICE));
+        this.table.putThreadID(ALICE_PHONE, "t1");
+        this.table.putThreadID("spam@example.com/bot", "t2");
+        Assert.assertEquals(2, this.table.getRouteCount());
+
+        Thread.sleep(10);
+        // looking up a thread purges the expired ones
+        Assert.assertNull(this.table.getThreadID(ALICE_PHONE));
+        Assert.assertNull(this.table.getActiveJid(ALICE));
+        Assert.assertNull(this.table.getActiveJid("spam@example.com"));
+        // the cached contact is kept
+        Assert.assertEquals(1, this.table.getRouteCount());
+
+        this.table.subscriptionResolved(
+            new SubscriptionEvent(
+                    alice, null, null, SubscriptionEvent.SUBSCRIPTION_RESOLVED));
+        Assert.assertEquals(0, this.table.getRouteCount());
+    }
+
+    private void start(
+            OperationSetPersistentPresenceJabberImpl opSetPersPresence)
+    {
+        Connection connection = EasyMock.createNiceMock(Connection.class);
+
+        EasyMock.replay(connection);
+        this.table.start(opSetPersPresence, connection);
+    }
+
+    private static Contact contact(String address)
+    {
+        Contact contact = EasyMock.createNiceMock(Contact.class);
+
+        EasyMock.expect(contact.getAddress()).andStubReturn(address);
+        EasyMock.replay(contact);
+        return contact;
+    }
+
+    private static Presence unavailable(String from)
+    {
+        Presence presence = new Presence(Presence.Type.unavailable);
+
+        presence.setFrom(from);
+        return presence;
+    }
+}
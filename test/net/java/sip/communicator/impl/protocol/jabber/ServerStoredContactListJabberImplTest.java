@@ -0,0 +1,344 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.protocol.jabberconstants.*;
+
+import org.easymock.*;
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.packet.*;
+
+/**
+ * Tests the diff of the roster against the local contact list when an
+ * account registers: the list is first synchronized with a roster, then with
+ * another one, and only the events of the second synchronization are checked.
+ */
+public class ServerStoredContactListJabberImplTest
+    extends TestCase
+{
+    private static final String ALICE = "alice@example.com";
+
+    private static final String BOB = "bob@example.com";
+
+    private OperationSetPersistentPresenceJabberImpl parentOperationSet;
+
+    private Connection connection;
+
+    private ServerStoredGroupListener groupListener;
+
+    private ServerStoredContactListJabberImpl contactList;
+
+    /**
+     * The presence the roster holds for every user.
+     */
+    private final Map<String, Presence> presences
+        = new HashMap<String, Presence>();
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        this.parentOperationSet
+            = EasyMock.createNiceMock(
+                    OperationSetPersistentPresenceJabberImpl.class);
+        this.connection = EasyMock.createNiceMock(Connection.class);
+        this.groupListener
+            = EasyMock.createNiceMock(ServerStoredGroupListener.class);
+
+        JabberStatusEnum statusEnum
+            = EasyMock.createNiceMock(JabberStatusEnum.class);
+        ProtocolProviderServiceJabberImpl provider
+            = EasyMock.createNiceMock(ProtocolProviderServiceJabberImpl.class);
+
+        EasyMock.expect(provider.getConnection())
+            .andStubReturn(this.connection);
+        EasyMock.expect(provider.getJabberStatusEnum())
+            .andStubReturn(statusEnum);
+        EasyMock.replay(
+            this.parentOperationSet,
+            this.groupListener,
+            statusEnum,
+            provider);
+
+        this.contactList
+            = new ServerStoredContactListJabberImpl(
+                    this.parentOperationSet, provider, null);
+        this.contactList.addGroupListener(this.groupListener);
+    }
+
+    public void testAddedEntries()
+    {
+        init();
+
+        expectEvents();
+        this.groupListener.groupCreated(
+            EasyMock.<ServerStoredGroupEvent>anyObject());
+        expectSubscriptionEvent(
+            BOB,
+            this.contactList.getRootGroup(),
+            SubscriptionEvent.SUBSCRIPTION_CREATED);
+        // the contacts of a new group come with the group
+        replayEvents();
+        init(entry(ALICE, "Alice", "Friends"), entry(BOB, "Bob", null));
+
+        verifyEvents();
+        Assert.assertEquals(
+            "Friends", getContact(ALICE).getParentContactGroup().getGroupName());
+        Assert.assertSame(
+            this.contactList.getRootGroup(),
+            getContact(BOB).getParentContactGroup());
+    }
+
+    public void testMovedEntry()
+    {
+        init(
+            entry(ALICE, "Alice", "Friends"),
+            entry(BOB, "Bob", "Friends"),
+            entry("carol@example.com", "Carol", "Work"));
+
+        ContactJabberImpl alice = getContact(ALICE);
+        ContactGroup friends = this.contactList.findContactGroup("Friends");
+        ContactGroup work = this.contactList.findContactGroup("Work");
+
+        expectEvents();
+        this.parentOperationSet.fireSubscriptionMovedEvent(alice, friends, work);
+        replayEvents();
+        init(
+            entry(ALICE, "Alice", "Work"),
+            entry(BOB, "Bob", "Friends"),
+            entry("carol@example.com", "Carol", "Work"));
+
+        verifyEvents();
+        Assert.assertSame(work, alice.getParentContactGroup());
+    }
+
+    public void testRenamedEntry()
+    {
+        init(entry(ALICE, "Alice", null));
+
+        expectEvents();
+        this.parentOperationSet.fireContactPropertyChangeEvent(
+            ContactPropertyChangeEvent.PROPERTY_DISPLAY_NAME,
+            getContact(ALICE),
+            "Alice",
+            "Ally");
+        replayEvents();
+        init(entry(ALICE, "Ally", null));
+
+        verifyEvents();
+    }
+
+    public void testRemovedEntry()
+    {
+        init(entry(ALICE, "Alice", "Friends"), entry(BOB, "Bob", null));
+
+        ContactGroup friends = this.contactList.findContactGroup("Friends");
+
+        expectEvents();
+        expectSubscriptionEvent(
+            ALICE, friends, SubscriptionEvent.SUBSCRIPTION_REMOVED);
+        replayEvents();
+        init(entry(BOB, "Bob", null));
+
+        verifyEvents();
+        Assert.assertNull(getContact(ALICE));
+        // the group is kept as we may have created it empty
+        Assert.assertSame(
+            friends, this.contactList.findContactGroup("Friends"));
+    }
+
+    public void testUnchangedEntriesOnlyFirePresence()
+    {
+        init(entry(ALICE, "Alice", "Friends"), entry(BOB, "Bob", null));
+
+        EasyMock.resetToDefault(this.parentOperationSet, this.groupListener);
+        // presence may be received before the roster is, and is replayed
+        this.parentOperationSet.firePresenceStatusChanged(presence(ALICE));
+        this.parentOperationSet.firePresenceStatusChanged(presence(BOB));
+        replayEvents();
+        init(entry(ALICE, "Alice", "Friends"), entry(BOB, "Bob", null));
+
+        verifyEvents();
+    }
+
+    public void testPersistedContactsAreResolved()
+    {
+        ContactGroupJabberImpl friends
+            = this.contactList.createUnresolvedContactGroup("Friends");
+        ContactJabberImpl alice
+            = this.contactList.createUnresolvedContact(friends, ALICE);
+
+        expectEvents();
+        this.groupListener.groupResolved(
+            EasyMock.<ServerStoredGroupEvent>anyObject());
+        this.parentOperationSet.fireSubscriptionEvent(
+            alice, friends, SubscriptionEvent.SUBSCRIPTION_RESOLVED);
+        replayEvents();
+        init(entry(ALICE, "Alice", "Friends"));
+
+        verifyEvents();
+        Assert.assertTrue(alice.isResolved());
+        Assert.assertTrue(friends.isResolved());
+    }
+
+    /**
+     * Expects the events of a synchronization, which fires presence for
+     * every contact in any case.
+     */
+    private void expectEvents()
+    {
+        EasyMock.resetToDefault(this.parentOperationSet, this.groupListener);
+        this.parentOperationSet.firePresenceStatusChanged(
+            EasyMock.<Presence>anyObject());
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.expect(this.parentOperationSet.getServerStoredContactListRoot())
+            .andStubReturn(this.contactList.getRootGroup());
+    }
+
+    private void expectSubscriptionEvent(
+            final String address, ContactGroup parentGroup, int eventID)
+    {
+        this.parentOperationSet.fireSubscriptionEvent(
+            EasyMock.<Contact>anyObject(),
+            EasyMock.same(parentGroup),
+            EasyMock.eq(eventID));
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>()
+        {
+            public Object answer()
+            {
+                Assert.assertEquals(
+                    address,
+                    ((Contact) EasyMock.getCurrentArguments()[0])
+                        .getAddress());
+                return null;
+            }
+        });
+    }
+
+    private void replayEvents()
+    {
+        EasyMock.replay(this.parentOperationSet, this.groupListener);
+    }
+
+    private void verifyEvents()
+    {
+        EasyMock.verify(this.parentOperationSet, this.groupListener);
+    }
+
+    private ContactJabberImpl getContact(String address)
+    {
+        return this.contactList.findContactById(address);
+    }
+
+    /**
+     * Synchronizes the contact list with a roster, as on registration.
+     *
+     * @param entries the entries of the roster, each made of a user, a name
+     * and the name of a group or <tt>null</tt>
+     */
+    private void init(String[]... entries)
+    {
+        Map<String, List<RosterEntry>> groupEntries
+            = new LinkedHashMap<String, List<RosterEntry>>();
+        List<RosterEntry> rosterEntries = new ArrayList<RosterEntry>();
+        Roster roster = EasyMock.createNiceMock(Roster.class);
+
+        for (String[] e : entries)
+        {
+            RosterEntry rosterEntry
+                = EasyMock.createNiceMock(RosterEntry.class);
+
+            EasyMock.expect(rosterEntry.getUser()).andStubReturn(e[0]);
+            EasyMock.expect(rosterEntry.getName()).andStubReturn(e[1]);
+            EasyMock.expect(rosterEntry.getType())
+                .andStubReturn(RosterPacket.ItemType.both);
+            EasyMock.replay(rosterEntry);
+            rosterEntries.add(rosterEntry);
+
+            if (e[2] != null)
+            {
+                List<RosterEntry> group = groupEntries.get(e[2]);
+
+                if (group == null)
+                {
+                    group = new ArrayList<RosterEntry>();
+                    groupEntries.put(e[2], group);
+                }
+                group.add(rosterEntry);
+            }
+            EasyMock.expect(roster.getPresence(e[0]))
+                .andStubReturn(presence(e[0]));
+        }
+
+        List<RosterGroup> rosterGroups = new ArrayList<RosterGroup>();
+
+        for (Map.Entry<String, List<RosterEntry>> e : groupEntries.entrySet())
+        {
+            RosterGroup rosterGroup
+                = EasyMock.createNiceMock(RosterGroup.class);
+
+            EasyMock.expect(rosterGroup.getName()).andStubReturn(e.getKey());
+            EasyMock.expect(rosterGroup.getEntries())
+                .andStubReturn(e.getValue());
+            EasyMock.replay(rosterGroup);
+            rosterGroups.add(rosterGroup);
+        }
+
+        EasyMock.expect(roster.getGroups()).andStubReturn(rosterGroups);
+        EasyMock.expect(roster.getEntries()).andStubReturn(rosterEntries);
+        EasyMock.replay(roster);
+
+        EasyMock.resetToNice(this.connection);
+        EasyMock.expect(this.connection.getRoster()).andStubReturn(roster);
+        EasyMock.replay(this.connection);
+
+        OperationSetPersistentPresenceJabberImpl.ContactChangesListener
+            presenceChangeListener
+                = EasyMock.createNiceMock(
+                        OperationSetPersistentPresenceJabberImpl
+                            .ContactChangesListener.class);
+
+        EasyMock.replay(presenceChangeListener);
+
+        this.contactList.cleanup();
+        this.contactList.init(presenceChangeListener);
+    }
+
+    private Presence presence(String user)
+    {
+        Presence presence = this.presences.get(user);
+
+        if (presence == null)
+        {
+            presence = new Presence(Presence.Type.unavailable);
+            presence.setFrom(user);
+            this.presences.put(user, presence);
+        }
+        return presence;
+    }
+
+    private static String[] entry(String user, String name, String group)
+    {
+        return new String[] { user, name, group };
+    }
+}
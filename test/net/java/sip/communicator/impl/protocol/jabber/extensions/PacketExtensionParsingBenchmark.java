@@ -0,0 +1,256 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber.extensions;
+
+import java.io.*;
+
+import net.java.sip.communicator.impl.protocol.jabber.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+import net.java.sip.communicator.service.protocol.jabber.*;
+import net.java.sip.communicator.slick.benchmark.*;
+
+import org.jivesoftware.smack.provider.*;
+import org.xmlpull.mxp1.*;
+import org.xmlpull.v1.*;
+
+/**
+ * Benchmarks parsing the Jingle and COLIBRI IQs a conference focus and its
+ * participants exchange, which go through the
+ * <tt>DefaultPacketExtensionProvider</tt> for nearly every element. Like the
+ * chat benchmarks it doesn't need a running framework and is started on its
+ * own by the <tt>benchmark</tt> Ant target.
+ */
+public class PacketExtensionParsingBenchmark
+{
+    /**
+     * The number of IQs parsed in every measured iteration.
+     */
+    private static final int IQ_COUNT = 100;
+
+    /**
+     * The number of channels in every content of the COLIBRI IQ.
+     */
+    private static final int CHANNEL_COUNT = 50;
+
+    /**
+     * Runs the benchmarks and writes their results.
+     *
+     * @param args ignored.
+     * @throws Exception if a benchmark fails.
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        AbstractSmackInteroperabilityLayer.setImplementationClass(
+                SmackV3InteroperabilityLayer.class);
+
+        BenchmarkRunner runner = new BenchmarkRunner("xmpp");
+
+        measure(
+                runner,
+                "JingleIQProvider.parseIQ",
+                new JingleIQProvider(),
+                createSessionInitiate());
+        measure(
+                runner,
+                "ColibriIQProvider.parseIQ",
+                new ColibriIQProvider(),
+                createConference());
+
+        runner.writeResults();
+    }
+
+    /**
+     * Measures parsing <tt>IQ_COUNT</tt> times the child element of an IQ.
+     *
+     * @param runner the runner collecting the results.
+     * @param name the name of the benchmark.
+     * @param provider the provider parsing the child element.
+     * @param xml the child element of the IQ.
+     * @throws Exception if the benchmark fails.
+     */
+    private static void measure(BenchmarkRunner runner,
+                                String name,
+                                final IQProvider provider,
+                                final String xml)
+        throws Exception
+    {
+        runner.measure(
+                name,
+                IQ_COUNT,
+                new BenchmarkRunner.Operation()
+                {
+                    public void run()
+                        throws Exception
+                    {
+                        for (int i = 0; i < IQ_COUNT; i++)
+                        {
+                            XmlPullParser parser = new MXParser();
+
+                            parser.setFeature(
+                                    XmlPullParser.FEATURE_PROCESS_NAMESPACES,
+                                    true);
+                            parser.setInput(new StringReader(xml));
+                            parser.nextTag();
+                            if (provider.parseIQ(parser) == null)
+                                throw new IllegalStateException(xml);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Creates a Jingle <tt>session-initiate</tt> with an audio and a video
+     * content, resembling the ones of a conference focus.
+     *
+     * @return the <tt>jingle</tt> element.
+     */
+    private static String createSessionInitiate()
+    {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<jingle xmlns='").append(JingleIQ.NAMESPACE)
+            .append("' action='session-initiate'")
+            .append(" initiator='focus@example.com/focus'")
+            .append(" sid='1a2b3c4d5e'>");
+        appendContent(xml, "audio", new String[]
+                {
+                    "111 opus 48000 2", "103 ISAC 16000 1", "104 ISAC 32000 1",
+                    "9 G722 8000 1", "0 PCMU 8000 1", "8 PCMA 8000 1",
+                    "126 telephone-event 8000 1"
+                });
+        appendContent(xml, "video", new String[]
+                {
+                    "100 VP8 90000 1", "101 VP9 90000 1", "116 red 90000 1",
+                    "117 ulpfec 90000 1", "96 rtx 90000 1", "107 H264 90000 1"
+                });
+        xml.append("</jingle>");
+        return xml.toString();
+    }
+
+    /**
+     * Appends a Jingle content with the given payload types, a few sources
+     * and an ICE-UDP transport with DTLS fingerprint and candidates.
+     *
+     * @param xml where to append.
+     * @param media the media type of the content.
+     * @param payloadTypes the id, name, clock rate and channels of every
+     * payload type.
+     */
+    private static void appendContent(StringBuilder xml,
+                                      String media,
+                                      String[] payloadTypes)
+    {
+        xml.append("<content creator='initiator' name='").append(media)
+            .append("' senders='both'>")
+            .append("<description xmlns='")
+            .append(RtpDescriptionPacketExtension.NAMESPACE)
+            .append("' media='").append(media).append("'>");
+        for (String payloadType : payloadTypes)
+        {
+            String[] fields = payloadType.split(" ");
+
+            xml.append("<payload-type id='").append(fields[0])
+                .append("' name='").append(fields[1])
+                .append("' clockrate='").append(fields[2])
+                .append("' channels='").append(fields[3]).append("'>")
+                .append("<parameter name='minptime' value='10'/>")
+                .append("<rtcp-fb xmlns='urn:xmpp:jingle:apps:rtp:rtcp-fb:0'")
+                .append(" type='nack'/>")
+                .append("</payload-type>");
+        }
+        xml.append("<rtp-hdrext xmlns='")
+            .append(RTPHdrExtPacketExtension.NAMESPACE)
+            .append("' id='1' uri='urn:ietf:params:rtp-hdrext:ssrc-audio-level'")
+            .append("/>");
+        for (int i = 0; i < 10; i++)
+        {
+            xml.append("<source xmlns='urn:xmpp:jingle:apps:rtp:ssma:0'")
+                .append(" ssrc='").append(1000000 + i).append("'>")
+                .append("<parameter name='cname' value='cname").append(i)
+                .append("'/><parameter name='msid' value='stream").append(i)
+                .append(" track").append(i).append("'/></source>");
+        }
+        xml.append("</description>")
+            .append("<transport xmlns='urn:xmpp:jingle:transports:ice-udp:1'")
+            .append(" pwd='asd88fgpdd777uzjYhagZg' ufrag='8hhY'>")
+            .append("<fingerprint xmlns='")
+            .append(DtlsFingerprintPacketExtension.NAMESPACE)
+            .append("' hash='sha-256' setup='actpass'>")
+            .append("D2:FA:0E:C3:22:59:5E:14:95:69:92:3D:13:B4:84:24:2C:C2:A2")
+            .append("</fingerprint>");
+        for (int i = 0; i < 6; i++)
+        {
+            xml.append("<candidate component='1' foundation='").append(i)
+                .append("' generation='0' id='c").append(i)
+                .append("' ip='192.168.1.").append(10 + i)
+                .append("' network='0' port='10000' priority='2130706431'")
+                .append(" protocol='udp' type='host'/>");
+        }
+        xml.append("</transport></content>");
+    }
+
+    /**
+     * Creates the COLIBRI <tt>conference</tt> a bridge returns for a
+     * conference with <tt>CHANNEL_COUNT</tt> participants.
+     *
+     * @return the <tt>conference</tt> element.
+     */
+    private static String createConference()
+    {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<conference xmlns='").append(ColibriConferenceIQ.NAMESPACE)
+            .append("' id='9b6a3f'>");
+        for (String media : new String[] { "audio", "video" })
+        {
+            xml.append("<content name='").append(media).append("'>");
+            for (int i = 0; i < CHANNEL_COUNT; i++)
+            {
+                xml.append("<channel id='").append(media).append(i)
+                    .append("' endpoint='endpoint").append(i)
+                    .append("' channel-bundle-id='endpoint").append(i)
+                    .append("' expire='60' initiator='true'")
+                    .append(" rtp-level-relay-type='translator'>")
+                    .append("<payload-type id='100' name='VP8'")
+                    .append(" clockrate='90000' channels='1'>")
+                    .append("<parameter name='minptime' value='10'/>")
+                    .append("</payload-type>")
+                    .append("<source xmlns='urn:xmpp:jingle:apps:rtp:ssma:0'")
+                    .append(" ssrc='").append(2000000 + i).append("'/>")
+                    .append("</channel>");
+            }
+            xml.append("</content>");
+        }
+        for (int i = 0; i < CHANNEL_COUNT; i++)
+        {
+            xml.append("<channel-bundle id='endpoint").append(i).append("'>")
+                .append("<transport")
+                .append(" xmlns='urn:xmpp:jingle:transports:ice-udp:1'")
+                .append(" pwd='asd88fgpdd777uzjYhagZg' ufrag='8hhY'>")
+                .append("<candidate component='1' foundation='1'")
+                .append(" generation='0' id='c1' ip='10.0.0.1'")
+                .append(" network='0' port='10000' priority='2130706431'")
+                .append(" protocol='udp' type='host'/>")
+                .append("</transport></channel-bundle>");
+        }
+        xml.append("</conference>");
+        return xml.toString();
+    }
+}
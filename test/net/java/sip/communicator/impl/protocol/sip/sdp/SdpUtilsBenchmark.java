@@ -0,0 +1,222 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.sip.sdp;
+
+import javax.sdp.*;
+
+import net.java.sip.communicator.slick.benchmark.*;
+
+/**
+ * Benchmarks parsing a complex SDP offer and walking its media descriptions
+ * the way <tt>CallPeerMediaHandlerSipImpl</tt> does. Like the chat
+ * benchmarks it doesn't need a running framework, so the SIP bundle doesn't
+ * have to export this package for it, and is started on its own by the
+ * <tt>benchmark</tt> Ant target.
+ */
+public class SdpUtilsBenchmark
+{
+    /**
+     * Runs the benchmark and writes its results.
+     *
+     * @param args ignored.
+     * @throws Exception if the benchmark fails.
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        BenchmarkRunner runner = new BenchmarkRunner("sdp");
+        final String offer = createSdpOffer();
+
+        runner.measure(
+                "SdpUtils.parseSdpString",
+                1,
+                new BenchmarkRunner.Operation()
+                {
+                    public void run()
+                        throws Exception
+                    {
+                        SessionDescription sdp
+                            = SdpUtils.parseSdpString(offer);
+
+                        for (MediaDescription mediaDesc
+                                : SdpUtils.extractMediaDescriptions(sdp))
+                        {
+                            if (SdpUtils.getMediaType(mediaDesc) == null
+                                    || SdpUtils.getDirection(mediaDesc)
+                                        == null)
+                            {
+                                throw new IllegalStateException(offer);
+                            }
+                        }
+                    }
+                });
+
+        runner.writeResults();
+    }
+
+    /**
+     * Creates an audio and video SDP offer resembling the ones of current
+     * WebRTC and desktop clients: many payload types with their
+     * <tt>fmtp</tt> and <tt>rtcp-fb</tt> parameters, RTP header extensions,
+     * SRTP and ZRTP keying and a full set of ICE candidates.
+     *
+     * @return the SDP offer.
+     */
+    private static String createSdpOffer()
+    {
+        StringBuilder sdp = new StringBuilder();
+
+        sdp.append("v=0\r\n")
+            .append("o=jitsi 1234567890 2 IN IP4 192.168.1.10\r\n")
+            .append("s=-\r\n")
+            .append("c=IN IP4 192.168.1.10\r\n")
+            .append("t=0 0\r\n")
+            .append("a=ice-ufrag:8hhY\r\n")
+            .append("a=ice-pwd:asd88fgpdd777uzjYhagZg\r\n");
+
+        int[] audioPayloads
+            = { 111, 103, 104, 9, 0, 8, 106, 105, 13, 110, 112, 113, 126, 96,
+                97, 98, 99, 100, 101, 102 };
+
+        appendMedia(sdp, "audio", 5000, audioPayloads);
+        sdp.append("a=rtpmap:111 opus/48000/2\r\n")
+            .append("a=fmtp:111 minptime=10;useinbandfec=1\r\n")
+            .append("a=rtpmap:103 ISAC/16000\r\n")
+            .append("a=rtpmap:104 ISAC/32000\r\n")
+            .append("a=rtpmap:9 G722/8000\r\n")
+            .append("a=rtpmap:0 PCMU/8000\r\n")
+            .append("a=rtpmap:8 PCMA/8000\r\n")
+            .append("a=rtpmap:106 CN/32000\r\n")
+            .append("a=rtpmap:105 CN/16000\r\n")
+            .append("a=rtpmap:13 CN/8000\r\n")
+            .append("a=rtpmap:110 telephone-event/48000\r\n")
+            .append("a=rtpmap:112 telephone-event/32000\r\n")
+            .append("a=rtpmap:113 telephone-event/16000\r\n")
+            .append("a=rtpmap:126 telephone-event/8000\r\n")
+            .append("a=fmtp:126 0-15\r\n");
+        for (int pt = 96; pt <= 102; pt++)
+            sdp.append("a=rtpmap:").append(pt).append(" SILK/24000\r\n");
+        sdp.append("a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n")
+            .append("a=rtcp-mux\r\n");
+        appendKeying(sdp, 5000);
+
+        int[] videoPayloads = { 100, 101, 116, 117, 96, 97, 98, 99, 107, 108 };
+
+        appendMedia(sdp, "video", 5010, videoPayloads);
+        sdp.append("a=rtpmap:100 VP8/90000\r\n")
+            .append("a=rtcp-fb:100 ccm fir\r\n")
+            .append("a=rtcp-fb:100 nack\r\n")
+            .append("a=rtcp-fb:100 nack pli\r\n")
+            .append("a=rtcp-fb:100 goog-remb\r\n")
+            .append("a=rtpmap:101 VP9/90000\r\n")
+            .append("a=rtcp-fb:101 nack pli\r\n")
+            .append("a=rtpmap:116 red/90000\r\n")
+            .append("a=rtpmap:117 ulpfec/90000\r\n")
+            .append("a=rtpmap:96 rtx/90000\r\n")
+            .append("a=fmtp:96 apt=100\r\n")
+            .append("a=rtpmap:97 rtx/90000\r\n")
+            .append("a=fmtp:97 apt=101\r\n")
+            .append("a=rtpmap:98 H264/90000\r\n")
+            .append("a=fmtp:98 profile-level-id=42e01f;")
+            .append("packetization-mode=1\r\n")
+            .append("a=rtpmap:99 H264/90000\r\n")
+            .append("a=fmtp:99 profile-level-id=42e01f;")
+            .append("packetization-mode=0\r\n")
+            .append("a=rtpmap:107 H263-1998/90000\r\n")
+            .append("a=rtpmap:108 H263/90000\r\n")
+            .append("a=imageattr:100 send * recv [x=[0-1920],y=[0-1080]]\r\n")
+            .append("a=extmap:2 urn:ietf:params:rtp-hdrext:toffset\r\n")
+            .append("a=extmap:3 http://www.webrtc.org/experiments/rtp-hdrext/"
+                    + "abs-send-time\r\n")
+            .append("a=rtcp-mux\r\n");
+        appendKeying(sdp, 5010);
+
+        return sdp.toString();
+    }
+
+    /**
+     * Appends a media line with the given payload types, a direction and a
+     * few <tt>ssrc</tt> attributes to <tt>sdp</tt>.
+     *
+     * @param sdp where to append.
+     * @param media the media type.
+     * @param port the RTP port.
+     * @param payloads the payload types.
+     */
+    private static void appendMedia(StringBuilder sdp,
+                                    String media,
+                                    int port,
+                                    int[] payloads)
+    {
+        sdp.append("m=").append(media).append(' ').append(port)
+            .append(" RTP/SAVPF");
+        for (int payload : payloads)
+            sdp.append(' ').append(payload);
+        sdp.append("\r\n")
+            .append("a=sendrecv\r\n")
+            .append("a=mid:").append(media).append("\r\n");
+
+        long ssrc = 1000000L + port;
+
+        sdp.append("a=ssrc:").append(ssrc).append(" cname:jitsi\r\n")
+            .append("a=ssrc:").append(ssrc).append(" msid:stream track\r\n")
+            .append("a=ssrc:").append(ssrc).append(" mslabel:stream\r\n")
+            .append("a=ssrc:").append(ssrc).append(" label:track\r\n");
+    }
+
+    /**
+     * Appends SDES and ZRTP keying attributes and host, server reflexive and
+     * relayed ICE candidates for the RTP and RTCP components to
+     * <tt>sdp</tt>.
+     *
+     * @param sdp where to append.
+     * @param port the RTP port of the candidates.
+     */
+    private static void appendKeying(StringBuilder sdp, int port)
+    {
+        sdp.append("a=crypto:1 AES_CM_128_HMAC_SHA1_80 inline:")
+            .append("WVNfX19zZW1jdGwgKCkgewkyMjA7fQp9CnVubGVz|2^20|1:32\r\n")
+            .append("a=crypto:2 AES_CM_128_HMAC_SHA1_32 inline:")
+            .append("NzB4d1BINUAvLEw6UzF3WSJ+PSdFcGdUJShpX1Zj|2^20|1:32\r\n")
+            .append("a=zrtp-hash:1.10 ")
+            .append("fc4a5c4e0dc2e5a0d4f68c7b4d8f2a3b9c1d7e6f")
+            .append("5a4b3c2d1e0f9a8b7c6d5e4f\r\n");
+
+        for (int component = 1; component <= 2; component++)
+        {
+            for (int i = 0; i < 4; i++)
+            {
+                sdp.append("a=candidate:").append(i).append(' ')
+                    .append(component).append(" udp 2130706431 192.168.1.")
+                    .append(10 + i).append(' ').append(port + component - 1)
+                    .append(" typ host generation 0\r\n");
+            }
+            sdp.append("a=candidate:4 ").append(component)
+                .append(" udp 1694498815 203.0.113.7 ")
+                .append(port + component + 40000)
+                .append(" typ srflx raddr 192.168.1.10 rport ")
+                .append(port + component - 1).append(" generation 0\r\n")
+                .append("a=candidate:5 ").append(component)
+                .append(" udp 16777215 198.51.100.3 ")
+                .append(port + component + 50000)
+                .append(" typ relay raddr 203.0.113.7 rport ")
+                .append(port + component + 40000)
+                .append(" generation 0\r\n");
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.otr;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+import net.java.otr4j.session.*;
+
+public class OtrSessionExecutorTest
+    extends TestCase
+{
+    private static final SessionID ALICE
+        = new SessionID("me@example.com", "alice@example.com", "Jabber");
+
+    private static final SessionID BOB
+        = new SessionID("me@example.com", "bob@example.com", "Jabber");
+
+    private OtrSessionExecutor executor;
+
+    /**
+     * Released to let the blocking operation return.
+     */
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    public void tearDown() throws Exception
+    {
+        unblock.countDown();
+        if (this.executor != null)
+            this.executor.shutdown();
+        super.tearDown();
+    }
+
+    public void testOperationsOfASessionRunInOrder() throws Exception
+    {
+        this.executor = new OtrSessionExecutor(4);
+        final List<Integer> order
+            = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+
+        for (int i = 0; i < 100; i++)
+        {
+            final int n = i;
+
+            futures.add(
+                this.executor.submit(ALICE, new Callable<Integer>()
+                {
+                    public Integer call()
+                    {
+                        order.add(n);
+                        return n;
+                    }
+                }));
+        }
+        Assert.assertEquals(
+            Integer.valueOf(100),
+            this.executor.invoke(ALICE, new Callable<Integer>()
+            {
+                public Integer call()
+                {
+                    return order.size();
+                }
+            }));
+
+        for (int i = 0; i < 100; i++)
+        {
+            Assert.assertEquals(Integer.valueOf(i), order.get(i));
+            Assert.assertTrue(futures.get(i).isDone());
+        }
+        Assert.assertEquals(101, this.executor.getMetrics(ALICE).getCount());
+    }
+
+    public void testSessionsDoNotHoldUpEachOther() throws Exception
+    {
+        this.executor = new OtrSessionExecutor(2);
+        block(ALICE);
+
+        Assert.assertEquals("bob", this.executor.invoke(BOB, value("bob")));
+    }
+
+    public void testInvokeWaitsForPendingOperations() throws Exception
+    {
+        this.executor = new OtrSessionExecutor(2);
+        block(ALICE);
+
+        final BlockingQueue<String> results
+            = new LinkedBlockingQueue<String>();
+
+        new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    results.add(executor.invoke(ALICE, value("alice")));
+                }
+                catch (Exception e)
+                {
+                    results.add(e.toString());
+                }
+            }
+        }.start();
+
+        Assert.assertNull(results.poll(200, TimeUnit.MILLISECONDS));
+        unblock.countDown();
+        Assert.assertEquals("alice", results.poll(5, TimeUnit.SECONDS));
+    }
+
+    public void testInvokeRunsInCallingThreadWhenIdle() throws Exception
+    {
+        this.executor = new OtrSessionExecutor(2);
+
+        Assert.assertSame(
+            Thread.currentThread(),
+            this.executor.invoke(ALICE, new Callable<Thread>()
+            {
+                public Thread call()
+                {
+                    return Thread.currentThread();
+                }
+            }));
+    }
+
+    public void testNestedInvokeDoesNotNeedAFreeThread() throws Exception
+    {
+        // a single thread which runs the operation of ALICE
+        this.executor = new OtrSessionExecutor(1);
+
+        Future<String> future
+            = this.executor.submit(ALICE, new Callable<String>()
+            {
+                public String call() throws Exception
+                {
+                    return executor.invoke(BOB, value("bob")) + "+alice";
+                }
+            });
+
+        Assert.assertEquals("bob+alice", future.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, this.executor.getMetrics(BOB).getCount());
+    }
+
+    public void testShutdownCancelsPendingOperations() throws Exception
+    {
+        this.executor = new OtrSessionExecutor(2);
+        block(ALICE);
+
+        Future<String> pending = this.executor.submit(ALICE, value("alice"));
+        this.executor.shutdown();
+
+        Assert.assertTrue(pending.isCancelled());
+        try
+        {
+            this.executor.invoke(ALICE, value("alice"));
+            Assert.fail("An operation was run after the shutdown.");
+        }
+        catch (CancellationException e)
+        {
+        }
+        Assert.assertTrue(
+            this.executor.submit(BOB, value("bob")).isCancelled());
+    }
+
+    /**
+     * Submits an operation of a session which doesn't return before
+     * {@link #unblock} is released, and waits for it to start.
+     */
+    private void block(SessionID sessionID) throws InterruptedException
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+
+        this.executor.submit(sessionID, new Callable<Void>()
+        {
+            public Void call() throws InterruptedException
+            {
+                started.countDown();
+                unblock.await();
+                return null;
+            }
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private static Callable<String> value(final String value)
+    {
+        return new Callable<String>()
+        {
+            public String call()
+            {
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.reconnectplugin;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.easymock.*;
+
+public class ReconnectSchedulerTest
+    extends TestCase
+{
+    private Timer timer;
+
+    private ReconnectScheduler scheduler;
+
+    /**
+     * The providers in the order their reconnects were started.
+     */
+    private final BlockingQueue<ProtocolProviderService> started
+        = new LinkedBlockingQueue<ProtocolProviderService>();
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        this.timer = new Timer(true);
+        this.scheduler = new ReconnectScheduler(this.timer, null);
+    }
+
+    public void tearDown() throws Exception
+    {
+        this.timer.cancel();
+        super.tearDown();
+    }
+
+    public void testAtMostThreeReconnectsInProgress()
+        throws InterruptedException
+    {
+        List<ProtocolProviderService> providers
+            = new ArrayList<ProtocolProviderService>();
+        for (int i = 0; i < 5; i++)
+        {
+            ProtocolProviderService pp = provider(ProtocolNames.JABBER, i);
+            providers.add(pp);
+            submit(pp);
+        }
+
+        Set<ProtocolProviderService> first
+            = new HashSet<ProtocolProviderService>();
+        for (int i = 0; i < 3; i++)
+        {
+            first.add(nextStarted());
+        }
+        Assert.assertEquals(
+            new HashSet<ProtocolProviderService>(providers.subList(0, 3)),
+            first);
+        Assert.assertNull(this.started.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(3, this.scheduler.getInProgressCount());
+        Assert.assertEquals(2, this.scheduler.getPendingCount());
+
+        this.scheduler.reconnectFinished(providers.get(1), true);
+        Assert.assertSame(providers.get(3), nextStarted());
+        Assert.assertNull(this.started.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(3, this.scheduler.getInProgressCount());
+        Assert.assertEquals(1, this.scheduler.getPendingCount());
+    }
+
+    public void testPendingReconnectsStartInPriorityOrder()
+        throws InterruptedException
+    {
+        List<ProtocolProviderService> running = fillSlots();
+
+        ProtocolProviderService icq = provider(ProtocolNames.ICQ, 3);
+        ProtocolProviderService jabber = provider(ProtocolNames.JABBER, 4);
+        ProtocolProviderService sip = provider(ProtocolNames.SIP, 5);
+        submit(icq);
+        submit(jabber);
+        submit(sip);
+
+        this.scheduler.reconnectFinished(running.get(0), false);
+        Assert.assertSame(sip, nextStarted());
+        this.scheduler.reconnectFinished(running.get(1), false);
+        Assert.assertSame(jabber, nextStarted());
+        this.scheduler.reconnectFinished(running.get(2), false);
+        Assert.assertSame(icq, nextStarted());
+    }
+
+    public void testEqualPrioritiesStartInSubmitOrder()
+        throws InterruptedException
+    {
+        List<ProtocolProviderService> running = fillSlots();
+
+        ProtocolProviderService[] providers = new ProtocolProviderService[3];
+        for (int i = 0; i < providers.length; i++)
+        {
+            providers[i] = provider(ProtocolNames.SIP, 3 + i);
+            submit(providers[i]);
+        }
+
+        for (int i = 0; i < providers.length; i++)
+        {
+            this.scheduler.reconnectFinished(running.get(i), true);
+            Assert.assertSame(providers[i], nextStarted());
+        }
+    }
+
+    public void testResubmitReplacesPendingReconnect()
+        throws InterruptedException
+    {
+        fillSlots();
+
+        ProtocolProviderService pp = provider(ProtocolNames.JABBER, 3);
+        submit(pp);
+        submit(pp);
+        Assert.assertEquals(1, this.scheduler.getPendingCount());
+    }
+
+    public void testSlotIsReleasedAfterTimeout() throws InterruptedException
+    {
+        this.scheduler = new ReconnectScheduler(this.timer, null, 200);
+        fillSlots();
+
+        // none of the started reconnects reports its outcome
+        ProtocolProviderService pp = provider(ProtocolNames.JABBER, 3);
+        submit(pp);
+        Assert.assertNull(this.started.poll(100, TimeUnit.MILLISECONDS));
+        Assert.assertSame(pp, nextStarted());
+    }
+
+    public void testDefaultTimeoutIsThirtySeconds()
+    {
+        Assert.assertEquals(
+            30 * 1000, ReconnectScheduler.MAX_RECONNECT_DURATION);
+    }
+
+    public void testCancelFreesSlot() throws InterruptedException
+    {
+        List<ProtocolProviderService> running = fillSlots();
+
+        ProtocolProviderService pp = provider(ProtocolNames.JABBER, 3);
+        submit(pp);
+        this.scheduler.cancel(running.get(0));
+        Assert.assertSame(pp, nextStarted());
+    }
+
+    public void testReconnectTimeIsRecorded() throws InterruptedException
+    {
+        ProtocolProviderService pp = provider(ProtocolNames.SIP, 0);
+        this.scheduler.markDisconnected(pp);
+        submit(pp);
+        nextStarted();
+
+        this.scheduler.reconnectFinished(pp, true);
+        Assert.assertEquals(
+            Integer.valueOf(1),
+            this.scheduler.getReconnectCounts().get("uid0"));
+        Assert.assertTrue(
+            this.scheduler.getLastReconnectTimes().get("uid0") >= 0);
+
+        // a failed registration doesn't count
+        this.scheduler.markDisconnected(pp);
+        submit(pp);
+        nextStarted();
+        this.scheduler.reconnectFinished(pp, false);
+        Assert.assertEquals(
+            Integer.valueOf(1),
+            this.scheduler.getReconnectCounts().get("uid0"));
+    }
+
+    /**
+     * Takes all the slots with reconnects which don't report their outcome.
+     */
+    private List<ProtocolProviderService> fillSlots()
+        throws InterruptedException
+    {
+        List<ProtocolProviderService> running
+            = new ArrayList<ProtocolProviderService>();
+        for (int i = 0; i < 3; i++)
+        {
+            ProtocolProviderService pp = provider(ProtocolNames.JABBER, i);
+            running.add(pp);
+            submit(pp);
+            Assert.assertSame(pp, nextStarted());
+        }
+        return running;
+    }
+
+    private ProtocolProviderService provider(String protocol, int index)
+    {
+        AccountID account = EasyMock.createNiceMock(AccountID.class);
+        EasyMock.expect(account.getDisplayName())
+            .andStubReturn("account" + index);
+        EasyMock.expect(account.getAccountUniqueID())
+            .andStubReturn("uid" + index);
+        EasyMock.replay(account);
+
+        ProtocolProviderService pp
+            = EasyMock.createNiceMock(ProtocolProviderService.class);
+        EasyMock.expect(pp.getProtocolName()).andStubReturn(protocol);
+        EasyMock.expect(pp.getAccountID()).andStubReturn(account);
+        EasyMock.replay(pp);
+        return pp;
+    }
+
+    private void submit(final ProtocolProviderService pp)
+    {
+        this.scheduler.submit(pp, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                started.add(pp);
+            }
+        });
+    }
+
+    private ProtocolProviderService nextStarted() throws InterruptedException
+    {
+        ProtocolProviderService pp
+            = this.started.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("No reconnect was started.", pp);
+        return pp;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.plugin.spellcheck;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+import org.dts.spell.dictionary.*;
+
+public class WordVerdictCacheTest
+    extends TestCase
+{
+    private TestDictionary dict;
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        WordVerdictCache.clear();
+        this.dict = new TestDictionary();
+    }
+
+    public void tearDown() throws Exception
+    {
+        this.dict.release.countDown();
+        WordVerdictCache.clear();
+        super.tearDown();
+    }
+
+    public void testVerdictIsCached()
+    {
+        this.dict.release.countDown();
+
+        Assert.assertFalse(WordVerdictCache.isCorrect(this.dict, "helo"));
+        Assert.assertFalse(WordVerdictCache.isCorrect(this.dict, "helo"));
+        Assert.assertEquals(1, this.dict.lookups.get());
+    }
+
+    public void testAddedWordIsCorrect() throws Exception
+    {
+        this.dict.release.countDown();
+
+        Assert.assertFalse(WordVerdictCache.isCorrect(this.dict, "helo"));
+        WordVerdictCache.addWord(this.dict, "helo");
+        Assert.assertTrue(WordVerdictCache.isCorrect(this.dict, "helo"));
+    }
+
+    public void testOtherDictionaryIsConsulted()
+    {
+        this.dict.release.countDown();
+        TestDictionary other = new TestDictionary();
+        other.release.countDown();
+        other.words.add("helo");
+
+        Assert.assertFalse(WordVerdictCache.isCorrect(this.dict, "helo"));
+        Assert.assertTrue(WordVerdictCache.isCorrect(other, "helo"));
+    }
+
+    public void testInvalidateDuringLookupIsNotUndone() throws Exception
+    {
+        Future<Boolean> lookup = lookUpInBackground("helo");
+        Assert.assertTrue(this.dict.entered.await(5, TimeUnit.SECONDS));
+
+        // the word is added to the dictionary by another means, e.g. the
+        // dictionary is reloaded, after the lookup has got its verdict
+        this.dict.words.add("helo");
+        WordVerdictCache.invalidate("helo");
+        this.dict.release.countDown();
+
+        Assert.assertFalse(lookup.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(WordVerdictCache.isCorrect(this.dict, "helo"));
+    }
+
+    public void testDictionaryIsUsedByOneThreadAtATime() throws Exception
+    {
+        Future<Boolean> lookup = lookUpInBackground("helo");
+        Assert.assertTrue(this.dict.entered.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch added = new CountDownLatch(1);
+        new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    WordVerdictCache.addWord(dict, "helo");
+                    added.countDown();
+                }
+                catch (SpellDictionaryException e)
+                {
+                }
+            }
+        }.start();
+
+        Assert.assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+        this.dict.release.countDown();
+        Assert.assertTrue(added.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(lookup.get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(this.dict.concurrentAccess);
+        Assert.assertTrue(WordVerdictCache.isCorrect(this.dict, "helo"));
+    }
+
+    private Future<Boolean> lookUpInBackground(final String word)
+    {
+        FutureTask<Boolean> lookup
+            = new FutureTask<Boolean>(new Callable<Boolean>()
+            {
+                public Boolean call()
+                {
+                    return WordVerdictCache.isCorrect(dict, word);
+                }
+            });
+
+        new Thread(lookup).start();
+        return lookup;
+    }
+
+    /**
+     * Dictionary whose lookups wait for {@link #release} and which records
+     * whether it has been used by two threads at once.
+     */
+    private static class TestDictionary
+        implements SpellDictionary
+    {
+        final Set<String> words
+            = Collections.synchronizedSet(new HashSet<String>());
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final AtomicInteger lookups = new AtomicInteger();
+
+        private final AtomicInteger users = new AtomicInteger();
+
+        volatile boolean concurrentAccess = false;
+
+        public void addWord(String word)
+        {
+            enter();
+            words.add(word);
+            users.decrementAndGet();
+        }
+
+        public boolean isCorrect(String word)
+        {
+            enter();
+            lookups.incrementAndGet();
+            boolean correct = words.contains(word);
+            entered.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            users.decrementAndGet();
+            return correct;
+        }
+
+        public List<String> getSuggestions(String word)
+        {
+            return new ArrayList<String>();
+        }
+
+        public List<String> getSuggestions(String word, int maxSuggestions)
+        {
+            return new ArrayList<String>();
+        }
+
+        private void enter()
+        {
+            if (users.incrementAndGet() > 1)
+                concurrentAccess = true;
+        }
+    }
+}
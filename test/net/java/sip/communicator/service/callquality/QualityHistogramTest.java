@@ -0,0 +1,82 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.callquality;
+
+import junit.framework.*;
+
+public class QualityHistogramTest
+    extends TestCase
+{
+    public void testEmpty()
+    {
+        QualityHistogram histogram = new QualityHistogram(1000);
+
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    public void testSmallValuesAreExact()
+    {
+        QualityHistogram histogram = new QualityHistogram(1000);
+
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(95, histogram.getValueAtPercentile(95));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+    }
+
+    public void testLargeValuesWithinOnePercent()
+    {
+        QualityHistogram histogram = new QualityHistogram(100000);
+
+        for (int i = 1; i <= 100000; i++)
+            histogram.record(i);
+
+        for (double percentile : new double[] { 10, 50, 90, 99 })
+        {
+            long expected = (long) (percentile * 1000);
+            long actual = histogram.getValueAtPercentile(percentile);
+
+            assertTrue(
+                percentile + ": " + actual,
+                Math.abs(actual - expected) <= expected / 100);
+        }
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    public void testOutOfRangeValuesAreClamped()
+    {
+        QualityHistogram histogram = new QualityHistogram(500);
+
+        histogram.record(-3);
+        histogram.record(10000);
+
+        assertEquals(0, histogram.getMin());
+        assertEquals(500, histogram.getMax());
+        assertEquals(500, histogram.getValueAtPercentile(100));
+    }
+}
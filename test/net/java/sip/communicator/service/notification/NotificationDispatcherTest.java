@@ -0,0 +1,244 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.notification;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class NotificationDispatcherTest
+    extends TestCase
+{
+    private static final String TYPE = "TestAction";
+
+    private NotificationDispatcher dispatcher;
+
+    /**
+     * The labels of the executed actions in the order they were executed.
+     */
+    private final BlockingQueue<String> executed
+        = new LinkedBlockingQueue<String>();
+
+    /**
+     * Released to let the blocking action return.
+     */
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    public void tearDown() throws Exception
+    {
+        unblock.countDown();
+        if (this.dispatcher != null)
+            this.dispatcher.stop();
+        super.tearDown();
+    }
+
+    public void testActionsRunByPriorityThenInOrder()
+        throws InterruptedException
+    {
+        this.dispatcher = new NotificationDispatcher(10, 0);
+        block();
+
+        this.dispatcher.dispatch(TYPE, new Label("low", 1, null));
+        this.dispatcher.dispatch(TYPE, new Label("high1", 5, null));
+        this.dispatcher.dispatch(TYPE, new Label("normal", 3, null));
+        this.dispatcher.dispatch(TYPE, new Label("high2", 5, null));
+        unblock.countDown();
+
+        Assert.assertEquals("high1", next());
+        Assert.assertEquals("high2", next());
+        Assert.assertEquals("normal", next());
+        Assert.assertEquals("low", next());
+        Assert.assertEquals(
+            Long.valueOf(5), statistic("executed"));
+    }
+
+    public void testWaitingActionsAreMerged() throws InterruptedException
+    {
+        this.dispatcher = new NotificationDispatcher(10, 0);
+        block();
+
+        this.dispatcher.dispatch(TYPE, new Label("a", 1, "key"));
+        this.dispatcher.dispatch(TYPE, new Label("other", 1, "other"));
+        this.dispatcher.dispatch(TYPE, new Label("b", 1, "key"));
+        this.dispatcher.dispatch(TYPE, new Label("c", 1, "key"));
+        Assert.assertEquals(Long.valueOf(2), statistic("pending"));
+        unblock.countDown();
+
+        // the merged action keeps the place of the first one
+        Assert.assertEquals("a+b+c", next());
+        Assert.assertEquals("other", next());
+        Assert.assertNull(this.executed.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(Long.valueOf(2), statistic("coalesced"));
+    }
+
+    public void testRateLimitedActionsAreDeferredAndMerged()
+        throws InterruptedException
+    {
+        this.dispatcher = new NotificationDispatcher(10, 500);
+
+        this.dispatcher.dispatch(TYPE, new Label("a", 1, "key"));
+        Assert.assertEquals("a", next());
+        long executionTime = System.currentTimeMillis();
+
+        this.dispatcher.dispatch(TYPE, new Label("b", 1, "key"));
+        this.dispatcher.dispatch(TYPE, new Label("c", 1, "key"));
+        // another source isn't held back
+        this.dispatcher.dispatch(TYPE, new Label("other", 1, "other"));
+        Assert.assertEquals("other", next());
+
+        Assert.assertNull(this.executed.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals("b+c", next());
+        Assert.assertTrue(
+            System.currentTimeMillis() - executionTime >= 500 - 50);
+        Assert.assertEquals(Long.valueOf(1), statistic("deferred"));
+        Assert.assertEquals(Long.valueOf(1), statistic("coalesced"));
+        Assert.assertEquals(Long.valueOf(0), statistic("pending"));
+    }
+
+    public void testDeferredActionIsPending() throws InterruptedException
+    {
+        this.dispatcher = new NotificationDispatcher(10, 10000);
+        NotificationData first = data();
+        NotificationData second = data();
+
+        this.dispatcher.dispatch(TYPE, new Label("a", 1, "key", first));
+        Assert.assertEquals("a", next());
+        Assert.assertFalse(this.dispatcher.isPending(TYPE, first));
+
+        this.dispatcher.dispatch(TYPE, new Label("b", 1, "key", second));
+        Assert.assertTrue(this.dispatcher.isPending(TYPE, second));
+    }
+
+    public void testFullQueueDropsLowestPriority() throws InterruptedException
+    {
+        this.dispatcher = new NotificationDispatcher(2, 0);
+        block();
+
+        this.dispatcher.dispatch(TYPE, new Label("low", 1, null));
+        this.dispatcher.dispatch(TYPE, new Label("high", 5, null));
+        this.dispatcher.dispatch(TYPE, new Label("normal", 3, null));
+        // lower than all the queued ones
+        this.dispatcher.dispatch(TYPE, new Label("lowest", 0, null));
+        unblock.countDown();
+
+        Assert.assertEquals("high", next());
+        Assert.assertEquals("normal", next());
+        Assert.assertNull(this.executed.poll(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(Long.valueOf(2), statistic("dropped"));
+    }
+
+    public void testStopDiscardsDeferredActions() throws InterruptedException
+    {
+        this.dispatcher = new NotificationDispatcher(10, 300);
+
+        this.dispatcher.dispatch(TYPE, new Label("a", 1, "key"));
+        Assert.assertEquals("a", next());
+        this.dispatcher.dispatch(TYPE, new Label("b", 1, "key"));
+        this.dispatcher.stop();
+
+        Assert.assertNull(this.executed.poll(600, TimeUnit.MILLISECONDS));
+        this.dispatcher.dispatch(TYPE, new Label("c", 1, null));
+        Assert.assertNull(this.executed.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Queues an action which doesn't return before {@link #unblock} is
+     * released, and waits for it to start.
+     */
+    private void block() throws InterruptedException
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+
+        this.dispatcher.dispatch(
+            TYPE,
+            new NotificationDispatcher.Task(null, Integer.MAX_VALUE, null)
+            {
+                public void run()
+                {
+                    started.countDown();
+                    try
+                    {
+                        unblock.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    private String next() throws InterruptedException
+    {
+        String label = this.executed.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("No action was executed.", label);
+        return label;
+    }
+
+    private Long statistic(String name)
+    {
+        return this.dispatcher.getStatistics().get(TYPE + '.' + name);
+    }
+
+    private static NotificationData data()
+    {
+        return new NotificationData("event", "title", "message", null, null);
+    }
+
+    /**
+     * Records its label when executed and concatenates the labels of the
+     * actions merged into it.
+     */
+    private class Label
+        extends NotificationDispatcher.Task
+    {
+        private final String label;
+
+        Label(String label, int priority, Object coalescingKey)
+        {
+            this(label, priority, coalescingKey, data());
+        }
+
+        Label(String label,
+              int priority,
+              Object coalescingKey,
+              NotificationData data)
+        {
+            super(data, priority, coalescingKey);
+            this.label = label;
+        }
+
+        @Override
+        NotificationDispatcher.Task coalesce(NotificationDispatcher.Task later)
+        {
+            return
+                new Label(
+                    this.label + '+' + ((Label) later).label,
+                    priority,
+                    coalescingKey,
+                    later.data);
+        }
+
+        public void run()
+        {
+            executed.add(this.label);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class DesktopCaptureStageTest
+    extends TestCase
+{
+    private static final int WIDTH = 100;
+
+    private static final int HEIGHT = 70;
+
+    public void testFirstFrameIsChangedAsAWhole()
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage();
+        List<Rectangle> dirty = stage.process(new int[WIDTH * HEIGHT],
+            WIDTH, HEIGHT, 0);
+
+        assertEquals(1, dirty.size());
+        assertEquals(new Rectangle(0, 0, WIDTH, HEIGHT), dirty.get(0));
+        assertEquals(1, stage.getChangedFrameCount());
+    }
+
+    public void testUnchangedFrameIsSkipped()
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage();
+        int[] frame = new int[WIDTH * HEIGHT];
+
+        stage.process(frame, WIDTH, HEIGHT, 0);
+
+        assertTrue(stage.process(frame.clone(), WIDTH, HEIGHT, 0).isEmpty());
+        assertEquals(1, stage.getSkippedFrameCount());
+    }
+
+    public void testChangedTilesAreMergedPerRow()
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage();
+        int[] frame = new int[WIDTH * HEIGHT];
+
+        stage.process(frame.clone(), WIDTH, HEIGHT, 0);
+
+        // two adjacent tiles of the first row and the last, partial tile
+        frame[5 * WIDTH + 10] = 1;
+        frame[5 * WIDTH + 40] = 1;
+        frame[(HEIGHT - 1) * WIDTH + WIDTH - 1] = 1;
+
+        List<Rectangle> dirty = stage.process(frame, WIDTH, HEIGHT, 0);
+
+        assertEquals(2, dirty.size());
+        assertEquals(new Rectangle(0, 0, 64, 32), dirty.get(0));
+        assertEquals(new Rectangle(96, 64, 4, 6), dirty.get(1));
+
+        // the changes are now part of the previous frame
+        assertTrue(stage.process(frame.clone(), WIDTH, HEIGHT, 0).isEmpty());
+    }
+
+    public void testSizeChangeIsChangedAsAWhole()
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage();
+
+        stage.process(new int[WIDTH * HEIGHT], WIDTH, HEIGHT, 0);
+
+        List<Rectangle> dirty = stage.process(new int[50 * 50], 50, 50, 0);
+
+        assertEquals(new Rectangle(0, 0, 50, 50), dirty.get(0));
+    }
+
+    public void testIntervalGrowsWhileIdleAndResetsOnInput()
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage(100, 400);
+        int[] frame = new int[WIDTH * HEIGHT];
+
+        stage.process(frame, WIDTH, HEIGHT, 0);
+        for (int i = 0; i < 10; i++)
+            stage.process(frame, WIDTH, HEIGHT, 0);
+        assertEquals(200, stage.getCaptureInterval());
+
+        for (int i = 0; i < 30; i++)
+            stage.process(frame, WIDTH, HEIGHT, 0);
+        assertEquals(400, stage.getCaptureInterval());
+
+        stage.inputReceived();
+        assertEquals(100, stage.getCaptureInterval());
+    }
+
+    public void testChangeResetsInterval()
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage(100, 400);
+        int[] frame = new int[WIDTH * HEIGHT];
+
+        stage.process(frame.clone(), WIDTH, HEIGHT, 0);
+        for (int i = 0; i < 10; i++)
+            stage.process(frame.clone(), WIDTH, HEIGHT, 0);
+        assertEquals(200, stage.getCaptureInterval());
+
+        frame[0] = 1;
+        stage.process(frame, WIDTH, HEIGHT, 0);
+        assertEquals(100, stage.getCaptureInterval());
+    }
+
+    public void testTimesAreRecordedInMicroseconds()
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage();
+
+        stage.process(new int[WIDTH * HEIGHT], WIDTH, HEIGHT, 5000000);
+        stage.frameEncoded(2000000);
+
+        stage.process(new int[WIDTH * HEIGHT], WIDTH, HEIGHT, 1000000);
+
+        assertEquals(2, stage.getCaptureTimes().getCount());
+        assertEquals(5000, stage.getCaptureTimes().getMax());
+        assertEquals(3000, stage.getCaptureTimes().getAverage());
+        assertEquals(1000, stage.getCaptureTimes().getLast());
+        assertEquals(1, stage.getEncodeTimes().getCount());
+        assertEquals(2000, stage.getEncodeTimes().getMax());
+    }
+
+    public void testResetReportsTheWholeFrame()
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage();
+        int[] frame = new int[WIDTH * HEIGHT];
+
+        stage.process(frame, WIDTH, HEIGHT, 0);
+        stage.reset();
+
+        List<Rectangle> dirty = stage.process(frame, WIDTH, HEIGHT, 0);
+
+        assertEquals(new Rectangle(0, 0, WIDTH, HEIGHT), dirty.get(0));
+    }
+
+    public void testReplayedInputResetsInterval()
+        throws Exception
+    {
+        DesktopCaptureStage stage = new DesktopCaptureStage(100, 400);
+        int[] frame = new int[WIDTH * HEIGHT];
+
+        for (int i = 0; i < 11; i++)
+            stage.process(frame, WIDTH, HEIGHT, 0);
+        assertEquals(200, stage.getCaptureInterval());
+
+        final CountDownLatch replayed = new CountDownLatch(1);
+        RemoteControlEventQueue queue
+            = new RemoteControlEventQueue(
+                    new RemoteControlEventQueue.Handler()
+                    {
+                        public boolean isRemoteControlGranted(String peer)
+                        {
+                            return true;
+                        }
+
+                        public void processComponentEvent(ComponentEvent e)
+                        {
+                            replayed.countDown();
+                        }
+                    },
+                    stage);
+
+        queue.add(
+            "a",
+            Collections.singletonList(
+                new ComponentEvent(
+                        new Canvas(), ComponentEvent.COMPONENT_MOVED)));
+        assertTrue(replayed.await(5, TimeUnit.SECONDS));
+        // the stage is notified right after the batch has been replayed
+        for (int i = 0; i < 50 && stage.getCaptureInterval() != 100; i++)
+            Thread.sleep(10);
+        assertEquals(100, stage.getCaptureInterval());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class RemoteControlEventQueueTest
+    extends TestCase
+{
+    private final Component source = new Canvas();
+
+    private MouseEvent move(int x)
+    {
+        return new MouseEvent(source, MouseEvent.MOUSE_MOVED, 0, 0, x, 0, 0,
+            false);
+    }
+
+    private MouseEvent press()
+    {
+        return new MouseEvent(source, MouseEvent.MOUSE_PRESSED, 0,
+            InputEvent.BUTTON1_DOWN_MASK, 0, 0, 1, false);
+    }
+
+    private List<RemoteControlEventQueue.PeerEvent> events(
+        String peer, ComponentEvent... events)
+    {
+        List<RemoteControlEventQueue.PeerEvent> peerEvents
+            = new ArrayList<RemoteControlEventQueue.PeerEvent>();
+
+        for (ComponentEvent event : events)
+            peerEvents.add(new RemoteControlEventQueue.PeerEvent(peer, event));
+        return peerEvents;
+    }
+
+    public void testConsecutiveMovesAreCoalesced()
+    {
+        List<RemoteControlEventQueue.PeerEvent> coalesced
+            = RemoteControlEventQueue.coalesce(
+                    events("a", move(1), move(2), move(3), press(), move(4)));
+
+        assertEquals(3, coalesced.size());
+        assertEquals(3, ((MouseEvent) coalesced.get(0).event).getX());
+        assertEquals(MouseEvent.MOUSE_PRESSED, coalesced.get(1).event.getID());
+        assertEquals(4, ((MouseEvent) coalesced.get(2).event).getX());
+    }
+
+    public void testMovesOfDifferentPeersAreNotCoalesced()
+    {
+        List<RemoteControlEventQueue.PeerEvent> events = events("a", move(1));
+
+        events.addAll(events("b", move(2)));
+        assertEquals(2, RemoteControlEventQueue.coalesce(events).size());
+    }
+
+    public void testEventsAreReplayedInOrder()
+        throws Exception
+    {
+        final List<Integer> replayed = new ArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(1);
+        RemoteControlEventQueue queue
+            = new RemoteControlEventQueue(
+                    new RemoteControlEventQueue.Handler()
+                    {
+                        public boolean isRemoteControlGranted(String peer)
+                        {
+                            return true;
+                        }
+
+                        public void processComponentEvent(ComponentEvent e)
+                        {
+                            int x = ((MouseEvent) e).getX();
+
+                            replayed.add(x);
+                            if (x == 100)
+                                done.countDown();
+                        }
+                    });
+
+        for (int i = 1; i <= 100; i++)
+            queue.add("a", Collections.singletonList(move(i)));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < replayed.size(); i++)
+            assertTrue(replayed.get(i - 1) < replayed.get(i));
+    }
+
+    public void testEventsOfRevokedPeersAreDropped()
+        throws Exception
+    {
+        final Set<String> granted
+            = Collections.synchronizedSet(new HashSet<String>());
+        final List<Integer> replayed = new ArrayList<Integer>();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        RemoteControlEventQueue queue
+            = new RemoteControlEventQueue(
+                    new RemoteControlEventQueue.Handler()
+                    {
+                        public boolean isRemoteControlGranted(String peer)
+                        {
+                            return granted.contains(peer);
+                        }
+
+                        public void processComponentEvent(ComponentEvent e)
+                        {
+                            int x = ((MouseEvent) e).getX();
+
+                            if (x == 0)
+                            {
+                                blocked.countDown();
+                                try
+                                {
+                                    release.await();
+                                }
+                                catch (InterruptedException ie)
+                                {
+                                }
+                            }
+                            replayed.add(x);
+                            if (x == 3)
+                                done.countDown();
+                        }
+                    });
+
+        granted.add("a");
+        granted.add("b");
+        queue.add("b", Collections.singletonList(move(0)));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // queued while the first event is being replayed
+        queue.add("a", Arrays.asList(press(), move(1)));
+        queue.add("b", Collections.singletonList(press()));
+        granted.remove("a");
+        queue.remove("a");
+        queue.add("b", Collections.singletonList(move(3)));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 0, 3), replayed);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.slick.benchmark;
+
+import java.util.*;
+
+import net.java.sip.communicator.impl.protocol.mock.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.media.*;
+
+/**
+ * Builds the data the benchmarks work on. The fixtures are deliberately
+ * larger than what the functional SLICKs use, so that they resemble what a
+ * busy client deals with: large conferences and rosters with thousands of
+ * contacts.
+ */
+public class BenchmarkFixtures
+{
+    /**
+     * The number of groups in the benchmark roster.
+     */
+    public static final int ROSTER_GROUP_COUNT = 20;
+
+    /**
+     * The number of contacts in each group of the benchmark roster.
+     */
+    public static final int ROSTER_GROUP_SIZE = 100;
+
+    /**
+     * The number of users in the benchmark conference.
+     */
+    public static final int CONFERENCE_USER_COUNT = 200;
+
+    /**
+     * Returns the address of a contact of the benchmark roster.
+     *
+     * @param group the index of the group of the contact.
+     * @param index the index of the contact in its group.
+     * @return the address of the contact.
+     */
+    private static String getRosterContactAddress(int group, int index)
+    {
+        return "contact" + group + "-" + index + "@example.com";
+    }
+
+    /**
+     * Fills the server stored contact list of <tt>provider</tt> with
+     * <tt>ROSTER_GROUP_COUNT</tt> groups of <tt>ROSTER_GROUP_SIZE</tt>
+     * contacts each.
+     *
+     * @param provider the <tt>MockProvider</tt> to fill.
+     * @return the contacts that were added.
+     */
+    public static List<Contact> fillRoster(MockProvider provider)
+    {
+        List<Contact> contacts = new ArrayList<Contact>();
+        MockPersistentPresenceOperationSet mockOpSet
+            = (MockPersistentPresenceOperationSet)
+                provider.getOperationSet(OperationSetPersistentPresence.class);
+        MockContactGroup root
+            = (MockContactGroup) mockOpSet.getServerStoredContactListRoot();
+
+        for (int group = 0; group < ROSTER_GROUP_COUNT; group++)
+        {
+            MockContactGroup mockGroup
+                = new MockContactGroup("Group " + group, provider);
+
+            for (int index = 0; index < ROSTER_GROUP_SIZE; index++)
+            {
+                MockContact contact
+                    = new MockContact(
+                            getRosterContactAddress(group, index),
+                            provider);
+
+                mockGroup.addContact(contact);
+                contacts.add(contact);
+            }
+            root.addSubgroup(mockGroup);
+        }
+        return contacts;
+    }
+
+    /**
+     * Removes the groups added by {@link #fillRoster(MockProvider)} from the
+     * server stored contact list of <tt>provider</tt>, so that the meta
+     * contact list removes their meta contacts.
+     *
+     * @param provider the <tt>MockProvider</tt> to clear.
+     */
+    public static void clearRoster(MockProvider provider)
+    {
+        MockPersistentPresenceOperationSet mockOpSet
+            = (MockPersistentPresenceOperationSet)
+                provider.getOperationSet(OperationSetPersistentPresence.class);
+        ContactGroup root = mockOpSet.getServerStoredContactListRoot();
+        List<ContactGroup> groups = new ArrayList<ContactGroup>();
+        Iterator<ContactGroup> subgroups = root.subgroups();
+
+        while (subgroups.hasNext())
+            groups.add(subgroups.next());
+        for (ContactGroup group : groups)
+            mockOpSet.removeServerStoredContactGroup(group);
+    }
+
+    /**
+     * Creates a conference-info document with
+     * <tt>CONFERENCE_USER_COUNT</tt> users, each with an audio and video
+     * endpoint.
+     *
+     * @return the conference-info document.
+     * @throws Exception if the document could not be created.
+     */
+    public static ConferenceInfoDocument createConferenceInfo()
+        throws Exception
+    {
+        ConferenceInfoDocument confInfo = new ConferenceInfoDocument();
+
+        confInfo.setEntity("sip:conference@example.com");
+        confInfo.setState(ConferenceInfoDocument.State.FULL);
+        confInfo.setUserCount(CONFERENCE_USER_COUNT);
+
+        for (int i = 0; i < CONFERENCE_USER_COUNT; i++)
+        {
+            ConferenceInfoDocument.User user
+                = confInfo.addNewUser("sip:user" + i + "@example.com");
+
+            user.setDisplayText("User " + i);
+
+            ConferenceInfoDocument.Endpoint endpoint
+                = user.addNewEndpoint("sip:user" + i + "@192.168.1.10");
+
+            endpoint.setStatus(
+                    ConferenceInfoDocument.EndpointStatusType.connected);
+
+            ConferenceInfoDocument.Media audio
+                = endpoint.addNewMedia(Integer.toString(2 * i));
+
+            audio.setType("audio");
+            audio.setSrcId(Long.toString(1000000L + 2 * i));
+            audio.setStatus("sendrecv");
+
+            ConferenceInfoDocument.Media video
+                = endpoint.addNewMedia(Integer.toString(2 * i + 1));
+
+            video.setType("video");
+            video.setSrcId(Long.toString(1000000L + 2 * i + 1));
+            video.setStatus("sendrecv");
+        }
+        return confInfo;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.slick.benchmark;
+
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.util.*;
+
+import org.osgi.framework.*;
+
+/**
+ * Launches the benchmarks of the conferencing, history and contact list hot
+ * paths. Neither the bundle is started nor is it part of the default
+ * <tt>TEST_LIST</tt>, both are done by the <tt>benchmark</tt> Ant target
+ * only. All fixtures are created by the tests
+ * themselves so that merely loading this bundle doesn't interfere with the
+ * other SLICKs.
+ */
+public class BenchmarkLick
+    extends TestSuite
+    implements BundleActivator
+{
+    /**
+     * The <tt>Logger</tt> used by this class.
+     */
+    private static final Logger logger = Logger.getLogger(BenchmarkLick.class);
+
+    /**
+     * The bundle context that we received when the lick was activated.
+     */
+    protected static BundleContext bc = null;
+
+    /**
+     * Starts the benchmark lick.
+     *
+     * @param bundleContext the <tt>BundleContext</tt> of this bundle.
+     * @throws Exception if anything goes wrong.
+     */
+    public void start(BundleContext bundleContext)
+        throws Exception
+    {
+        BenchmarkLick.bc = bundleContext;
+
+        setName("BenchmarkLick");
+        Hashtable<String, String> properties = new Hashtable<String, String>();
+        properties.put("service.pid", getName());
+
+        addTest(TestHotPathBenchmarks.suite());
+        bundleContext.registerService(getClass().getName(), this, properties);
+
+        logger.debug("Successfully registered " + getClass().getName());
+    }
+
+    /**
+     * Stops the benchmark lick.
+     *
+     * @param bundleContext the <tt>BundleContext</tt> of this bundle.
+     * @throws Exception if anything goes wrong.
+     */
+    public void stop(BundleContext bundleContext)
+        throws Exception
+    {
+    }
+}
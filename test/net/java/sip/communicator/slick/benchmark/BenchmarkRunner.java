@@ -0,0 +1,304 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.slick.benchmark;
+
+import java.io.*;
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * A minimal micro-benchmark harness. Every benchmark is run for a number of
+ * warm-up iterations, whose timings are discarded, and then for a number of
+ * measured iterations. The results of all benchmarks run through the same
+ * <tt>BenchmarkRunner</tt> are written as a JSON array, in a layout close to
+ * the one of JMH, so that they can be tracked from build to build.
+ * <p>
+ * The iteration counts can be overridden with the
+ * <tt>net.java.sip.communicator.slick.benchmark.WARMUP_ITERATIONS</tt> and
+ * <tt>net.java.sip.communicator.slick.benchmark.MEASUREMENT_ITERATIONS</tt>
+ * system properties; at least one iteration is always measured. Results
+ * are logged and written in the directory given by
+ * <tt>net.java.sip.communicator.slick.runner.OUTPUT_DIR</tt>, just like the
+ * test reports.
+ */
+public class BenchmarkRunner
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>BenchmarkRunner</tt> class for
+     * reporting the results.
+     */
+    private static final Logger logger
+        = Logger.getLogger(BenchmarkRunner.class);
+
+    /**
+     * The name of the property that specifies the number of warm-up
+     * iterations of every benchmark.
+     */
+    public static final String WARMUP_ITERATIONS_PROPERTY_NAME
+        = "net.java.sip.communicator.slick.benchmark.WARMUP_ITERATIONS";
+
+    /**
+     * The name of the property that specifies the number of measured
+     * iterations of every benchmark.
+     */
+    public static final String MEASUREMENT_ITERATIONS_PROPERTY_NAME
+        = "net.java.sip.communicator.slick.benchmark.MEASUREMENT_ITERATIONS";
+
+    /**
+     * The name of the property that specifies the directory where results
+     * are written.
+     */
+    private static final String OUTPUT_DIR_PROPERTY_NAME
+        = "net.java.sip.communicator.slick.runner.OUTPUT_DIR";
+
+    /**
+     * The default number of warm-up iterations.
+     */
+    private static final int DEFAULT_WARMUP_ITERATIONS = 10;
+
+    /**
+     * The default number of measured iterations.
+     */
+    private static final int DEFAULT_MEASUREMENT_ITERATIONS = 20;
+
+    /**
+     * The directory where results are written when no
+     * <tt>OUTPUT_DIR</tt> has been specified.
+     */
+    private static final String DEFAULT_OUTPUT_DIR = "test-reports";
+
+    /**
+     * A piece of code to measure.
+     */
+    public interface Operation
+    {
+        /**
+         * Runs the operation once.
+         *
+         * @throws Exception if the operation fails, which aborts the
+         * benchmark.
+         */
+        public void run()
+            throws Exception;
+    }
+
+    /**
+     * The name of the suite, used as prefix of the benchmark names and as
+     * name of the results file.
+     */
+    private final String suiteName;
+
+    /**
+     * The number of warm-up iterations.
+     */
+    private final int warmupIterations;
+
+    /**
+     * The number of measured iterations.
+     */
+    private final int measurementIterations;
+
+    /**
+     * The results collected so far, as JSON objects.
+     */
+    private final List<String> results = new ArrayList<String>();
+
+    /**
+     * Creates a <tt>BenchmarkRunner</tt> for the suite with the given name.
+     *
+     * @param suiteName the name of the suite.
+     */
+    public BenchmarkRunner(String suiteName)
+    {
+        this.suiteName = suiteName;
+        this.warmupIterations
+            = getIterations(
+                    WARMUP_ITERATIONS_PROPERTY_NAME,
+                    DEFAULT_WARMUP_ITERATIONS,
+                    0);
+        this.measurementIterations
+            = getIterations(
+                    MEASUREMENT_ITERATIONS_PROPERTY_NAME,
+                    DEFAULT_MEASUREMENT_ITERATIONS,
+                    1);
+    }
+
+    /**
+     * Returns the number of iterations specified by a system property.
+     *
+     * @param propertyName the name of the property.
+     * @param defaultValue the number of iterations if the property is not
+     * set.
+     * @param minValue the lowest acceptable number of iterations.
+     * @return the number of iterations, <tt>defaultValue</tt> if the
+     * property is not set or is lower than <tt>minValue</tt>.
+     */
+    private static int getIterations(String propertyName,
+                                     int defaultValue,
+                                     int minValue)
+    {
+        int iterations = Integer.getInteger(propertyName, defaultValue);
+
+        if (iterations < minValue)
+        {
+            logger.warn(
+                    "Ignoring " + propertyName + "=" + iterations
+                        + ", it must be at least " + minValue);
+            iterations = defaultValue;
+        }
+        return iterations;
+    }
+
+    /**
+     * Measures <tt>operation</tt> and records the result.
+     *
+     * @param name the name of the benchmark.
+     * @param operationsPerInvocation the number of logical operations that
+     * a single call of <tt>operation</tt> performs, so that the score is
+     * reported per operation.
+     * @param operation the code to measure.
+     * @return the average time of a single operation, in nanoseconds.
+     * @throws Exception if <tt>operation</tt> fails.
+     */
+    public double measure(String name,
+                          int operationsPerInvocation,
+                          Operation operation)
+        throws Exception
+    {
+        for (int i = 0; i < warmupIterations; i++)
+            operation.run();
+
+        double[] samples = new double[measurementIterations];
+        double total = 0;
+
+        for (int i = 0; i < measurementIterations; i++)
+        {
+            long start = System.nanoTime();
+
+            operation.run();
+
+            samples[i]
+                = (System.nanoTime() - start)
+                    / (double) operationsPerInvocation;
+            total += samples[i];
+        }
+
+        double score = total / measurementIterations;
+        double variance = 0;
+
+        for (double sample : samples)
+            variance += (sample - score) * (sample - score);
+
+        double error
+            = (measurementIterations > 1)
+                ? Math.sqrt(variance / (measurementIterations - 1))
+                : 0;
+
+        Arrays.sort(samples);
+
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\"benchmark\":\"")
+            .append(suiteName).append('.').append(name)
+            .append("\",\"mode\":\"avgt\"")
+            .append(",\"warmupIterations\":").append(warmupIterations)
+            .append(",\"measurementIterations\":")
+                .append(measurementIterations)
+            .append(",\"operationsPerInvocation\":")
+                .append(operationsPerInvocation)
+            .append(",\"primaryMetric\":{\"score\":").append(score)
+            .append(",\"scoreError\":").append(error)
+            .append(",\"scoreUnit\":\"ns/op\",\"scorePercentiles\":{")
+            .append("\"0.0\":").append(samples[0])
+            .append(",\"50.0\":").append(percentile(samples, 50))
+            .append(",\"95.0\":").append(percentile(samples, 95))
+            .append(",\"100.0\":").append(samples[samples.length - 1])
+            .append("}}}");
+        results.add(json.toString());
+
+        logger.info(
+                "Benchmark " + suiteName + "." + name + ": "
+                    + Math.round(score) + " ns/op (+/- "
+                    + Math.round(error) + ")");
+
+        return score;
+    }
+
+    /**
+     * Writes the results collected so far to
+     * <tt>benchmark-&lt;suiteName&gt;.json</tt> in the output directory.
+     *
+     * @return the file that was written.
+     * @throws IOException if the file could not be written.
+     */
+    public File writeResults()
+        throws IOException
+    {
+        String outputDirName = System.getProperty(OUTPUT_DIR_PROPERTY_NAME);
+
+        if (outputDirName == null || outputDirName.trim().length() == 0)
+            outputDirName = DEFAULT_OUTPUT_DIR;
+
+        File outputDir = new File(outputDirName);
+
+        outputDir.mkdirs();
+
+        File outputFile
+            = new File(outputDir, "benchmark-" + suiteName + ".json");
+        Writer writer
+            = new OutputStreamWriter(
+                    new FileOutputStream(outputFile),
+                    "UTF-8");
+
+        try
+        {
+            writer.write("[\n");
+            for (Iterator<String> i = results.iterator(); i.hasNext();)
+            {
+                writer.write("  ");
+                writer.write(i.next());
+                if (i.hasNext())
+                    writer.write(',');
+                writer.write('\n');
+            }
+            writer.write("]\n");
+        }
+        finally
+        {
+            writer.close();
+        }
+        logger.info("Benchmark results written to " + outputFile);
+        return outputFile;
+    }
+
+    /**
+     * Returns the given percentile of sorted samples, using the nearest rank.
+     *
+     * @param sortedSamples the samples, in ascending order.
+     * @param percentile the percentile, between 0 and 100.
+     * @return the sample at the given percentile.
+     */
+    private static double percentile(double[] sortedSamples, int percentile)
+    {
+        int rank
+            = (int) Math.ceil(percentile / 100.0 * sortedSamples.length) - 1;
+
+        return sortedSamples[Math.max(0, rank)];
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.slick.benchmark;
+
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.impl.protocol.mock.*;
+import net.java.sip.communicator.service.contactlist.*;
+import net.java.sip.communicator.service.history.*;
+import net.java.sip.communicator.service.history.records.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.media.*;
+
+import org.osgi.framework.*;
+
+/**
+ * Benchmarks of hot paths of the conferencing support, the history service
+ * and the meta contact list. The last test writes the collected results, so
+ * the tests have to run in the order of {@link #suite()}.
+ */
+public class TestHotPathBenchmarks
+    extends TestCase
+{
+    /**
+     * The runner collecting the results of all tests of this suite.
+     */
+    private static final BenchmarkRunner runner
+        = new BenchmarkRunner("slick");
+
+    /**
+     * The number of records appended to the history before measuring, so
+     * that the history directory already contains many files.
+     */
+    private static final int HISTORY_PREFILL_RECORDS = 5000;
+
+    /**
+     * The number of records appended to the history in every measured
+     * iteration.
+     */
+    private static final int HISTORY_BATCH_SIZE = 100;
+
+    /**
+     * The number of lookups done in every measured iteration of the meta
+     * contact list benchmarks.
+     */
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    /**
+     * The structure of the benchmark history, resembling the one of the
+     * message history.
+     */
+    private static final HistoryRecordStructure recordStructure
+        = new HistoryRecordStructure(
+                new String[] { "dir", "msg_CDATA", "msgTyp", "enc", "uid" });
+
+    /**
+     * Creates a benchmark with the given name.
+     *
+     * @param name the name of the test method to run.
+     */
+    public TestHotPathBenchmarks(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Returns the benchmarks in the order in which they have to run.
+     *
+     * @return the benchmarks.
+     */
+    public static Test suite()
+    {
+        TestSuite suite = new TestSuite();
+
+        suite.addTest(new TestHotPathBenchmarks("testConferenceInfo"));
+        suite.addTest(
+                new TestHotPathBenchmarks("testConferenceInfoUpdate"));
+        suite.addTest(new TestHotPathBenchmarks("testHistoryAddRecord"));
+        suite.addTest(
+                new TestHotPathBenchmarks("testMetaContactListLookups"));
+        suite.addTest(new TestHotPathBenchmarks("testWriteResults"));
+
+        return suite;
+    }
+
+    /**
+     * Measures serializing and parsing a conference-info document of a
+     * large conference.
+     *
+     * @throws Exception if the benchmark fails.
+     */
+    public void testConferenceInfo()
+        throws Exception
+    {
+        final ConferenceInfoDocument confInfo
+            = BenchmarkFixtures.createConferenceInfo();
+        final String xml = confInfo.toXml();
+
+        runner.measure(
+                "ConferenceInfoDocument.toXml",
+                1,
+                new BenchmarkRunner.Operation()
+                {
+                    public void run()
+                    {
+                        assertNotNull(confInfo.toXml());
+                    }
+                });
+        runner.measure(
+                "ConferenceInfoDocument.parse",
+                1,
+                new BenchmarkRunner.Operation()
+                {
+                    public void run()
+                        throws Exception
+                    {
+                        assertEquals(
+                                BenchmarkFixtures.CONFERENCE_USER_COUNT,
+                                new ConferenceInfoDocument(xml)
+                                    .getUsers().size());
+                    }
+                });
+    }
+
+    /**
+     * Compares sending a change of one user of a large conference as a full
+     * conference-info document with sending it as a partial one. Both are
+     * serialized and parsed, and the partial one is applied to the document
+     * the receiver already has.
+     *
+     * @throws Exception if the benchmark fails.
+     */
+    public void testConferenceInfoUpdate()
+        throws Exception
+    {
+        final ConferenceInfoDocument confInfo
+            = BenchmarkFixtures.createConferenceInfo();
+        final ConferenceInfoDocument received
+            = new ConferenceInfoDocument(confInfo.toXml());
+        final ConferenceInfoDocument.User changed
+            = confInfo.getUser(
+                "sip:user" + (BenchmarkFixtures.CONFERENCE_USER_COUNT / 2)
+                    + "@example.com");
+
+        changed.setDisplayText("Renamed user");
+
+        runner.measure(
+                "ConferenceInfoDocument.fullUpdate",
+                1,
+                new BenchmarkRunner.Operation()
+                {
+                    public void run()
+                        throws Exception
+                    {
+                        ConferenceInfoDocument full
+                            = new ConferenceInfoDocument(confInfo.toXml());
+
+                        assertEquals(
+                                "Renamed user",
+                                full.getUser(changed.getEntity())
+                                    .getDisplayText());
+                    }
+                });
+        runner.measure(
+                "ConferenceInfoDocument.partialUpdate",
+                1,
+                new BenchmarkRunner.Operation()
+                {
+                    public void run()
+                        throws Exception
+                    {
+                        ConferenceInfoDocument diff
+                            = new ConferenceInfoDocument();
+
+                        diff.setState(ConferenceInfoDocument.State.PARTIAL);
+                        diff.setUsersState(
+                                ConferenceInfoDocument.State.PARTIAL);
+                        diff.setEntity(confInfo.getEntity());
+                        diff.setUserCount(confInfo.getUserCount());
+                        diff.addUser(changed);
+
+                        ConferenceInfoDocument partial
+                            = new ConferenceInfoDocument(diff.toXml());
+
+                        for (ConferenceInfoDocument.User user
+                                : partial.getUsers())
+                        {
+                            received.removeUser(user.getEntity());
+                            received.addUser(user);
+                        }
+                        assertEquals(
+                                "Renamed user",
+                                received.getUser(changed.getEntity())
+                                    .getDisplayText());
+                    }
+                });
+    }
+
+    /**
+     * Measures appending records to a history that already spans many
+     * files.
+     *
+     * @throws Exception if the benchmark fails.
+     */
+    public void testHistoryAddRecord()
+        throws Exception
+    {
+        BundleContext context = BenchmarkLick.bc;
+        ServiceReference historyServiceRef
+            = context.getServiceReference(HistoryService.class.getName());
+        HistoryService historyService
+            = (HistoryService) context.getService(historyServiceRef);
+        HistoryID id
+            = HistoryID.createFromRawID(
+                    new String[] { "benchmark", "addrecord" });
+
+        try
+        {
+            historyService.purgeLocallyStoredHistory(id);
+
+            final HistoryWriter writer
+                = historyService.createHistory(id, recordStructure)
+                    .getWriter();
+            final String[] values
+                = new String[]
+                {
+                    "in",
+                    "A message of a realistic length, with some <markup> "
+                        + "& entities that need escaping.",
+                    "text/plain",
+                    "UTF-8",
+                    null
+                };
+
+            for (int i = 0; i < HISTORY_PREFILL_RECORDS; i++)
+            {
+                values[4] = Integer.toString(i);
+                writer.addRecord(values);
+            }
+
+            runner.measure(
+                    "HistoryWriter.addRecord",
+                    HISTORY_BATCH_SIZE,
+                    new BenchmarkRunner.Operation()
+                    {
+                        public void run()
+                            throws Exception
+                        {
+                            for (int i = 0; i < HISTORY_BATCH_SIZE; i++)
+                                writer.addRecord(values);
+                        }
+                    });
+        }
+        finally
+        {
+            historyService.purgeLocallyStoredHistory(id);
+            context.ungetService(historyServiceRef);
+        }
+    }
+
+    /**
+     * Measures looking up meta contacts in a large contact list, the way
+     * every incoming message and presence change does.
+     *
+     * @throws Exception if the benchmark fails.
+     */
+    public void testMetaContactListLookups()
+        throws Exception
+    {
+        BundleContext context = BenchmarkLick.bc;
+        ServiceReference mclServiceRef
+            = context.getServiceReference(
+                    MetaContactListService.class.getName());
+        final MetaContactListService mclService
+            = (MetaContactListService) context.getService(mclServiceRef);
+
+        final MockProvider provider = new MockProvider("BenchmarkMockUser");
+        final List<Contact> contacts = BenchmarkFixtures.fillRoster(provider);
+
+        // make sure the meta contact list takes our provider into account,
+        // just like the meta contact list SLICK does.
+        Hashtable<String, String> mockProvProperties
+            = new Hashtable<String, String>();
+        String providerMask
+            = System.getProperty(
+                    MetaContactListService.PROVIDER_MASK_PROPERTY);
+
+        if (providerMask != null)
+        {
+            mockProvProperties.put(
+                    MetaContactListService.PROVIDER_MASK_PROPERTY,
+                    providerMask);
+        }
+
+        ServiceRegistration registration
+            = context.registerService(
+                    ProtocolProviderService.class.getName(),
+                    provider,
+                    mockProvProperties);
+
+        try
+        {
+            final Random random = new Random(0);
+            Contact lastContact = contacts.get(contacts.size() - 1);
+
+            // the provider is handled asynchronously by some implementations
+            for (int i = 0;
+                    i < 50
+                        && mclService.findMetaContactByContact(lastContact)
+                            == null;
+                    i++)
+            {
+                Thread.sleep(100);
+            }
+            assertNotNull(
+                    "The roster was not loaded in the meta contact list",
+                    mclService.findMetaContactByContact(lastContact));
+
+            runner.measure(
+                    "MetaContactListService.findMetaContactByContact",
+                    LOOKUP_BATCH_SIZE,
+                    new BenchmarkRunner.Operation()
+                    {
+                        public void run()
+                        {
+                            for (int i = 0; i < LOOKUP_BATCH_SIZE; i++)
+                            {
+                                Contact contact
+                                    = contacts.get(
+                                            random.nextInt(contacts.size()));
+
+                                assertNotNull(
+                                        mclService.findMetaContactByContact(
+                                                contact));
+                            }
+                        }
+                    });
+
+            final List<String> metaUIDs = new ArrayList<String>();
+            Iterator<MetaContact> metaContacts
+                = mclService.findAllMetaContactsForProvider(provider);
+
+            while (metaContacts.hasNext())
+                metaUIDs.add(metaContacts.next().getMetaUID());
+
+            runner.measure(
+                    "MetaContactListService.findMetaContactByMetaUID",
+                    LOOKUP_BATCH_SIZE,
+                    new BenchmarkRunner.Operation()
+                    {
+                        public void run()
+                        {
+                            for (int i = 0; i < LOOKUP_BATCH_SIZE; i++)
+                            {
+                                String metaUID
+                                    = metaUIDs.get(
+                                            random.nextInt(metaUIDs.size()));
+
+                                assertNotNull(
+                                        mclService.findMetaContactByMetaUID(
+                                                metaUID));
+                            }
+                        }
+                    });
+        }
+        finally
+        {
+            // don't leave the roster behind in the meta contact list
+            BenchmarkFixtures.clearRoster(provider);
+            registration.unregister();
+            context.ungetService(mclServiceRef);
+        }
+    }
+
+    /**
+     * Writes the results of the benchmarks of this suite.
+     *
+     * @throws Exception if the results could not be written.
+     */
+    public void testWriteResults()
+        throws Exception
+    {
+        assertTrue(runner.writeResults().isFile());
+    }
+}